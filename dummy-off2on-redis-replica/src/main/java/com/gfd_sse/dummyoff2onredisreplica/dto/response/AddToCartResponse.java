@@ -1,10 +1,10 @@
 package com.gfd_sse.dummyoff2onredisreplica.dto.response;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 
 import com.gfd_sse.dummyoff2onredisreplica.model.CartItem;
+import com.gfd_sse.dummyoff2onredisreplica.model.Money;
 
 
 import lombok.AllArgsConstructor;
@@ -21,6 +21,6 @@ public class AddToCartResponse {
   private String message;
   private String userId;
   private List<CartItem> cartItems;
-  private BigDecimal totalAmount;
+  private Money totalAmount;
   private Integer totalItems;
 }
@@ -1,6 +1,6 @@
 package com.gfd_sse.dummyoff2onredisreplica.dto.response;
 
-import java.math.BigDecimal;
+import com.gfd_sse.dummyoff2onredisreplica.model.Money;
 
 
 import lombok.AllArgsConstructor;
@@ -17,6 +17,6 @@ public class CheckoutResponse {
     private String message;
     private String orderId;
     private String userId;
-    private BigDecimal totalAmount;
+    private Money totalAmount;
     private String orderStatus;
 }
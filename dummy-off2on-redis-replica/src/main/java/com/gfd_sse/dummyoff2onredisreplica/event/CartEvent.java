@@ -1,8 +1,8 @@
 package com.gfd_sse.dummyoff2onredisreplica.event;
 
-import java.math.BigDecimal;
 import java.util.List;
 import com.gfd_sse.dummyoff2onredisreplica.model.CartItem;
+import com.gfd_sse.dummyoff2onredisreplica.model.Money;
 
 
 import lombok.AllArgsConstructor;
@@ -20,7 +20,7 @@ public class CartEvent {
     private String userId;
     private Long timestamp;
     private List<CartItem> cartItems;
-    private BigDecimal totalAmount;
+    private Money totalAmount;
     private Integer totalItems;
     private String message;
     private Object metadata;
@@ -1,8 +1,5 @@
 package com.gfd_sse.dummyoff2onredisreplica.model;
 
-import java.math.BigDecimal;
-
-
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -15,7 +12,7 @@ import lombok.NoArgsConstructor;
 public class CartItem {
   private Long productId;
   private String productName;
-  private BigDecimal price;
+  private Money price;
   private Integer quantity;
-  private BigDecimal subtotal;
+  private Money subtotal;
 }
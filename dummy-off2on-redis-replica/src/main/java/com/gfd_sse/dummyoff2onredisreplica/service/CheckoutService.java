@@ -1,7 +1,5 @@
 package com.gfd_sse.dummyoff2onredisreplica.service;
 
-import java.util.UUID;
-
 import org.springframework.stereotype.Service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gfd_sse.dummyoff2onredisreplica.event.CartEvent;
@@ -15,10 +13,12 @@ public class CheckoutService {
 
   private final ObjectMapper objectMapper;
   private final SseService sseService;
+  private final IdGenerator idGenerator;
 
-  public CheckoutService(ObjectMapper objectMapper, SseService sseService) {
+  public CheckoutService(ObjectMapper objectMapper, SseService sseService, IdGenerator idGenerator) {
     this.objectMapper = objectMapper;
     this.sseService = sseService;
+    this.idGenerator = idGenerator;
   }
 
   /**
@@ -30,7 +30,7 @@ public class CheckoutService {
 
     // Create a test checkout event
     CartEvent event = CartEvent.builder()
-        .eventId(UUID.randomUUID().toString())
+        .eventId(idGenerator.next())
         .eventType(EventType.CHECKOUT_INITIATED)
         .userId(userId)
         .timestamp(System.currentTimeMillis())
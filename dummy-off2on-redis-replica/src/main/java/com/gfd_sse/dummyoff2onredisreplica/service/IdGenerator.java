@@ -0,0 +1,105 @@
+package com.gfd_sse.dummyoff2onredisreplica.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Snowflake-style generator for event and order ids.
+ *
+ * An id is a 64-bit number: 41 bits of milliseconds since 2024-01-01, a
+ * 10-bit node id and a 12-bit sequence within the millisecond. Ids from one
+ * node are strictly increasing, even if the clock steps back (the last
+ * timestamp is reused) or more than 4096 ids are needed in one millisecond
+ * (the next millisecond is borrowed). Generating one is a single CAS with no
+ * shared random source.
+ *
+ * The string form is 13 characters of Crockford base32. It has a fixed width,
+ * so strings sort in the same order as the numbers, i.e. by creation time.
+ * That makes the ids usable as SSE ids and replay cursors. This service
+ * shares no state with other instances and its ids only appear on its own
+ * streams, so ids.node-id (0-1023) defaults to 0. Set distinct values if ids
+ * from several instances are ever compared or stored together. A hash of
+ * the host name is not used, since two hosts can easily hash to the same id.
+ */
+@Component
+@Slf4j
+public class IdGenerator {
+
+  // 2024-01-01T00:00:00Z
+  private static final long EPOCH_MILLIS = 1704067200000L;
+
+  private static final int NODE_BITS = 10;
+  private static final int SEQUENCE_BITS = 12;
+  private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+  private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+  private static final int ENCODED_LENGTH = 13;
+  private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+  @Value("${ids.node-id:-1}")
+  private long configuredNodeId;
+
+  // Last id issued; the next one is derived from it with a CAS
+  private final AtomicLong lastId = new AtomicLong();
+
+  private long nodeBits;
+
+  @PostConstruct
+  public void init() {
+    long nodeId = Math.max(configuredNodeId, 0);
+    if (nodeId > MAX_NODE_ID) {
+      throw new IllegalStateException("ids.node-id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+    }
+    nodeBits = nodeId << SEQUENCE_BITS;
+    log.info("Id generator using node id {}", nodeId);
+  }
+
+  /**
+   * Next id as a number
+   */
+  public long nextId() {
+    while (true) {
+      long previous = lastId.get();
+      long now = System.currentTimeMillis() - EPOCH_MILLIS;
+      long previousTime = previous >>> TIMESTAMP_SHIFT;
+
+      long next;
+      if (now > previousTime) {
+        next = (now << TIMESTAMP_SHIFT) | nodeBits;
+      } else if ((previous & SEQUENCE_MASK) < SEQUENCE_MASK) {
+        next = previous + 1;
+      } else {
+        next = ((previousTime + 1) << TIMESTAMP_SHIFT) | nodeBits;
+      }
+
+      if (lastId.compareAndSet(previous, next)) {
+        return next;
+      }
+    }
+  }
+
+  /**
+   * Next id as a fixed-width, sortable string
+   */
+  public String next() {
+    return encode(nextId());
+  }
+
+  /**
+   * Fixed-width base32 form of an id
+   */
+  public static String encode(long id) {
+    char[] chars = new char[ENCODED_LENGTH];
+    for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+      chars[i] = ALPHABET[(int) (id & 31)];
+      id >>>= 5;
+    }
+    return new String(chars);
+  }
+}
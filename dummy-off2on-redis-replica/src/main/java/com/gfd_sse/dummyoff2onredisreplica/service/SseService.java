@@ -2,7 +2,6 @@ package com.gfd_sse.dummyoff2onredisreplica.service;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -24,9 +23,11 @@ public class SseService {
   private int sseTimeoutMinutes;
 
   private final ObjectMapper objectMapper;
+  private final IdGenerator idGenerator;
 
-  public SseService(ObjectMapper objectMapper) {
+  public SseService(ObjectMapper objectMapper, IdGenerator idGenerator) {
     this.objectMapper = objectMapper;
+    this.idGenerator = idGenerator;
   }
 
   public SseEmitter createEmitter(String userId) {
@@ -110,7 +111,7 @@ public class SseService {
    */
   private void sendConnectionEstablishedEvent(String userId) {
     CartEvent event = CartEvent.builder()
-        .eventId(UUID.randomUUID().toString())
+        .eventId(idGenerator.next())
         .eventType(EventType.CONNECTION_ESTABLISHED)
         .userId(userId)
         .timestamp(System.currentTimeMillis())
@@ -0,0 +1,25 @@
+package com.gfd_sse.dummyoff2onredis.config;
+
+/**
+ * Maps a userId to its hash-sharded Pub/Sub channel.
+ * Must stay identical in dummy-off2on (publisher) and dummy-off2on-redis (subscriber).
+ */
+public final class ChannelShards {
+
+    private ChannelShards() {
+    }
+
+    /**
+     * Shard index for a user, in [0, shards)
+     */
+    public static int shardOf(String userId, int shards) {
+        return Math.floorMod(userId.hashCode(), shards);
+    }
+
+    /**
+     * Channel name for a shard, e.g. cart-events:7
+     */
+    public static String channel(String baseChannel, int shard) {
+        return baseChannel + ":" + shard;
+    }
+}
@@ -4,11 +4,12 @@ import com.gfd_sse.dummyoff2onredis.service.RedisSubscriberService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.listener.PatternTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
-import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -24,6 +25,9 @@ public class RedisConfig {
     @Value("${redis.channel.checkout-events}")
     private String checkoutEventsChannel;
 
+    @Value("${redis.channel.shards:0}")
+    private int channelShards;
+
     @Bean
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
@@ -44,28 +48,38 @@ public class RedisConfig {
     @Bean
     public RedisMessageListenerContainer redisMessageListenerContainer(
             RedisConnectionFactory connectionFactory,
-            MessageListenerAdapter cartEventsListener,
-            MessageListenerAdapter checkoutEventsListener) {
+            MessageListener cartEventsListener,
+            MessageListener checkoutEventsListener) {
 
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
 
-        // Subscribe to cart events
-        container.addMessageListener(cartEventsListener, new PatternTopic(cartEventsChannel));
+        // Hand messages over on the subscription thread, in the order Redis sent them.
+        // RedisSubscriberService moves the work to UserEventDispatcher, which keeps that
+        // order per user; the default executor would start an unordered thread per message.
+        container.setTaskExecutor(new SyncTaskExecutor());
+
+        // With sharded channels, ChannelShardSubscriptionManager subscribes
+        // per shard as users connect; otherwise listen on the global channels
+        if (channelShards <= 0) {
+            // Subscribe to cart events
+            container.addMessageListener(cartEventsListener, new PatternTopic(cartEventsChannel));
 
-        // Subscribe to checkout events
-        container.addMessageListener(checkoutEventsListener, new PatternTopic(checkoutEventsChannel));
+            // Subscribe to checkout events
+            container.addMessageListener(checkoutEventsListener, new PatternTopic(checkoutEventsChannel));
+        }
 
         return container;
     }
 
+    // Raw listeners: the subscriber works on the message bytes, no String conversion
     @Bean
-    public MessageListenerAdapter cartEventsListener(RedisSubscriberService subscriberService) {
-        return new MessageListenerAdapter(subscriberService, "handleCartEvent");
+    public MessageListener cartEventsListener(RedisSubscriberService subscriberService) {
+        return (message, pattern) -> subscriberService.handleCartEvent(message);
     }
 
     @Bean
-    public MessageListenerAdapter checkoutEventsListener(RedisSubscriberService subscriberService) {
-        return new MessageListenerAdapter(subscriberService, "handleCheckoutEvent");
+    public MessageListener checkoutEventsListener(RedisSubscriberService subscriberService) {
+        return (message, pattern) -> subscriberService.handleCheckoutEvent(message);
     }
 }
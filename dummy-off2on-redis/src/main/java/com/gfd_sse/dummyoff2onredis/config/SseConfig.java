@@ -0,0 +1,52 @@
+package com.gfd_sse.dummyoff2onredis.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+@Configuration
+public class SseConfig {
+
+    @Value("${sse.writer.threads:0}")
+    private int writerThreads;
+
+    @Value("${sse.dispatch.threads:0}")
+    private int dispatchThreads;
+
+    /**
+     * Executor that drains per-connection outbound queues.
+     * 0 threads means one virtual thread per drain task.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService sseWriterExecutor() {
+        if (writerThreads <= 0) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-writer-", 0).factory());
+        }
+        return Executors.newFixedThreadPool(writerThreads, Thread.ofPlatform().name("sse-writer-", 0).factory());
+    }
+
+    /**
+     * Executor that drains the per-user dispatch stripes.
+     * 0 threads means one virtual thread per drain task.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService sseDispatchExecutor() {
+        if (dispatchThreads <= 0) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-dispatch-", 0).factory());
+        }
+        return Executors.newFixedThreadPool(dispatchThreads, Thread.ofPlatform().name("sse-dispatch-", 0).factory());
+    }
+
+    /**
+     * Single thread that advances the heartbeat wheel. It only queues frames,
+     * so one thread serves any number of connections.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService sseHeartbeatScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("sse-heartbeat").daemon(true).factory());
+    }
+}
@@ -0,0 +1,70 @@
+package com.gfd_sse.dummyoff2onredis.controller;
+
+import com.gfd_sse.dummyoff2onredis.service.SSEService;
+import com.gfd_sse.dummyoff2onredis.service.SseHandshakeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Reactive SSE transport on Netty (sse.transport=reactive, see the "reactive"
+ * profile). Idle connections hold no request thread or servlet async context.
+ */
+@RestController
+@RequestMapping("/api/sse")
+@CrossOrigin(origins = "*")
+@ConditionalOnProperty(name = "sse.transport", havingValue = "reactive")
+public class ReactiveSSEConnectController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveSSEConnectController.class);
+
+    private final SSEService sseService;
+    private final SseHandshakeService handshakeService;
+
+    public ReactiveSSEConnectController(SSEService sseService, SseHandshakeService handshakeService) {
+        this.sseService = sseService;
+        this.handshakeService = handshakeService;
+    }
+
+    /**
+     * Establish SSE connection with OTP or resume token authentication.
+     * The OTP handshake uses blocking Redis calls, so it runs off the event loop.
+     */
+    @GetMapping(value = "/connect", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<ResponseEntity<?>> connect(
+            @RequestParam String userId,
+            @RequestParam(required = false) String otp,
+            @RequestParam(required = false) String resumeToken,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(required = false) String lastEventId) {
+
+        // EventSource sends Last-Event-ID itself on automatic reconnects;
+        // the query parameter covers clients that reconnect manually
+        String resumeFrom = lastEventIdHeader != null ? lastEventIdHeader : lastEventId;
+
+        logger.info("Reactive SSE connection request from user: {} with OTP: {}", userId, otp);
+
+        return Mono.fromCallable(() -> handshakeService.authorize(userId, otp, resumeToken))
+                .subscribeOn(Schedulers.boundedElastic())
+                .<ResponseEntity<?>>map(handshake -> {
+                    if (!handshake.isAccepted()) {
+                        return ResponseEntity.status(handshake.getStatus())
+                                .body(handshake.getMessage());
+                    }
+
+                    logger.info("Reactive SSE connection established successfully for user: {}", userId);
+                    return ResponseEntity.ok(sseService.createFlux(userId, resumeFrom, handshake.getResumeToken()));
+                })
+                .onErrorResume(e -> {
+                    logger.error("Error establishing reactive SSE connection for user: {}", userId, e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body("Failed to establish SSE connection: " + e.getMessage()));
+                });
+    }
+}
@@ -0,0 +1,139 @@
+package com.gfd_sse.dummyoff2onredis.controller;
+
+import com.gfd_sse.dummyoff2onredis.dto.ApiResponse;
+import com.gfd_sse.dummyoff2onredis.dto.ResumeTokenRevocationRequest;
+import com.gfd_sse.dummyoff2onredis.event.CartEvent;
+import com.gfd_sse.dummyoff2onredis.service.IdGenerator;
+import com.gfd_sse.dummyoff2onredis.service.ResumeTokenService;
+import com.gfd_sse.dummyoff2onredis.service.SSEService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Operator endpoints. Every request needs an X-Admin-Token header equal to
+ * sse.admin.token; while that property is not set the endpoints are
+ * disabled.
+ */
+@RestController
+@RequestMapping("/api/sse")
+public class SSEAdminController {
+
+    private static final Logger logger = LoggerFactory.getLogger(SSEAdminController.class);
+
+    @Value("${sse.admin.token:}")
+    private String adminToken;
+
+    private final SSEService sseService;
+    private final IdGenerator idGenerator;
+    private final ResumeTokenService resumeTokenService;
+
+    public SSEAdminController(SSEService sseService, IdGenerator idGenerator,
+            ResumeTokenService resumeTokenService) {
+        this.sseService = sseService;
+        this.idGenerator = idGenerator;
+        this.resumeTokenService = resumeTokenService;
+    }
+
+    /**
+     * Broadcast an event to every user connected to this node
+     * (e.g. store-wide announcements). The event is encoded once and shared.
+     */
+    @PostMapping("/broadcast")
+    public ResponseEntity<ApiResponse> broadcast(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token,
+            @RequestBody CartEvent event) {
+        ResponseEntity<ApiResponse> denied = checkAdminToken(token);
+        if (denied != null) {
+            return denied;
+        }
+
+        if (event.getEventType() == null) {
+            return ResponseEntity.badRequest().body(ApiResponse.builder()
+                    .success(false)
+                    .message("Event type is required")
+                    .build());
+        }
+
+        if (event.getEventId() == null) {
+            event.setEventId(idGenerator.next());
+        }
+        if (event.getTimestamp() == null) {
+            event.setTimestamp(System.currentTimeMillis());
+        }
+
+        try {
+            int recipients = sseService.broadcastEvent(event);
+            return ResponseEntity.ok(ApiResponse.builder()
+                    .success(true)
+                    .message("Event broadcast to " + recipients + " connections")
+                    .data(recipients)
+                    .build());
+        } catch (Exception e) {
+            logger.error("Error broadcasting event {}", event.getEventType(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ApiResponse.builder()
+                    .success(false)
+                    .message("Failed to broadcast event: " + e.getMessage())
+                    .build());
+        }
+    }
+
+    /**
+     * Revoke a resume token on every node, e.g. when a display is retired
+     */
+    @PostMapping("/resume-token/revoke")
+    public ResponseEntity<ApiResponse> revokeResumeToken(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token,
+            @RequestBody ResumeTokenRevocationRequest request) {
+        ResponseEntity<ApiResponse> denied = checkAdminToken(token);
+        if (denied != null) {
+            return denied;
+        }
+
+        if (request.getToken() == null || request.getToken().isBlank()) {
+            return ResponseEntity.badRequest().body(ApiResponse.builder()
+                    .success(false)
+                    .message("Token is required")
+                    .build());
+        }
+
+        boolean revoked = resumeTokenService.revoke(request.getToken());
+        if (!revoked) {
+            return ResponseEntity.badRequest().body(ApiResponse.builder()
+                    .success(false)
+                    .message("Not a resume token issued with a current key")
+                    .build());
+        }
+        return ResponseEntity.ok(ApiResponse.builder()
+                .success(true)
+                .message("Resume token revoked")
+                .build());
+    }
+
+    /**
+     * Null if the caller presented the admin token, otherwise the error response
+     */
+    private ResponseEntity<ApiResponse> checkAdminToken(String token) {
+        if (adminToken.isBlank()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.builder()
+                    .success(false)
+                    .message("Admin endpoints are disabled (sse.admin.token is not set)")
+                    .build());
+        }
+        if (token == null || !MessageDigest.isEqual(adminToken.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Rejected admin request with a missing or wrong X-Admin-Token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ApiResponse.builder()
+                    .success(false)
+                    .message("Missing or invalid X-Admin-Token")
+                    .build());
+        }
+        return null;
+    }
+}
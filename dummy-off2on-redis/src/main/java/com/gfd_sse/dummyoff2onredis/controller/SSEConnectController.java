@@ -0,0 +1,78 @@
+package com.gfd_sse.dummyoff2onredis.controller;
+
+import com.gfd_sse.dummyoff2onredis.dto.HandshakeResult;
+import com.gfd_sse.dummyoff2onredis.service.SSEService;
+import com.gfd_sse.dummyoff2onredis.service.SseHandshakeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Servlet SSE transport (default). Each connection holds a Tomcat async request.
+ */
+@RestController
+@RequestMapping("/api/sse")
+@CrossOrigin(origins = "*")
+@ConditionalOnProperty(name = "sse.transport", havingValue = "servlet", matchIfMissing = true)
+public class SSEConnectController {
+
+    private static final Logger logger = LoggerFactory.getLogger(SSEConnectController.class);
+
+    private final SSEService sseService;
+    private final SseHandshakeService handshakeService;
+
+    public SSEConnectController(SSEService sseService, SseHandshakeService handshakeService) {
+        this.sseService = sseService;
+        this.handshakeService = handshakeService;
+    }
+
+    /**
+     * Establish SSE connection with OTP authentication
+     * GFD PWA will connect to this endpoint with userId and OTP, or with the
+     * resume token it received on its previous connection
+     */
+    @GetMapping(value = "/connect", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> connect(
+            @RequestParam String userId,
+            @RequestParam(required = false) String otp,
+            @RequestParam(required = false) String resumeToken,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(required = false) String lastEventId) {
+
+        // EventSource sends Last-Event-ID itself on automatic reconnects;
+        // the query parameter covers clients that reconnect manually
+        String resumeFrom = lastEventIdHeader != null ? lastEventIdHeader : lastEventId;
+
+        logger.info("SSE connection request from user: {} with OTP: {}", userId, otp);
+
+        try {
+            HandshakeResult handshake = handshakeService.authorize(userId, otp, resumeToken);
+            if (!handshake.isAccepted()) {
+                return ResponseEntity.status(handshake.getStatus())
+                        .body(handshake.getMessage());
+            }
+
+            // Check if user already has an active connection
+            if (sseService.hasActiveConnection(userId)) {
+                logger.info("User {} already has an active connection. Closing old connection.", userId);
+                sseService.removeEmitter(userId);
+            }
+
+            // Create SSE emitter
+            SseEmitter emitter = sseService.createEmitter(userId, resumeFrom, handshake.getResumeToken());
+
+            logger.info("SSE connection established successfully for user: {}", userId);
+            return ResponseEntity.ok(emitter);
+
+        } catch (Exception e) {
+            logger.error("Error establishing SSE connection for user: {}", userId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to establish SSE connection: " + e.getMessage());
+        }
+    }
+}
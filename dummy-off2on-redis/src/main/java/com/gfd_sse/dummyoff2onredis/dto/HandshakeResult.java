@@ -0,0 +1,26 @@
+package com.gfd_sse.dummyoff2onredis.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Outcome of the SSE connect handshake, independent of the transport
+ */
+@Getter
+@AllArgsConstructor
+public class HandshakeResult {
+    private final boolean accepted;
+    private final HttpStatus status;
+    private final String message;
+    // Token for the next reconnect; null when resume tokens are disabled
+    private final ResumeToken resumeToken;
+
+    public static HandshakeResult accepted(ResumeToken resumeToken) {
+        return new HandshakeResult(true, HttpStatus.OK, null, resumeToken);
+    }
+
+    public static HandshakeResult rejected(HttpStatus status, String message) {
+        return new HandshakeResult(false, status, message, null);
+    }
+}
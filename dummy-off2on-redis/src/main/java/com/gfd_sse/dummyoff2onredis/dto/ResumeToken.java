@@ -0,0 +1,14 @@
+package com.gfd_sse.dummyoff2onredis.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Signed token that lets a user reconnect without a new OTP until expiresAt (epoch ms)
+ */
+@Getter
+@AllArgsConstructor
+public class ResumeToken {
+    private final String token;
+    private final long expiresAt;
+}
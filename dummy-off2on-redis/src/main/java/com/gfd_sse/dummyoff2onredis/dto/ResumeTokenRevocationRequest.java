@@ -0,0 +1,15 @@
+package com.gfd_sse.dummyoff2onredis.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// In the body rather than the query string, which ends up in access logs
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumeTokenRevocationRequest {
+    private String token;
+}
@@ -0,0 +1,72 @@
+package com.gfd_sse.dummyoff2onredis.event;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * The routing fields of a serialized event (userId, eventId, eventType),
+ * read with the streaming parser straight from the Redis message bytes.
+ * Nothing else is bound, so events for users who are not connected here
+ * cost a partial scan instead of a full deserialization.
+ */
+public final class EventHeader {
+
+    private final String userId;
+    private final String eventId;
+    private final String eventType;
+
+    private EventHeader(String userId, String eventId, String eventType) {
+        this.userId = userId;
+        this.eventId = eventId;
+        this.eventType = eventType;
+    }
+
+    /**
+     * Scan the top-level fields of a JSON object, stopping as soon as all
+     * routing fields have been seen
+     *
+     * @throws IOException if the payload is not a JSON object
+     */
+    public static EventHeader read(JsonFactory jsonFactory, byte[] json) throws IOException {
+        String userId = null;
+        String eventId = null;
+        String eventType = null;
+
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Event payload is not a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME
+                    && (userId == null || eventId == null || eventType == null)) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                String text = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+
+                switch (field) {
+                    case "userId" -> userId = text;
+                    case "eventId" -> eventId = text;
+                    case "eventType" -> eventType = text;
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        return new EventHeader(userId, eventId, eventType);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+}
@@ -15,5 +15,7 @@ public enum EventType {
     CHECKOUT_COMPLETED,
     CHECKOUT_FAILED,
     CONNECTION_ESTABLISHED,
-    HEARTBEAT
+    HEARTBEAT,
+    RESYNC,
+    RESUME_TOKEN
 }
@@ -0,0 +1,140 @@
+package com.gfd_sse.dummyoff2onredis.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A fully encoded SSE frame ({@code id:/event:/data:} lines plus the blank
+ * line terminator).
+ *
+ * A frame is immutable and encoded exactly once, so the same instance can be
+ * queued for any number of connections without re-serializing the event.
+ * Frames built from raw JSON bytes decode their data string only on demand.
+ */
+public final class SseFrame {
+
+    private final String id;
+    private final String name;
+    private final byte[] bytes;
+
+    // Position of the data payload in bytes, for lazy decoding
+    private final int dataOffset;
+    private final int dataLength;
+    private volatile String data;
+
+    private SseFrame(String id, String name, String data, byte[] bytes, int dataOffset, int dataLength) {
+        this.id = id;
+        this.name = name;
+        this.data = data;
+        this.bytes = bytes;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+    }
+
+    /**
+     * Encode a frame from its parts. {@code id} and {@code name} are optional
+     * and must not contain line breaks, which would end the field and let the
+     * rest of the value pose as fields of its own.
+     */
+    public static SseFrame of(String id, String name, String data) {
+        StringBuilder sb = new StringBuilder(data.length() + 64);
+        appendHeader(sb, id, name);
+        // Multi-line payloads need one data: field per line; CR, LF and CRLF all end a line
+        int start = 0;
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '\n' || c == '\r') {
+                sb.append("data:").append(data, start, i).append('\n');
+                if (c == '\r' && i + 1 < data.length() && data.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        sb.append("data:").append(data, start, data.length()).append('\n');
+        sb.append('\n');
+
+        return new SseFrame(id, name, data, sb.toString().getBytes(StandardCharsets.UTF_8), 0, 0);
+    }
+
+    /**
+     * Encode a frame around already serialized single-line JSON, copying the
+     * bytes as they are without decoding or re-serializing them
+     */
+    public static SseFrame ofJson(String id, String name, byte[] json) {
+        // Compact JSON never contains raw line breaks; anything else takes the line-splitting path
+        for (byte b : json) {
+            if (b == '\n' || b == '\r') {
+                return of(id, name, new String(json, StandardCharsets.UTF_8));
+            }
+        }
+
+        StringBuilder prefix = new StringBuilder(64);
+        appendHeader(prefix, id, name);
+        prefix.append("data:");
+        byte[] head = prefix.toString().getBytes(StandardCharsets.UTF_8);
+
+        byte[] bytes = new byte[head.length + json.length + 2];
+        System.arraycopy(head, 0, bytes, 0, head.length);
+        System.arraycopy(json, 0, bytes, head.length, json.length);
+        bytes[bytes.length - 2] = '\n';
+        bytes[bytes.length - 1] = '\n';
+
+        return new SseFrame(id, name, null, bytes, head.length, json.length);
+    }
+
+    /**
+     * Serialize a cart event once and encode it as a frame
+     */
+    public static SseFrame of(CartEvent event, ObjectMapper objectMapper) throws JsonProcessingException {
+        String eventJson = objectMapper.writeValueAsString(event);
+        String name = event.getEventType() != null ? event.getEventType().name() : null;
+        return of(event.getEventId(), name, eventJson);
+    }
+
+    private static void appendHeader(StringBuilder sb, String id, String name) {
+        if (id != null) {
+            sb.append("id:").append(requireSingleLine(id, "id")).append('\n');
+        }
+        if (name != null) {
+            sb.append("event:").append(requireSingleLine(name, "event name")).append('\n');
+        }
+    }
+
+    private static String requireSingleLine(String value, String field) {
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("SSE " + field + " must not contain line breaks");
+        }
+        return value;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getData() {
+        String result = data;
+        if (result == null) {
+            result = new String(bytes, dataOffset, dataLength, StandardCharsets.UTF_8);
+            data = result;
+        }
+        return result;
+    }
+
+    /**
+     * The encoded frame. Shared between recipients; must not be modified.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+}
@@ -0,0 +1,27 @@
+package com.gfd_sse.dummyoff2onredis.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Application event describing a user's presence on this node.
+ *
+ * CONNECTED/DISCONNECTED follow each individual SSE connection. A session
+ * (STARTED/ENDED) spans reconnects: it starts on the user's first connect and
+ * ends once the user has been disconnected for longer than the replay
+ * retention window.
+ */
+@Data
+@AllArgsConstructor
+public class SseSessionEvent {
+
+    public enum Type {
+        STARTED,
+        CONNECTED,
+        DISCONNECTED,
+        ENDED
+    }
+
+    private String userId;
+    private Type type;
+}
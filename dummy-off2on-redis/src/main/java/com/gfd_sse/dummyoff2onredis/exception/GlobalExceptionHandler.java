@@ -7,7 +7,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.context.request.WebRequest;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -18,7 +17,7 @@ public class GlobalExceptionHandler {
      * Handle all generic exceptions
      */
     @ExceptionHandler(Exception.class)
-    public ResponseEntity<ApiResponse> handleGlobalException(Exception ex, WebRequest request) {
+    public ResponseEntity<ApiResponse> handleGlobalException(Exception ex) {
         logger.error("Global exception handler caught exception: ", ex);
 
         ApiResponse response = ApiResponse.builder()
@@ -33,7 +32,7 @@ public class GlobalExceptionHandler {
      * Handle illegal argument exceptions
      */
     @ExceptionHandler(IllegalArgumentException.class)
-    public ResponseEntity<ApiResponse> handleIllegalArgumentException(IllegalArgumentException ex, WebRequest request) {
+    public ResponseEntity<ApiResponse> handleIllegalArgumentException(IllegalArgumentException ex) {
         logger.error("Illegal argument exception: ", ex);
 
         ApiResponse response = ApiResponse.builder()
@@ -48,7 +47,7 @@ public class GlobalExceptionHandler {
      * Handle runtime exceptions
      */
     @ExceptionHandler(RuntimeException.class)
-    public ResponseEntity<ApiResponse> handleRuntimeException(RuntimeException ex, WebRequest request) {
+    public ResponseEntity<ApiResponse> handleRuntimeException(RuntimeException ex) {
         logger.error("Runtime exception: ", ex);
 
         ApiResponse response = ApiResponse.builder()
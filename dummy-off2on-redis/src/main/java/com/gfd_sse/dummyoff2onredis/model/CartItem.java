@@ -5,8 +5,6 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
-
 @Data
 @Builder
 @NoArgsConstructor
@@ -14,7 +12,7 @@ import java.math.BigDecimal;
 public class CartItem {
     private Long productId;
     private String productName;
-    private BigDecimal price;
+    private Money price;
     private Integer quantity;
-    private BigDecimal subtotal;
+    private Money subtotal;
 }
@@ -0,0 +1,166 @@
+package com.gfd_sse.dummyoff2onredis.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Immutable amount of money held as a long count of minor units (cents).
+ *
+ * All amounts use the store currency's scale of SCALE decimal places, so
+ * adding and multiplying are plain long arithmetic (overflow throws) with no
+ * BigDecimal allocation. On the wire an amount is still a JSON decimal
+ * number such as 999.99. It is written straight from the long and parsed
+ * from the token text, so consumers see the same format as before.
+ */
+@Schema(type = "number", example = "999.99")
+@JsonSerialize(using = Money.Serializer.class)
+@JsonDeserialize(using = Money.Deserializer.class)
+public final class Money implements Comparable<Money> {
+
+    /** Decimal places of the currency */
+    public static final int SCALE = 2;
+
+    private static final long FACTOR = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Amount from a decimal, rounded half-up to SCALE places
+     */
+    public static Money of(BigDecimal amount) {
+        return ofMinor(amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    /**
+     * Parse a plain decimal string such as "999.99", "-5" or "0.5"
+     */
+    public static Money parse(String text) {
+        int length = text.length();
+        int start = length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+') ? 1 : 0;
+        int point = text.indexOf('.');
+        int fractionDigits = point < 0 ? 0 : length - point - 1;
+        int integerEnd = point < 0 ? length : point;
+        if (start == integerEnd && fractionDigits == 0 || fractionDigits > SCALE) {
+            // Empty, exponent notation or sub-cent digits: let BigDecimal validate and round
+            return of(new BigDecimal(text));
+        }
+
+        long units = 0;
+        for (int i = start; i < length; i++) {
+            if (i == point) {
+                continue;
+            }
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return of(new BigDecimal(text));
+            }
+            units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+        }
+        for (int i = fractionDigits; i < SCALE; i++) {
+            units = Math.multiplyExact(units, 10);
+        }
+        return ofMinor(text.charAt(0) == '-' ? -units : units);
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money times(int quantity) {
+        return ofMinor(Math.multiplyExact(minorUnits, quantity));
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money other && minorUnits == other.minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    /**
+     * Plain decimal with exactly SCALE places, e.g. "999.99" or "-0.05"
+     */
+    @Override
+    public String toString() {
+        long abs = Math.abs(minorUnits);
+        long fraction = abs % FACTOR;
+        StringBuilder sb = new StringBuilder(24);
+        if (minorUnits < 0) {
+            sb.append('-');
+        }
+        sb.append(abs / FACTOR).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction).toString();
+    }
+
+    public static final class Serializer extends JsonSerializer<Money> {
+
+        @Override
+        public void serialize(Money value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeNumber(value.toString());
+        }
+    }
+
+    public static final class Deserializer extends JsonDeserializer<Money> {
+
+        @Override
+        public Money deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken token = p.currentToken();
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                return ofMinor(Math.multiplyExact(p.getLongValue(), FACTOR));
+            }
+            if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_STRING) {
+                return parse(p.getText().trim());
+            }
+            return (Money) ctxt.handleUnexpectedToken(Money.class, p);
+        }
+    }
+}
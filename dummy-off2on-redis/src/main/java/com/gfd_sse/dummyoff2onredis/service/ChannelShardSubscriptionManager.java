@@ -0,0 +1,109 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.config.ChannelShards;
+import com.gfd_sse.dummyoff2onredis.event.SseSessionEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+/**
+ * Subscribes this node only to the channel shards its users hash to.
+ *
+ * Each shard is reference counted by the number of user sessions on this
+ * node that map to it; the shard is subscribed on the first session and
+ * unsubscribed when the last one ends. Does nothing when
+ * redis.channel.shards is 0 (global channel mode).
+ */
+@Service
+public class ChannelShardSubscriptionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChannelShardSubscriptionManager.class);
+
+    @Value("${redis.channel.shards:0}")
+    private int channelShards;
+
+    @Value("${redis.channel.cart-events}")
+    private String cartEventsChannel;
+
+    @Value("${redis.channel.checkout-events}")
+    private String checkoutEventsChannel;
+
+    private final RedisMessageListenerContainer container;
+    private final MessageListener cartEventsListener;
+    private final MessageListener checkoutEventsListener;
+
+    // Guarded by this
+    private int[] shardRefCounts;
+
+    public ChannelShardSubscriptionManager(RedisMessageListenerContainer container,
+            @Qualifier("cartEventsListener") MessageListener cartEventsListener,
+            @Qualifier("checkoutEventsListener") MessageListener checkoutEventsListener) {
+        this.container = container;
+        this.cartEventsListener = cartEventsListener;
+        this.checkoutEventsListener = checkoutEventsListener;
+    }
+
+    @EventListener
+    public void onSessionEvent(SseSessionEvent event) {
+        if (channelShards <= 0) {
+            return;
+        }
+
+        int shard = ChannelShards.shardOf(event.getUserId(), channelShards);
+        switch (event.getType()) {
+            case STARTED -> acquire(shard);
+            case ENDED -> release(shard);
+            default -> {
+                // Per-connection events do not change the shard's lifetime
+            }
+        }
+    }
+
+    /**
+     * Number of shards this node is currently subscribed to
+     */
+    public synchronized int getSubscribedShardCount() {
+        if (shardRefCounts == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int refs : shardRefCounts) {
+            if (refs > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized void acquire(int shard) {
+        if (shardRefCounts == null) {
+            shardRefCounts = new int[channelShards];
+        }
+        if (shardRefCounts[shard]++ == 0) {
+            container.addMessageListener(cartEventsListener, topic(cartEventsChannel, shard));
+            container.addMessageListener(checkoutEventsListener, topic(checkoutEventsChannel, shard));
+            logger.info("Subscribed to channel shard {}", shard);
+        }
+    }
+
+    private synchronized void release(int shard) {
+        if (shardRefCounts == null || shardRefCounts[shard] == 0) {
+            return;
+        }
+        if (--shardRefCounts[shard] == 0) {
+            container.removeMessageListener(cartEventsListener, topic(cartEventsChannel, shard));
+            container.removeMessageListener(checkoutEventsListener, topic(checkoutEventsChannel, shard));
+            logger.info("Unsubscribed from channel shard {}", shard);
+        }
+    }
+
+    private ChannelTopic topic(String baseChannel, int shard) {
+        return new ChannelTopic(ChannelShards.channel(baseChannel, shard));
+    }
+}
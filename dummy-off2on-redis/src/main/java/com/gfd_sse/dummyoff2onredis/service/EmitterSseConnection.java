@@ -0,0 +1,40 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * SSE connection backed by a servlet {@link SseEmitter}
+ */
+public class EmitterSseConnection extends SseConnection {
+
+    private final SseEmitter emitter;
+
+    public EmitterSseConnection(String userId, SseEmitter emitter, int queueCapacity, OverflowPolicy overflowPolicy,
+            long offerTimeoutMillis, Executor writerExecutor, Consumer<SseConnection> onClose) {
+        super(userId, queueCapacity, overflowPolicy, offerTimeoutMillis, writerExecutor, onClose);
+        this.emitter = emitter;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    @Override
+    protected void write(SseFrame frame) throws IOException {
+        // Pre-encoded bytes go straight to the response; nothing is re-serialized here
+        emitter.send(Set.of(new ResponseBodyEmitter.DataWithMediaType(frame.getBytes(), MediaType.TEXT_PLAIN)));
+    }
+
+    @Override
+    protected void completeTransport() {
+        emitter.complete();
+    }
+}
@@ -0,0 +1,53 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * SSE connection backed by a reactive {@link Flux} served by Netty.
+ *
+ * Holds no request thread or servlet async context; per connection state is
+ * the outbound queue plus a small sink buffer handing frames to Netty.
+ */
+public class FluxSseConnection extends SseConnection {
+
+    private final Sinks.Many<ServerSentEvent<String>> sink;
+
+    public FluxSseConnection(String userId, int queueCapacity, int sinkBufferSize, OverflowPolicy overflowPolicy,
+            long offerTimeoutMillis, Executor writerExecutor, Consumer<SseConnection> onClose) {
+        super(userId, queueCapacity, overflowPolicy, offerTimeoutMillis, writerExecutor, onClose);
+        this.sink = Sinks.many().unicast()
+                .onBackpressureBuffer(Queues.<ServerSentEvent<String>>get(sinkBufferSize).get());
+    }
+
+    public Flux<ServerSentEvent<String>> asFlux() {
+        return sink.asFlux();
+    }
+
+    @Override
+    protected void write(SseFrame frame) throws IOException {
+        ServerSentEvent<String> event = ServerSentEvent.<String>builder()
+                .id(frame.getId())
+                .event(frame.getName())
+                .data(frame.getData())
+                .build();
+
+        Sinks.EmitResult result = sink.tryEmitNext(event);
+        if (result.isFailure()) {
+            // Netty is not draining the sink: the client is not keeping up or is gone
+            throw new IOException("Failed to emit SSE frame for user " + userId + ": " + result);
+        }
+    }
+
+    @Override
+    protected void completeTransport() {
+        sink.tryEmitComplete();
+    }
+}
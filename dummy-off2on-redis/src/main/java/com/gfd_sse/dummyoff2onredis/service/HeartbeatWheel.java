@@ -0,0 +1,144 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel for SSE keepalives.
+ *
+ * Connections are spread over sse.keepalive.wheel-slots slots; the wheel
+ * advances one slot per interval / slots, so each connection is visited once
+ * per keepalive interval and every tick only touches its own slice of the
+ * connections. A visit only queues work, it never writes to a socket:
+ * - connections written to within the last half interval are skipped,
+ * - idle connections get a heartbeat frame,
+ * - connections whose writer has made no progress for
+ *   sse.keepalive.stall-timeout-seconds are closed as dead.
+ * Failed writes close the connection on the writer itself.
+ */
+@Component
+public class HeartbeatWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatWheel.class);
+
+    private static final SseFrame HEARTBEAT_FRAME = SseFrame.of(null, "heartbeat", "ping");
+
+    @Value("${sse.keepalive.interval.seconds}")
+    private int keepAliveIntervalSeconds;
+
+    @Value("${sse.keepalive.wheel-slots:64}")
+    private int slotCount;
+
+    @Value("${sse.keepalive.stall-timeout-seconds:60}")
+    private long stallTimeoutSeconds;
+
+    private final ScheduledExecutorService scheduler;
+    private final MeterRegistry meterRegistry;
+
+    private Set<SseConnection>[] slots;
+    private int currentSlot;
+    private long skipWindowNanos;
+    private long stallTimeoutNanos;
+
+    private Counter heartbeatCounter;
+    private Counter stalledCounter;
+
+    public HeartbeatWheel(@Qualifier("sseHeartbeatScheduler") ScheduledExecutorService scheduler,
+            MeterRegistry meterRegistry) {
+        this.scheduler = scheduler;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void start() {
+        slots = new Set[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = ConcurrentHashMap.newKeySet();
+        }
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(keepAliveIntervalSeconds);
+        skipWindowNanos = intervalNanos / 2;
+        stallTimeoutNanos = TimeUnit.SECONDS.toNanos(stallTimeoutSeconds);
+
+        heartbeatCounter = Counter.builder("sse.heartbeat.sent")
+                .description("Heartbeat frames queued for idle connections")
+                .register(meterRegistry);
+        stalledCounter = Counter.builder("sse.connections.stalled")
+                .description("Connections closed because their writer stopped making progress")
+                .register(meterRegistry);
+
+        long tickNanos = Math.max(1, intervalNanos / slotCount);
+        scheduler.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        logger.info("Heartbeat wheel started: {} slots, tick {} ms",
+                slotCount, TimeUnit.NANOSECONDS.toMillis(tickNanos));
+    }
+
+    public void add(SseConnection connection) {
+        slotOf(connection).add(connection);
+    }
+
+    public void remove(SseConnection connection) {
+        slotOf(connection).remove(connection);
+    }
+
+    /**
+     * Visit the connections in the current slot and advance the wheel.
+     * Only ever runs on the single heartbeat thread.
+     */
+    private void tick() {
+        Set<SseConnection> slot = slots[currentSlot];
+        currentSlot = (currentSlot + 1) % slotCount;
+
+        try {
+            long now = System.nanoTime();
+            for (SseConnection connection : slot) {
+                visit(connection, now);
+            }
+        } catch (Exception e) {
+            // An exception would cancel the fixed-rate schedule
+            logger.error("Unexpected error in heartbeat tick", e);
+        }
+    }
+
+    private void visit(SseConnection connection, long now) {
+        if (connection.isClosed()) {
+            remove(connection);
+            return;
+        }
+
+        if (connection.isStalled(now, stallTimeoutNanos)) {
+            logger.warn("SSE connection for user {} made no progress for {} s. Closing dead connection.",
+                    connection.getUserId(), stallTimeoutSeconds);
+            stalledCounter.increment();
+            connection.close();
+            return;
+        }
+
+        // Real events already keep the connection alive
+        if (connection.wroteWithin(now, skipWindowNanos) || !connection.isIdle()) {
+            return;
+        }
+
+        if (connection.enqueue(HEARTBEAT_FRAME)) {
+            heartbeatCounter.increment();
+            logger.trace("Heartbeat queued for user: {}", connection.getUserId());
+        }
+    }
+
+    private Set<SseConnection> slotOf(SseConnection connection) {
+        return slots[Math.floorMod(System.identityHashCode(connection), slotCount)];
+    }
+}
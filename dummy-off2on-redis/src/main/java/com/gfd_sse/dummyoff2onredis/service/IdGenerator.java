@@ -0,0 +1,254 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake-style generator for event and order ids.
+ *
+ * An id is a 64-bit number: 41 bits of milliseconds since 2024-01-01, a
+ * 10-bit node id and a 12-bit sequence within the millisecond. Ids from one
+ * node are strictly increasing, even if the clock steps back (the last
+ * timestamp is reused) or more than 4096 ids are needed in one millisecond
+ * (the next millisecond is borrowed). Generating one is a single CAS with no
+ * shared random source.
+ *
+ * The string form is 13 characters of Crockford base32. It has a fixed width,
+ * so strings sort in the same order as the numbers, i.e. by creation time.
+ * That makes the ids usable as SSE ids and replay cursors. Nodes must have
+ * distinct node ids (0-1023), either configured as ids.node-id or, when that
+ * is unset, leased from Redis: ids:node:<n> is taken with SET NX and a TTL,
+ * renewed while this node runs and deleted on shutdown. If the lease is lost
+ * (Redis unreachable for longer than the TTL) the node takes it again or
+ * moves to a free id. Startup fails if no id can be leased.
+ */
+@Component
+public class IdGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdGenerator.class);
+
+    // 2024-01-01T00:00:00Z
+    private static final long EPOCH_MILLIS = 1704067200000L;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int ENCODED_LENGTH = 13;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    // KEYS: lease. ARGV: owner, TTL (ms). Extends the lease only while this node holds it.
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
+    // KEYS: lease. ARGV: owner.
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "  return redis.call('DEL', KEYS[1]) "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
+    @Value("${ids.node-id:-1}")
+    private long configuredNodeId;
+
+    @Value("${ids.lease.key-prefix:ids:node:}")
+    private String leaseKeyPrefix;
+
+    @Value("${ids.lease.ttl-seconds:60}")
+    private long leaseTtlSeconds;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // Identifies this node's leases
+    private final String owner = UUID.randomUUID().toString();
+
+    // Last id issued; the next one is derived from it with a CAS
+    private final AtomicLong lastId = new AtomicLong();
+
+    private volatile long nodeBits;
+
+    // Node id leased from Redis, -1 when ids.node-id is configured
+    private volatile long leasedNodeId = -1;
+
+    public IdGenerator(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (configuredNodeId >= 0) {
+            if (configuredNodeId > MAX_NODE_ID) {
+                throw new IllegalStateException("ids.node-id must be between 0 and " + MAX_NODE_ID + ": "
+                        + configuredNodeId);
+            }
+            nodeBits = configuredNodeId << SEQUENCE_BITS;
+            logger.info("Id generator using node id {}", configuredNodeId);
+            return;
+        }
+
+        long nodeId;
+        try {
+            nodeId = leaseFreeNodeId();
+        } catch (Exception e) {
+            throw new IllegalStateException("ids.node-id is not set and no node id could be leased from Redis", e);
+        }
+        if (nodeId < 0) {
+            throw new IllegalStateException("ids.node-id is not set and all " + (MAX_NODE_ID + 1)
+                    + " node ids are leased");
+        }
+        leasedNodeId = nodeId;
+        nodeBits = nodeId << SEQUENCE_BITS;
+        logger.info("Id generator using leased node id {}", nodeId);
+    }
+
+    /**
+     * Keep the node id lease alive; take a new id if it was lost
+     */
+    @Scheduled(fixedDelayString = "${ids.lease.renew-interval-ms:20000}")
+    public void renewLease() {
+        long nodeId = leasedNodeId;
+        if (nodeId < 0) {
+            return;
+        }
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, List.of(leaseKey(nodeId)), owner,
+                    String.valueOf(leaseTtl().toMillis()));
+            if (renewed != null && renewed == 1) {
+                return;
+            }
+
+            long next = tryLease(nodeId) ? nodeId : leaseFreeNodeId();
+            if (next < 0) {
+                logger.error("Lost the lease on node id {} and no other id is free", nodeId);
+                return;
+            }
+            if (next != nodeId) {
+                switchNodeId(next);
+            }
+            logger.warn("Lease on node id {} had expired; now using node id {}", nodeId, next);
+        } catch (Exception e) {
+            logger.warn("Failed to renew the lease on node id {}", nodeId, e);
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        long nodeId = leasedNodeId;
+        if (nodeId < 0) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey(nodeId)), owner);
+        } catch (Exception e) {
+            // It expires after the TTL anyway
+            logger.debug("Failed to release node id {}", nodeId, e);
+        }
+    }
+
+    /**
+     * Next id as a number
+     */
+    public long nextId() {
+        while (true) {
+            long previous = lastId.get();
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            long previousTime = previous >>> TIMESTAMP_SHIFT;
+
+            long next;
+            if (now > previousTime) {
+                next = (now << TIMESTAMP_SHIFT) | nodeBits;
+            } else if ((previous & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = previous + 1;
+            } else {
+                next = ((previousTime + 1) << TIMESTAMP_SHIFT) | nodeBits;
+            }
+
+            if (lastId.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Next id as a fixed-width, sortable string
+     */
+    public String next() {
+        return encode(nextId());
+    }
+
+    /**
+     * Fixed-width base32 form of an id
+     */
+    public static String encode(long id) {
+        char[] chars = new char[ENCODED_LENGTH];
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Lease the first free node id, starting from a random one so that nodes
+     * starting together rarely compete for the same key
+     *
+     * @return the leased id, or -1 if every id is taken
+     */
+    private long leaseFreeNodeId() {
+        long start = ThreadLocalRandom.current().nextLong(MAX_NODE_ID + 1);
+        for (long i = 0; i <= MAX_NODE_ID; i++) {
+            long nodeId = (start + i) & MAX_NODE_ID;
+            if (tryLease(nodeId)) {
+                return nodeId;
+            }
+        }
+        return -1;
+    }
+
+    private boolean tryLease(long nodeId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(leaseKey(nodeId), owner, leaseTtl()));
+    }
+
+    /**
+     * Move to another node id. The rest of the current millisecond is skipped,
+     * so no further id is issued under the old node id.
+     */
+    private void switchNodeId(long nodeId) {
+        long bits = nodeId << SEQUENCE_BITS;
+        nodeBits = bits;
+        leasedNodeId = nodeId;
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        lastId.updateAndGet(previous -> (Math.max(previous >>> TIMESTAMP_SHIFT, now) << TIMESTAMP_SHIFT)
+                | bits | SEQUENCE_MASK);
+    }
+
+    private String leaseKey(long nodeId) {
+        return leaseKeyPrefix + nodeId;
+    }
+
+    private Duration leaseTtl() {
+        return Duration.ofSeconds(leaseTtlSeconds);
+    }
+}
@@ -2,34 +2,106 @@ package com.gfd_sse.dummyoff2onredis.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
 @Service
 public class OTPService {
 
     private static final Logger logger = LoggerFactory.getLogger(OTPService.class);
 
-    private final RedisTemplate<String, Object> redisTemplate;
-
     // Redis key prefix for OTPs (must match dummy-off2on)
     private static final String OTP_PREFIX = "otp:";
     private static final String OTP_USER_PREFIX = "otp:user:";
+    // otp.mode=hmac: marks a user's code for one time step as used
+    private static final String OTP_USED_PREFIX = "otp:used:";
+    // otp.mode=hmac: failed attempts per user
+    private static final String OTP_ATTEMPTS_PREFIX = "otp:attempts:";
+
+    /**
+     * Validates and consumes an OTP in one step.
+     *
+     * Values are JSON strings (as written by dummy-off2on). The OTP is deleted
+     * only when it belongs to the expected user, together with the user's
+     * otp:user: entry if that still points at this OTP. Because this is a single
+     * script, two connects racing with the same OTP cannot both succeed.
+     * KEYS: otp key. ARGV: expected userId, otp.
+     * Returns the userId the OTP belongs to (deleted only on a match), or nil.
+     */
+    private static final RedisScript<String> CONSUME_SCRIPT = new DefaultRedisScript<>(
+            "local stored = redis.call('GET', KEYS[1]) "
+                    + "if not stored then return nil end "
+                    + "local userId = cjson.decode(stored) "
+                    + "if userId == ARGV[1] then "
+                    + "  redis.call('DEL', KEYS[1]) "
+                    + "  local userKey = '" + OTP_USER_PREFIX + "' .. userId "
+                    + "  local current = redis.call('GET', userKey) "
+                    + "  if current and cjson.decode(current) == ARGV[2] then redis.call('DEL', userKey) end "
+                    + "end "
+                    + "return userId",
+            String.class);
 
-    public OTPService(RedisTemplate<String, Object> redisTemplate) {
-        this.redisTemplate = redisTemplate;
+    /**
+     * Records an otp.mode=hmac attempt, after the code was checked in Java.
+     *
+     * A user at max attempts is refused outright. A matching code is accepted
+     * if it has not been used (consume also marks it used with SET NX);
+     * anything else counts as a failed attempt. The attempt counter expires
+     * one step after the first failure.
+     * KEYS: attempts key, used key (same {userId} slot). ARGV: matched (1/0),
+     * max attempts, attempts TTL ms, used TTL ms, consume (1/0).
+     * Returns 1 if accepted, 0 if refused, -1 if the user is locked out.
+     */
+    private static final RedisScript<Long> HMAC_ATTEMPT_SCRIPT = new DefaultRedisScript<>(
+            "if tonumber(redis.call('GET', KEYS[1]) or '0') >= tonumber(ARGV[2]) then return -1 end "
+                    + "if ARGV[1] == '1' then "
+                    + "  if ARGV[5] == '1' then "
+                    + "    if redis.call('SET', KEYS[2], '1', 'NX', 'PX', ARGV[4]) then return 1 end "
+                    + "  elseif redis.call('EXISTS', KEYS[2]) == 0 then "
+                    + "    return 1 "
+                    + "  end "
+                    + "end "
+                    + "if redis.call('INCR', KEYS[1]) == 1 then redis.call('PEXPIRE', KEYS[1], ARGV[3]) end "
+                    + "return 0",
+            Long.class);
+
+    @Value("${otp.hmac.max-attempts:5}")
+    private int maxAttempts;
+
+    private final OtpReadRouter otpReads;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final HmacOtpGenerator hmacOtpGenerator;
+
+    public OTPService(OtpReadRouter otpReads, StringRedisTemplate stringRedisTemplate,
+            HmacOtpGenerator hmacOtpGenerator) {
+        this.otpReads = otpReads;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.hmacOtpGenerator = hmacOtpGenerator;
     }
 
     /**
-     * Validate OTP from Redis (OTP was generated by dummy-off2on)
-     * Returns the userId if OTP is valid, null otherwise
+     * Validate OTP from Redis (OTP was generated by dummy-off2on), read from
+     * a replica when otp.read-from=replica
+     * Returns the userId if OTP is valid, null otherwise. Not available with
+     * otp.mode=hmac, where a code can only be checked against a userId.
      */
     public String validateAndGetUserId(String otp) {
+        if (hmacOtpGenerator.isEnabled()) {
+            logger.warn("OTP lookup without a userId is not possible with otp.mode=hmac");
+            return null;
+        }
         logger.info("Validating OTP from Redis: {}", otp);
 
         try {
             // Get userId associated with this OTP from Redis
-            String userId = (String) redisTemplate.opsForValue().get(OTP_PREFIX + otp);
+            String userId = (String) otpReads.get(OTP_PREFIX + otp);
 
             if (userId == null) {
                 logger.warn("OTP not found or expired in Redis: {}", otp);
@@ -49,6 +121,10 @@ public class OTPService {
      * Validate OTP and check if it matches expected userId
      */
     public boolean validateOTP(String otp, String expectedUserId) {
+        if (hmacOtpGenerator.isEnabled()) {
+            return expectedUserId != null && attemptHmacOTP(otp, expectedUserId, false);
+        }
+
         String actualUserId = validateAndGetUserId(otp);
 
         if (actualUserId == null) {
@@ -64,32 +140,98 @@ public class OTPService {
     }
 
     /**
-     * Invalidate OTP after successful SSE connection (one-time use)
-     * Deletes OTP from Redis
+     * Consume an OTP for an SSE connection (one-time use) in a single round trip.
+     * Returns the userId the OTP was issued to, or null if it is unknown or
+     * expired. The OTP is only deleted when that userId equals expectedUserId.
+     * With otp.mode=hmac the code is checked by computation and the only Redis
+     * call is the attempt script that marks it used; null then also covers
+     * codes of other users, codes already used and users with too many
+     * failed attempts.
      */
-    public void invalidateOTP(String otp) {
-        logger.info("Invalidating OTP in Redis: {}", otp);
+    public String consumeOTP(String otp, String expectedUserId) {
+        if (hmacOtpGenerator.isEnabled()) {
+            return consumeHmacOTP(otp, expectedUserId);
+        }
 
-        try {
-            // Get userId before deleting
-            String userId = (String) redisTemplate.opsForValue().get(OTP_PREFIX + otp);
+        logger.info("Consuming OTP from Redis: {}", otp);
+        String userId = stringRedisTemplate.execute(CONSUME_SCRIPT, List.of(OTP_PREFIX + otp),
+                expectedUserId, otp);
+        if (userId == null) {
+            logger.warn("OTP not found or expired in Redis: {}", otp);
+        }
+        return userId;
+    }
 
-            // Delete both mappings
-            redisTemplate.delete(OTP_PREFIX + otp);
-            if (userId != null) {
-                redisTemplate.delete(OTP_USER_PREFIX + userId);
-            }
+    /**
+     * Check if OTP exists in Redis. Always false with otp.mode=hmac, where
+     * codes are not stored.
+     */
+    public boolean otpExists(String otp) {
+        if (hmacOtpGenerator.isEnabled()) {
+            return false;
+        }
+        return otpReads.hasKey(OTP_PREFIX + otp);
+    }
 
-            logger.info("OTP invalidated successfully: {}", otp);
-        } catch (Exception e) {
-            logger.error("Error invalidating OTP in Redis", e);
+    private String consumeHmacOTP(String otp, String userId) {
+        return userId != null && attemptHmacOTP(otp, userId, true) ? userId : null;
+    }
+
+    /**
+     * Check a code against the user's accepted steps and record the attempt
+     * in one round trip; with consume the code is also marked used
+     */
+    private boolean attemptHmacOTP(String otp, String userId, boolean consume) {
+        long step = matchingStep(otp, userId);
+        long markedStep = step >= 0 ? step : hmacOtpGenerator.currentStep();
+        long usedTtl = Math.max(1, hmacOtpGenerator.expiresAt(markedStep) - System.currentTimeMillis());
+
+        Long result = stringRedisTemplate.execute(HMAC_ATTEMPT_SCRIPT,
+                List.of(attemptsKey(userId), usedKey(userId, markedStep)),
+                step >= 0 ? "1" : "0",
+                String.valueOf(maxAttempts),
+                String.valueOf(hmacOtpGenerator.getStepMillis()),
+                String.valueOf(usedTtl),
+                consume ? "1" : "0");
+        if (result != null && result == 1) {
+            return true;
+        }
+
+        if (result != null && result < 0) {
+            logger.warn("Too many OTP attempts for user {}", userId);
+        } else if (step < 0) {
+            logger.warn("OTP is not valid for user {}: {}", userId, otp);
+        } else {
+            logger.warn("OTP already used by user {}: {}", userId, otp);
         }
+        return false;
     }
 
     /**
-     * Check if OTP exists in Redis
+     * Time step whose code for userId equals otp, newest first among steps
+     * that are still accepted; -1 if none
      */
-    public boolean otpExists(String otp) {
-        return Boolean.TRUE.equals(redisTemplate.hasKey(OTP_PREFIX + otp));
+    private long matchingStep(String otp, String userId) {
+        if (otp == null || userId == null) {
+            return -1;
+        }
+        byte[] presented = otp.getBytes(StandardCharsets.UTF_8);
+        long now = System.currentTimeMillis();
+        for (long step = hmacOtpGenerator.currentStep(); hmacOtpGenerator.expiresAt(step) > now; step--) {
+            byte[] expected = hmacOtpGenerator.codeFor(userId, step).getBytes(StandardCharsets.UTF_8);
+            if (MessageDigest.isEqual(expected, presented)) {
+                return step;
+            }
+        }
+        return -1;
+    }
+
+    // Both keys share the {userId} hash tag, so the attempt script works on Redis Cluster
+    private static String usedKey(String userId, long step) {
+        return OTP_USED_PREFIX + "{" + userId + "}:" + step;
+    }
+
+    private static String attemptsKey(String userId) {
+        return OTP_ATTEMPTS_PREFIX + "{" + userId + "}";
     }
 }
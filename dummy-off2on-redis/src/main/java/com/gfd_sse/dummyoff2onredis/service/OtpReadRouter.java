@@ -0,0 +1,153 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import io.lettuce.core.ReadFrom;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Sends OTP lookups to Redis replicas when otp.read-from=replica.
+ *
+ * The replicas get their own Lettuce connection factory (primary plus
+ * otp.replica.nodes, ReadFrom.REPLICA_PREFERRED). It is deliberately not a
+ * bean, so pub/sub, presence and every write keep using the application's
+ * primary connection. A replica may lag behind the primary, so a value
+ * that is missing on the replica is looked up again on the primary: a
+ * freshly issued OTP is never rejected. Reads are counted as
+ * otp.reads{source=replica|primary}. Only the lookup endpoints use this;
+ * the connect handshake consumes OTPs with a script on the primary.
+ */
+@Component
+public class OtpReadRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OtpReadRouter.class);
+
+    @Value("${otp.read-from:primary}")
+    private String readFrom;
+
+    @Value("${otp.replica.nodes:}")
+    private String replicaNodes;
+
+    @Value("${spring.data.redis.host:localhost}")
+    private String primaryHost;
+
+    @Value("${spring.data.redis.port:6379}")
+    private int primaryPort;
+
+    @Value("${spring.data.redis.password:}")
+    private String password;
+
+    @Value("${spring.data.redis.timeout:60000}")
+    private Duration timeout;
+
+    private final RedisTemplate<String, Object> primary;
+    private final MeterRegistry meterRegistry;
+
+    private LettuceConnectionFactory replicaConnectionFactory;
+    private RedisTemplate<String, Object> replica;
+    private Counter replicaReads;
+    private Counter primaryReads;
+
+    public OtpReadRouter(RedisTemplate<String, Object> redisTemplate, MeterRegistry meterRegistry) {
+        this.primary = redisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        replicaReads = Counter.builder("otp.reads").tag("source", "replica")
+                .description("OTP lookups answered by a replica")
+                .register(meterRegistry);
+        primaryReads = Counter.builder("otp.reads").tag("source", "primary")
+                .description("OTP lookups answered by the primary, including replica misses")
+                .register(meterRegistry);
+
+        if (!"replica".equalsIgnoreCase(readFrom)) {
+            return;
+        }
+        if (replicaNodes.isBlank()) {
+            throw new IllegalStateException("otp.read-from=replica requires otp.replica.nodes");
+        }
+
+        RedisStaticMasterReplicaConfiguration servers =
+                new RedisStaticMasterReplicaConfiguration(primaryHost, primaryPort);
+        for (String node : replicaNodes.split(",")) {
+            String trimmed = node.trim();
+            int colon = trimmed.lastIndexOf(':');
+            servers.node(colon < 0 ? trimmed : trimmed.substring(0, colon),
+                    colon < 0 ? 6379 : Integer.parseInt(trimmed.substring(colon + 1)));
+        }
+        if (!password.isEmpty()) {
+            servers.setPassword(RedisPassword.of(password));
+        }
+
+        LettuceClientConfiguration client = LettuceClientConfiguration.builder()
+                .readFrom(ReadFrom.REPLICA_PREFERRED)
+                .commandTimeout(timeout)
+                .build();
+        replicaConnectionFactory = new LettuceConnectionFactory(servers, client);
+        replicaConnectionFactory.afterPropertiesSet();
+
+        // Same serializers as the primary template in RedisConfig
+        replica = new RedisTemplate<>();
+        replica.setConnectionFactory(replicaConnectionFactory);
+        replica.setKeySerializer(new StringRedisSerializer());
+        replica.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        replica.afterPropertiesSet();
+
+        logger.info("OTP lookups read from replicas {} (primary {}:{} on a miss)", replicaNodes,
+                primaryHost, primaryPort);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (replicaConnectionFactory != null) {
+            replicaConnectionFactory.destroy();
+        }
+    }
+
+    /**
+     * Value of a key, preferring a replica
+     */
+    public Object get(String key) {
+        return read(template -> template.opsForValue().get(key), null);
+    }
+
+    /**
+     * Whether a key exists, preferring a replica
+     */
+    public boolean hasKey(String key) {
+        return Boolean.TRUE.equals(read(template -> template.hasKey(key), Boolean.FALSE));
+    }
+
+    private <T> T read(Function<RedisTemplate<String, Object>, T> lookup, T missing) {
+        if (replica != null) {
+            try {
+                T value = lookup.apply(replica);
+                if (value != null && !value.equals(missing)) {
+                    replicaReads.increment();
+                    return value;
+                }
+            } catch (Exception e) {
+                logger.warn("OTP lookup on replica failed, using the primary", e);
+            }
+        }
+        primaryReads.increment();
+        return lookup.apply(primary);
+    }
+}
@@ -0,0 +1,21 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+/**
+ * What to do when a connection's outbound queue is full
+ */
+public enum OverflowPolicy {
+    /**
+     * Discard the oldest queued event to make room for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * Close the slow connection; the client reconnects and starts fresh
+     */
+    DISCONNECT,
+
+    /**
+     * Wait up to the configured offer timeout for room, then disconnect
+     */
+    BLOCK
+}
@@ -0,0 +1,246 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.event.SseSessionEvent;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redis presence directory: presence:{userId} -> podId of the SSE node
+ * holding the user's connection.
+ *
+ * Publishers look the owner up and publish straight to that pod's inbox
+ * channel instead of a channel every pod listens to. Entries expire after
+ * redis.presence.ttl-seconds unless refreshed, so a crashed pod's users
+ * fall back to the shared channels on their own. When a user connects here
+ * while the directory still points at another pod, that pod is told to
+ * evict its now duplicate connection.
+ */
+@Service
+public class PresenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceService.class);
+
+    // Take ownership and return the previous owner, in one round trip
+    private static final RedisScript<String> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local previous = redis.call('GET', KEYS[1]) "
+                    + "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2]) "
+                    + "return previous",
+            String.class);
+
+    // Only delete the entry if another pod has not claimed the user since
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('DEL', KEYS[1]) "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
+    @Value("${sse.pod-id}")
+    private String podId;
+
+    @Value("${redis.presence.enabled:true}")
+    private boolean enabled;
+
+    @Value("${redis.presence.key-prefix:presence:}")
+    private String keyPrefix;
+
+    @Value("${redis.presence.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${redis.presence.refresh-batch-size:500}")
+    private int refreshBatchSize;
+
+    @Value("${redis.channel.pod-inbox:pod-inbox}")
+    private String podInboxChannel;
+
+    @Value("${redis.channel.pod-evict:pod-evict}")
+    private String podEvictChannel;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer container;
+    private final MessageListener cartEventsListener;
+    private final SSEService sseService;
+    private final UserEventDispatcher dispatcher;
+
+    // Users connected to this pod, whose entries the refresh keeps alive
+    private final Set<String> localUsers = ConcurrentHashMap.newKeySet();
+
+    public PresenceService(StringRedisTemplate stringRedisTemplate,
+            RedisMessageListenerContainer container,
+            @Qualifier("cartEventsListener") MessageListener cartEventsListener,
+            SSEService sseService,
+            UserEventDispatcher dispatcher) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.container = container;
+        this.cartEventsListener = cartEventsListener;
+        this.sseService = sseService;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Listen on this pod's inbox (cart and checkout events for local users)
+     * and eviction channels
+     */
+    @PostConstruct
+    public void subscribe() {
+        if (!enabled) {
+            return;
+        }
+
+        container.addMessageListener(cartEventsListener, new ChannelTopic(podInboxChannel + ":" + podId));
+        // Evictions go through the user's dispatch stripe: off the subscription
+        // thread (handleEvict calls Redis) and ordered with the user's events
+        container.addMessageListener((message, pattern) -> {
+            String userId = new String(message.getBody(), StandardCharsets.UTF_8);
+            dispatcher.dispatch(userId, () -> handleEvict(userId));
+        }, new ChannelTopic(podEvictChannel + ":" + podId));
+        logger.info("Presence directory enabled for pod {}", podId);
+    }
+
+    @EventListener
+    public void onSessionEvent(SseSessionEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        switch (event.getType()) {
+            case CONNECTED -> claim(event.getUserId());
+            case DISCONNECTED -> release(event.getUserId());
+            default -> {
+                // Replay sessions outlive connections; presence follows the connection
+            }
+        }
+    }
+
+    /**
+     * Another pod took over this user. Close the local connection unless the
+     * user has since reconnected here.
+     */
+    public void handleEvict(String userId) {
+        if (!sseService.hasActiveConnection(userId)) {
+            return;
+        }
+
+        String owner = stringRedisTemplate.opsForValue().get(presenceKey(userId));
+        if (!podId.equals(owner)) {
+            logger.info("User {} connected to pod {}. Evicting duplicate connection.", userId, owner);
+            sseService.removeEmitter(userId);
+        }
+    }
+
+    public String getPodId() {
+        return podId;
+    }
+
+    /**
+     * Extend the TTL of every local user's entry, pipelined in batches.
+     * Entries that expired anyway (e.g. Redis restart) are re-created unless
+     * another pod owns the user by now.
+     */
+    @Scheduled(fixedDelayString = "${redis.presence.refresh-interval-ms:20000}")
+    public void refreshPresence() {
+        if (!enabled || localUsers.isEmpty()) {
+            return;
+        }
+
+        List<String> users = new ArrayList<>(localUsers);
+        int restored = 0;
+        try {
+            for (int from = 0; from < users.size(); from += refreshBatchSize) {
+                List<String> batch = users.subList(from, Math.min(from + refreshBatchSize, users.size()));
+                restored += refreshBatch(batch);
+            }
+            logger.debug("Refreshed presence for {} users ({} restored)", users.size(), restored);
+        } catch (Exception e) {
+            logger.warn("Failed to refresh presence entries", e);
+        }
+    }
+
+    private int refreshBatch(List<String> batch) {
+        List<Object> refreshed = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String userId : batch) {
+                connection.keyCommands().expire(keyBytes(userId), ttlSeconds);
+            }
+            return null;
+        });
+
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (!Boolean.TRUE.equals(refreshed.get(i))) {
+                missing.add(batch.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        byte[] value = podId.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String userId : missing) {
+                restore(connection, userId, value);
+            }
+            return null;
+        });
+        return missing.size();
+    }
+
+    private void restore(RedisConnection connection, String userId, byte[] value) {
+        connection.stringCommands().set(keyBytes(userId), value,
+                Expiration.seconds(ttlSeconds), RedisStringCommands.SetOption.ifAbsent());
+    }
+
+    private void claim(String userId) {
+        localUsers.add(userId);
+        try {
+            String previous = stringRedisTemplate.execute(CLAIM_SCRIPT, List.of(presenceKey(userId)),
+                    podId, String.valueOf(ttlSeconds));
+
+            if (previous != null && !previous.equals(podId)) {
+                stringRedisTemplate.convertAndSend(podEvictChannel + ":" + previous, userId);
+                logger.info("User {} moved from pod {} to pod {}. Eviction requested.", userId, previous, podId);
+            }
+        } catch (Exception e) {
+            // Publishers fall back to the shared channels while the entry is missing
+            logger.warn("Failed to register presence for user: {}", userId, e);
+        }
+    }
+
+    private void release(String userId) {
+        localUsers.remove(userId);
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(presenceKey(userId)), podId);
+        } catch (Exception e) {
+            logger.warn("Failed to remove presence for user: {}", userId, e);
+        }
+    }
+
+    private String presenceKey(String userId) {
+        return keyPrefix + userId;
+    }
+
+    private byte[] keyBytes(String userId) {
+        return presenceKey(userId).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,11 +1,22 @@
 package com.gfd_sse.dummyoff2onredis.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.gfd_sse.dummyoff2onredis.event.CartEvent;
+import com.gfd_sse.dummyoff2onredis.event.EventHeader;
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
 import org.springframework.stereotype.Service;
 
+/**
+ * Receives events from Redis and forwards them to SSE connections.
+ *
+ * Events are never deserialized here. The listener container calls the
+ * handle methods on the subscription thread in arrival order; they read
+ * only the routing fields from the raw bytes, skip users who are not served
+ * by this node, and hand the rest to the UserEventDispatcher. The original
+ * JSON bytes become the SSE data payload unchanged.
+ */
 @Service
 public class RedisSubscriberService {
 
@@ -13,99 +24,67 @@ public class RedisSubscriberService {
 
     private final SSEService sseService;
     private final ObjectMapper objectMapper;
+    private final UserEventDispatcher dispatcher;
 
-    public RedisSubscriberService(SSEService sseService, ObjectMapper objectMapper) {
+    public RedisSubscriberService(SSEService sseService, ObjectMapper objectMapper,
+            UserEventDispatcher dispatcher) {
         this.sseService = sseService;
         this.objectMapper = objectMapper;
+        this.dispatcher = dispatcher;
     }
 
     /**
      * Handle cart events from Redis
      */
-    public void handleCartEvent(String message) {
-        logger.info("Received cart event from Redis: {}", message);
-
-        try {
-            CartEvent event = objectMapper.readValue(message, CartEvent.class);
-
-            logger.debug("Parsed cart event: eventType={}, userId={}",
-                    event.getEventType(), event.getUserId());
-
-            // Send event to the specific user if they have an active SSE connection
-            if (event.getUserId() != null && !event.getUserId().isEmpty()) {
-                if (sseService.hasActiveConnection(event.getUserId())) {
-                    sseService.sendEventToUser(event.getUserId(), event);
-                    logger.info("Forwarded cart event to user: {}", event.getUserId());
-                } else {
-                    logger.debug("User {} has no active SSE connection. Event not forwarded.",
-                            event.getUserId());
-                }
-            } else {
-                logger.warn("Received cart event without userId. Cannot forward to SSE.");
-            }
-
-        } catch (Exception e) {
-            logger.error("Error processing cart event from Redis", e);
-        }
+    public void handleCartEvent(Message message) {
+        forwardEvent("cart", message.getBody());
     }
 
     /**
      * Handle checkout events from Redis
      */
-    public void handleCheckoutEvent(String message) {
-        logger.info("Received checkout event from Redis: {}", message);
-
-        try {
-            CartEvent event = objectMapper.readValue(message, CartEvent.class);
-
-            logger.debug("Parsed checkout event: eventType={}, userId={}",
-                    event.getEventType(), event.getUserId());
-
-            // Send event to the specific user if they have an active SSE connection
-            if (event.getUserId() != null && !event.getUserId().isEmpty()) {
-                if (sseService.hasActiveConnection(event.getUserId())) {
-                    sseService.sendEventToUser(event.getUserId(), event);
-                    logger.info("Forwarded checkout event to user: {}", event.getUserId());
-                } else {
-                    logger.debug("User {} has no active SSE connection. Event not forwarded.",
-                            event.getUserId());
-                }
-            } else {
-                logger.warn("Received checkout event without userId. Cannot forward to SSE.");
-            }
-
-        } catch (Exception e) {
-            logger.error("Error processing checkout event from Redis", e);
-        }
+    public void handleCheckoutEvent(Message message) {
+        forwardEvent("checkout", message.getBody());
     }
 
     /**
      * Handle product events from Redis
      */
-    public void handleProductEvent(String message) {
-        logger.info("Received product event from Redis: {}", message);
+    public void handleProductEvent(Message message) {
+        forwardEvent("product", message.getBody());
+    }
 
+    /**
+     * Route an event to its user if they have an active SSE connection
+     */
+    private void forwardEvent(String kind, byte[] body) {
+        EventHeader header;
         try {
-            CartEvent event = objectMapper.readValue(message, CartEvent.class);
+            header = EventHeader.read(objectMapper.getFactory(), body);
+        } catch (Exception e) {
+            logger.error("Error reading {} event from Redis", kind, e);
+            return;
+        }
 
-            logger.debug("Parsed product event: eventType={}, userId={}",
-                    event.getEventType(), event.getUserId());
+        String userId = header.getUserId();
+        logger.debug("Received {} event from Redis: eventType={}, eventId={}, userId={}",
+                kind, header.getEventType(), header.getEventId(), userId);
 
-            // Send event to the specific user if they have an active SSE connection
-            if (event.getUserId() != null && !event.getUserId().isEmpty()) {
-                if (sseService.hasActiveConnection(event.getUserId())) {
-                    sseService.sendEventToUser(event.getUserId(), event);
-                    logger.info("Forwarded product event to user: {}", event.getUserId());
-                } else {
-                    logger.debug("User {} has no active SSE connection. Event not forwarded.",
-                            event.getUserId());
-                }
-            } else {
-                logger.warn("Received product event without userId. Cannot forward to SSE.");
-            }
+        if (userId == null || userId.isEmpty()) {
+            logger.warn("Received {} event without userId. Cannot forward to SSE.", kind);
+            return;
+        }
 
-        } catch (Exception e) {
-            logger.error("Error processing product event from Redis", e);
+        // Send event to the specific user if they have an active SSE connection
+        if (!sseService.acceptsEventsFor(userId)) {
+            logger.debug("User {} has no active SSE connection. Event not forwarded.", userId);
+            return;
         }
+
+        dispatcher.dispatch(userId, () -> {
+            SseFrame frame = SseFrame.ofJson(header.getEventId(), header.getEventType(), body);
+            sseService.sendEventToUser(userId, frame);
+            logger.debug("Forwarded {} event to user: {}", kind, userId);
+        }, () -> sseService.resync(userId));
     }
 }
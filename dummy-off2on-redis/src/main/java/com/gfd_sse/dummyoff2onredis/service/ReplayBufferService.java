@@ -0,0 +1,147 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import com.gfd_sse.dummyoff2onredis.event.SseSessionEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user replay buffers for Last-Event-ID resume.
+ *
+ * A buffer is opened when a user connects to this node and kept for
+ * sse.replay.retention-seconds after the user disconnects, so events
+ * published during a short network drop can be replayed on reconnect.
+ * Total retained bytes are capped by sse.replay.memory-budget-bytes.
+ *
+ * The lifetime of a user's buffer is also the user's session on this node:
+ * SseSessionEvent STARTED/ENDED are published when a buffer is created and
+ * evicted, so routing (channel subscriptions) follows the same window.
+ */
+@Service
+public class ReplayBufferService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplayBufferService.class);
+
+    @Value("${sse.replay.max-events-per-user:64}")
+    private int maxEventsPerUser;
+
+    @Value("${sse.replay.max-bytes-per-user:262144}")
+    private long maxBytesPerUser;
+
+    @Value("${sse.replay.memory-budget-bytes:67108864}")
+    private long memoryBudgetBytes;
+
+    @Value("${sse.replay.retention-seconds:120}")
+    private long retentionSeconds;
+
+    private final Map<String, UserReplayBuffer> buffers = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ReplayBufferService(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Get or create the buffer for a user who is connecting
+     */
+    public UserReplayBuffer open(String userId) {
+        // Attach inside compute so a concurrent sweep cannot evict the buffer we hand out
+        boolean[] created = new boolean[1];
+        UserReplayBuffer opened = buffers.compute(userId, (k, buffer) -> {
+            UserReplayBuffer result = buffer;
+            if (result == null) {
+                result = new UserReplayBuffer(maxEventsPerUser, maxBytesPerUser);
+                created[0] = true;
+            }
+            result.markAttached();
+            return result;
+        });
+
+        if (created[0]) {
+            eventPublisher.publishEvent(new SseSessionEvent(userId, SseSessionEvent.Type.STARTED));
+        }
+        return opened;
+    }
+
+    /**
+     * Buffer for a user, or null if the user has not been connected here recently
+     */
+    public UserReplayBuffer find(String userId) {
+        return buffers.get(userId);
+    }
+
+    /**
+     * Start the retention countdown for a user who has no connection left
+     */
+    public void release(String userId) {
+        UserReplayBuffer buffer = buffers.get(userId);
+        if (buffer != null) {
+            buffer.markDetached(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Retain a frame in the user's buffer. Caller must hold the buffer's monitor.
+     * Frames without an id cannot be resumed from and are not retained.
+     */
+    public void record(UserReplayBuffer buffer, SseFrame frame) {
+        if (frame.getId() == null) {
+            return;
+        }
+
+        if (totalBytes.get() + frame.size() > memoryBudgetBytes) {
+            // Over budget: forget this user's history rather than keep a gapped one
+            totalBytes.addAndGet(-buffer.clear());
+            logger.debug("Replay memory budget exhausted. Frame {} not retained.", frame.getId());
+            return;
+        }
+
+        totalBytes.addAndGet(buffer.append(frame));
+    }
+
+    /**
+     * Forget a user's history, so that no earlier event id can be resumed
+     * from. Caller must hold the buffer's monitor.
+     */
+    public void discard(UserReplayBuffer buffer) {
+        totalBytes.addAndGet(-buffer.clear());
+    }
+
+    public long getRetainedBytes() {
+        return totalBytes.get();
+    }
+
+    public int getBufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * Drop buffers of users who have been disconnected longer than the retention window
+     */
+    @Scheduled(fixedDelayString = "${sse.replay.sweep-interval-ms:30000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        long retentionMillis = retentionSeconds * 1000L;
+
+        buffers.forEach((userId, buffer) -> {
+            if (buffer.isExpired(now, retentionMillis)
+                    && buffers.computeIfPresent(userId,
+                            (k, b) -> b == buffer && b.isExpired(now, retentionMillis) ? null : b) == null) {
+                synchronized (buffer) {
+                    totalBytes.addAndGet(-buffer.clear());
+                }
+                logger.trace("Evicted replay buffer for user: {}", userId);
+                eventPublisher.publishEvent(new SseSessionEvent(userId, SseSessionEvent.Type.ENDED));
+            }
+        });
+    }
+}
@@ -0,0 +1,347 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.dto.ResumeToken;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues and verifies the HMAC-signed resume tokens that let a GFD reconnect
+ * without a new OTP.
+ *
+ * A token is {@code keyId.userId.expiresAt.tokenId.signature} (userId and
+ * signature base64url, tokenId from the IdGenerator), signed with
+ * HMAC-SHA256; signature and expiry are checked in-process. Keys come
+ * from sse.resume.keys as {@code keyId:base64secret} pairs. The first key
+ * signs and all of them verify, so a key is rotated by putting the new one
+ * first and dropping the old one after sse.resume.ttl-minutes. All nodes
+ * must share the keys; without configured keys each node uses a random key
+ * and only accepts its own tokens until it restarts.
+ *
+ * A token is single-use: redeeming it for a connect revokes it, and the
+ * connect hands out a new one. Revoked token ids are kept in Redis, in the
+ * sorted set sse.resume.revocation.key scored by the token's expiry, so
+ * each stays there for the rest of the token's lifetime and survives node
+ * restarts. A revocation is also published on
+ * redis.channel.resume-revocations and every node, this one included, adds
+ * the id to its own Bloom filter; the filter is seeded from the set on
+ * startup. A token the filter knows is refused without a Redis call, any
+ * other one is checked against the set, which covers revocations a node
+ * missed while it was not subscribed. The filter is replaced every ttl
+ * (the previous one is still checked), since older tokens have expired
+ * anyway.
+ */
+@Service
+public class ResumeTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumeTokenService.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getUrlDecoder();
+
+    // KEYS: revoked set. ARGV: tokenId, token expiry (epoch ms), now (epoch ms), revocation channel.
+    // Drops revocations of tokens that have expired, adds this one and keeps the set until its last
+    // token expires. Returns 1 if the token was not revoked yet, else 0.
+    private static final RedisScript<Long> REVOKE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[3]) "
+                    + "local added = redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) "
+                    + "local last = redis.call('ZRANGE', KEYS[1], -1, -1, 'WITHSCORES') "
+                    + "redis.call('PEXPIREAT', KEYS[1], tonumber(last[2])) "
+                    + "redis.call('PUBLISH', ARGV[4], ARGV[1]) "
+                    + "return added",
+            Long.class);
+
+    @Value("${sse.resume.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sse.resume.ttl-minutes:15}")
+    private long ttlMinutes;
+
+    @Value("${sse.resume.keys:}")
+    private String configuredKeys;
+
+    @Value("${sse.resume.revocation.expected-revocations:10000}")
+    private int expectedRevocations;
+
+    @Value("${sse.resume.revocation.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${sse.resume.revocation.key:resume:revoked}")
+    private String revocationKey;
+
+    @Value("${redis.channel.resume-revocations:resume-revocations}")
+    private String revocationChannel;
+
+    private final IdGenerator idGenerator;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer container;
+
+    // keyId -> secret, signing key first
+    private Map<String, SecretKeySpec> keys;
+    private String signingKeyId;
+
+    private volatile RevocationFilter revoked;
+    private volatile RevocationFilter previouslyRevoked;
+    private volatile long revocationRotatedAt;
+
+    public ResumeTokenService(IdGenerator idGenerator, StringRedisTemplate stringRedisTemplate,
+            RedisMessageListenerContainer container) {
+        this.idGenerator = idGenerator;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.container = container;
+    }
+
+    @PostConstruct
+    public void init() {
+        keys = parseKeys(configuredKeys);
+        if (keys.isEmpty()) {
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            keys.put("local", new SecretKeySpec(secret, ALGORITHM));
+            if (enabled) {
+                logger.warn("sse.resume.keys not set; resume tokens are only valid on this node until it restarts");
+            }
+        }
+        signingKeyId = keys.keySet().iterator().next();
+        revoked = newFilter();
+        previouslyRevoked = newFilter();
+        revocationRotatedAt = System.currentTimeMillis();
+
+        // Revocations made on any node, including this one
+        container.addMessageListener((message, pattern) ->
+                addRevoked(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(revocationChannel));
+        if (enabled) {
+            loadRevocations();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * New token for a user who has just been authenticated, or null when
+     * resume tokens are disabled
+     */
+    public ResumeToken issue(String userId) {
+        if (!enabled) {
+            return null;
+        }
+        long expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ttlMinutes);
+        String payload = signingKeyId + '.'
+                + BASE64.encodeToString(userId.getBytes(StandardCharsets.UTF_8)) + '.'
+                + expiresAt + '.'
+                + idGenerator.next();
+        String signature = BASE64.encodeToString(sign(keys.get(signingKeyId), payload));
+        return new ResumeToken(payload + '.' + signature, expiresAt);
+    }
+
+    /**
+     * True if the token was issued to userId, is correctly signed by a
+     * current key, has not expired and has not been revoked
+     */
+    public boolean verify(String token, String userId) {
+        String[] parts = parse(token, userId);
+        return parts != null && !isRevoked(parts[3]);
+    }
+
+    /**
+     * Use the token for a connect: true if it verifies and this call is the
+     * one that revoked it, so a token opens one connection at most, on any
+     * node. Refuses the token if Redis cannot record the redemption.
+     */
+    public boolean redeem(String token, String userId) {
+        String[] parts = parse(token, userId);
+        if (parts == null || isRevokedLocally(parts[3])) {
+            return false;
+        }
+        try {
+            return revoke(parts[3], Long.parseLong(parts[2]));
+        } catch (Exception e) {
+            logger.warn("Could not redeem resume token {} for user {}", parts[3], userId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Refuse a token on every node from now on. Returns false if it is not a
+     * token this node can verify.
+     */
+    public boolean revoke(String token) {
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 5 || !keys.containsKey(parts[0])) {
+            return false;
+        }
+        long expiresAt;
+        try {
+            expiresAt = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        revoke(parts[3], expiresAt);
+        logger.info("Revoked resume token {}", parts[3]);
+        return true;
+    }
+
+    /**
+     * Record the revocation in Redis and tell every node. Returns true if
+     * the token had not been revoked before.
+     */
+    private boolean revoke(String tokenId, long expiresAt) {
+        // Locally first, so this node refuses the token even if Redis fails
+        addRevoked(tokenId);
+        Long added = stringRedisTemplate.execute(REVOKE_SCRIPT, List.of(revocationKey),
+                tokenId, String.valueOf(expiresAt), String.valueOf(System.currentTimeMillis()),
+                revocationChannel);
+        return added != null && added == 1;
+    }
+
+    /**
+     * Parts of a token that was issued to userId, is correctly signed by a
+     * current key and has not expired, or null
+     */
+    private String[] parse(String token, String userId) {
+        if (!enabled || token == null) {
+            return null;
+        }
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 5) {
+            return null;
+        }
+        SecretKeySpec key = keys.get(parts[0]);
+        if (key == null) {
+            return null;
+        }
+
+        try {
+            String payload = token.substring(0, token.lastIndexOf('.'));
+            byte[] signature = BASE64_DECODER.decode(parts[4]);
+            if (!MessageDigest.isEqual(sign(key, payload), signature)) {
+                return null;
+            }
+            if (Long.parseLong(parts[2]) < System.currentTimeMillis()) {
+                return null;
+            }
+            String tokenUserId = new String(BASE64_DECODER.decode(parts[1]), StandardCharsets.UTF_8);
+            return tokenUserId.equals(userId) ? parts : null;
+        } catch (IllegalArgumentException e) {
+            // Bad base64 or expiry
+            return null;
+        }
+    }
+
+    /**
+     * Seed the filter with the revocations of tokens that have not expired
+     */
+    private void loadRevocations() {
+        try {
+            Set<String> tokenIds = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(revocationKey, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+            if (tokenIds != null) {
+                tokenIds.forEach(this::addRevoked);
+                logger.info("Loaded {} resume token revocations", tokenIds.size());
+            }
+        } catch (Exception e) {
+            // Tokens the filter does not know are still checked against Redis
+            logger.warn("Could not load resume token revocations", e);
+        }
+    }
+
+    private void addRevoked(String tokenId) {
+        rotateRevocationsIfDue();
+        revoked.add(tokenId);
+    }
+
+    private boolean isRevoked(String tokenId) {
+        if (isRevokedLocally(tokenId)) {
+            return true;
+        }
+        try {
+            if (stringRedisTemplate.opsForZSet().score(revocationKey, tokenId) == null) {
+                return false;
+            }
+        } catch (Exception e) {
+            // Redis unavailable: the filter is all there is
+            logger.warn("Could not check resume token {} against the revocations in Redis", tokenId, e);
+            return false;
+        }
+        addRevoked(tokenId);
+        return true;
+    }
+
+    private boolean isRevokedLocally(String tokenId) {
+        rotateRevocationsIfDue();
+        return revoked.mightContain(tokenId) || previouslyRevoked.mightContain(tokenId);
+    }
+
+    private void rotateRevocationsIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - revocationRotatedAt < TimeUnit.MINUTES.toMillis(ttlMinutes)) {
+            return;
+        }
+        synchronized (this) {
+            if (now - revocationRotatedAt >= TimeUnit.MINUTES.toMillis(ttlMinutes)) {
+                previouslyRevoked = revoked;
+                revoked = newFilter();
+                revocationRotatedAt = now;
+            }
+        }
+    }
+
+    private RevocationFilter newFilter() {
+        return new RevocationFilter(expectedRevocations, falsePositiveRate);
+    }
+
+    private static byte[] sign(SecretKeySpec key, String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot compute " + ALGORITHM, e);
+        }
+    }
+
+    private static Map<String, SecretKeySpec> parseKeys(String spec) {
+        Map<String, SecretKeySpec> parsed = new LinkedHashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return parsed;
+        }
+        for (String entry : spec.split(",")) {
+            String trimmed = entry.trim();
+            int colon = trimmed.indexOf(':');
+            if (colon <= 0 || trimmed.indexOf('.') >= 0 && trimmed.indexOf('.') < colon) {
+                throw new IllegalStateException("sse.resume.keys entries must be keyId:base64secret");
+            }
+            byte[] secret = Base64.getDecoder().decode(trimmed.substring(colon + 1));
+            if (secret.length < 32) {
+                throw new IllegalStateException("sse.resume.keys secret for " + trimmed.substring(0, colon)
+                        + " must be at least 256 bits");
+            }
+            parsed.put(trimmed.substring(0, colon), new SecretKeySpec(secret, ALGORITHM));
+        }
+        return parsed;
+    }
+}
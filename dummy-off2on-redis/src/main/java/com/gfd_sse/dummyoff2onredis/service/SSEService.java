@@ -1,44 +1,84 @@
 package com.gfd_sse.dummyoff2onredis.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gfd_sse.dummyoff2onredis.dto.ResumeToken;
 import com.gfd_sse.dummyoff2onredis.event.CartEvent;
 import com.gfd_sse.dummyoff2onredis.event.EventType;
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import com.gfd_sse.dummyoff2onredis.event.SseSessionEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class SSEService {
 
     private static final Logger logger = LoggerFactory.getLogger(SSEService.class);
 
+    private static final SseFrame RESYNC_FRAME = SseFrame.of(null, EventType.RESYNC.name(),
+            "{\"eventType\":\"RESYNC\",\"message\":\"Missed events are no longer available. Please reload the cart.\"}");
+
     @Value("${sse.timeout.minutes}")
     private int sseTimeoutMinutes;
 
-    @Value("${sse.keepalive.interval.seconds}")
-    private int keepAliveIntervalSeconds;
+    @Value("${sse.queue.capacity:256}")
+    private int queueCapacity;
+
+    @Value("${sse.queue.overflow-policy:DROP_OLDEST}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${sse.queue.offer-timeout-ms:50}")
+    private long offerTimeoutMillis;
+
+    @Value("${sse.reactive.sink-buffer:32}")
+    private int reactiveSinkBuffer;
+
+    @Value("${sse.broadcast.parallelism-threshold:1000}")
+    private long broadcastParallelismThreshold;
 
     private final ObjectMapper objectMapper;
+    private final ExecutorService writerExecutor;
+    private final ReplayBufferService replayBufferService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final HeartbeatWheel heartbeatWheel;
+    private final SseFrame connectionEstablishedFrame;
 
-    // Store SSE emitters by userId
-    private final Map<String, SseEmitter> emitters = new ConcurrentHashMap<>();
+    // Store SSE connections by userId
+    private final ConcurrentHashMap<String, SseConnection> connections = new ConcurrentHashMap<>();
 
-    public SSEService(ObjectMapper objectMapper) {
+    public SSEService(ObjectMapper objectMapper,
+            @Qualifier("sseWriterExecutor") ExecutorService writerExecutor,
+            ReplayBufferService replayBufferService,
+            ApplicationEventPublisher eventPublisher,
+            HeartbeatWheel heartbeatWheel) {
         this.objectMapper = objectMapper;
+        this.writerExecutor = writerExecutor;
+        this.replayBufferService = replayBufferService;
+        this.eventPublisher = eventPublisher;
+        this.heartbeatWheel = heartbeatWheel;
+        this.connectionEstablishedFrame = createConnectionEstablishedFrame();
     }
 
     /**
-     * Create and register a new SSE emitter for a user
+     * Create and register a new SSE emitter for a user.
+     * If lastEventId is given, events the client missed are replayed first.
+     * A non-null resumeToken is sent right after the greeting.
      */
-    public SseEmitter createEmitter(String userId) {
+    public SseEmitter createEmitter(String userId, String lastEventId, ResumeToken resumeToken) {
         logger.info("Creating SSE emitter for user: {}", userId);
 
         // Remove existing emitter if present
@@ -47,137 +87,295 @@ public class SSEService {
         // Create new emitter with timeout
         long timeout = sseTimeoutMinutes * 60 * 1000L;
         SseEmitter emitter = new SseEmitter(timeout);
+        SseConnection connection = new EmitterSseConnection(userId, emitter, queueCapacity, overflowPolicy,
+                offerTimeoutMillis, writerExecutor, this::unregister);
 
         // Setup completion callback
         emitter.onCompletion(() -> {
             logger.info("SSE connection completed for user: {}", userId);
-            emitters.remove(userId);
+            connection.detach();
         });
 
         // Setup timeout callback
         emitter.onTimeout(() -> {
             logger.warn("SSE connection timeout for user: {}", userId);
-            emitters.remove(userId);
+            connection.detach();
         });
 
         // Setup error callback
         emitter.onError((error) -> {
             logger.error("SSE connection error for user: {}", userId, error);
-            emitters.remove(userId);
+            connection.detach();
         });
 
-        // Store emitter
-        emitters.put(userId, emitter);
-
-        // Send connection established event
-        sendConnectionEstablishedEvent(userId);
+        register(connection, lastEventId, resumeToken);
 
         logger.info("SSE emitter created and registered for user: {}", userId);
         return emitter;
     }
 
     /**
-     * Send event to a specific user
+     * Create a reactive SSE stream for a user (Netty transport).
+     * Uses the same registry, queues and routing as servlet emitters.
+     * Nothing is registered until the stream is subscribed, so a client that
+     * goes away before the response is written leaves no connection behind.
      */
-    public void sendEventToUser(String userId, CartEvent event) {
-        SseEmitter emitter = emitters.get(userId);
-        if (emitter == null) {
-            logger.debug("No SSE emitter found for user: {}", userId);
-            return;
-        }
+    public Flux<ServerSentEvent<String>> createFlux(String userId, String lastEventId, ResumeToken resumeToken) {
+        logger.info("Creating reactive SSE stream for user: {}", userId);
 
-        try {
-            String eventJson = objectMapper.writeValueAsString(event);
-            emitter.send(SseEmitter.event()
-                    .id(event.getEventId())
-                    .name(event.getEventType().name())
-                    .data(eventJson));
-
-            logger.info("Sent event {} to user {}", event.getEventType(), userId);
-        } catch (IOException e) {
-            logger.error("Error sending event to user: {}", userId, e);
+        return Flux.defer(() -> {
             removeEmitter(userId);
+
+            FluxSseConnection connection = new FluxSseConnection(userId, queueCapacity, reactiveSinkBuffer,
+                    overflowPolicy, offerTimeoutMillis, writerExecutor, this::unregister);
+            register(connection, lastEventId, resumeToken);
+            logger.info("Reactive SSE stream subscribed and registered for user: {}", userId);
+
+            return connection.asFlux()
+                    .take(Duration.ofMinutes(sseTimeoutMinutes))
+                    .doFinally(signal -> {
+                        logger.info("Reactive SSE stream ended for user: {} ({})", userId, signal);
+                        connection.detach();
+                    });
+        });
+    }
+
+    /**
+     * Queue event for delivery to a specific user.
+     * The actual socket write happens on the connection's writer, not on the
+     * calling thread. The event is also retained for replay if the user has
+     * been connected to this node recently.
+     */
+    public void sendEventToUser(String userId, CartEvent event) {
+        try {
+            sendEventToUser(userId, SseFrame.of(event, objectMapper));
         } catch (Exception e) {
             logger.error("Unexpected error sending event to user: {}", userId, e);
         }
     }
 
     /**
-     * Broadcast event to all connected users
+     * Queue an encoded event frame for a specific user, retaining it for
+     * replay like {@link #sendEventToUser(String, CartEvent)}
+     */
+    public void sendEventToUser(String userId, SseFrame frame) {
+        if (!acceptsEventsFor(userId)) {
+            logger.debug("No SSE connection found for user: {}", userId);
+            return;
+        }
+
+        if (deliver(userId, frame)) {
+            logger.debug("Queued event {} for user {}", frame.getName(), userId);
+        } else {
+            logger.debug("Event {} retained for replay only for user {}", frame.getName(), userId);
+        }
+    }
+
+    /**
+     * Tell a user that some of their events were lost on this node and the
+     * cart has to be reloaded. Their replay history is discarded as well, so
+     * resuming from an event id before the gap also ends in a resync.
+     */
+    public void resync(String userId) {
+        UserReplayBuffer buffer = replayBufferService.find(userId);
+        if (buffer == null) {
+            sendFrameToUser(userId, RESYNC_FRAME);
+            return;
+        }
+
+        synchronized (buffer) {
+            replayBufferService.discard(buffer);
+            sendFrameToUser(userId, RESYNC_FRAME);
+        }
+        logger.info("Sent resync to user {} after dropped events", userId);
+    }
+
+    /**
+     * Queue an already encoded frame for a specific user
+     */
+    public boolean sendFrameToUser(String userId, SseFrame frame) {
+        SseConnection connection = connections.get(userId);
+        return connection != null && connection.enqueue(frame);
+    }
+
+    /**
+     * Broadcast event to all connected users.
+     * The event is serialized once and the same encoded frame is queued for
+     * every connection; large fan-outs are split across the common pool.
+     * The frame has no SSE id: it is not kept for replay, so it must not
+     * become a client's Last-Event-ID.
+     *
+     * @return number of connections the frame was queued for
      */
-    public void broadcastEvent(CartEvent event) {
+    public int broadcastEvent(CartEvent event) throws JsonProcessingException {
         logger.info("Broadcasting event {} to {} connected users",
-                event.getEventType(), emitters.size());
+                event.getEventType(), connections.size());
 
-        emitters.forEach((userId, emitter) -> sendEventToUser(userId, event));
+        SseFrame frame = SseFrame.of(null, event.getEventType() != null ? event.getEventType().name() : null,
+                objectMapper.writeValueAsString(event));
+        LongAdder queued = new LongAdder();
+        connections.forEachValue(broadcastParallelismThreshold, connection -> {
+            if (connection.enqueue(frame)) {
+                queued.increment();
+            }
+        });
+        return queued.intValue();
     }
 
     /**
      * Remove emitter for a user
      */
     public void removeEmitter(String userId) {
-        SseEmitter emitter = emitters.remove(userId);
-        if (emitter != null) {
-            try {
-                emitter.complete();
-                logger.info("Removed and completed SSE emitter for user: {}", userId);
-            } catch (Exception e) {
-                logger.error("Error completing emitter for user: {}", userId, e);
-            }
+        // close() unregisters the connection through its onClose callback
+        SseConnection connection = connections.get(userId);
+        if (connection != null) {
+            connection.close();
+            logger.info("Removed and completed SSE emitter for user: {}", userId);
         }
     }
 
+    /**
+     * True if events for this user should be handled here: the user is
+     * connected, or recently was and may resume with Last-Event-ID
+     */
+    public boolean acceptsEventsFor(String userId) {
+        return connections.containsKey(userId) || replayBufferService.find(userId) != null;
+    }
+
     /**
      * Check if user has an active connection
      */
     public boolean hasActiveConnection(String userId) {
-        return emitters.containsKey(userId);
+        return connections.containsKey(userId);
     }
 
     /**
      * Get count of active connections
      */
     public int getActiveConnectionCount() {
-        return emitters.size();
+        return connections.size();
+    }
+
+    /**
+     * Total events dropped by overflow policy across active connections
+     */
+    public long getDroppedEventCount() {
+        return connections.values().stream()
+                .mapToLong(SseConnection::getDroppedEventCount)
+                .sum();
+    }
+
+    /**
+     * Store a new connection, greet it and replay anything it missed.
+     * Runs under the user's replay buffer monitor so no live event can slip
+     * in between the replayed ones or be delivered twice.
+     */
+    private void register(SseConnection connection, String lastEventId, ResumeToken resumeToken) {
+        String userId = connection.getUserId();
+        UserReplayBuffer buffer = replayBufferService.open(userId);
+
+        synchronized (buffer) {
+            connections.put(userId, connection);
+            heartbeatWheel.add(connection);
+
+            // Send connection established event
+            sendConnectionEstablishedEvent(userId);
+            if (resumeToken != null) {
+                connection.enqueue(createResumeTokenFrame(resumeToken));
+            }
+
+            if (lastEventId != null && !lastEventId.isEmpty()) {
+                replayMissedEvents(connection, buffer, lastEventId);
+            }
+        }
+
+        eventPublisher.publishEvent(new SseSessionEvent(userId, SseSessionEvent.Type.CONNECTED));
+    }
+
+    private void replayMissedEvents(SseConnection connection, UserReplayBuffer buffer, String lastEventId) {
+        List<SseFrame> missed = buffer.since(lastEventId);
+        if (missed == null) {
+            logger.info("Cannot resume user {} from event {}. Sending resync.", connection.getUserId(), lastEventId);
+            connection.enqueue(RESYNC_FRAME);
+            return;
+        }
+
+        logger.info("Replaying {} missed events to user {} after event {}",
+                missed.size(), connection.getUserId(), lastEventId);
+        missed.forEach(connection::enqueue);
+    }
+
+    /**
+     * Record a frame for replay and queue it for the live connection, if any
+     *
+     * @return true if the frame was queued for a live connection
+     */
+    private boolean deliver(String userId, SseFrame frame) {
+        UserReplayBuffer buffer = replayBufferService.find(userId);
+        if (buffer == null) {
+            return sendFrameToUser(userId, frame);
+        }
+
+        synchronized (buffer) {
+            replayBufferService.record(buffer, frame);
+            return sendFrameToUser(userId, frame);
+        }
+    }
+
+    /**
+     * Drop a closed connection from the registry, unless it was already
+     * replaced by a newer connection for the same user
+     */
+    private void unregister(SseConnection connection) {
+        heartbeatWheel.remove(connection);
+        if (connections.remove(connection.getUserId(), connection)) {
+            replayBufferService.release(connection.getUserId());
+            eventPublisher.publishEvent(
+                    new SseSessionEvent(connection.getUserId(), SseSessionEvent.Type.DISCONNECTED));
+        }
     }
 
     /**
      * Send connection established event
      */
     private void sendConnectionEstablishedEvent(String userId) {
+        sendFrameToUser(userId, connectionEstablishedFrame);
+    }
+
+    /**
+     * Frame handing the client its resume token. Like the greeting it has no
+     * id and is not kept for replay.
+     */
+    private SseFrame createResumeTokenFrame(ResumeToken resumeToken) {
         CartEvent event = CartEvent.builder()
-                .eventId(UUID.randomUUID().toString())
-                .eventType(EventType.CONNECTION_ESTABLISHED)
-                .userId(userId)
+                .eventType(EventType.RESUME_TOKEN)
                 .timestamp(System.currentTimeMillis())
-                .message("SSE connection established successfully")
+                .message("Reconnect with this resume token instead of an OTP until it expires")
+                .metadata(Map.of(
+                        "resumeToken", resumeToken.getToken(),
+                        "expiresAt", resumeToken.getExpiresAt()))
                 .build();
-
-        sendEventToUser(userId, event);
+        try {
+            return SseFrame.of(event, objectMapper);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode resume token frame", e);
+        }
     }
 
     /**
-     * Send heartbeat to all connected clients
-     * This keeps the connection alive and helps detect dead connections
+     * Pre-encode the connection established frame. It is identical for every
+     * connection and deliberately carries no id, so it never moves the
+     * client's Last-Event-ID.
      */
-    @Scheduled(fixedDelayString = "${sse.keepalive.interval.seconds}000")
-    public void sendHeartbeat() {
-        if (emitters.isEmpty()) {
-            return;
+    private SseFrame createConnectionEstablishedFrame() {
+        CartEvent event = CartEvent.builder()
+                .eventType(EventType.CONNECTION_ESTABLISHED)
+                .message("SSE connection established successfully")
+                .build();
+        try {
+            return SseFrame.of(event, objectMapper);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode connection established frame", e);
         }
-
-        logger.debug("Sending heartbeat to {} connected users", emitters.size());
-
-        emitters.forEach((userId, emitter) -> {
-            try {
-                emitter.send(SseEmitter.event()
-                        .name("heartbeat")
-                        .data("ping"));
-                logger.trace("Heartbeat sent to user: {}", userId);
-            } catch (IOException e) {
-                logger.warn("Failed to send heartbeat to user: {}. Removing connection.", userId);
-                removeEmitter(userId);
-            }
-        });
     }
 }
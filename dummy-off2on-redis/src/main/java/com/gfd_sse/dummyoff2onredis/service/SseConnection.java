@@ -0,0 +1,223 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A single SSE connection with its own bounded outbound queue.
+ *
+ * Producers (Redis listener, heartbeat) only enqueue; the queue is drained by
+ * one writer task at a time on the shared writer executor, so a slow client
+ * never blocks the thread that delivered the event and writes to the same
+ * connection are never interleaved. Subclasses provide the transport
+ * (servlet {@code SseEmitter} or reactive {@code Flux}).
+ */
+public abstract class SseConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseConnection.class);
+
+    protected final String userId;
+    private final BlockingQueue<SseFrame> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final long offerTimeoutMillis;
+    private final Executor writerExecutor;
+    private final Consumer<SseConnection> onClose;
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    // System.nanoTime() of the last completed write, and of the last sign of
+    // progress (a write, or a frame queued while idle)
+    private volatile long lastWriteNanos = System.nanoTime();
+    private volatile long lastProgressNanos = lastWriteNanos;
+
+    protected SseConnection(String userId, int queueCapacity, OverflowPolicy overflowPolicy,
+            long offerTimeoutMillis, Executor writerExecutor, Consumer<SseConnection> onClose) {
+        this.userId = userId;
+        // Linked queue allocates per queued frame, so idle connections stay small
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.writerExecutor = writerExecutor;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Queue a frame for delivery. Returns false if the frame was rejected
+     * (connection closed or overflow policy refused it).
+     */
+    public boolean enqueue(SseFrame frame) {
+        if (closed.get()) {
+            return false;
+        }
+
+        if (isIdle()) {
+            lastProgressNanos = System.nanoTime();
+        }
+
+        boolean accepted = queue.offer(frame) || handleOverflow(frame);
+        if (accepted) {
+            scheduleDrain();
+        }
+        return accepted;
+    }
+
+    /**
+     * True when nothing is queued or being written for this connection
+     */
+    public boolean isIdle() {
+        return queue.isEmpty() && !draining.get();
+    }
+
+    /**
+     * Close the connection and complete the underlying transport
+     */
+    public void close() {
+        if (terminate()) {
+            try {
+                completeTransport();
+            } catch (Exception e) {
+                logger.debug("Error completing SSE transport for user: {}", userId, e);
+            }
+        }
+    }
+
+    /**
+     * Mark the connection closed without touching the transport.
+     * Used from the transport's own completion/timeout/error callbacks.
+     */
+    public void detach() {
+        terminate();
+    }
+
+    /**
+     * True if a frame was written within the given window
+     */
+    public boolean wroteWithin(long now, long windowNanos) {
+        return now - lastWriteNanos < windowNanos;
+    }
+
+    /**
+     * True if frames are pending but nothing has been written for longer than
+     * the given timeout, i.e. the writer is stuck on an unresponsive client
+     */
+    public boolean isStalled(long now, long timeoutNanos) {
+        return !isIdle() && now - lastProgressNanos > timeoutNanos;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Write one encoded frame to the client. Only ever called from the
+     * connection's single active writer.
+     */
+    protected abstract void write(SseFrame frame) throws IOException;
+
+    /**
+     * Complete the underlying response stream
+     */
+    protected abstract void completeTransport();
+
+    private boolean terminate() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        queue.clear();
+        onClose.accept(this);
+        return true;
+    }
+
+    private boolean handleOverflow(SseFrame frame) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!queue.offer(frame)) {
+                    if (queue.poll() != null) {
+                        droppedEvents.incrementAndGet();
+                    }
+                }
+                logger.debug("Outbound queue full for user {}. Dropped oldest event.", userId);
+                return true;
+
+            case BLOCK:
+                try {
+                    if (queue.offer(frame, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                logger.warn("Outbound queue for user {} still full after {} ms. Closing connection.",
+                        userId, offerTimeoutMillis);
+                close();
+                return false;
+
+            case DISCONNECT:
+            default:
+                logger.warn("Outbound queue full for user {}. Closing slow connection.", userId);
+                close();
+                return false;
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                writerExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                logger.warn("Writer executor rejected drain for user {}. Closing connection.", userId);
+                close();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            SseFrame next;
+            while (!closed.get() && (next = queue.poll()) != null) {
+                write(next);
+                lastWriteNanos = System.nanoTime();
+                lastProgressNanos = lastWriteNanos;
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write to SSE connection for user: {}. Closing connection.", userId);
+            close();
+        } catch (Exception e) {
+            logger.error("Unexpected error writing to SSE connection for user: {}", userId, e);
+            close();
+        } finally {
+            draining.set(false);
+        }
+
+        // An event may have been queued between the last poll and clearing the flag
+        if (!closed.get() && !queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.dto.HandshakeResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+/**
+ * OTP handshake shared by the servlet and reactive SSE transports
+ */
+@Service
+public class SseHandshakeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseHandshakeService.class);
+
+    private final OTPService otpService;
+    private final ResumeTokenService resumeTokenService;
+    private final MeterRegistry meterRegistry;
+
+    public SseHandshakeService(OTPService otpService, ResumeTokenService resumeTokenService,
+            MeterRegistry meterRegistry) {
+        this.otpService = otpService;
+        this.resumeTokenService = resumeTokenService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Validate the connect request. A valid resume token is redeemed (it is
+     * single-use, like the OTP); otherwise the OTP is consumed. On success
+     * the caller may open the stream and hands the client the new resume
+     * token in the result.
+     * Timed as sse.handshake, tagged with the outcome.
+     */
+    public HandshakeResult authorize(String userId, String otp, String resumeToken) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            HandshakeResult result;
+            if (hasText(userId) && hasText(resumeToken) && resumeTokenService.redeem(resumeToken, userId)) {
+                logger.info("SSE connection for user {} resumed with a resume token", userId);
+                result = HandshakeResult.accepted(resumeTokenService.issue(userId));
+                outcome = "resumed";
+            } else {
+                result = checkOtp(userId, otp, hasText(resumeToken));
+                outcome = result.isAccepted() ? "accepted" : "rejected";
+            }
+            return result;
+        } finally {
+            sample.stop(Timer.builder("sse.handshake")
+                    .description("Time to authorize an SSE connect (OTP or resume token)")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private HandshakeResult checkOtp(String userId, String otp, boolean triedResumeToken) {
+        // Validate input
+        if (!hasText(userId)) {
+            logger.warn("SSE connection rejected: Missing userId");
+            return HandshakeResult.rejected(HttpStatus.BAD_REQUEST, "User ID is required");
+        }
+
+        if (triedResumeToken && !hasText(otp)) {
+            logger.warn("SSE connection rejected for user {}: Invalid or expired resume token", userId);
+            return HandshakeResult.rejected(HttpStatus.UNAUTHORIZED,
+                    "Resume token is invalid or expired. Please generate a new OTP from Front-liner app.");
+        }
+
+        if (otp == null || otp.trim().isEmpty()) {
+            logger.warn("SSE connection rejected for user {}: Missing OTP", userId);
+            return HandshakeResult.rejected(HttpStatus.BAD_REQUEST, "OTP is required");
+        }
+
+        // Validate and consume the OTP from Redis (generated by dummy-off2on) in one step
+        String validatedUserId = otpService.consumeOTP(otp, userId);
+        if (validatedUserId == null) {
+            logger.warn("SSE connection rejected: Invalid or expired OTP");
+            return HandshakeResult.rejected(HttpStatus.UNAUTHORIZED,
+                    "Invalid or expired OTP. Please generate a new OTP from Front-liner app.");
+        }
+
+        // Verify userId matches
+        if (!validatedUserId.equals(userId)) {
+            logger.warn("SSE connection rejected: UserId mismatch. Expected {}, got {}",
+                    validatedUserId, userId);
+            return HandshakeResult.rejected(HttpStatus.UNAUTHORIZED, "User ID does not match OTP.");
+        }
+
+        return HandshakeResult.accepted(resumeTokenService.issue(userId));
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+}
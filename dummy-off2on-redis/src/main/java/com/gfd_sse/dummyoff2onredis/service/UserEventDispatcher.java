@@ -0,0 +1,218 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Redis message handlers in parallel while keeping each user's events
+ * in order.
+ *
+ * Every userId hashes to one of sse.dispatch.stripes stripes. A stripe is a
+ * queue drained by at most one task at a time on the dispatch executor, so
+ * events for the same user are handled strictly in arrival order and events
+ * for users on different stripes are handled concurrently.
+ *
+ * Dispatching never blocks the caller (the Redis subscription thread). A
+ * handler that finds its stripe full is dropped; the caller's drop handler
+ * takes its place in the queue so the user can be resynced right where the
+ * gap is.
+ */
+@Service
+public class UserEventDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserEventDispatcher.class);
+
+    // Tasks run per drain before the stripe yields its thread to other stripes
+    private static final int MAX_TASKS_PER_DRAIN = 64;
+
+    @Value("${sse.dispatch.stripes:0}")
+    private int stripeCount;
+
+    @Value("${sse.dispatch.queue-capacity:1024}")
+    private int queueCapacity;
+
+    private final ExecutorService executor;
+    private final MeterRegistry meterRegistry;
+
+    private Stripe[] stripes;
+    private Timer lagTimer;
+    private Counter droppedCounter;
+
+    public UserEventDispatcher(@Qualifier("sseDispatchExecutor") ExecutorService executor,
+            MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        int count = stripeCount > 0 ? stripeCount : Runtime.getRuntime().availableProcessors() * 2;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(queueCapacity);
+        }
+
+        Gauge.builder("sse.dispatch.queue.depth", this, UserEventDispatcher::getQueueDepth)
+                .description("Redis events waiting to be dispatched, all stripes")
+                .register(meterRegistry);
+        Gauge.builder("sse.dispatch.queue.max-depth", this, UserEventDispatcher::getMaxStripeDepth)
+                .description("Depth of the most backed up stripe")
+                .register(meterRegistry);
+        lagTimer = Timer.builder("sse.dispatch.lag")
+                .description("Time from receiving a Redis event to handling it")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("sse.dispatch.dropped")
+                .description("Redis events dropped because their stripe stayed full")
+                .register(meterRegistry);
+
+        logger.info("User event dispatcher started with {} stripes", count);
+    }
+
+    /**
+     * Run a handler after all previously dispatched handlers for the same user.
+     * Drops the handler at once if the user's stripe is full.
+     *
+     * @return false if the handler was dropped
+     */
+    public boolean dispatch(String userId, Runnable handler) {
+        return dispatch(userId, handler, null);
+    }
+
+    /**
+     * Like {@link #dispatch(String, Runnable)}, but if the handler is dropped
+     * onDrop is queued in its place, past the stripe's capacity. Only one
+     * onDrop per user waits at a time; further drops before it runs share it.
+     *
+     * @return false if the handler was dropped
+     */
+    public boolean dispatch(String userId, Runnable handler, Runnable onDrop) {
+        Stripe stripe = stripes[Math.floorMod(userId != null ? userId.hashCode() : 0, stripes.length)];
+        if (stripe.offer(new Task(handler, System.nanoTime()))) {
+            return true;
+        }
+
+        droppedCounter.increment();
+        logger.warn("Dispatch queue for user {} is full. Event dropped.", userId);
+        if (onDrop != null) {
+            stripe.offerDropHandler(userId, onDrop);
+        }
+        return false;
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Stripe stripe : stripes) {
+            depth += stripe.size.get();
+        }
+        return depth;
+    }
+
+    public int getMaxStripeDepth() {
+        int max = 0;
+        for (Stripe stripe : stripes) {
+            max = Math.max(max, stripe.size.get());
+        }
+        return max;
+    }
+
+    private static final class Task {
+
+        private final Runnable handler;
+        private final long enqueuedNanos;
+
+        private Task(Runnable handler, long enqueuedNanos) {
+            this.handler = handler;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private final class Stripe {
+
+        private final Queue<Task> queue = new ConcurrentLinkedQueue<>();
+        // Queued tasks; the capacity check is against this, not the queue
+        private final AtomicInteger size = new AtomicInteger();
+        // Users with a drop handler waiting in the queue
+        private final Set<String> pendingDropHandlers = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private boolean offer(Task task) {
+            if (size.incrementAndGet() > capacity) {
+                size.decrementAndGet();
+                return false;
+            }
+            queue.add(task);
+            scheduleDrain();
+            return true;
+        }
+
+        private void offerDropHandler(String userId, Runnable onDrop) {
+            if (!pendingDropHandlers.add(userId)) {
+                return;
+            }
+            size.incrementAndGet();
+            queue.add(new Task(() -> {
+                pendingDropHandlers.remove(userId);
+                onDrop.run();
+            }, System.nanoTime()));
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; leave the queued events
+                    draining.set(false);
+                    logger.debug("Dispatch executor rejected drain task");
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Task task;
+                int handled = 0;
+                while (handled++ < MAX_TASKS_PER_DRAIN && (task = queue.poll()) != null) {
+                    size.decrementAndGet();
+                    lagTimer.record(System.nanoTime() - task.enqueuedNanos, TimeUnit.NANOSECONDS);
+                    try {
+                        task.handler.run();
+                    } catch (Exception e) {
+                        logger.error("Unexpected error handling dispatched event", e);
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+
+            // More events arrived, or this drain yielded after its batch
+            if (!queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bounded ring of the most recent frames sent to one user, used to replay
+ * what a reconnecting client missed.
+ *
+ * Not thread-safe on its own: callers synchronize on the buffer so that
+ * recording, delivering and replaying for one user happen in a single order.
+ */
+public class UserReplayBuffer {
+
+    private final ArrayDeque<SseFrame> frames = new ArrayDeque<>();
+    private final int maxEvents;
+    private final long maxBytes;
+    private long bytes;
+    private volatile long detachedAt;
+
+    UserReplayBuffer(int maxEvents, long maxBytes) {
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Append a frame, evicting the oldest frames past the per-user limits.
+     *
+     * @return change in retained bytes
+     */
+    long append(SseFrame frame) {
+        long before = bytes;
+        frames.addLast(frame);
+        bytes += frame.size();
+        while (frames.size() > maxEvents || (bytes > maxBytes && frames.size() > 1)) {
+            bytes -= frames.removeFirst().size();
+        }
+        return bytes - before;
+    }
+
+    /**
+     * Drop everything. Used when a frame could not be retained, so that an
+     * older Last-Event-ID can never be answered with a replay that has a hole.
+     *
+     * @return bytes released
+     */
+    long clear() {
+        long released = bytes;
+        frames.clear();
+        bytes = 0;
+        return released;
+    }
+
+    /**
+     * Frames after the given event id, or null if that id is no longer (or
+     * was never) in the buffer and the client has to resync.
+     */
+    List<SseFrame> since(String lastEventId) {
+        List<SseFrame> missed = new ArrayList<>();
+        Iterator<SseFrame> newestFirst = frames.descendingIterator();
+        while (newestFirst.hasNext()) {
+            SseFrame frame = newestFirst.next();
+            if (lastEventId.equals(frame.getId())) {
+                return missed.reversed();
+            }
+            missed.add(frame);
+        }
+        return null;
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    void markAttached() {
+        detachedAt = 0;
+    }
+
+    void markDetached(long now) {
+        detachedAt = now;
+    }
+
+    boolean isExpired(long now, long retentionMillis) {
+        long detached = detachedAt;
+        return detached != 0 && now - detached > retentionMillis;
+    }
+}
@@ -0,0 +1,86 @@
+package com.gfd_sse.dummyoff2onredis;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+import redis.embedded.core.RedisServerBuilder;
+
+/**
+ * Throwaway Redis server on a free port, for tests that run the Lua scripts
+ * against a real Redis. Nothing is persisted.
+ */
+public final class EmbeddedRedis implements AutoCloseable {
+
+  private final RedisServer server;
+  private final int port;
+  private final LettuceConnectionFactory connectionFactory;
+  private final StringRedisTemplate template;
+
+  private EmbeddedRedis(RedisServer server, int port) {
+    this.server = server;
+    this.port = port;
+    connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+    connectionFactory.afterPropertiesSet();
+    connectionFactory.start();
+    template = new StringRedisTemplate(connectionFactory);
+  }
+
+  public static EmbeddedRedis start() throws IOException {
+    return launch();
+  }
+
+  /**
+   * A replica of primary that also accepts writes, so a test can make it
+   * lag behind on purpose
+   */
+  public static EmbeddedRedis startReplicaOf(EmbeddedRedis primary) throws IOException {
+    return launch("replicaof 127.0.0.1 " + primary.port, "replica-read-only no");
+  }
+
+  private static EmbeddedRedis launch(String... settings) throws IOException {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    RedisServerBuilder builder = RedisServer.newRedisServer()
+        .port(port)
+        .bind("127.0.0.1")
+        .setting("save \"\"")
+        .setting("appendonly no");
+    for (String setting : settings) {
+      builder.setting(setting);
+    }
+    RedisServer server = builder.build();
+    server.start();
+    return new EmbeddedRedis(server, port);
+  }
+
+  public int port() {
+    return port;
+  }
+
+  public StringRedisTemplate template() {
+    return template;
+  }
+
+  public RedisConnectionFactory connectionFactory() {
+    return connectionFactory;
+  }
+
+  public void flush() {
+    template.execute(connection -> {
+      connection.serverCommands().flushAll();
+      return null;
+    }, true);
+  }
+
+  @Override
+  public void close() throws IOException {
+    connectionFactory.destroy();
+    server.stop();
+  }
+}
@@ -0,0 +1,67 @@
+package com.gfd_sse.dummyoff2onredis.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.gfd_sse.dummyoff2onredis.service.IdGenerator;
+import com.gfd_sse.dummyoff2onredis.service.ResumeTokenService;
+import com.gfd_sse.dummyoff2onredis.service.SSEService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+class SSEAdminControllerTests {
+
+  private final ResumeTokenService resumeTokenService = mock(ResumeTokenService.class);
+  private final MockMvc mvc = mvc();
+
+  @Test void resumeTokenIsRevokedFromTheRequestBody() throws Exception {
+    when(resumeTokenService.revoke("a.YWxpY2U.1.2.sig")).thenReturn(true);
+
+    mvc.perform(post("/api/sse/resume-token/revoke")
+            .header("X-Admin-Token", "secret")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"token\":\"a.YWxpY2U.1.2.sig\"}"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.success").value(true));
+    verify(resumeTokenService).revoke("a.YWxpY2U.1.2.sig");
+  }
+
+  @Test void tokenInTheQueryStringIsNotAccepted() throws Exception {
+    mvc.perform(post("/api/sse/resume-token/revoke")
+            .header("X-Admin-Token", "secret")
+            .param("token", "a.YWxpY2U.1.2.sig"))
+        .andExpect(status().is4xxClientError());
+    mvc.perform(post("/api/sse/resume-token/revoke")
+            .header("X-Admin-Token", "secret")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{}"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.message").value("Token is required"));
+    verify(resumeTokenService, never()).revoke(any());
+  }
+
+  @Test void revocationNeedsTheAdminToken() throws Exception {
+    mvc.perform(post("/api/sse/resume-token/revoke")
+            .header("X-Admin-Token", "wrong")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"token\":\"a.YWxpY2U.1.2.sig\"}"))
+        .andExpect(status().isUnauthorized());
+    verify(resumeTokenService, never()).revoke(any());
+  }
+
+  private MockMvc mvc() {
+    SSEAdminController controller = new SSEAdminController(mock(SSEService.class), mock(IdGenerator.class),
+        resumeTokenService);
+    ReflectionTestUtils.setField(controller, "adminToken", "secret");
+    return MockMvcBuilders.standaloneSetup(controller).build();
+  }
+}
@@ -0,0 +1,55 @@
+package com.gfd_sse.dummyoff2onredis.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class EventHeaderTests {
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  @Test void readsTheRoutingFields() throws Exception {
+    EventHeader header = read("{\"eventId\":\"e1\",\"eventType\":\"CART_ITEM_ADDED\",\"userId\":\"alice\",\"totalItems\":3}");
+
+    assertThat(header.getUserId()).isEqualTo("alice");
+    assertThat(header.getEventId()).isEqualTo("e1");
+    assertThat(header.getEventType()).isEqualTo("CART_ITEM_ADDED");
+  }
+
+  @Test void nestedFieldsWithTheSameNamesAreSkipped() throws Exception {
+    EventHeader header = read("{\"items\":[{\"userId\":\"mallory\",\"eventId\":\"x\"}],"
+        + "\"meta\":{\"eventType\":\"FAKE\"},\"userId\":\"alice\"}");
+
+    assertThat(header.getUserId()).isEqualTo("alice");
+    assertThat(header.getEventId()).isNull();
+    assertThat(header.getEventType()).isNull();
+  }
+
+  @Test void stopsOnceAllFieldsAreSeen() throws Exception {
+    // Anything after the routing fields is never tokenized, malformed or not
+    EventHeader header = read("{\"userId\":\"alice\",\"eventId\":\"e1\",\"eventType\":\"CART_UPDATED\",\"rest\":[}");
+
+    assertThat(header.getUserId()).isEqualTo("alice");
+    assertThat(header.getEventType()).isEqualTo("CART_UPDATED");
+  }
+
+  @Test void nonStringValuesAreIgnored() throws Exception {
+    EventHeader header = read("{\"userId\":42,\"eventId\":null,\"eventType\":\"CART_UPDATED\"}");
+
+    assertThat(header.getUserId()).isNull();
+    assertThat(header.getEventId()).isNull();
+  }
+
+  @Test void payloadMustBeAnObject() {
+    assertThatThrownBy(() -> read("[\"alice\"]")).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> read("")).isInstanceOf(IOException.class);
+  }
+
+  private EventHeader read(String json) throws IOException {
+    return EventHeader.read(jsonFactory, json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,101 @@
+package com.gfd_sse.dummyoff2onredis.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SseFrameTests {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test void encodesIdEventAndData() {
+    SseFrame frame = SseFrame.of("e1", "CART_UPDATED", "{\"a\":1}");
+
+    assertThat(text(frame)).isEqualTo("id:e1\nevent:CART_UPDATED\ndata:{\"a\":1}\n\n");
+    assertThat(frame.getId()).isEqualTo("e1");
+    assertThat(frame.getName()).isEqualTo("CART_UPDATED");
+    assertThat(frame.getData()).isEqualTo("{\"a\":1}");
+    assertThat(frame.size()).isEqualTo(frame.getBytes().length);
+  }
+
+  @Test void idAndNameAreOptional() {
+    assertThat(text(SseFrame.of(null, "heartbeat", "ping"))).isEqualTo("event:heartbeat\ndata:ping\n\n");
+    assertThat(text(SseFrame.of(null, null, "ping"))).isEqualTo("data:ping\n\n");
+  }
+
+  @Test void multiLineDataGetsOneDataFieldPerLine() {
+    SseFrame frame = SseFrame.of("e1", null, "first\nsecond\n");
+
+    assertThat(text(frame)).isEqualTo("id:e1\ndata:first\ndata:second\ndata:\n\n");
+    assertThat(frame.getData()).isEqualTo("first\nsecond\n");
+  }
+
+  @Test void sizeCountsUtf8Bytes() {
+    SseFrame frame = SseFrame.of(null, null, "café");
+
+    assertThat(frame.size()).isEqualTo("data:café\n\n".getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  @Test void cartEventIsSerializedOnceWithItsIdAndType() throws Exception {
+    CartEvent event = CartEvent.builder()
+        .eventId("e42")
+        .eventType(EventType.CART_ITEM_ADDED)
+        .userId("alice")
+        .totalItems(3)
+        .build();
+
+    SseFrame frame = SseFrame.of(event, objectMapper);
+
+    assertThat(frame.getId()).isEqualTo("e42");
+    assertThat(frame.getName()).isEqualTo("CART_ITEM_ADDED");
+    assertThat(objectMapper.readValue(frame.getData(), CartEvent.class)).isEqualTo(event);
+    assertThat(frame.getData()).isSameAs(frame.getData());
+  }
+
+  @Test void rawJsonIsEncodedExactlyLikeAStringPayload() {
+    String json = "{\"eventId\":\"e1\",\"message\":\"café\"}";
+
+    SseFrame raw = SseFrame.ofJson("e1", "CART_UPDATED", json.getBytes(StandardCharsets.UTF_8));
+
+    assertThat(raw.getBytes()).isEqualTo(SseFrame.of("e1", "CART_UPDATED", json).getBytes());
+    assertThat(raw.getData()).isEqualTo(json);
+    assertThat(raw.getData()).as("decoded once").isSameAs(raw.getData());
+    assertThat(text(SseFrame.ofJson(null, null, "{}".getBytes(StandardCharsets.UTF_8)))).isEqualTo("data:{}\n\n");
+  }
+
+  @Test void rawJsonWithLineBreaksIsSplitIntoDataLines() {
+    String json = "{\n  \"a\": 1\n}";
+
+    SseFrame raw = SseFrame.ofJson("e1", null, json.getBytes(StandardCharsets.UTF_8));
+
+    assertThat(text(raw)).isEqualTo("id:e1\ndata:{\ndata:  \"a\": 1\ndata:}\n\n");
+    assertThat(raw.getData()).isEqualTo(json);
+  }
+
+  @Test void carriageReturnsInDataStartNewDataLines() {
+    SseFrame frame = SseFrame.of(null, null, "a\rid:forged\r\nb");
+
+    assertThat(text(frame)).isEqualTo("data:a\ndata:id:forged\ndata:b\n\n");
+    assertThat(text(SseFrame.ofJson(null, null, "{\"a\":\r1}".getBytes(StandardCharsets.UTF_8))))
+        .isEqualTo("data:{\"a\":\ndata:1}\n\n");
+  }
+
+  @Test void lineBreaksInIdOrNameAreRejected() {
+    byte[] json = "{}".getBytes(StandardCharsets.UTF_8);
+
+    for (String forged : List.of("e1\ndata:{}", "e1\r", "\r\nevent:X")) {
+      assertThatThrownBy(() -> SseFrame.of(forged, null, "{}")).isInstanceOf(IllegalArgumentException.class);
+      assertThatThrownBy(() -> SseFrame.of(null, forged, "{}")).isInstanceOf(IllegalArgumentException.class);
+      assertThatThrownBy(() -> SseFrame.ofJson(forged, null, json)).isInstanceOf(IllegalArgumentException.class);
+      assertThatThrownBy(() -> SseFrame.ofJson(null, forged, json)).isInstanceOf(IllegalArgumentException.class);
+    }
+  }
+
+  private static String text(SseFrame frame) {
+    return new String(frame.getBytes(), StandardCharsets.UTF_8);
+  }
+}
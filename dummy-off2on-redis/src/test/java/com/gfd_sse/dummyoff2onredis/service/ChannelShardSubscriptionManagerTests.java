@@ -0,0 +1,156 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import com.gfd_sse.dummyoff2onredis.EmbeddedRedis;
+import com.gfd_sse.dummyoff2onredis.config.ChannelShards;
+import com.gfd_sse.dummyoff2onredis.event.SseSessionEvent;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ChannelShardSubscriptionManagerTests {
+
+  private static final int SHARDS = 8;
+  private static final RedisScript<Long> NUMSUB =
+      RedisScript.of("return redis.call('PUBSUB', 'NUMSUB', KEYS[1])[2]", Long.class);
+
+  private static EmbeddedRedis redis;
+
+  private final List<String> cartChannels = new CopyOnWriteArrayList<>();
+  private final List<String> checkoutChannels = new CopyOnWriteArrayList<>();
+  private RedisMessageListenerContainer container;
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void startContainer() {
+    container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redis.connectionFactory());
+    container.afterPropertiesSet();
+    container.start();
+  }
+
+  @AfterEach void stopContainer() throws Exception {
+    container.destroy();
+  }
+
+  @Test void firstSessionSubscribesOnlyItsShard() {
+    ChannelShardSubscriptionManager manager = manager(SHARDS);
+    int shard = ChannelShards.shardOf("alice", SHARDS);
+
+    manager.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.STARTED));
+
+    await().until(() -> subscribers("cart-events", shard) == 1);
+    assertThat(subscribers("checkout-events", shard)).isEqualTo(1);
+    assertThat(subscribers("cart-events", (shard + 1) % SHARDS)).isZero();
+    assertThat(manager.getSubscribedShardCount()).isEqualTo(1);
+
+    publish("cart-events", shard);
+    publish("checkout-events", shard);
+    await().until(() -> cartChannels.size() == 1 && checkoutChannels.size() == 1);
+    assertThat(cartChannels).containsExactly("cart-events:" + shard);
+    assertThat(checkoutChannels).containsExactly("checkout-events:" + shard);
+  }
+
+  @Test void shardStaysSubscribedUntilItsLastSessionEnds() {
+    ChannelShardSubscriptionManager manager = manager(SHARDS);
+    String alice = "alice";
+    String neighbour = sameShardAs(alice);
+    int shard = ChannelShards.shardOf(alice, SHARDS);
+
+    manager.onSessionEvent(new SseSessionEvent(alice, SseSessionEvent.Type.STARTED));
+    manager.onSessionEvent(new SseSessionEvent(neighbour, SseSessionEvent.Type.STARTED));
+    await().until(() -> subscribers("cart-events", shard) == 1);
+
+    manager.onSessionEvent(new SseSessionEvent(alice, SseSessionEvent.Type.DISCONNECTED));
+    manager.onSessionEvent(new SseSessionEvent(alice, SseSessionEvent.Type.ENDED));
+    assertThat(manager.getSubscribedShardCount()).isEqualTo(1);
+    assertThat(subscribers("cart-events", shard)).isEqualTo(1);
+
+    manager.onSessionEvent(new SseSessionEvent(neighbour, SseSessionEvent.Type.ENDED));
+    assertThat(manager.getSubscribedShardCount()).isZero();
+    await().until(() -> subscribers("cart-events", shard) == 0);
+    assertThat(subscribers("checkout-events", shard)).isZero();
+
+    // A stray second ENDED must not drive the count negative
+    manager.onSessionEvent(new SseSessionEvent(neighbour, SseSessionEvent.Type.ENDED));
+    manager.onSessionEvent(new SseSessionEvent(alice, SseSessionEvent.Type.STARTED));
+    await().until(() -> subscribers("cart-events", shard) == 1);
+  }
+
+  @Test void connectionEventsDoNotSubscribe() {
+    ChannelShardSubscriptionManager manager = manager(SHARDS);
+
+    manager.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.CONNECTED));
+
+    assertThat(manager.getSubscribedShardCount()).isZero();
+  }
+
+  @Test void globalChannelModeLeavesSubscriptionsAlone() {
+    ChannelShardSubscriptionManager manager = manager(0);
+
+    manager.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.STARTED));
+
+    assertThat(manager.getSubscribedShardCount()).isZero();
+    assertThat(container.isListening()).isFalse();
+  }
+
+  @Test void shardOfIsStableAndInRange() {
+    for (int i = 0; i < 10_000; i++) {
+      String userId = "user-" + i;
+      assertThat(ChannelShards.shardOf(userId, SHARDS)).isBetween(0, SHARDS - 1)
+          .isEqualTo(ChannelShards.shardOf(new String(userId.toCharArray()), SHARDS));
+    }
+    assertThat(ChannelShards.channel("cart-events", 7)).isEqualTo("cart-events:7");
+  }
+
+  @Test void shardAssignmentIsPinned() {
+    // The publisher computes the same shards; both copies of ChannelShards pin these values
+    assertThat(ChannelShards.shardOf("bob", 16)).isEqualTo(5);
+    assertThat(ChannelShards.shardOf("carol", 16)).isEqualTo(1);
+    assertThat(ChannelShards.shardOf("dave", 16)).isEqualTo(12);
+  }
+
+  private ChannelShardSubscriptionManager manager(int shards) {
+    ChannelShardSubscriptionManager manager = new ChannelShardSubscriptionManager(container,
+        (message, pattern) -> cartChannels.add(new String(message.getChannel(), StandardCharsets.UTF_8)),
+        (message, pattern) -> checkoutChannels.add(new String(message.getChannel(), StandardCharsets.UTF_8)));
+    ReflectionTestUtils.setField(manager, "channelShards", shards);
+    ReflectionTestUtils.setField(manager, "cartEventsChannel", "cart-events");
+    ReflectionTestUtils.setField(manager, "checkoutEventsChannel", "checkout-events");
+    return manager;
+  }
+
+  private static String sameShardAs(String userId) {
+    int shard = ChannelShards.shardOf(userId, SHARDS);
+    for (int i = 0; ; i++) {
+      String candidate = "user-" + i;
+      if (ChannelShards.shardOf(candidate, SHARDS) == shard) {
+        return candidate;
+      }
+    }
+  }
+
+  private static long subscribers(String baseChannel, int shard) {
+    return redis.template().execute(NUMSUB, List.of(ChannelShards.channel(baseChannel, shard)));
+  }
+
+  private static void publish(String baseChannel, int shard) {
+    redis.template().convertAndSend(ChannelShards.channel(baseChannel, shard), "{}");
+  }
+}
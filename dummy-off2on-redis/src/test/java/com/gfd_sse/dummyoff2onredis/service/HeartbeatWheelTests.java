@@ -0,0 +1,145 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class HeartbeatWheelTests {
+
+  private static final int SLOTS = 4;
+
+  private final ExecutorService writers = Executors.newFixedThreadPool(2);
+  private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final AtomicInteger closeCallbacks = new AtomicInteger();
+
+  private Runnable tick;
+
+  @AfterEach void shutdown() {
+    writers.shutdownNow();
+  }
+
+  @Test void schedulesOneTickPerSlotEachInterval() {
+    start(60, 60);
+
+    verify(scheduler).scheduleAtFixedRate(any(Runnable.class), eq(TimeUnit.SECONDS.toNanos(15)),
+        eq(TimeUnit.SECONDS.toNanos(15)), eq(TimeUnit.NANOSECONDS));
+  }
+
+  @Test void idleConnectionGetsOneHeartbeatPerRotation() {
+    HeartbeatWheel wheel = start(0, 60);
+    RecordingSseConnection connection = connection();
+    wheel.add(connection);
+
+    rotate();
+    await().until(() -> connection.written.size() == 1);
+    assertThat(connection.writtenNames()).containsExactly("heartbeat");
+    assertThat(connection.writtenIds()).containsOnlyNulls();
+
+    await().until(connection::isIdle);
+    rotate();
+    await().until(() -> connection.written.size() == 2);
+    assertThat(meterRegistry.get("sse.heartbeat.sent").counter().count()).isEqualTo(2);
+  }
+
+  @Test void recentlyWrittenConnectionIsSkipped() {
+    HeartbeatWheel wheel = start(3600, 60);
+    RecordingSseConnection connection = connection();
+    wheel.add(connection);
+
+    rotate();
+
+    assertThat(connection.isIdle()).isTrue();
+    assertThat(connection.written).isEmpty();
+    assertThat(meterRegistry.get("sse.heartbeat.sent").counter().count()).isZero();
+  }
+
+  @Test void busyConnectionGetsNoHeartbeat() {
+    HeartbeatWheel wheel = start(0, 60);
+    RecordingSseConnection connection = connection();
+    wheel.add(connection);
+    connection.blockWrites();
+    connection.enqueue(SseFrame.of("e1", "CART_UPDATED", "{}"));
+    await().until(() -> connection.activeWriters.get() == 1);
+
+    rotate();
+    connection.unblockWrites();
+
+    await().until(connection::isIdle);
+    assertThat(connection.writtenNames()).containsExactly("CART_UPDATED");
+    assertThat(connection.isClosed()).isFalse();
+  }
+
+  @Test void stalledConnectionIsClosed() throws Exception {
+    HeartbeatWheel wheel = start(0, 0);
+    RecordingSseConnection connection = connection();
+    wheel.add(connection);
+    connection.blockWrites();
+    connection.enqueue(SseFrame.of("e1", "CART_UPDATED", "{}"));
+    await().until(() -> connection.activeWriters.get() == 1);
+    Thread.sleep(5);
+
+    rotate();
+
+    assertThat(connection.isClosed()).isTrue();
+    assertThat(closeCallbacks).hasValue(1);
+    assertThat(connection.transportCompletions).hasValue(1);
+    assertThat(meterRegistry.get("sse.connections.stalled").counter().count()).isEqualTo(1);
+    connection.unblockWrites();
+
+    // Closed connections are dropped from the wheel on the next visit
+    rotate();
+    assertThat(meterRegistry.get("sse.connections.stalled").counter().count()).isEqualTo(1);
+  }
+
+  @Test void removedConnectionIsNotVisited() {
+    HeartbeatWheel wheel = start(0, 60);
+    RecordingSseConnection connection = connection();
+    wheel.add(connection);
+    wheel.remove(connection);
+
+    rotate();
+
+    assertThat(connection.written).isEmpty();
+  }
+
+  private HeartbeatWheel start(int keepAliveIntervalSeconds, long stallTimeoutSeconds) {
+    HeartbeatWheel wheel = new HeartbeatWheel(scheduler, meterRegistry);
+    ReflectionTestUtils.setField(wheel, "keepAliveIntervalSeconds", keepAliveIntervalSeconds);
+    ReflectionTestUtils.setField(wheel, "slotCount", SLOTS);
+    ReflectionTestUtils.setField(wheel, "stallTimeoutSeconds", stallTimeoutSeconds);
+    wheel.start();
+
+    ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler).scheduleAtFixedRate(captor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+    tick = captor.getValue();
+    return wheel;
+  }
+
+  private void rotate() {
+    for (int i = 0; i < SLOTS; i++) {
+      tick.run();
+    }
+  }
+
+  private RecordingSseConnection connection() {
+    return new RecordingSseConnection("user", 10, OverflowPolicy.DROP_OLDEST, writers,
+        c -> closeCallbacks.incrementAndGet());
+  }
+}
@@ -0,0 +1,224 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.gfd_sse.dummyoff2onredis.EmbeddedRedis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OTPServiceTests {
+
+  private static EmbeddedRedis redis;
+  private static RedisTemplate<String, Object> jsonTemplate;
+
+  private StringRedisTemplate template;
+  private HmacOtpGenerator hmac;
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+    // Same serializers as RedisConfig
+    jsonTemplate = new RedisTemplate<>();
+    jsonTemplate.setConnectionFactory(redis.connectionFactory());
+    jsonTemplate.setKeySerializer(new StringRedisSerializer());
+    jsonTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+    jsonTemplate.afterPropertiesSet();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void setUp() {
+    redis.flush();
+    template = redis.template();
+  }
+
+  @Test void consumeScriptDeletesTheCodeAndTheUsersEntry() {
+    OTPService service = service("redis");
+    issue("123456", "alice");
+
+    assertThat(service.validateOTP("123456", "alice")).isTrue();
+    assertThat(service.consumeOTP("123456", "alice")).isEqualTo("alice");
+
+    assertThat(template.keys("otp:*")).isEmpty();
+    assertThat(service.consumeOTP("123456", "alice")).as("one time only").isNull();
+    assertThat(service.validateOTP("123456", "alice")).isFalse();
+  }
+
+  @Test void codeOfAnotherUserIsReportedButNotConsumed() {
+    OTPService service = service("redis");
+    issue("123456", "bob");
+
+    assertThat(service.consumeOTP("123456", "alice")).isEqualTo("bob");
+    assertThat(service.validateOTP("123456", "alice")).isFalse();
+
+    assertThat(service.otpExists("123456")).isTrue();
+    assertThat(service.consumeOTP("123456", "bob")).isEqualTo("bob");
+  }
+
+  @Test void userEntryPointingAtANewerCodeIsKept() {
+    OTPService service = service("redis");
+    issue("111111", "alice");
+    template.opsForValue().set("otp:user:alice", "\"222222\"");
+
+    assertThat(service.consumeOTP("111111", "alice")).isEqualTo("alice");
+
+    assertThat(template.opsForValue().get("otp:user:alice")).isEqualTo("\"222222\"");
+  }
+
+  @Test void unknownCodeIsRefused() {
+    OTPService service = service("redis");
+
+    assertThat(service.consumeOTP("999999", "alice")).isNull();
+    assertThat(service.validateAndGetUserId("999999")).isNull();
+    assertThat(service.otpExists("999999")).isFalse();
+  }
+
+  @Test void racingConnectsWithOneCodeConsumeItOnce() throws Exception {
+    OTPService service = service("redis");
+    issue("123456", "alice");
+    AtomicInteger consumed = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        futures.add(pool.submit(() -> {
+          start.await();
+          if ("alice".equals(service.consumeOTP("123456", "alice"))) {
+            consumed.incrementAndGet();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    assertThat(consumed).hasValue(1);
+  }
+
+  @Test void hmacCodeIsAcceptedForItsStepAndConsumedOnce() {
+    OTPService service = service("hmac");
+    String code = hmac.codeFor("alice", hmac.currentStep());
+
+    assertThat(service.validateOTP(code, "alice")).isTrue();
+    assertThat(service.validateOTP(code, "alice")).as("validating does not use it up").isTrue();
+    assertThat(service.consumeOTP(code, "alice")).isEqualTo("alice");
+    assertThat(service.consumeOTP(code, "alice")).isNull();
+    assertThat(service.validateOTP(code, "alice")).isFalse();
+
+    String usedKey = "otp:used:{alice}:" + hmac.currentStep();
+    assertThat(template.getExpire(usedKey, TimeUnit.MILLISECONDS))
+        .isPositive()
+        .isLessThanOrEqualTo(hmac.expiresAt(hmac.currentStep()) - System.currentTimeMillis() + 1000);
+    assertThat(service.validateAndGetUserId(code)).isNull();
+    assertThat(service.otpExists(code)).isFalse();
+  }
+
+  @Test void hmacAcceptsOnlyTheCurrentAndPreviousStep() {
+    OTPService service = service("hmac");
+    long step = hmac.currentStep();
+
+    assertThat(service.consumeOTP(hmac.codeFor("alice", step - 1), "alice")).isEqualTo("alice");
+    assertThat(service.consumeOTP(hmac.codeFor("alice", step - 2), "alice")).isNull();
+    assertThat(service.consumeOTP(hmac.codeFor("bob", step), "alice")).as("bob's code").isNull();
+    assertThat(service.consumeOTP(hmac.codeFor("alice", step), null)).isNull();
+  }
+
+  @Test void hmacLocksOutAfterMaxFailedAttempts() {
+    OTPService service = service("hmac");
+    String code = hmac.codeFor("alice", hmac.currentStep());
+    String wrong = code.equals("000000") ? "000001" : "000000";
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(service.consumeOTP(wrong, "alice")).isNull();
+    }
+
+    assertThat(service.consumeOTP(code, "alice")).as("locked out").isNull();
+    assertThat(template.opsForValue().get("otp:attempts:{alice}")).isEqualTo("5");
+    assertThat(template.getExpire("otp:attempts:{alice}", TimeUnit.MILLISECONDS))
+        .isPositive()
+        .isLessThanOrEqualTo(hmac.getStepMillis());
+    assertThat(template.hasKey("otp:used:{alice}:" + hmac.currentStep())).as("lockout does not burn the code")
+        .isFalse();
+
+    template.delete("otp:attempts:{alice}");
+    assertThat(service.consumeOTP(code, "alice")).isEqualTo("alice");
+    assertThat(service.consumeOTP(hmac.codeFor("bob", hmac.currentStep()), "bob")).isEqualTo("bob");
+  }
+
+  @Test void racingConnectsWithOneHmacCodeConsumeItOnce() throws Exception {
+    OTPService service = service("hmac");
+    String code = hmac.codeFor("alice", hmac.currentStep());
+    AtomicInteger consumed = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        futures.add(pool.submit(() -> {
+          start.await();
+          if ("alice".equals(service.consumeOTP(code, "alice"))) {
+            consumed.incrementAndGet();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    assertThat(consumed).hasValue(1);
+  }
+
+  private void issue(String otp, String userId) {
+    // The format dummy-off2on's issue script writes
+    template.opsForValue().set("otp:" + otp, "\"" + userId + "\"");
+    template.opsForValue().set("otp:user:" + userId, "\"" + otp + "\"");
+  }
+
+  private OTPService service(String mode) {
+    hmac = new HmacOtpGenerator();
+    ReflectionTestUtils.setField(hmac, "mode", mode);
+    ReflectionTestUtils.setField(hmac, "secret", Base64.getEncoder().encodeToString(new byte[32]));
+    // Hour-long steps, so a test is unlikely to straddle a step boundary
+    ReflectionTestUtils.setField(hmac, "stepSeconds", 3600L);
+    ReflectionTestUtils.setField(hmac, "otpExpirationMinutes", 5);
+    ReflectionTestUtils.setField(hmac, "otpLength", 6);
+    hmac.init();
+
+    OtpReadRouter otpReads = new OtpReadRouter(jsonTemplate, new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(otpReads, "readFrom", "primary");
+    otpReads.init();
+
+    OTPService service = new OTPService(otpReads, template, hmac);
+    ReflectionTestUtils.setField(service, "maxAttempts", 5);
+    return service;
+  }
+}
@@ -0,0 +1,116 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import com.gfd_sse.dummyoff2onredis.EmbeddedRedis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OtpReadRouterTests {
+
+  private static EmbeddedRedis primary;
+  private static EmbeddedRedis replica;
+  private static RedisTemplate<String, Object> primaryTemplate;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private OtpReadRouter router;
+
+  @BeforeAll static void startRedis() throws Exception {
+    primary = EmbeddedRedis.start();
+    replica = EmbeddedRedis.startReplicaOf(primary);
+    // Same serializers as RedisConfig
+    primaryTemplate = new RedisTemplate<>();
+    primaryTemplate.setConnectionFactory(primary.connectionFactory());
+    primaryTemplate.setKeySerializer(new StringRedisSerializer());
+    primaryTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+    primaryTemplate.afterPropertiesSet();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    replica.close();
+    primary.close();
+  }
+
+  @BeforeEach void setUp() {
+    primary.flush();
+    await().until(() -> replica.template().keys("*").isEmpty());
+  }
+
+  @AfterEach void closeRouter() {
+    if (router != null) {
+      router.close();
+    }
+  }
+
+  @Test void primaryModeReadsThePrimaryOnly() {
+    router = router("primary");
+    primary.template().opsForValue().set("otp:123456", "\"alice\"");
+
+    assertThat(router.get("otp:123456")).isEqualTo("alice");
+    assertThat(router.hasKey("otp:123456")).isTrue();
+    assertThat(router.get("otp:000000")).isNull();
+    assertThat(reads("primary")).isEqualTo(3);
+    assertThat(reads("replica")).isZero();
+  }
+
+  @Test void replicaModeAnswersFromTheReplica() {
+    router = router("replica");
+    primary.template().opsForValue().set("otp:123456", "\"alice\"");
+    await().until(() -> replica.template().hasKey("otp:123456"));
+
+    assertThat(router.get("otp:123456")).isEqualTo("alice");
+    assertThat(router.hasKey("otp:123456")).isTrue();
+    assertThat(reads("replica")).isEqualTo(2);
+    assertThat(reads("primary")).isZero();
+  }
+
+  @Test void replicaMissFallsBackToThePrimary() {
+    router = router("replica");
+    primary.template().opsForValue().set("otp:123456", "\"alice\"");
+    await().until(() -> replica.template().hasKey("otp:123456"));
+    // A code the replica has not received yet
+    replica.template().delete("otp:123456");
+
+    assertThat(router.get("otp:123456")).isEqualTo("alice");
+    assertThat(router.hasKey("otp:123456")).isTrue();
+    assertThat(router.get("otp:000000")).isNull();
+    assertThat(router.hasKey("otp:000000")).isFalse();
+    assertThat(reads("primary")).isEqualTo(4);
+    assertThat(reads("replica")).isZero();
+  }
+
+  @Test void replicaModeNeedsReplicaNodes() {
+    OtpReadRouter misconfigured = new OtpReadRouter(primaryTemplate, meterRegistry);
+    ReflectionTestUtils.setField(misconfigured, "readFrom", "replica");
+    ReflectionTestUtils.setField(misconfigured, "replicaNodes", " ");
+
+    assertThatThrownBy(misconfigured::init).isInstanceOf(IllegalStateException.class);
+  }
+
+  private OtpReadRouter router(String readFrom) {
+    OtpReadRouter router = new OtpReadRouter(primaryTemplate, meterRegistry);
+    ReflectionTestUtils.setField(router, "readFrom", readFrom);
+    ReflectionTestUtils.setField(router, "replicaNodes", "127.0.0.1:" + replica.port());
+    ReflectionTestUtils.setField(router, "primaryHost", "127.0.0.1");
+    ReflectionTestUtils.setField(router, "primaryPort", primary.port());
+    ReflectionTestUtils.setField(router, "password", "");
+    ReflectionTestUtils.setField(router, "timeout", Duration.ofSeconds(5));
+    router.init();
+    return router;
+  }
+
+  private double reads(String source) {
+    return meterRegistry.get("otp.reads").tag("source", source).counter().count();
+  }
+}
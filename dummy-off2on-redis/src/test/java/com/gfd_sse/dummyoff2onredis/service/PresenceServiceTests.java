@@ -0,0 +1,171 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gfd_sse.dummyoff2onredis.EmbeddedRedis;
+import com.gfd_sse.dummyoff2onredis.event.SseSessionEvent;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class PresenceServiceTests {
+
+  private static final RedisScript<Long> NUMSUB =
+      RedisScript.of("return redis.call('PUBSUB', 'NUMSUB', KEYS[1])[2]", Long.class);
+
+  private static EmbeddedRedis redis;
+
+  private final List<String> inbox = new CopyOnWriteArrayList<>();
+  private StringRedisTemplate template;
+  private RedisMessageListenerContainer container;
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void setUp() {
+    redis.flush();
+    template = redis.template();
+    container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redis.connectionFactory());
+    container.afterPropertiesSet();
+    container.start();
+  }
+
+  @AfterEach void stopContainer() throws Exception {
+    container.destroy();
+  }
+
+  @Test void connectClaimsAndDisconnectReleases() {
+    PresenceService pod = pod("pod-a", mock(SSEService.class));
+
+    pod.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.CONNECTED));
+
+    assertThat(template.opsForValue().get("presence:alice")).isEqualTo("pod-a");
+    assertThat(template.getExpire("presence:alice", TimeUnit.SECONDS)).isBetween(1L, 60L);
+
+    pod.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.DISCONNECTED));
+    assertThat(template.hasKey("presence:alice")).isFalse();
+  }
+
+  @Test void releaseLeavesANewerOwnerAlone() {
+    PresenceService podA = pod("pod-a", mock(SSEService.class));
+    PresenceService podB = pod("pod-b", mock(SSEService.class));
+
+    podA.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.CONNECTED));
+    podB.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.CONNECTED));
+    podA.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.DISCONNECTED));
+
+    assertThat(template.opsForValue().get("presence:alice")).isEqualTo("pod-b");
+  }
+
+  @Test void takeoverEvictsTheConnectionOnThePreviousPod() {
+    SSEService sseOnA = mock(SSEService.class);
+    when(sseOnA.hasActiveConnection("alice")).thenReturn(true);
+    PresenceService podA = pod("pod-a", sseOnA);
+    PresenceService podB = pod("pod-b", mock(SSEService.class));
+    podA.subscribe();
+    awaitSubscribed("pod-evict:pod-a");
+
+    podA.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.CONNECTED));
+    podA.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.CONNECTED));
+    verify(sseOnA, never()).removeEmitter(anyString());
+
+    podB.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.CONNECTED));
+    verify(sseOnA, timeout(5000)).removeEmitter("alice");
+  }
+
+  @Test void evictionIsIgnoredOnceTheUserIsBack() {
+    SSEService sse = mock(SSEService.class);
+    when(sse.hasActiveConnection("alice")).thenReturn(true);
+    PresenceService pod = pod("pod-a", sse);
+
+    // The eviction arrives after alice reconnected here
+    pod.onSessionEvent(new SseSessionEvent("alice", SseSessionEvent.Type.CONNECTED));
+    pod.handleEvict("alice");
+    pod.handleEvict("bob");
+
+    verify(sse, never()).removeEmitter(anyString());
+  }
+
+  @Test void inboxDeliversToTheCartListener() {
+    PresenceService pod = pod("pod-a", mock(SSEService.class));
+    pod.subscribe();
+    awaitSubscribed("pod-inbox:pod-a");
+
+    template.convertAndSend("pod-inbox:pod-a", "{\"userId\":\"alice\"}");
+
+    await().until(() -> inbox.size() == 1);
+    assertThat(inbox).containsExactly("{\"userId\":\"alice\"}");
+  }
+
+  @Test void refreshExtendsLocalEntriesAndRestoresOnlyUnclaimedOnes() {
+    PresenceService pod = pod("pod-a", mock(SSEService.class));
+    for (String user : List.of("alice", "bob", "carol", "dave", "erin")) {
+      pod.onSessionEvent(new SseSessionEvent(user, SseSessionEvent.Type.CONNECTED));
+    }
+    template.expire("presence:alice", 5, TimeUnit.SECONDS);
+    // Lost, e.g. by a Redis restart
+    template.delete("presence:bob");
+    // Claimed by another pod whose eviction has not arrived yet
+    template.opsForValue().set("presence:carol", "pod-b");
+    template.opsForValue().set("presence:dave", "pod-b");
+
+    pod.refreshPresence();
+
+    assertThat(template.getExpire("presence:alice", TimeUnit.SECONDS)).isGreaterThan(5L);
+    assertThat(template.opsForValue().get("presence:bob")).isEqualTo("pod-a");
+    assertThat(template.getExpire("presence:bob", TimeUnit.SECONDS)).isPositive();
+    assertThat(template.opsForValue().get("presence:carol")).isEqualTo("pod-b");
+    assertThat(template.opsForValue().get("presence:dave")).isEqualTo("pod-b");
+    assertThat(template.opsForValue().get("presence:erin")).isEqualTo("pod-a");
+  }
+
+  private PresenceService pod(String podId, SSEService sseService) {
+    // Run dispatched work inline
+    UserEventDispatcher dispatcher = mock(UserEventDispatcher.class);
+    when(dispatcher.dispatch(anyString(), any(Runnable.class))).thenAnswer(invocation -> {
+      invocation.getArgument(1, Runnable.class).run();
+      return true;
+    });
+
+    PresenceService presence = new PresenceService(template, container,
+        (message, pattern) -> inbox.add(new String(message.getBody(), StandardCharsets.UTF_8)),
+        sseService, dispatcher);
+    ReflectionTestUtils.setField(presence, "podId", podId);
+    ReflectionTestUtils.setField(presence, "enabled", true);
+    ReflectionTestUtils.setField(presence, "keyPrefix", "presence:");
+    ReflectionTestUtils.setField(presence, "ttlSeconds", 60L);
+    // Small batches, so a refresh spans several pipelines
+    ReflectionTestUtils.setField(presence, "refreshBatchSize", 2);
+    ReflectionTestUtils.setField(presence, "podInboxChannel", "pod-inbox");
+    ReflectionTestUtils.setField(presence, "podEvictChannel", "pod-evict");
+    return presence;
+  }
+
+  private void awaitSubscribed(String channel) {
+    await().until(() -> Long.valueOf(1).equals(template.execute(NUMSUB, List.of(channel))));
+  }
+}
@@ -0,0 +1,75 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Connection that records what its writer writes. Writes can be held back
+ * with {@link #blockWrites()} and made to fail with {@link #failWrites()}.
+ */
+class RecordingSseConnection extends SseConnection {
+
+  final List<SseFrame> written = new CopyOnWriteArrayList<>();
+  final AtomicInteger activeWriters = new AtomicInteger();
+  final AtomicInteger maxActiveWriters = new AtomicInteger();
+  final AtomicInteger transportCompletions = new AtomicInteger();
+
+  private volatile CountDownLatch gate = new CountDownLatch(0);
+  private volatile boolean failing;
+
+  RecordingSseConnection(String userId, int queueCapacity, OverflowPolicy overflowPolicy,
+      Executor writerExecutor, Consumer<SseConnection> onClose) {
+    super(userId, queueCapacity, overflowPolicy, 50, writerExecutor, onClose);
+  }
+
+  void blockWrites() {
+    gate = new CountDownLatch(1);
+  }
+
+  void unblockWrites() {
+    gate.countDown();
+  }
+
+  void failWrites() {
+    failing = true;
+  }
+
+  List<String> writtenIds() {
+    return written.stream().map(SseFrame::getId).toList();
+  }
+
+  List<String> writtenNames() {
+    return written.stream().map(SseFrame::getName).toList();
+  }
+
+  @Override
+  protected void write(SseFrame frame) throws IOException {
+    maxActiveWriters.accumulateAndGet(activeWriters.incrementAndGet(), Math::max);
+    try {
+      if (!gate.await(10, TimeUnit.SECONDS)) {
+        throw new IOException("write held back for too long");
+      }
+      if (failing) {
+        throw new IOException("broken pipe");
+      }
+      written.add(frame);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } finally {
+      activeWriters.decrementAndGet();
+    }
+  }
+
+  @Override
+  protected void completeTransport() {
+    transportCompletions.incrementAndGet();
+  }
+}
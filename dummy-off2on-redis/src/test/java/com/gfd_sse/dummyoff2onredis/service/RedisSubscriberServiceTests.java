@@ -0,0 +1,79 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+
+class RedisSubscriberServiceTests {
+
+  private final SSEService sseService = mock(SSEService.class);
+  private final UserEventDispatcher dispatcher = mock(UserEventDispatcher.class);
+  private final RedisSubscriberService subscriber =
+      new RedisSubscriberService(sseService, new ObjectMapper(), dispatcher);
+
+  @Test void forwardsThePublishedBytesUnchanged() {
+    when(sseService.acceptsEventsFor("alice")).thenReturn(true);
+    String json = "{\"eventId\":\"e1\",\"eventType\":\"CART_ITEM_ADDED\",\"userId\":\"alice\","
+        + "\"items\":[{\"productId\":1,\"price\":24.990}]}";
+
+    subscriber.handleCartEvent(message(json));
+    runDispatchedHandler("alice");
+
+    ArgumentCaptor<SseFrame> frame = ArgumentCaptor.forClass(SseFrame.class);
+    verify(sseService).sendEventToUser(eq("alice"), frame.capture());
+    assertThat(frame.getValue().getId()).isEqualTo("e1");
+    assertThat(frame.getValue().getName()).isEqualTo("CART_ITEM_ADDED");
+    assertThat(frame.getValue().getData()).as("no re-serialization").isEqualTo(json);
+  }
+
+  @Test void usersNotServedHereAreSkippedBeforeDispatch() {
+    subscriber.handleCheckoutEvent(message("{\"eventId\":\"e1\",\"eventType\":\"CHECKOUT_COMPLETED\",\"userId\":\"bob\"}"));
+
+    verify(sseService).acceptsEventsFor("bob");
+    verify(dispatcher, never()).dispatch(anyString(), any(), any());
+  }
+
+  @Test void eventsWithoutUserOrUnreadableAreDropped() {
+    subscriber.handleProductEvent(message("{\"eventId\":\"e1\",\"eventType\":\"PRODUCT_VIEWED\"}"));
+    subscriber.handleProductEvent(message("{\"userId\":\"\"}"));
+    subscriber.handleCartEvent(message("not json"));
+
+    verify(sseService, never()).acceptsEventsFor(anyString());
+    verify(dispatcher, never()).dispatch(anyString(), any(), any());
+  }
+
+  @Test void aDroppedEventResyncsTheUser() {
+    when(sseService.acceptsEventsFor("alice")).thenReturn(true);
+
+    subscriber.handleCartEvent(message("{\"eventId\":\"e1\",\"eventType\":\"CART_UPDATED\",\"userId\":\"alice\"}"));
+
+    ArgumentCaptor<Runnable> onDrop = ArgumentCaptor.forClass(Runnable.class);
+    verify(dispatcher).dispatch(eq("alice"), any(), onDrop.capture());
+    onDrop.getValue().run();
+    verify(sseService).resync("alice");
+    verify(sseService, never()).sendEventToUser(anyString(), any(SseFrame.class));
+  }
+
+  private void runDispatchedHandler(String userId) {
+    ArgumentCaptor<Runnable> handler = ArgumentCaptor.forClass(Runnable.class);
+    verify(dispatcher).dispatch(eq(userId), handler.capture(), any());
+    handler.getValue().run();
+  }
+
+  private static Message message(String json) {
+    return new DefaultMessage("cart-events".getBytes(StandardCharsets.UTF_8), json.getBytes(StandardCharsets.UTF_8));
+  }
+}
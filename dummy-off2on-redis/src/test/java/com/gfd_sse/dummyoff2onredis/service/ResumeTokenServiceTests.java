@@ -0,0 +1,275 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gfd_sse.dummyoff2onredis.EmbeddedRedis;
+import com.gfd_sse.dummyoff2onredis.dto.ResumeToken;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ResumeTokenServiceTests {
+
+  private static final String KEY_A = "a:" + secret('a');
+  private static final String KEY_B = "b:" + secret('b');
+
+  private final AtomicLong ids = new AtomicLong(1000);
+  private final IdGenerator idGenerator = mock(IdGenerator.class);
+  private final RedisMessageListenerContainer container = mock(RedisMessageListenerContainer.class);
+
+  private static EmbeddedRedis redis;
+
+  ResumeTokenServiceTests() {
+    when(idGenerator.next()).thenAnswer(invocation -> String.valueOf(ids.incrementAndGet()));
+  }
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void flushRedis() {
+    redis.flush();
+  }
+
+  @Test void issuedTokenVerifiesOnlyForItsUser() {
+    ResumeTokenService service = service(KEY_A);
+    ResumeToken token = service.issue("alice");
+
+    assertThat(token.getExpiresAt()).isGreaterThan(System.currentTimeMillis());
+    assertThat(service.verify(token.getToken(), "alice")).isTrue();
+    assertThat(service.verify(token.getToken(), "bob")).isFalse();
+    assertThat(service.verify(null, "alice")).isFalse();
+  }
+
+  @Test void tamperedOrMalformedTokensAreRefused() {
+    ResumeTokenService service = service(KEY_A);
+    String token = service.issue("alice").getToken();
+    String[] parts = token.split("\\.");
+
+    String otherUser = Base64.getUrlEncoder().withoutPadding()
+        .encodeToString("bob".getBytes(StandardCharsets.UTF_8));
+    assertThat(service.verify(String.join(".", parts[0], otherUser, parts[2], parts[3], parts[4]), "bob"))
+        .isFalse();
+    assertThat(service.verify(String.join(".", parts[0], parts[1], "99999999999999", parts[3], parts[4]),
+        "alice")).as("extended expiry").isFalse();
+    assertThat(service.verify(String.join(".", "zz", parts[1], parts[2], parts[3], parts[4]), "alice"))
+        .as("unknown key").isFalse();
+    assertThat(service.verify(token + ".extra", "alice")).isFalse();
+    assertThat(service.verify(token.substring(0, token.length() - 2) + "!!", "alice")).isFalse();
+    assertThat(service.verify("not-a-token", "alice")).isFalse();
+  }
+
+  @Test void expiredTokenIsRefused() {
+    ResumeTokenService service = service(KEY_A);
+    ReflectionTestUtils.setField(service, "ttlMinutes", -1L);
+
+    assertThat(service.verify(service.issue("alice").getToken(), "alice")).isFalse();
+  }
+
+  @Test void oldKeyStillVerifiesAfterRotation() {
+    String issuedBeforeRotation = service(KEY_A).issue("alice").getToken();
+    ResumeTokenService rotated = service(KEY_B + "," + KEY_A);
+    ResumeTokenService retired = service(KEY_B);
+
+    assertThat(rotated.verify(issuedBeforeRotation, "alice")).isTrue();
+    assertThat(rotated.issue("alice").getToken()).startsWith("b.");
+    assertThat(retired.verify(issuedBeforeRotation, "alice")).isFalse();
+  }
+
+  @Test void revokedTokenIsRefusedHereAndPublishedToOtherNodes() throws Exception {
+    ResumeTokenService service = service(KEY_A);
+    String token = service.issue("alice").getToken();
+    String other = service.issue("alice").getToken();
+    List<String> published = new CopyOnWriteArrayList<>();
+    RedisMessageListenerContainer subscriber = new RedisMessageListenerContainer();
+    subscriber.setConnectionFactory(redis.connectionFactory());
+    subscriber.setTaskExecutor(new SyncTaskExecutor());
+    subscriber.addMessageListener((message, pattern) ->
+        published.add(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic("resume-revocations"));
+    subscriber.afterPropertiesSet();
+    subscriber.start();
+    try {
+      assertThat(service.revoke(token)).isTrue();
+
+      assertThat(service.verify(token, "alice")).isFalse();
+      assertThat(service.verify(other, "alice")).isTrue();
+      await().untilAsserted(() -> assertThat(published).containsExactly(token.split("\\.")[3]));
+      assertThat(service.revoke("a.b.c")).isFalse();
+    } finally {
+      subscriber.stop();
+      subscriber.destroy();
+    }
+  }
+
+  @Test void revocationIsKeptInRedisForTheRestOfTheTokensLifetime() {
+    ResumeTokenService service = service(KEY_A);
+    ResumeToken token = service.issue("alice");
+    String tokenId = token.getToken().split("\\.")[3];
+    redis.template().opsForZSet().add("resume:revoked", "long-expired", 1);
+
+    service.revoke(token.getToken());
+
+    assertThat(redis.template().opsForZSet().range("resume:revoked", 0, -1)).containsExactly(tokenId);
+    assertThat(redis.template().opsForZSet().score("resume:revoked", tokenId))
+        .isEqualTo((double) token.getExpiresAt());
+    assertThat(redis.template().getExpire("resume:revoked", TimeUnit.MILLISECONDS))
+        .isCloseTo(token.getExpiresAt() - System.currentTimeMillis(), within(5_000L));
+  }
+
+  @Test void restartedNodeStillRefusesRevokedTokens() {
+    String token = service(KEY_A).issue("alice").getToken();
+    service(KEY_A).revoke(token);
+
+    ResumeTokenService restarted = service(KEY_A);
+    redis.flush();
+
+    assertThat(restarted.verify(token, "alice")).as("seeded from Redis on startup").isFalse();
+  }
+
+  @Test void revocationMissedOverPubSubIsFoundInRedis() {
+    ResumeTokenService revoking = service(KEY_A);
+    ResumeTokenService missed = service(KEY_A);
+    String token = revoking.issue("alice").getToken();
+    assertThat(missed.verify(token, "alice")).isTrue();
+
+    // The container is a mock, so the publish never reaches the other node
+    revoking.revoke(token);
+
+    assertThat(missed.verify(token, "alice")).isFalse();
+  }
+
+  @Test void revocationFromAnotherNodeIsApplied() {
+    ResumeTokenService service = service(KEY_A);
+    String token = service.issue("alice").getToken();
+    ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+    verify(container).addMessageListener(listener.capture(), any(ChannelTopic.class));
+
+    byte[] tokenId = token.split("\\.")[3].getBytes(StandardCharsets.UTF_8);
+    listener.getValue().onMessage(new DefaultMessage("resume-revocations".getBytes(StandardCharsets.UTF_8),
+        tokenId), null);
+
+    assertThat(service.verify(token, "alice")).isFalse();
+  }
+
+  @Test void tokenIsRedeemedOnceAcrossNodes() throws Exception {
+    ResumeTokenService service = service(KEY_A);
+    ResumeTokenService otherNode = service(KEY_A);
+    String token = service.issue("alice").getToken();
+    String stolen = service.issue("alice").getToken();
+
+    assertThat(service.redeem(stolen, "bob")).isFalse();
+    assertThat(service.redeem(token, "alice")).isTrue();
+    assertThat(service.redeem(token, "alice")).isFalse();
+    assertThat(otherNode.redeem(token, "alice")).as("pub/sub not delivered, refused by Redis").isFalse();
+    assertThat(otherNode.verify(token, "alice")).isFalse();
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> redemptions = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        ResumeTokenService node = i % 2 == 0 ? service : otherNode;
+        redemptions.add(pool.submit(() -> node.redeem(stolen, "alice")));
+      }
+      int accepted = 0;
+      for (Future<Boolean> redemption : redemptions) {
+        accepted += redemption.get(10, TimeUnit.SECONDS) ? 1 : 0;
+      }
+      assertThat(accepted).isEqualTo(1);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test void disabledServiceIssuesNothingAndVerifiesNothing() {
+    ResumeTokenService service = service(KEY_A);
+    String token = service.issue("alice").getToken();
+    ReflectionTestUtils.setField(service, "enabled", false);
+
+    assertThat(service.issue("alice")).isNull();
+    assertThat(service.verify(token, "alice")).isFalse();
+  }
+
+  @Test void rejectsShortOrMalformedKeys() {
+    assertThatThrownBy(() -> service("a:" + Base64.getEncoder().encodeToString(new byte[16])))
+        .isInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(() -> service("no-colon")).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test void filterNeverForgetsARevokedIdAndRarelyInventsOne() throws Exception {
+    RevocationFilter filter = new RevocationFilter(10_000, 0.01);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        int thread = t;
+        futures.add(pool.submit(() -> {
+          for (int i = thread; i < 10_000; i += 8) {
+            filter.add("revoked-" + i);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(filter.mightContain("revoked-" + i)).isTrue();
+    }
+    long falsePositives = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (filter.mightContain("valid-" + i)) {
+        falsePositives++;
+      }
+    }
+    assertThat(falsePositives).as("about 1% of 100000").isLessThan(2_000);
+  }
+
+  private ResumeTokenService service(String keys) {
+    ResumeTokenService service = new ResumeTokenService(idGenerator, redis.template(), container);
+    ReflectionTestUtils.setField(service, "enabled", true);
+    ReflectionTestUtils.setField(service, "ttlMinutes", 120L);
+    ReflectionTestUtils.setField(service, "configuredKeys", keys);
+    ReflectionTestUtils.setField(service, "expectedRevocations", 1000);
+    ReflectionTestUtils.setField(service, "falsePositiveRate", 0.01);
+    ReflectionTestUtils.setField(service, "revocationKey", "resume:revoked");
+    ReflectionTestUtils.setField(service, "revocationChannel", "resume-revocations");
+    service.init();
+    return service;
+  }
+
+  private static String secret(char fill) {
+    return Base64.getEncoder().encodeToString(String.valueOf(fill).repeat(32).getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,225 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gfd_sse.dummyoff2onredis.event.CartEvent;
+import com.gfd_sse.dummyoff2onredis.event.EventType;
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+class SSEServiceTests {
+
+  private final ExecutorService writers = Executors.newFixedThreadPool(4);
+  private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor();
+
+  private ReplayBufferService replayBuffers;
+  private SSEService sseService;
+
+  @BeforeEach void setUp() {
+    replayBuffers = new ReplayBufferService(event -> { });
+    ReflectionTestUtils.setField(replayBuffers, "maxEventsPerUser", 4);
+    ReflectionTestUtils.setField(replayBuffers, "maxBytesPerUser", 1L << 20);
+    ReflectionTestUtils.setField(replayBuffers, "memoryBudgetBytes", 1L << 24);
+    ReflectionTestUtils.setField(replayBuffers, "retentionSeconds", 120L);
+
+    HeartbeatWheel heartbeatWheel = new HeartbeatWheel(heartbeatScheduler, new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(heartbeatWheel, "keepAliveIntervalSeconds", 3600);
+    ReflectionTestUtils.setField(heartbeatWheel, "slotCount", 4);
+    ReflectionTestUtils.setField(heartbeatWheel, "stallTimeoutSeconds", 60L);
+    heartbeatWheel.start();
+
+    sseService = new SSEService(new ObjectMapper(), writers, replayBuffers, event -> { }, heartbeatWheel);
+    ReflectionTestUtils.setField(sseService, "sseTimeoutMinutes", 30);
+    ReflectionTestUtils.setField(sseService, "queueCapacity", 64);
+    ReflectionTestUtils.setField(sseService, "overflowPolicy", OverflowPolicy.DROP_OLDEST);
+    ReflectionTestUtils.setField(sseService, "offerTimeoutMillis", 50L);
+    ReflectionTestUtils.setField(sseService, "reactiveSinkBuffer", 32);
+    ReflectionTestUtils.setField(sseService, "broadcastParallelismThreshold", 1000L);
+  }
+
+  @AfterEach void shutdown() {
+    writers.shutdownNow();
+    heartbeatScheduler.shutdownNow();
+  }
+
+  @Test void streamRegistersOnlyOnceSubscribed() {
+    Flux<ServerSentEvent<String>> stream = sseService.createFlux("alice", null, null);
+    assertThat(sseService.hasActiveConnection("alice")).isFalse();
+    assertThat(replayBuffers.getBufferCount()).isZero();
+
+    Disposable subscription = stream.subscribe();
+    assertThat(sseService.hasActiveConnection("alice")).isTrue();
+    assertThat(sseService.getActiveConnectionCount()).isEqualTo(1);
+
+    subscription.dispose();
+    await().until(() -> !sseService.hasActiveConnection("alice"));
+    assertThat(sseService.acceptsEventsFor("alice")).as("history kept for a resume").isTrue();
+  }
+
+  @Test void newSubscriptionReplacesTheOldOne() {
+    AtomicBoolean firstCompleted = new AtomicBoolean();
+    sseService.createFlux("alice", null, null).subscribe(event -> { }, error -> { }, () -> firstCompleted.set(true));
+    Client second = connect("alice", null);
+
+    await().untilTrue(firstCompleted);
+    sseService.sendEventToUser("alice", frame("e1"));
+    await().until(() -> second.ids().contains("e1"));
+    assertThat(sseService.getActiveConnectionCount()).isEqualTo(1);
+  }
+
+  @Test void reconnectWithLastEventIdReplaysOnlyWhatWasMissed() {
+    Client first = connect("alice", null);
+    await().until(() -> first.names().contains("CONNECTION_ESTABLISHED"));
+    sseService.sendEventToUser("alice", frame("e1"));
+    sseService.sendEventToUser("alice", frame("e2"));
+    await().until(() -> first.ids().size() == 2);
+    first.disconnect();
+
+    // Published while the client was away
+    sseService.sendEventToUser("alice", frame("e3"));
+    sseService.sendEventToUser("alice", frame("e4"));
+
+    Client second = connect("alice", "e2");
+    await().until(() -> second.ids().size() == 2);
+    sseService.sendEventToUser("alice", frame("e5"));
+
+    await().until(() -> second.ids().size() == 3);
+    assertThat(second.ids()).containsExactly("e3", "e4", "e5");
+    assertThat(second.names().get(0)).isEqualTo("CONNECTION_ESTABLISHED");
+    assertThat(second.names()).doesNotContain("RESYNC");
+  }
+
+  @Test void resumeFromAnEvictedIdGetsResyncInsteadOfAGappedReplay() {
+    Client first = connect("alice", null);
+    sseService.sendEventToUser("alice", frame("e1"));
+    await().until(() -> first.ids().size() == 1);
+    first.disconnect();
+
+    // The buffer keeps 4 events: e1 falls out
+    for (int i = 2; i <= 6; i++) {
+      sseService.sendEventToUser("alice", frame("e" + i));
+    }
+
+    Client second = connect("alice", "e1");
+    await().until(() -> second.names().contains("RESYNC"));
+    assertThat(second.ids()).isEmpty();
+  }
+
+  @Test void resyncDiscardsHistorySoOlderIdsResyncToo() {
+    Client first = connect("alice", null);
+    sseService.sendEventToUser("alice", frame("e1"));
+    sseService.sendEventToUser("alice", frame("e2"));
+    await().until(() -> first.ids().size() == 2);
+
+    // An event for alice was dropped upstream
+    sseService.resync("alice");
+    await().until(() -> first.names().contains("RESYNC"));
+    assertThat(replayBuffers.getRetainedBytes()).isZero();
+    first.disconnect();
+
+    sseService.sendEventToUser("alice", frame("e3"));
+    Client second = connect("alice", "e2");
+    await().until(() -> second.names().contains("RESYNC"));
+    assertThat(second.ids()).isEmpty();
+  }
+
+  @Test void framesWithoutIdAreNotReplayed() {
+    Client first = connect("alice", null);
+    sseService.sendEventToUser("alice", frame("e1"));
+    await().until(() -> first.ids().size() == 1);
+    first.disconnect();
+
+    sseService.sendEventToUser("alice", SseFrame.of(null, "PRODUCT_VIEWED", "{}"));
+    sseService.sendEventToUser("alice", frame("e2"));
+
+    Client second = connect("alice", "e1");
+    await().until(() -> second.ids().size() == 1);
+    assertThat(second.names()).doesNotContain("PRODUCT_VIEWED");
+    assertThat(second.ids()).containsExactly("e2");
+  }
+
+  @Test void broadcastReachesEveryConnectionWithoutAnIdAndIsNotReplayed() throws Exception {
+    Client alice = connect("alice", null);
+    Client bob = connect("bob", null);
+    sseService.sendEventToUser("alice", frame("e1"));
+    await().until(() -> alice.ids().size() == 1);
+
+    int recipients = sseService.broadcastEvent(CartEvent.builder()
+        .eventType(EventType.CART_UPDATED)
+        .message("maintenance")
+        .build());
+
+    assertThat(recipients).isEqualTo(2);
+    await().until(() -> alice.received.size() == 3 && bob.received.size() == 2);
+    ServerSentEvent<String> toAlice = alice.received.get(2);
+    ServerSentEvent<String> toBob = bob.received.get(1);
+    assertThat(toAlice.id()).isNull();
+    assertThat(toAlice.event()).isEqualTo("CART_UPDATED");
+    assertThat(toAlice.data()).contains("maintenance").isEqualTo(toBob.data());
+
+    // Broadcasts carry no id, so they neither move nor break a resume point
+    alice.disconnect();
+    Client again = connect("alice", "e1");
+    await().until(() -> again.names().contains("CONNECTION_ESTABLISHED"));
+    sseService.sendEventToUser("alice", frame("e2"));
+    await().until(() -> again.ids().contains("e2"));
+    assertThat(again.names()).doesNotContain("RESYNC");
+    assertThat(again.received).hasSize(2);
+  }
+
+  @Test void eventsForUnknownUsersAreIgnored() {
+    sseService.sendEventToUser("nobody", frame("e1"));
+
+    assertThat(sseService.acceptsEventsFor("nobody")).isFalse();
+    assertThat(replayBuffers.getBufferCount()).isZero();
+  }
+
+  private Client connect(String userId, String lastEventId) {
+    Client client = new Client(userId);
+    client.subscription = sseService.createFlux(userId, lastEventId, null).subscribe(client.received::add);
+    return client;
+  }
+
+  private static SseFrame frame(String id) {
+    return SseFrame.of(id, "CART_UPDATED", "{\"eventId\":\"" + id + "\"}");
+  }
+
+  private final class Client {
+
+    final String userId;
+    final List<ServerSentEvent<String>> received = new CopyOnWriteArrayList<>();
+    Disposable subscription;
+
+    Client(String userId) {
+      this.userId = userId;
+    }
+
+    List<String> ids() {
+      return received.stream().map(ServerSentEvent::id).filter(id -> id != null).toList();
+    }
+
+    List<String> names() {
+      return received.stream().map(ServerSentEvent::event).toList();
+    }
+
+    void disconnect() {
+      subscription.dispose();
+      await().until(() -> !sseService.hasActiveConnection(userId));
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SseConnectionTests {
+
+  private final ExecutorService writers = Executors.newFixedThreadPool(8);
+  private final AtomicInteger closeCallbacks = new AtomicInteger();
+
+  @AfterEach void shutdown() {
+    writers.shutdownNow();
+  }
+
+  @Test void writesFramesInQueueOrderWithOneWriterAtATime() throws Exception {
+    RecordingSseConnection connection = connection(100_000, OverflowPolicy.DISCONNECT);
+    int producers = 8;
+    int perProducer = 2_000;
+
+    ExecutorService producerPool = Executors.newFixedThreadPool(producers);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        int producer = p;
+        futures.add(producerPool.submit(() -> {
+          start.await();
+          for (int i = 0; i < perProducer; i++) {
+            assertThat(connection.enqueue(SseFrame.of(producer + ":" + i, "CART_UPDATED", "{}"))).isTrue();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      producerPool.shutdown();
+    }
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> connection.written.size() == producers * perProducer);
+    assertThat(connection.maxActiveWriters).hasValue(1);
+
+    Map<String, Integer> lastSeen = new HashMap<>();
+    for (String id : connection.writtenIds()) {
+      String[] parts = id.split(":");
+      int sequence = Integer.parseInt(parts[1]);
+      assertThat(sequence).as("order of producer %s", parts[0]).isEqualTo(lastSeen.getOrDefault(parts[0], -1) + 1);
+      lastSeen.put(parts[0], sequence);
+    }
+    await().until(connection::isIdle);
+  }
+
+  @Test void dropOldestKeepsNewestFramesWhileTheClientIsSlow() {
+    RecordingSseConnection connection = connection(3, OverflowPolicy.DROP_OLDEST);
+    connection.blockWrites();
+
+    connection.enqueue(frame("0"));
+    // The writer is now holding frame 0; the queue has room for 3 more
+    await().until(() -> connection.activeWriters.get() == 1);
+    for (int i = 1; i <= 10; i++) {
+      assertThat(connection.enqueue(frame(String.valueOf(i)))).isTrue();
+    }
+    assertThat(connection.getQueueDepth()).isEqualTo(3);
+    assertThat(connection.getDroppedEventCount()).isEqualTo(7);
+    assertThat(connection.isClosed()).isFalse();
+
+    connection.unblockWrites();
+    await().until(() -> connection.written.size() == 4);
+    assertThat(connection.writtenIds()).containsExactly("0", "8", "9", "10");
+  }
+
+  @Test void disconnectPolicyClosesSlowConnectionOnce() {
+    RecordingSseConnection connection = connection(2, OverflowPolicy.DISCONNECT);
+    connection.blockWrites();
+
+    connection.enqueue(frame("0"));
+    await().until(() -> connection.activeWriters.get() == 1);
+    assertThat(connection.enqueue(frame("1"))).isTrue();
+    assertThat(connection.enqueue(frame("2"))).isTrue();
+    assertThat(connection.enqueue(frame("3"))).isFalse();
+
+    assertThat(connection.isClosed()).isTrue();
+    assertThat(connection.enqueue(frame("4"))).isFalse();
+    assertThat(closeCallbacks).hasValue(1);
+    assertThat(connection.transportCompletions).hasValue(1);
+    assertThat(connection.getQueueDepth()).isZero();
+    connection.unblockWrites();
+  }
+
+  @Test void blockPolicyWaitsForRoomThenGivesUp() {
+    RecordingSseConnection connection = connection(1, OverflowPolicy.BLOCK);
+    connection.blockWrites();
+
+    connection.enqueue(frame("0"));
+    await().until(() -> connection.activeWriters.get() == 1);
+    assertThat(connection.enqueue(frame("1"))).isTrue();
+
+    long started = System.nanoTime();
+    assertThat(connection.enqueue(frame("2"))).isFalse();
+    assertThat(Duration.ofNanos(System.nanoTime() - started)).isGreaterThanOrEqualTo(Duration.ofMillis(40));
+    assertThat(connection.isClosed()).isTrue();
+    assertThat(closeCallbacks).hasValue(1);
+    connection.unblockWrites();
+  }
+
+  @Test void failedWriteClosesTheConnection() {
+    RecordingSseConnection connection = connection(10, OverflowPolicy.DROP_OLDEST);
+    connection.failWrites();
+
+    connection.enqueue(frame("0"));
+
+    await().until(connection::isClosed);
+    assertThat(closeCallbacks).hasValue(1);
+    assertThat(connection.written).isEmpty();
+  }
+
+  @Test void rejectedDrainClosesTheConnection() {
+    RecordingSseConnection connection = new RecordingSseConnection("user", 10, OverflowPolicy.DROP_OLDEST,
+        task -> {
+          throw new RejectedExecutionException("shut down");
+        }, c -> closeCallbacks.incrementAndGet());
+
+    connection.enqueue(frame("0"));
+
+    assertThat(connection.isClosed()).isTrue();
+    assertThat(closeCallbacks).hasValue(1);
+  }
+
+  @Test void detachDoesNotCompleteTheTransport() {
+    RecordingSseConnection connection = connection(10, OverflowPolicy.DROP_OLDEST);
+
+    connection.detach();
+    connection.close();
+
+    assertThat(connection.isClosed()).isTrue();
+    assertThat(closeCallbacks).hasValue(1);
+    assertThat(connection.transportCompletions).hasValue(0);
+  }
+
+  @Test void stalledOnlyWhileFramesArePending() {
+    RecordingSseConnection connection = connection(10, OverflowPolicy.DROP_OLDEST);
+    long hour = Duration.ofHours(1).toNanos();
+    assertThat(connection.isStalled(System.nanoTime() + hour, 1)).as("idle").isFalse();
+
+    connection.blockWrites();
+    connection.enqueue(frame("0"));
+    await().until(() -> connection.activeWriters.get() == 1);
+
+    assertThat(connection.isStalled(System.nanoTime(), hour)).isFalse();
+    assertThat(connection.isStalled(System.nanoTime() + hour, hour / 2)).isTrue();
+    connection.unblockWrites();
+    await().until(connection::isIdle);
+    assertThat(connection.wroteWithin(System.nanoTime(), hour)).isTrue();
+  }
+
+  private RecordingSseConnection connection(int capacity, OverflowPolicy policy) {
+    return new RecordingSseConnection("user", capacity, policy, writers, c -> closeCallbacks.incrementAndGet());
+  }
+
+  private static SseFrame frame(String id) {
+    return SseFrame.of(id, "CART_UPDATED", "{\"eventId\":\"" + id + "\"}");
+  }
+}
@@ -0,0 +1,42 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.gfd_sse.dummyoff2onredis.dto.HandshakeResult;
+import com.gfd_sse.dummyoff2onredis.dto.ResumeToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+class SseHandshakeServiceTests {
+
+  private final OTPService otpService = mock(OTPService.class);
+  private final ResumeTokenService resumeTokenService = mock(ResumeTokenService.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final SseHandshakeService handshake = new SseHandshakeService(otpService, resumeTokenService, meterRegistry);
+
+  @Test void resumeTokenIsRedeemedAndReplaced() {
+    ResumeToken next = new ResumeToken("next", Long.MAX_VALUE);
+    when(resumeTokenService.redeem("used", "alice")).thenReturn(true, false);
+    when(resumeTokenService.issue("alice")).thenReturn(next);
+
+    HandshakeResult resumed = handshake.authorize("alice", null, "used");
+    HandshakeResult replayed = handshake.authorize("alice", null, "used");
+
+    assertThat(resumed.isAccepted()).isTrue();
+    assertThat(resumed.getResumeToken()).isSameAs(next);
+    assertThat(replayed.isAccepted()).isFalse();
+    assertThat(replayed.getStatus()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    assertThat(meterRegistry.get("sse.handshake").tag("outcome", "resumed").timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("sse.handshake").tag("outcome", "rejected").timer().count()).isEqualTo(1);
+  }
+
+  @Test void spentResumeTokenFallsBackToTheOtp() {
+    when(resumeTokenService.redeem("used", "alice")).thenReturn(false);
+    when(otpService.consumeOTP("123456", "alice")).thenReturn("alice");
+
+    assertThat(handshake.authorize("alice", "123456", "used").isAccepted()).isTrue();
+  }
+}
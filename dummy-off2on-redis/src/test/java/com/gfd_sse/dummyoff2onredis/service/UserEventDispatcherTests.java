@@ -0,0 +1,164 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class UserEventDispatcherTests {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(8);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @AfterEach void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test void keepsEachUsersEventsInOrderUnderConcurrentDispatch() throws Exception {
+    UserEventDispatcher dispatcher = dispatcher(4, 100_000);
+    int users = 50;
+    int perUser = 400;
+    Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+    Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+    AtomicInteger overlaps = new AtomicInteger();
+
+    // One producer per group of users, so each user's events are offered in order
+    ExecutorService producers = Executors.newFixedThreadPool(5);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int p = 0; p < 5; p++) {
+        int producer = p;
+        futures.add(producers.submit(() -> {
+          for (int i = 0; i < perUser; i++) {
+            for (int u = producer; u < users; u += 5) {
+              String userId = "user-" + u;
+              int sequence = i;
+              assertThat(dispatcher.dispatch(userId, () -> {
+                if (running.computeIfAbsent(userId, k -> new AtomicInteger()).incrementAndGet() > 1) {
+                  overlaps.incrementAndGet();
+                }
+                handled.computeIfAbsent(userId, k -> new CopyOnWriteArrayList<>()).add(sequence);
+                running.get(userId).decrementAndGet();
+              })).isTrue();
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      producers.shutdown();
+    }
+
+    await().atMost(Duration.ofSeconds(10)).until(() -> dispatcher.getQueueDepth() == 0
+        && handled.values().stream().mapToInt(List::size).sum() == users * perUser);
+    assertThat(overlaps).hasValue(0);
+    for (List<Integer> sequences : handled.values()) {
+      assertThat(sequences).hasSize(perUser).isSorted();
+    }
+  }
+
+  @Test void usersOnOtherStripesAreNotHeldUpByASlowOne() throws Exception {
+    UserEventDispatcher dispatcher = dispatcher(2, 16);
+    String slowUser = userOnStripe(0, 2);
+    String otherUser = userOnStripe(1, 2);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch otherHandled = new CountDownLatch(1);
+
+    dispatcher.dispatch(slowUser, () -> hold(release));
+    dispatcher.dispatch(otherUser, otherHandled::countDown);
+
+    assertThat(otherHandled.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(dispatcher.getQueueDepth()).isZero();
+    release.countDown();
+  }
+
+  @Test void fullStripeDropsAndQueuesOneDropHandlerPerUser() {
+    UserEventDispatcher dispatcher = dispatcher(1, 2);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> handled = new CopyOnWriteArrayList<>();
+    AtomicInteger aliceResyncs = new AtomicInteger();
+    AtomicInteger bobResyncs = new AtomicInteger();
+
+    dispatcher.dispatch("alice", () -> hold(release));
+    await().until(() -> dispatcher.getQueueDepth() == 0);
+    assertThat(dispatcher.dispatch("alice", () -> handled.add("alice-1"))).isTrue();
+    assertThat(dispatcher.dispatch("bob", () -> handled.add("bob-1"))).isTrue();
+    assertThat(dispatcher.getMaxStripeDepth()).isEqualTo(2);
+
+    assertThat(dispatcher.dispatch("alice", () -> handled.add("alice-2"), () -> {
+      aliceResyncs.incrementAndGet();
+      handled.add("alice-resync");
+    })).isFalse();
+    assertThat(dispatcher.dispatch("alice", () -> handled.add("alice-3"), aliceResyncs::incrementAndGet)).isFalse();
+    assertThat(dispatcher.dispatch("bob", () -> handled.add("bob-2"), () -> {
+      bobResyncs.incrementAndGet();
+      handled.add("bob-resync");
+    })).isFalse();
+    assertThat(dispatcher.getQueueDepth()).as("drop handlers go past capacity").isEqualTo(4);
+
+    release.countDown();
+    await().until(() -> handled.size() == 4);
+    assertThat(handled).containsExactly("alice-1", "bob-1", "alice-resync", "bob-resync");
+    assertThat(aliceResyncs).hasValue(1);
+    assertThat(bobResyncs).hasValue(1);
+    assertThat(meterRegistry.get("sse.dispatch.dropped").counter().count()).isEqualTo(3);
+
+    // Once the drop handler has run, the next drop queues a new one
+    assertThat(dispatcher.dispatch("alice", () -> handled.add("alice-4"), aliceResyncs::incrementAndGet)).isTrue();
+    await().until(() -> handled.contains("alice-4"));
+  }
+
+  @Test void failingHandlerDoesNotStallTheStripe() {
+    UserEventDispatcher dispatcher = dispatcher(1, 16);
+    List<String> handled = new CopyOnWriteArrayList<>();
+
+    dispatcher.dispatch("alice", () -> {
+      throw new IllegalStateException("boom");
+    });
+    dispatcher.dispatch("alice", () -> handled.add("after"));
+
+    await().until(() -> handled.contains("after"));
+  }
+
+  private UserEventDispatcher dispatcher(int stripes, int queueCapacity) {
+    UserEventDispatcher dispatcher = new UserEventDispatcher(executor, meterRegistry);
+    ReflectionTestUtils.setField(dispatcher, "stripeCount", stripes);
+    ReflectionTestUtils.setField(dispatcher, "queueCapacity", queueCapacity);
+    dispatcher.init();
+    return dispatcher;
+  }
+
+  private static String userOnStripe(int stripe, int stripes) {
+    for (int i = 0; ; i++) {
+      String userId = "user-" + i;
+      if (Math.floorMod(userId.hashCode(), stripes) == stripe) {
+        return userId;
+      }
+    }
+  }
+
+  private static void hold(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
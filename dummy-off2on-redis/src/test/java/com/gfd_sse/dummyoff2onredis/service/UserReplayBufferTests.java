@@ -0,0 +1,110 @@
+package com.gfd_sse.dummyoff2onredis.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.gfd_sse.dummyoff2onredis.event.SseFrame;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class UserReplayBufferTests {
+
+  @Test void returnsFramesAfterTheLastSeenIdInOrder() {
+    UserReplayBuffer buffer = new UserReplayBuffer(10, 1 << 20);
+    for (int i = 1; i <= 5; i++) {
+      buffer.append(frame("e" + i));
+    }
+
+    assertThat(ids(buffer.since("e2"))).containsExactly("e3", "e4", "e5");
+    assertThat(buffer.since("e5")).as("nothing missed").isEmpty();
+    assertThat(ids(buffer.since("e1"))).containsExactly("e2", "e3", "e4", "e5");
+  }
+
+  @Test void evictedOrUnknownIdMeansResync() {
+    UserReplayBuffer buffer = new UserReplayBuffer(3, 1 << 20);
+    for (int i = 1; i <= 5; i++) {
+      buffer.append(frame("e" + i));
+    }
+
+    assertThat(buffer.since("e1")).as("evicted by count").isNull();
+    assertThat(buffer.since("e2")).isNull();
+    assertThat(ids(buffer.since("e3"))).containsExactly("e4", "e5");
+    assertThat(buffer.since("never-sent")).isNull();
+  }
+
+  @Test void evictsOldestFramesPastTheByteLimitButKeepsTheNewest() {
+    SseFrame sample = frame("e1");
+    UserReplayBuffer buffer = new UserReplayBuffer(100, sample.size() * 2L);
+
+    assertThat(buffer.append(sample)).isEqualTo(sample.size());
+    buffer.append(frame("e2"));
+    assertThat(buffer.append(frame("e3"))).as("one in, one out").isZero();
+    assertThat(buffer.since("e1")).isNull();
+    assertThat(ids(buffer.since("e2"))).containsExactly("e3");
+
+    SseFrame huge = SseFrame.of("big", "CART_UPDATED", "x".repeat(10_000));
+    buffer.append(huge);
+    assertThat(buffer.bytes()).as("a single oversized frame is still kept").isEqualTo(huge.size());
+    assertThat(buffer.since("big")).isEmpty();
+  }
+
+  @Test void clearedBufferCannotBeResumedFrom() {
+    UserReplayBuffer buffer = new UserReplayBuffer(10, 1 << 20);
+    buffer.append(frame("e1"));
+    buffer.append(frame("e2"));
+
+    assertThat(buffer.clear()).isEqualTo(frame("e1").size() + frame("e2").size());
+    assertThat(buffer.bytes()).isZero();
+    assertThat(buffer.since("e1")).isNull();
+
+    buffer.append(frame("e3"));
+    assertThat(buffer.since("e1")).as("no replay across the gap").isNull();
+    assertThat(buffer.since("e3")).isEmpty();
+  }
+
+  @Test void expiresOnlyWhileDetached() {
+    UserReplayBuffer buffer = new UserReplayBuffer(10, 1 << 20);
+    assertThat(buffer.isExpired(Long.MAX_VALUE, 0)).isFalse();
+
+    buffer.markDetached(1000);
+    assertThat(buffer.isExpired(1500, 1000)).isFalse();
+    assertThat(buffer.isExpired(2001, 1000)).isTrue();
+
+    buffer.markAttached();
+    assertThat(buffer.isExpired(5000, 1000)).isFalse();
+  }
+
+  @Test void serviceForgetsHistoryWhenTheMemoryBudgetIsExhausted() {
+    ReplayBufferService service = new ReplayBufferService(event -> { });
+    ReflectionTestUtils.setField(service, "maxEventsPerUser", 10);
+    ReflectionTestUtils.setField(service, "maxBytesPerUser", 1L << 20);
+    ReflectionTestUtils.setField(service, "memoryBudgetBytes", frame("e1").size() * 3L);
+
+    UserReplayBuffer alice = service.open("alice");
+    UserReplayBuffer bob = service.open("bob");
+    service.record(alice, frame("e1"));
+    service.record(alice, frame("e2"));
+    service.record(bob, frame("e3"));
+    assertThat(service.getRetainedBytes()).isEqualTo(frame("e1").size() * 3L);
+
+    // No room left: bob's history is dropped rather than kept with a hole
+    service.record(bob, frame("e4"));
+    assertThat(bob.since("e3")).isNull();
+    assertThat(ids(alice.since("e1"))).containsExactly("e2");
+    assertThat(service.getRetainedBytes()).isEqualTo(frame("e1").size() * 2L);
+
+    service.record(alice, SseFrame.of(null, "heartbeat", "ping"));
+    assertThat(ids(alice.since("e1"))).as("frames without an id are not retained").containsExactly("e2");
+
+    service.discard(alice);
+    assertThat(service.getRetainedBytes()).isZero();
+  }
+
+  private static SseFrame frame(String id) {
+    return SseFrame.of(id, "CART_UPDATED", "{\"eventId\":\"" + id + "\"}");
+  }
+
+  private static List<String> ids(List<SseFrame> frames) {
+    return frames.stream().map(SseFrame::getId).toList();
+  }
+}
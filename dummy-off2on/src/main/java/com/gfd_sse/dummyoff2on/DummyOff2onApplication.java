@@ -2,7 +2,9 @@ package com.gfd_sse.dummyoff2on;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+@EnableScheduling
 @SpringBootApplication public class DummyOff2onApplication {
 
   public static void main(String[] args) {
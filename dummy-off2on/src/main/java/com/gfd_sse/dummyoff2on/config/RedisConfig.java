@@ -3,10 +3,14 @@ package com.gfd_sse.dummyoff2on.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.gfd_sse.dummyoff2on.repository.RedisCartRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -37,4 +41,21 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
+
+    /**
+     * Near-cache invalidations between instances sharing the Redis cart store,
+     * and expired-cart notifications from Redis
+     */
+    @Bean
+    @ConditionalOnProperty(name = "cart.store", havingValue = "redis")
+    public RedisMessageListenerContainer cartInvalidationListenerContainer(
+            RedisConnectionFactory connectionFactory, RedisCartRepository cartRepository) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cartRepository, new ChannelTopic(cartRepository.getInvalidationChannel()));
+        if (cartRepository.getExpiryChannel() != null) {
+            container.addMessageListener(cartRepository, new ChannelTopic(cartRepository.getExpiryChannel()));
+        }
+        return container;
+    }
 }
@@ -5,6 +5,7 @@ import com.gfd_sse.dummyoff2on.model.CartItem;
 import com.gfd_sse.dummyoff2on.service.CartService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -19,6 +20,9 @@ public class CartController {
 
     private final CartService cartService;
 
+    @Value("${cart.batch.max-operations:100}")
+    private int maxBatchOperations;
+
     public CartController(CartService cartService) {
         this.cartService = cartService;
     }
@@ -60,6 +64,49 @@ public class CartController {
         }
     }
 
+    /**
+     * POST /api/cart/batch - Apply several cart operations at once, with one event
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<ApiResponse<AddToCartResponse>> applyBatch(@RequestBody CartBatchRequest request) {
+        // Validate request
+        if (request.getUserId() == null || request.getUserId().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("User ID is required"));
+        }
+        if (request.getOperations() == null || request.getOperations().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("At least one operation is required"));
+        }
+        if (request.getOperations().size() > maxBatchOperations) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("At most " + maxBatchOperations + " operations are allowed"));
+        }
+        for (CartOperation operation : request.getOperations()) {
+            String error = validateOperation(operation);
+            if (error != null) {
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error(error));
+            }
+        }
+
+        logger.info("Received batch of {} cart operations for user {}",
+                request.getOperations().size(), request.getUserId());
+        try {
+            AddToCartResponse response = cartService.applyBatch(request);
+            if (response.isSuccess()) {
+                return ResponseEntity.ok(ApiResponse.success(response, "Cart updated successfully"));
+            } else {
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error(response.getMessage()));
+            }
+        } catch (Exception e) {
+            logger.error("Error applying cart operations", e);
+            return ResponseEntity.internalServerError()
+                    .body(ApiResponse.error("Failed to update cart: " + e.getMessage()));
+        }
+    }
+
     /**
      * GET /api/cart/{userId} - Get cart for user
      */
@@ -120,6 +167,43 @@ public class CartController {
         }
     }
 
+    /**
+     * POST /api/cart/{userId}/snapshot - Publish a full cart snapshot event
+     */
+    @PostMapping("/{userId}/snapshot")
+    public ResponseEntity<ApiResponse<String>> publishSnapshot(@PathVariable String userId) {
+        logger.info("Received request to publish cart snapshot for user: {}", userId);
+        try {
+            cartService.publishCartSnapshot(userId);
+            return ResponseEntity.ok(ApiResponse.success("Snapshot published", "Cart snapshot published successfully"));
+        } catch (Exception e) {
+            logger.error("Error publishing cart snapshot", e);
+            return ResponseEntity.internalServerError()
+                    .body(ApiResponse.error("Failed to publish cart snapshot: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Validation error for one batch operation, or null if it is valid
+     */
+    private String validateOperation(CartOperation operation) {
+        if (operation == null || operation.getType() == null) {
+            return "Operation type is required";
+        }
+        if (operation.getProductId() == null) {
+            return "Product ID is required";
+        }
+        if (operation.getType() == CartOperation.Type.ADD
+                && (operation.getQuantity() == null || operation.getQuantity() <= 0)) {
+            return "Quantity must be greater than 0";
+        }
+        if (operation.getType() == CartOperation.Type.UPDATE_QUANTITY
+                && (operation.getQuantity() == null || operation.getQuantity() < 0)) {
+            return "Quantity must not be negative";
+        }
+        return null;
+    }
+
     /**
      * GET /api/cart/health - Health check endpoint
      */
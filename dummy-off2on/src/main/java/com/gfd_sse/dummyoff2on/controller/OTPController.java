@@ -3,6 +3,7 @@ package com.gfd_sse.dummyoff2on.controller;
 import com.gfd_sse.dummyoff2on.dto.ApiResponse;
 import com.gfd_sse.dummyoff2on.dto.OTPGenerationRequest;
 import com.gfd_sse.dummyoff2on.dto.OTPGenerationResponse;
+import com.gfd_sse.dummyoff2on.model.IssuedOTP;
 import com.gfd_sse.dummyoff2on.service.OTPService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,16 +41,16 @@ public class OTPController {
                                 .build());
             }
 
-            String otp = otpService.generateOTP(request.getUserId());
-            Long expiresAt = otpService.getOTPExpiration(otp);
+            IssuedOTP issued = otpService.generateOTP(request.getUserId());
 
             OTPGenerationResponse response = OTPGenerationResponse.builder()
                     .success(true)
-                    .otp(otp)
-                    .userId(request.getUserId())
-                    .expiresAt(expiresAt)
+                    .otp(issued.getOtp())
+                    .userId(issued.getUserId())
+                    .expiresAt(issued.getExpiresAt())
                     .message("OTP generated successfully")
-                    .instructions("Share this OTP with GFD to monitor your session. Valid for 5 minutes.")
+                    .instructions("Share this OTP with GFD to monitor your session. Valid for "
+                            + validity(issued.getExpiresAt() - System.currentTimeMillis()) + ".")
                     .build();
 
             logger.info("OTP generated successfully for Front-liner user: {}", request.getUserId());
@@ -65,6 +66,18 @@ public class OTPController {
         }
     }
 
+    /**
+     * Remaining lifetime of an OTP as text. Under two minutes it is given in
+     * seconds, since an HMAC OTP can be issued near the end of its time step.
+     */
+    static String validity(long remainingMillis) {
+        long seconds = Math.max(0, Math.round(remainingMillis / 1000.0));
+        if (seconds < 120) {
+            return seconds + (seconds == 1 ? " second" : " seconds");
+        }
+        return Math.round(seconds / 60.0) + " minutes";
+    }
+
     /**
      * Check if OTP exists (for internal testing)
      */
@@ -1,10 +1,12 @@
 package com.gfd_sse.dummyoff2on.controller;
 
 import com.gfd_sse.dummyoff2on.dto.ApiResponse;
+import com.gfd_sse.dummyoff2on.dto.ProductPage;
 import com.gfd_sse.dummyoff2on.model.Product;
 import com.gfd_sse.dummyoff2on.service.ProductService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -20,6 +22,12 @@ public class ProductController {
 
     private final ProductService productService;
 
+    @Value("${catalog.page.default-size:50}")
+    private int defaultPageSize;
+
+    @Value("${catalog.page.max-size:200}")
+    private int maxPageSize;
+
     public ProductController(ProductService productService) {
         this.productService = productService;
     }
@@ -40,6 +48,46 @@ public class ProductController {
         }
     }
 
+    /**
+     * GET /api/products/page?cursor=&limit= - Page through all products by id
+     */
+    @GetMapping("/page")
+    public ResponseEntity<ApiResponse<ProductPage>> getProductsPage(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false) Integer limit) {
+        logger.debug("Received request to fetch products page after {}", cursor);
+        try {
+            ProductPage page = productService.getProductsPage(cursor, pageSize(limit));
+            return ResponseEntity.ok(ApiResponse.success(page, "Products fetched successfully"));
+        } catch (Exception e) {
+            logger.error("Error fetching products page", e);
+            return ResponseEntity.internalServerError()
+                    .body(ApiResponse.error("Failed to fetch products: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * GET /api/products/search?q=&limit= - Search products by name prefix
+     */
+    @GetMapping("/search")
+    public ResponseEntity<ApiResponse<List<Product>>> searchProducts(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer limit) {
+        logger.debug("Received request to search products for '{}'", q);
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("Search query is required"));
+        }
+        try {
+            List<Product> products = productService.searchProducts(q, pageSize(limit));
+            return ResponseEntity.ok(ApiResponse.success(products, "Products fetched successfully"));
+        } catch (Exception e) {
+            logger.error("Error searching products", e);
+            return ResponseEntity.internalServerError()
+                    .body(ApiResponse.error("Failed to search products: " + e.getMessage()));
+        }
+    }
+
     /**
      * GET /api/products/{id} - Get product by ID
      */
@@ -77,6 +125,16 @@ public class ProductController {
         }
     }
 
+    /**
+     * Requested page size, defaulted and capped
+     */
+    private int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return defaultPageSize;
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
     /**
      * GET /api/products/health - Health check endpoint
      */
@@ -1,12 +1,12 @@
 package com.gfd_sse.dummyoff2on.dto;
 
 import com.gfd_sse.dummyoff2on.model.CartItem;
+import com.gfd_sse.dummyoff2on.model.Money;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 @Data
@@ -18,6 +18,6 @@ public class AddToCartResponse {
     private String message;
     private String userId;
     private List<CartItem> cartItems;
-    private BigDecimal totalAmount;
+    private Money totalAmount;
     private Integer totalItems;
 }
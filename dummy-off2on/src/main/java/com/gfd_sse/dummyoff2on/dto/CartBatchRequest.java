@@ -0,0 +1,18 @@
+package com.gfd_sse.dummyoff2on.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartBatchRequest {
+    private String userId;
+    // Applied in order, all or nothing
+    private List<CartOperation> operations;
+}
@@ -0,0 +1,28 @@
+package com.gfd_sse.dummyoff2on.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One operation of a batch cart request.
+ * ADD: add quantity of the product. UPDATE_QUANTITY: set the line to quantity
+ * (0 removes it). REMOVE: remove the line; quantity is ignored.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartOperation {
+
+    public enum Type {
+        ADD,
+        UPDATE_QUANTITY,
+        REMOVE
+    }
+
+    private Type type;
+    private Long productId;
+    private Integer quantity;
+}
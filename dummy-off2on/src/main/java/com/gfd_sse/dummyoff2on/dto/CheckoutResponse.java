@@ -5,7 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
+import com.gfd_sse.dummyoff2on.model.Money;
 
 @Data
 @Builder
@@ -16,6 +16,6 @@ public class CheckoutResponse {
     private String message;
     private String orderId;
     private String userId;
-    private BigDecimal totalAmount;
+    private Money totalAmount;
     private String orderStatus;
 }
@@ -0,0 +1,19 @@
+package com.gfd_sse.dummyoff2on.dto;
+
+import com.gfd_sse.dummyoff2on.model.Product;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPage {
+    private List<Product> items;
+    // Pass as cursor to get the next page; null on the last page
+    private Long nextCursor;
+}
@@ -1,12 +1,12 @@
 package com.gfd_sse.dummyoff2on.event;
 
 import com.gfd_sse.dummyoff2on.model.CartItem;
+import com.gfd_sse.dummyoff2on.model.Money;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 @Data
@@ -18,8 +18,12 @@ public class CartEvent {
     private EventType eventType;
     private String userId;
     private Long timestamp;
+    // Per-user, monotonically increasing; restarts at 1 for a new cart
+    private Long sequence;
+    // When true, cartItems holds only the changed lines (quantity 0 = removed)
+    private Boolean delta;
     private List<CartItem> cartItems;
-    private BigDecimal totalAmount;
+    private Money totalAmount;
     private Integer totalItems;
     private String message;
     private Object metadata;
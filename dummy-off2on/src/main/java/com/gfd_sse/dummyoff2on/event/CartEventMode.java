@@ -0,0 +1,17 @@
+package com.gfd_sse.dummyoff2on.event;
+
+/**
+ * How cart mutations are published
+ */
+public enum CartEventMode {
+    /**
+     * Every event carries the full cart
+     */
+    SNAPSHOT,
+
+    /**
+     * Events carry only the changed lines plus new totals, with a full
+     * snapshot periodically and on demand
+     */
+    DELTA
+}
@@ -0,0 +1,24 @@
+package com.gfd_sse.dummyoff2on.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Application event raised when the cart store drops a cart on its own,
+ * rather than on checkout or clearCart.
+ *
+ * IDLE: not read or changed for cart.idle-ttl-minutes.
+ * CAPACITY: removed to stay within cart.max-entries.
+ */
+@Data
+@AllArgsConstructor
+public class CartEvictedEvent {
+
+    public enum Reason {
+        IDLE,
+        CAPACITY
+    }
+
+    private String userId;
+    private Reason reason;
+}
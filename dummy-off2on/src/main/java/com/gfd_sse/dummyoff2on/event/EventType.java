@@ -5,6 +5,7 @@ public enum EventType {
     CART_ITEM_ADDED,
     CART_ITEM_REMOVED,
     CART_UPDATED,
+    CART_DELETED,
     VOUCHER_APPLIED,
     VOUCHER_UNAPPLIED,
     DISCOUNT_APPLIED,
@@ -1,20 +1,20 @@
 package com.gfd_sse.dummyoff2on.model;
 
-import lombok.AllArgsConstructor;
 import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
 
-import java.math.BigDecimal;
-
-@Data
-@Builder
-@NoArgsConstructor
-@AllArgsConstructor
+/**
+ * One line of a cart. Immutable, so the same instance can be shared by
+ * cart snapshots, responses and events.
+ */
+@Value
+@Builder(toBuilder = true)
+@Jacksonized
 public class CartItem {
-    private Long productId;
-    private String productName;
-    private BigDecimal price;
-    private Integer quantity;
-    private BigDecimal subtotal;
+    Long productId;
+    String productName;
+    Money price;
+    Integer quantity;
+    Money subtotal;
 }
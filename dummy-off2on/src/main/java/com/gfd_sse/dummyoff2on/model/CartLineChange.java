@@ -0,0 +1,59 @@
+package com.gfd_sse.dummyoff2on.model;
+
+/**
+ * One change to a cart line, as applied by a batch mutation.
+ *
+ * ADD: quantity more of the product. SET: the line gets exactly this
+ * quantity (0 removes it). REMOVE: the line is dropped.
+ */
+public final class CartLineChange {
+
+    public enum Type {
+        ADD,
+        SET,
+        REMOVE
+    }
+
+    private final Type type;
+    private final Long productId;
+    private final Product product;
+    private final int quantity;
+
+    private CartLineChange(Type type, Long productId, Product product, int quantity) {
+        this.type = type;
+        this.productId = productId;
+        this.product = product;
+        this.quantity = quantity;
+    }
+
+    public static CartLineChange add(Product product, int quantity) {
+        return new CartLineChange(Type.ADD, product.getId(), product, quantity);
+    }
+
+    public static CartLineChange set(Product product, int quantity) {
+        return new CartLineChange(Type.SET, product.getId(), product, quantity);
+    }
+
+    public static CartLineChange remove(Long productId) {
+        return new CartLineChange(Type.REMOVE, productId, null, 0);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    /**
+     * Product details for the line; null for REMOVE
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+}
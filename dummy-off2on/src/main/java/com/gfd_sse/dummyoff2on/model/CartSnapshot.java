@@ -0,0 +1,133 @@
+package com.gfd_sse.dummyoff2on.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable state of one user's cart.
+ *
+ * Lines are indexed by productId and totals are carried along, so totals
+ * are updated from the changed lines instead of rescanning the cart. Every
+ * mutation returns a new snapshot (copy-on-write): the line index and list
+ * are copied, O(lines) per mutation, which is cheap at cart sizes. Lines
+ * are immutable CartItems shared between snapshots, so a snapshot can be
+ * handed to the HTTP response and the published event at the same time.
+ */
+public final class CartSnapshot {
+
+    public static final CartSnapshot EMPTY = new CartSnapshot(Map.of(), Money.ZERO, 0, 0);
+
+    private final Map<Long, CartItem> linesByProduct;
+    private final List<CartItem> items;
+    private final Money totalAmount;
+    private final int totalItems;
+    private final long version;
+
+    private CartSnapshot(Map<Long, CartItem> linesByProduct, Money totalAmount, int totalItems,
+            long version) {
+        this.linesByProduct = linesByProduct;
+        this.items = List.copyOf(linesByProduct.values());
+        this.totalAmount = totalAmount;
+        this.totalItems = totalItems;
+        this.version = version;
+    }
+
+    /**
+     * Rebuild a snapshot from stored state (lines in cart order)
+     */
+    public static CartSnapshot restore(List<CartItem> items, Money totalAmount, int totalItems, long version) {
+        Map<Long, CartItem> lines = new LinkedHashMap<>();
+        for (CartItem item : items) {
+            lines.put(item.getProductId(), item);
+        }
+        return new CartSnapshot(Collections.unmodifiableMap(lines), totalAmount, totalItems, version);
+    }
+
+    /**
+     * New snapshot with quantity more of the product; the line is created at
+     * the end of the cart if the product is not in it yet
+     */
+    public CartSnapshot withItemAdded(Product product, int quantity) {
+        return withChanges(List.of(CartLineChange.add(product, quantity)));
+    }
+
+    /**
+     * New snapshot with all changes applied in order, as a single mutation.
+     * Lines keep their position when their quantity changes; a removed line
+     * that is added again goes to the end.
+     */
+    public CartSnapshot withChanges(List<CartLineChange> changes) {
+        Map<Long, CartItem> lines = new LinkedHashMap<>(linesByProduct);
+        Money amount = totalAmount;
+        int itemCount = totalItems;
+
+        for (CartLineChange change : changes) {
+            CartItem current = lines.get(change.getProductId());
+            int currentQuantity = current != null ? current.getQuantity() : 0;
+            int newQuantity = switch (change.getType()) {
+                case ADD -> currentQuantity + change.getQuantity();
+                case SET -> change.getQuantity();
+                case REMOVE -> 0;
+            };
+
+            if (current != null) {
+                amount = amount.minus(current.getSubtotal());
+            }
+            if (newQuantity > 0) {
+                CartItem line = line(change.getProduct(), newQuantity);
+                lines.put(change.getProductId(), line);
+                amount = amount.plus(line.getSubtotal());
+            } else {
+                lines.remove(change.getProductId());
+            }
+            itemCount += newQuantity - currentQuantity;
+        }
+
+        return new CartSnapshot(Collections.unmodifiableMap(lines), amount, itemCount, version + 1);
+    }
+
+    /**
+     * The cart line for a product, or null
+     */
+    public CartItem getLine(Long productId) {
+        return linesByProduct.get(productId);
+    }
+
+    /**
+     * Lines in the order they were first added. Unmodifiable.
+     */
+    public List<CartItem> getItems() {
+        return items;
+    }
+
+    public Money getTotalAmount() {
+        return totalAmount;
+    }
+
+    public int getTotalItems() {
+        return totalItems;
+    }
+
+    /**
+     * Number of mutations applied to this cart; used to detect concurrent changes
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isEmpty() {
+        return linesByProduct.isEmpty();
+    }
+
+    private static CartItem line(Product product, int quantity) {
+        return CartItem.builder()
+                .productId(product.getId())
+                .productName(product.getName())
+                .price(product.getPrice())
+                .quantity(quantity)
+                .subtotal(product.getPrice().times(quantity))
+                .build();
+    }
+}
@@ -0,0 +1,19 @@
+package com.gfd_sse.dummyoff2on.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An OTP claimed for a user, with the time (epoch ms) it stops being valid
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IssuedOTP {
+    private String otp;
+    private String userId;
+    private long expiresAt;
+}
@@ -5,17 +5,15 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
-
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class Product {
     private Long id;
     private String name;
     private String description;
-    private BigDecimal price;
+    private Money price;
     private String category;
     private Integer stockQuantity;
     private String imageUrl;
@@ -0,0 +1,111 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import com.gfd_sse.dummyoff2on.model.CartSnapshot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least-recently-used local copy of carts stored in Redis.
+ * Entries also expire after a fixed time, which bounds how long a read can
+ * be stale if an invalidation message is lost.
+ *
+ * A read that started before an invalidation must not put its older cart
+ * back. Each invalidation takes a new generation number and is remembered
+ * per user (a bounded set of tombstones). Callers take {@link #generation()}
+ * before going to Redis and pass it to put. The put is skipped if the user
+ * was invalidated since then, or if a tombstone that might have covered
+ * that time has already been dropped.
+ */
+class CartNearCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+    // userId -> generation of its last invalidation
+    private final Map<String, Long> tombstones;
+
+    private long generation;
+    // Highest generation among tombstones dropped to stay within maxEntries
+    private long forgottenThrough;
+
+    CartNearCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CartNearCache.this.maxEntries;
+            }
+        };
+        this.tombstones = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() <= Math.max(1, CartNearCache.this.maxEntries)) {
+                    return false;
+                }
+                forgottenThrough = Math.max(forgottenThrough, eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Current invalidation generation, to be passed to put by a read that starts now
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    synchronized CartSnapshot get(String userId) {
+        Entry entry = entries.get(userId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.cachedAt > ttlMillis) {
+            entries.remove(userId);
+            return null;
+        }
+        return entry.cart;
+    }
+
+    /**
+     * Cache a cart read at the given generation, unless a newer version is
+     * already cached or the user was invalidated after the read started
+     */
+    synchronized void put(String userId, CartSnapshot cart, long readGeneration) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        Long invalidated = tombstones.get(userId);
+        if (invalidated != null ? invalidated > readGeneration : forgottenThrough > readGeneration) {
+            return;
+        }
+        Entry current = entries.get(userId);
+        if (current == null || current.cart.getVersion() <= cart.getVersion()) {
+            entries.put(userId, new Entry(cart, System.currentTimeMillis()));
+        }
+    }
+
+    synchronized void invalidate(String userId) {
+        entries.remove(userId);
+        // Re-insert so the tombstone moves to the young end
+        tombstones.remove(userId);
+        tombstones.put(userId, ++generation);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+
+        private final CartSnapshot cart;
+        private final long cachedAt;
+
+        private Entry(CartSnapshot cart, long cachedAt) {
+            this.cart = cart;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
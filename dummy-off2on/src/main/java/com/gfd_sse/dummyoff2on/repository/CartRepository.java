@@ -0,0 +1,60 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import com.gfd_sse.dummyoff2on.model.CartLineChange;
+import com.gfd_sse.dummyoff2on.model.CartSnapshot;
+import com.gfd_sse.dummyoff2on.model.Product;
+
+import java.util.List;
+
+/**
+ * Storage for user carts and their event sequence numbers.
+ * Selected with cart.store: memory (single instance) or redis (shared by
+ * all dummy-off2on instances).
+ */
+public interface CartRepository {
+
+    /**
+     * Current cart for a user, never null
+     */
+    CartSnapshot find(String userId);
+
+    /**
+     * Atomically add quantity of a product to the user's cart and take the
+     * next event sequence number for it
+     */
+    CartUpdate addItem(String userId, Product product, int quantity);
+
+    /**
+     * Atomically apply all changes, in order, to the user's cart as one
+     * mutation and take a single event sequence number for it
+     */
+    CartUpdate applyChanges(String userId, List<CartLineChange> changes);
+
+    /**
+     * Current cart and the sequence number of a full snapshot event for it,
+     * taken atomically with the read so no mutation can fall in between.
+     * A user without a cart gets an empty cart and sequence 0.
+     */
+    CartUpdate snapshot(String userId);
+
+    /**
+     * Next event sequence number for a user's cart, without changing the cart.
+     * A user without a cart gets 0 and no sequence is created for them.
+     */
+    long nextSequence(String userId);
+
+    /**
+     * Delete the cart only if it is still at the given version. The sequence
+     * number of the event announcing the deletion is taken in the same
+     * atomic step; the sequence then restarts with the next cart.
+     *
+     * @return the sequence number for the deletion event, or 0 if the cart
+     *         was not deleted
+     */
+    long deleteIfUnchanged(String userId, long version);
+
+    /**
+     * Delete the cart and reset its sequence
+     */
+    void delete(String userId);
+}
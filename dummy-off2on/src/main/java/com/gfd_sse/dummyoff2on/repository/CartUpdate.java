@@ -0,0 +1,26 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import com.gfd_sse.dummyoff2on.model.CartSnapshot;
+
+/**
+ * Result of a cart mutation or snapshot: the cart and the sequence number
+ * of the event that announces it
+ */
+public final class CartUpdate {
+
+    private final CartSnapshot cart;
+    private final long sequence;
+
+    public CartUpdate(CartSnapshot cart, long sequence) {
+        this.cart = cart;
+        this.sequence = sequence;
+    }
+
+    public CartSnapshot getCart() {
+        return cart;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,282 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import com.gfd_sse.dummyoff2on.event.CartEvictedEvent;
+import com.gfd_sse.dummyoff2on.model.CartLineChange;
+import com.gfd_sse.dummyoff2on.model.CartSnapshot;
+import com.gfd_sse.dummyoff2on.model.Product;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Carts held in this JVM only (cart.store=memory, the default).
+ * Lost on restart and not shared between instances.
+ *
+ * Carts not read or changed for cart.idle-ttl-minutes are evicted, and the
+ * store never holds more than cart.max-entries carts. Expiry uses a timing
+ * wheel: a cart is filed once, in the bucket of its expiry time, when it is
+ * created. Reads and writes only stamp the access time. The sweep drains the
+ * buckets that have come due and either evicts a cart or refiles it under
+ * its new expiry time, so expiry costs nothing on the request path and the
+ * sweep only looks at carts that might be due. When the store is full the
+ * earliest buckets are evicted first, which approximates LRU.
+ */
+@Repository
+@ConditionalOnProperty(name = "cart.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryCartRepository implements CartRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryCartRepository.class);
+
+    // Wheel resolution: a cart is evicted at most idle TTL / BUCKETS_PER_TTL after it expired
+    private static final int BUCKETS_PER_TTL = 64;
+
+    @Value("${cart.idle-ttl-minutes:30}")
+    private long idleTtlMinutes;
+
+    @Value("${cart.max-entries:100000}")
+    private int maxEntries;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    // userId -> current immutable cart and its event sequence, replaced atomically on every mutation.
+    // The sequence lives in the entry, so it is created and removed together with the cart.
+    private final Map<String, CartEntry> carts = new ConcurrentHashMap<>();
+
+    // Expiry bucket -> users filed there. Sets are only touched inside compute/remove.
+    private final Map<Long, Set<String>> buckets = new ConcurrentHashMap<>();
+
+    // The sweep and capacity trims never run concurrently
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private long idleTtlMillis;
+    private long bucketMillis;
+
+    // Last bucket drained by the sweep; guarded by evictionLock
+    private long sweptThrough;
+
+    public InMemoryCartRepository(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void init() {
+        idleTtlMillis = TimeUnit.MINUTES.toMillis(idleTtlMinutes);
+        bucketMillis = Math.max(1000, idleTtlMillis / BUCKETS_PER_TTL);
+        sweptThrough = System.currentTimeMillis() / bucketMillis - 1;
+    }
+
+    @Override
+    public CartSnapshot find(String userId) {
+        CartEntry entry = carts.get(userId);
+        if (entry == null) {
+            return CartSnapshot.EMPTY;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        return entry.cart;
+    }
+
+    @Override
+    public CartUpdate addItem(String userId, Product product, int quantity) {
+        return applyChanges(userId, List.of(CartLineChange.add(product, quantity)));
+    }
+
+    @Override
+    public CartUpdate applyChanges(String userId, List<CartLineChange> changes) {
+        long now = System.currentTimeMillis();
+
+        // The sequence is taken under the cart's lock so sequence numbers follow the order of mutations
+        boolean[] created = new boolean[1];
+        CartEntry entry = carts.compute(userId, (k, current) -> {
+            created[0] = current == null;
+            if (current == null) {
+                return new CartEntry(CartSnapshot.EMPTY.withChanges(changes), now, 1);
+            }
+            return new CartEntry(current.cart.withChanges(changes), now, current.sequence + 1);
+        });
+
+        if (created[0]) {
+            file(userId, expiryBucket(now));
+            if (carts.size() > maxEntries) {
+                trimToCapacity();
+            }
+        }
+        return new CartUpdate(entry.cart, entry.sequence);
+    }
+
+    @Override
+    public CartUpdate snapshot(String userId) {
+        long[] sequence = new long[1];
+        CartEntry entry = carts.computeIfPresent(userId, (k, current) -> {
+            sequence[0] = ++current.sequence;
+            current.lastAccess = System.currentTimeMillis();
+            return current;
+        });
+        return entry != null ? new CartUpdate(entry.cart, sequence[0]) : new CartUpdate(CartSnapshot.EMPTY, 0);
+    }
+
+    @Override
+    public long nextSequence(String userId) {
+        // A user without a cart gets no entry, and so no sequence
+        long[] sequence = new long[1];
+        carts.computeIfPresent(userId, (k, current) -> {
+            sequence[0] = ++current.sequence;
+            return current;
+        });
+        return sequence[0];
+    }
+
+    @Override
+    public long deleteIfUnchanged(String userId, long version) {
+        long[] sequence = new long[1];
+        carts.computeIfPresent(userId, (k, current) -> {
+            if (current.cart.getVersion() != version) {
+                return current;
+            }
+            sequence[0] = current.sequence + 1;
+            return null;
+        });
+        return sequence[0];
+    }
+
+    @Override
+    public void delete(String userId) {
+        carts.remove(userId);
+    }
+
+    /**
+     * Evict the carts in every bucket that has come due since the last sweep
+     */
+    @Scheduled(fixedDelayString = "${cart.eviction.sweep-interval-ms:10000}")
+    public void evictIdleCarts() {
+        List<String> evicted = new ArrayList<>();
+        evictionLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            long lastDue = now / bucketMillis - 1;
+            for (long bucket = sweptThrough + 1; bucket <= lastDue; bucket++) {
+                Set<String> users = buckets.remove(bucket);
+                if (users != null) {
+                    for (String userId : users) {
+                        evictOrRefile(userId, bucket, evicted);
+                    }
+                }
+                sweptThrough = bucket;
+            }
+        } catch (Exception e) {
+            logger.error("Failed to evict idle carts", e);
+        } finally {
+            evictionLock.unlock();
+        }
+
+        if (!evicted.isEmpty()) {
+            logger.info("Evicted {} idle carts ({} remaining)", evicted.size(), carts.size());
+        }
+        publishEvictions(evicted, CartEvictedEvent.Reason.IDLE);
+    }
+
+    /**
+     * Evict the least recently used carts until the store is back within
+     * cart.max-entries. Skipped if another thread is already evicting.
+     */
+    private void trimToCapacity() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+        try {
+            long lastBucket = expiryBucket(System.currentTimeMillis());
+            for (long bucket = sweptThrough + 1; bucket <= lastBucket && carts.size() > maxEntries; bucket++) {
+                Set<String> users = buckets.remove(bucket);
+                if (users == null) {
+                    continue;
+                }
+                Iterator<String> it = users.iterator();
+                while (it.hasNext() && carts.size() > maxEntries) {
+                    evictOrRefile(it.next(), bucket, evicted);
+                }
+                // Put back what this bucket still holds
+                long filedBucket = bucket;
+                it.forEachRemaining(userId -> file(userId, filedBucket));
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+
+        if (!evicted.isEmpty()) {
+            logger.warn("Cart store over {} entries: evicted {} least recently used carts", maxEntries,
+                    evicted.size());
+        }
+        publishEvictions(evicted, CartEvictedEvent.Reason.CAPACITY);
+    }
+
+    /**
+     * Evict a cart drained from a bucket, unless it was used since it was
+     * filed there; then file it under its current expiry time instead
+     */
+    private void evictOrRefile(String userId, long bucket, List<String> evicted) {
+        CartEntry entry = carts.get(userId);
+        if (entry == null) {
+            // Checked out or cleared meanwhile
+            return;
+        }
+
+        long due = expiryBucket(entry.lastAccess);
+        if (due > bucket) {
+            file(userId, due);
+        } else if (carts.remove(userId, entry)) {
+            evicted.add(userId);
+        } else {
+            // Changed while we looked at it, so it is not idle
+            file(userId, expiryBucket(System.currentTimeMillis()));
+        }
+    }
+
+    private void file(String userId, long bucket) {
+        buckets.compute(bucket, (k, users) -> {
+            Set<String> filed = users != null ? users : new HashSet<>();
+            filed.add(userId);
+            return filed;
+        });
+    }
+
+    private long expiryBucket(long lastAccess) {
+        return (lastAccess + idleTtlMillis) / bucketMillis;
+    }
+
+    private void publishEvictions(List<String> userIds, CartEvictedEvent.Reason reason) {
+        for (String userId : userIds) {
+            eventPublisher.publishEvent(new CartEvictedEvent(userId, reason));
+        }
+    }
+
+    private static final class CartEntry {
+
+        private final CartSnapshot cart;
+        private volatile long lastAccess;
+
+        // Last event sequence number taken; only read and written inside carts.compute*
+        private long sequence;
+
+        private CartEntry(CartSnapshot cart, long lastAccess, long sequence) {
+            this.cart = cart;
+            this.lastAccess = lastAccess;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stock held in this JVM (stock.store=memory, the default).
+ *
+ * Each product has its own atomic counter and units are taken with a
+ * compare-and-set loop, so checkouts only contend when they touch the same
+ * product and no global lock is needed. A multi-product reservation takes
+ * products one by one and gives back what it took if one of them falls short.
+ */
+@Repository
+@ConditionalOnProperty(name = "stock.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryStockLedger implements StockLedger {
+
+    private final Map<Long, AtomicInteger> availableStock = new ConcurrentHashMap<>();
+    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+
+    @Override
+    public void initialize(Long productId, int quantity) {
+        availableStock.putIfAbsent(productId, new AtomicInteger(quantity));
+    }
+
+    @Override
+    public int available(Long productId) {
+        AtomicInteger counter = availableStock.get(productId);
+        return counter != null ? counter.get() : 0;
+    }
+
+    @Override
+    public Map<Long, Integer> available(Collection<Long> productIds) {
+        Map<Long, Integer> units = new HashMap<>(productIds.size() * 2);
+        for (Long productId : productIds) {
+            units.put(productId, available(productId));
+        }
+        return units;
+    }
+
+    @Override
+    public int adjust(Long productId, int delta) {
+        return availableStock.computeIfAbsent(productId, k -> new AtomicInteger())
+                .updateAndGet(current -> Math.max(0, current + delta));
+    }
+
+    @Override
+    public boolean reserve(String reservationId, Map<Long, Integer> quantities, Duration ttl) {
+        if (reservations.containsKey(reservationId)) {
+            return false;
+        }
+
+        List<Map.Entry<Long, Integer>> taken = new ArrayList<>();
+        for (Map.Entry<Long, Integer> item : quantities.entrySet()) {
+            if (!tryTake(item.getKey(), item.getValue())) {
+                taken.forEach(entry -> giveBack(entry.getKey(), entry.getValue()));
+                return false;
+            }
+            taken.add(item);
+        }
+
+        Reservation reservation = new Reservation(Map.copyOf(quantities), System.currentTimeMillis() + ttl.toMillis());
+        if (reservations.putIfAbsent(reservationId, reservation) != null) {
+            // Lost a race for the same id
+            taken.forEach(entry -> giveBack(entry.getKey(), entry.getValue()));
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean commit(String reservationId) {
+        return reservations.remove(reservationId) != null;
+    }
+
+    @Override
+    public boolean release(String reservationId) {
+        Reservation reservation = reservations.remove(reservationId);
+        if (reservation == null) {
+            return false;
+        }
+        reservation.quantities.forEach(this::giveBack);
+        return true;
+    }
+
+    @Override
+    public int releaseExpired() {
+        long now = System.currentTimeMillis();
+        int released = 0;
+        for (Map.Entry<String, Reservation> entry : reservations.entrySet()) {
+            Reservation reservation = entry.getValue();
+            // remove(key, value) so a concurrent commit or release wins cleanly
+            if (reservation.expiresAt <= now && reservations.remove(entry.getKey(), reservation)) {
+                reservation.quantities.forEach(this::giveBack);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    private boolean tryTake(Long productId, int quantity) {
+        AtomicInteger counter = availableStock.get(productId);
+        if (counter == null) {
+            return false;
+        }
+        while (true) {
+            int current = counter.get();
+            if (current < quantity) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    private void giveBack(Long productId, int quantity) {
+        availableStock.computeIfAbsent(productId, k -> new AtomicInteger()).addAndGet(quantity);
+    }
+
+    private static final class Reservation {
+
+        private final Map<Long, Integer> quantities;
+        private final long expiresAt;
+
+        private Reservation(Map<Long, Integer> quantities, long expiresAt) {
+            this.quantities = quantities;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
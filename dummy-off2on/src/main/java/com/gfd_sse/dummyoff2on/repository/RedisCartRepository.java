@@ -0,0 +1,503 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gfd_sse.dummyoff2on.event.CartEvictedEvent;
+import com.gfd_sse.dummyoff2on.model.CartItem;
+import com.gfd_sse.dummyoff2on.model.CartLineChange;
+import com.gfd_sse.dummyoff2on.model.CartSnapshot;
+import com.gfd_sse.dummyoff2on.model.Money;
+import com.gfd_sse.dummyoff2on.model.Product;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carts stored in Redis (cart.store=redis), shared by all dummy-off2on
+ * instances and kept across restarts.
+ *
+ * Each cart is one hash, cart:{userId}, with per line q:/s:/o:/l:{productId}
+ * fields (quantity, subtotal in minor units, position, product details) and
+ * the running totals. A mutation is a single Lua script that updates the line
+ * and totals atomically, tells the other instances to drop their cached copy
+ * over redis.channel.cart-invalidations and returns the whole cart, so it
+ * costs one round trip. Reads are served from that bounded near-cache.
+ *
+ * Both keys expire after cart.idle-ttl-minutes without a write or a read
+ * that reached Redis, so abandoned carts are removed by Redis itself. With
+ * cart.redis.expiry-events.enabled the expiry is picked up from keyspace
+ * notifications and raised as a CartEvictedEvent, like the memory store's
+ * evictions. Redis sends the notification when it actually deletes the key,
+ * which can be some time after the TTL ran out.
+ */
+@Repository
+@ConditionalOnProperty(name = "cart.store", havingValue = "redis")
+public class RedisCartRepository implements CartRepository, MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCartRepository.class);
+
+    // KEYS: cart, sequence, expiry claim. ARGV: productId, quantity, unit price (minor units), line JSON,
+    // idle TTL (ms), invalidation channel, invalidation message. Returns the new sequence number followed
+    // by the cart's HGETALL. Creating the cart drops the claim on an earlier expiry of the same cart.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ADD_ITEM_SCRIPT = new DefaultRedisScript<>(
+            "local cart = KEYS[1] "
+                    + "local pid = ARGV[1] "
+                    + "local qty = tonumber(ARGV[2]) "
+                    + "local quantity = redis.call('HINCRBY', cart, 'q:' .. pid, qty) "
+                    + "if quantity == qty then "
+                    + "  redis.call('HSET', cart, 'o:' .. pid, redis.call('HINCRBY', cart, 'lines', 1)) "
+                    + "end "
+                    + "local previous = tonumber(redis.call('HGET', cart, 's:' .. pid) or '0') "
+                    + "local subtotal = quantity * tonumber(ARGV[3]) "
+                    + "redis.call('HSET', cart, 's:' .. pid, subtotal, 'l:' .. pid, ARGV[4]) "
+                    + "redis.call('HINCRBY', cart, 'total:minor', subtotal - previous) "
+                    + "redis.call('HINCRBY', cart, 'total:items', qty) "
+                    + "if redis.call('HINCRBY', cart, 'version', 1) == 1 then "
+                    + "  redis.call('DEL', KEYS[3]) "
+                    + "end "
+                    + "local sequence = redis.call('INCR', KEYS[2]) "
+                    + "redis.call('PEXPIRE', cart, ARGV[5]) "
+                    + "redis.call('PEXPIRE', KEYS[2], ARGV[5]) "
+                    + "redis.call('PUBLISH', ARGV[6], ARGV[7]) "
+                    + "local result = redis.call('HGETALL', cart) "
+                    + "table.insert(result, 1, sequence) "
+                    + "return result",
+            List.class);
+
+    // KEYS: cart, sequence, expiry claim. ARGV: idle TTL (ms), invalidation channel, invalidation message, then per
+    // change: type (ADD/SET/REMOVE), productId, quantity, unit price (minor units), line JSON.
+    // Returns like ADD_ITEM_SCRIPT.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> APPLY_CHANGES_SCRIPT = new DefaultRedisScript<>(
+            "local cart = KEYS[1] "
+                    + "for i = 4, #ARGV, 5 do "
+                    + "  local pid = ARGV[i + 1] "
+                    + "  local current = tonumber(redis.call('HGET', cart, 'q:' .. pid) or '0') "
+                    + "  local previous = tonumber(redis.call('HGET', cart, 's:' .. pid) or '0') "
+                    + "  local quantity = 0 "
+                    + "  if ARGV[i] == 'ADD' then "
+                    + "    quantity = current + tonumber(ARGV[i + 2]) "
+                    + "  elseif ARGV[i] == 'SET' then "
+                    + "    quantity = tonumber(ARGV[i + 2]) "
+                    + "  end "
+                    + "  if quantity > 0 then "
+                    + "    if current == 0 then "
+                    + "      redis.call('HSET', cart, 'o:' .. pid, redis.call('HINCRBY', cart, 'lines', 1)) "
+                    + "    end "
+                    + "    local subtotal = quantity * tonumber(ARGV[i + 3]) "
+                    + "    redis.call('HSET', cart, 'q:' .. pid, quantity, 's:' .. pid, subtotal, 'l:' .. pid, ARGV[i + 4]) "
+                    + "    redis.call('HINCRBY', cart, 'total:minor', subtotal - previous) "
+                    + "  else "
+                    + "    redis.call('HDEL', cart, 'q:' .. pid, 's:' .. pid, 'o:' .. pid, 'l:' .. pid) "
+                    + "    redis.call('HINCRBY', cart, 'total:minor', -previous) "
+                    + "  end "
+                    + "  redis.call('HINCRBY', cart, 'total:items', quantity - current) "
+                    + "end "
+                    + "if redis.call('HINCRBY', cart, 'version', 1) == 1 then "
+                    + "  redis.call('DEL', KEYS[3]) "
+                    + "end "
+                    + "local sequence = redis.call('INCR', KEYS[2]) "
+                    + "redis.call('PEXPIRE', cart, ARGV[1]) "
+                    + "redis.call('PEXPIRE', KEYS[2], ARGV[1]) "
+                    + "redis.call('PUBLISH', ARGV[2], ARGV[3]) "
+                    + "local result = redis.call('HGETALL', cart) "
+                    + "table.insert(result, 1, sequence) "
+                    + "return result",
+            List.class);
+
+    // KEYS: cart, sequence. ARGV: idle TTL (ms). Reads the cart and restarts its idle timer.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> FIND_SCRIPT = new DefaultRedisScript<>(
+            "local result = redis.call('HGETALL', KEYS[1]) "
+                    + "if #result > 0 then "
+                    + "  redis.call('PEXPIRE', KEYS[1], ARGV[1]) "
+                    + "  redis.call('PEXPIRE', KEYS[2], ARGV[1]) "
+                    + "end "
+                    + "return result",
+            List.class);
+
+    // KEYS: cart, sequence. ARGV: idle TTL (ms). Like FIND_SCRIPT, but takes the next sequence
+    // number in the same step; returns it followed by the HGETALL, or just 0 if there is no cart.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SNAPSHOT_SCRIPT = new DefaultRedisScript<>(
+            "local result = redis.call('HGETALL', KEYS[1]) "
+                    + "if #result == 0 then "
+                    + "  return {0} "
+                    + "end "
+                    + "local sequence = redis.call('INCR', KEYS[2]) "
+                    + "redis.call('PEXPIRE', KEYS[1], ARGV[1]) "
+                    + "redis.call('PEXPIRE', KEYS[2], ARGV[1]) "
+                    + "table.insert(result, 1, sequence) "
+                    + "return result",
+            List.class);
+
+    // KEYS: cart, sequence. Takes the next sequence number only if the cart exists, else returns 0.
+    // The sequence key gets the cart's remaining TTL, so the two still expire together.
+    private static final RedisScript<Long> NEXT_SEQUENCE_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = redis.call('PTTL', KEYS[1]) "
+                    + "if ttl == -2 then "
+                    + "  return 0 "
+                    + "end "
+                    + "local sequence = redis.call('INCR', KEYS[2]) "
+                    + "if ttl > 0 then redis.call('PEXPIRE', KEYS[2], ttl) end "
+                    + "return sequence",
+            Long.class);
+
+    // KEYS: cart, sequence. ARGV: expected version, invalidation channel, invalidation message. Returns
+    // the sequence number for the deletion event, taken before the keys are deleted, or 0 if the cart
+    // is missing or at another version.
+    private static final RedisScript<Long> DELETE_IF_UNCHANGED_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 "
+                    + "    and tonumber(redis.call('HGET', KEYS[1], 'version') or '0') == tonumber(ARGV[1]) then "
+                    + "  local sequence = redis.call('INCR', KEYS[2]) "
+                    + "  redis.call('DEL', KEYS[1], KEYS[2]) "
+                    + "  redis.call('PUBLISH', ARGV[2], ARGV[3]) "
+                    + "  return sequence "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
+    @Value("${cart.redis.key-prefix:cart:}")
+    private String keyPrefix;
+
+    @Value("${redis.channel.cart-invalidations:cart-invalidations}")
+    private String invalidationChannel;
+
+    @Value("${cart.idle-ttl-minutes:30}")
+    private long idleTtlMinutes;
+
+    @Value("${cart.near-cache.max-entries:10000}")
+    private int nearCacheMaxEntries;
+
+    @Value("${cart.near-cache.ttl-seconds:30}")
+    private long nearCacheTtlSeconds;
+
+    // Publish CART_DELETED when Redis expires a cart; needs keyspace notifications for expired keys
+    @Value("${cart.redis.expiry-events.enabled:true}")
+    private boolean expiryEventsEnabled;
+
+    @Value("${spring.data.redis.database:0}")
+    private int database;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Identifies this instance's own invalidation messages
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private CartNearCache nearCache;
+
+    public RedisCartRepository(StringRedisTemplate stringRedisTemplate, ObjectMapper objectMapper,
+            ApplicationEventPublisher eventPublisher) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void init() {
+        nearCache = new CartNearCache(nearCacheMaxEntries, nearCacheTtlSeconds * 1000L);
+        if (expiryEventsEnabled) {
+            enableExpiryNotifications();
+        }
+    }
+
+    public String getInvalidationChannel() {
+        return invalidationChannel;
+    }
+
+    /**
+     * Channel on which Redis announces expired keys, or null when expiry
+     * events are disabled
+     */
+    public String getExpiryChannel() {
+        return expiryEventsEnabled ? "__keyevent@" + database + "__:expired" : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CartSnapshot find(String userId) {
+        CartSnapshot cached = nearCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = nearCache.generation();
+        List<Object> result = stringRedisTemplate.execute(FIND_SCRIPT,
+                List.of(cartKey(userId), sequenceKey(userId)), idleTtlMillis());
+        CartSnapshot cart = toSnapshot(toHash(result, 0));
+        nearCache.put(userId, cart, generation);
+        return cart;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CartUpdate addItem(String userId, Product product, int quantity) {
+        long generation = nearCache.generation();
+        List<Object> result = stringRedisTemplate.execute(ADD_ITEM_SCRIPT,
+                List.of(cartKey(userId), sequenceKey(userId), expiryClaimKey(userId)),
+                String.valueOf(product.getId()),
+                String.valueOf(quantity),
+                String.valueOf(product.getPrice().getMinorUnits()),
+                lineJson(product),
+                idleTtlMillis(),
+                invalidationChannel,
+                invalidationMessage(userId));
+        return toUpdate(userId, result, generation);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CartUpdate applyChanges(String userId, List<CartLineChange> changes) {
+        List<String> args = new ArrayList<>(3 + changes.size() * 5);
+        args.add(idleTtlMillis());
+        args.add(invalidationChannel);
+        args.add(invalidationMessage(userId));
+        for (CartLineChange change : changes) {
+            Product product = change.getProduct();
+            args.add(change.getType().name());
+            args.add(String.valueOf(change.getProductId()));
+            args.add(String.valueOf(change.getQuantity()));
+            args.add(product != null ? String.valueOf(product.getPrice().getMinorUnits()) : "0");
+            args.add(product != null ? lineJson(product) : "");
+        }
+
+        long generation = nearCache.generation();
+        List<Object> result = stringRedisTemplate.execute(APPLY_CHANGES_SCRIPT,
+                List.of(cartKey(userId), sequenceKey(userId), expiryClaimKey(userId)), args.toArray());
+        return toUpdate(userId, result, generation);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CartUpdate snapshot(String userId) {
+        // Always from Redis: the sequence number has to match the cart it is read with
+        long generation = nearCache.generation();
+        List<Object> result = stringRedisTemplate.execute(SNAPSHOT_SCRIPT,
+                List.of(cartKey(userId), sequenceKey(userId)), idleTtlMillis());
+        long sequence = ((Number) result.get(0)).longValue();
+        CartSnapshot cart = toSnapshot(toHash(result, 1));
+        nearCache.put(userId, cart, generation);
+        return new CartUpdate(cart, sequence);
+    }
+
+    @Override
+    public long nextSequence(String userId) {
+        Long sequence = stringRedisTemplate.execute(NEXT_SEQUENCE_SCRIPT,
+                List.of(cartKey(userId), sequenceKey(userId)));
+        return sequence != null ? sequence : 0L;
+    }
+
+    @Override
+    public long deleteIfUnchanged(String userId, long version) {
+        Long sequence = stringRedisTemplate.execute(DELETE_IF_UNCHANGED_SCRIPT,
+                List.of(cartKey(userId), sequenceKey(userId)), String.valueOf(version),
+                invalidationChannel, invalidationMessage(userId));
+        // Either way the local copy goes: on a mismatch the caller worked from an outdated cart,
+        // possibly this instance's cached copy
+        nearCache.invalidate(userId);
+        return sequence != null ? sequence : 0L;
+    }
+
+    @Override
+    public void delete(String userId) {
+        stringRedisTemplate.delete(List.of(cartKey(userId), sequenceKey(userId)));
+
+        nearCache.invalidate(userId);
+        publishInvalidation(userId);
+    }
+
+    /**
+     * Another instance changed a cart, or Redis expired one: drop the local copy
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (new String(message.getChannel(), StandardCharsets.UTF_8).equals(getExpiryChannel())) {
+            onKeyExpired(body);
+            return;
+        }
+
+        String[] parts = body.split(":", 2);
+        if (parts.length == 2 && !instanceId.equals(parts[0])) {
+            nearCache.invalidate(parts[1]);
+        }
+    }
+
+    /**
+     * Every instance drops its cached copy of an expired cart, and the one
+     * that claims the expiry first raises CartEvictedEvent, so displays get a
+     * single CART_DELETED. The claim lasts until the cart is created again,
+     * or a minute at most.
+     */
+    private void onKeyExpired(String key) {
+        String prefix = keyPrefix + "{";
+        if (!key.startsWith(prefix) || !key.endsWith("}")) {
+            // The sequence key or some other key
+            return;
+        }
+        String userId = key.substring(prefix.length(), key.length() - 1);
+        nearCache.invalidate(userId);
+
+        try {
+            Boolean claimed = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(expiryClaimKey(userId), instanceId, 1, TimeUnit.MINUTES);
+            if (Boolean.TRUE.equals(claimed)) {
+                eventPublisher.publishEvent(new CartEvictedEvent(userId, CartEvictedEvent.Reason.IDLE));
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to handle expiry of the cart of user: {}", userId, e);
+        }
+    }
+
+    /**
+     * Turn on expired-key notifications (flags E and x) without dropping any
+     * flags already set. Managed Redis services often refuse CONFIG; then
+     * they have to be enabled on the server, or expired carts go unannounced.
+     */
+    private void enableExpiryNotifications() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+                Properties config = connection.serverCommands().getConfig("notify-keyspace-events");
+                String flags = config != null ? config.getProperty("notify-keyspace-events", "") : "";
+                String wanted = flags;
+                if (wanted.indexOf('E') < 0) {
+                    wanted += "E";
+                }
+                if (wanted.indexOf('x') < 0 && wanted.indexOf('A') < 0) {
+                    wanted += "x";
+                }
+                if (!wanted.equals(flags)) {
+                    connection.serverCommands().setConfig("notify-keyspace-events", wanted);
+                    logger.info("Set notify-keyspace-events to {} for cart expiry events", wanted);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Could not enable keyspace notifications; set notify-keyspace-events to include Ex "
+                    + "on the Redis server, or carts that expire will not publish CART_DELETED", e);
+        }
+    }
+
+    private void publishInvalidation(String userId) {
+        try {
+            stringRedisTemplate.convertAndSend(invalidationChannel, invalidationMessage(userId));
+        } catch (Exception e) {
+            // Other instances' entries still expire after the near-cache TTL
+            logger.warn("Failed to publish cart invalidation for user: {}", userId, e);
+        }
+    }
+
+    private String invalidationMessage(String userId) {
+        return instanceId + ":" + userId;
+    }
+
+    /**
+     * Cache the cart returned by a mutation script; the script has already
+     * told the other instances
+     */
+    private CartUpdate toUpdate(String userId, List<Object> result, long generation) {
+        long sequence = ((Number) result.get(0)).longValue();
+        CartSnapshot cart = toSnapshot(toHash(result, 1));
+        nearCache.put(userId, cart, generation);
+        return new CartUpdate(cart, sequence);
+    }
+
+    /**
+     * HGETALL reply (field, value, ...) starting at offset, as a map
+     */
+    private static Map<String, String> toHash(List<Object> reply, int offset) {
+        Map<String, String> hash = new HashMap<>();
+        for (int i = offset; i + 1 < reply.size(); i += 2) {
+            hash.put((String) reply.get(i), (String) reply.get(i + 1));
+        }
+        return hash;
+    }
+
+    private String idleTtlMillis() {
+        return String.valueOf(TimeUnit.MINUTES.toMillis(idleTtlMinutes));
+    }
+
+    private CartSnapshot toSnapshot(Map<String, String> hash) {
+        if (hash.isEmpty()) {
+            return CartSnapshot.EMPTY;
+        }
+
+        List<CartItem> items = new ArrayList<>();
+        Map<Long, Long> positions = new HashMap<>();
+        hash.forEach((field, value) -> {
+            if (!field.startsWith("l:")) {
+                return;
+            }
+            String productId = field.substring(2);
+            CartItem item = readLine(value).toBuilder()
+                    .quantity(Integer.parseInt(hash.get("q:" + productId)))
+                    .subtotal(Money.ofMinor(Long.parseLong(hash.get("s:" + productId))))
+                    .build();
+            positions.put(item.getProductId(), Long.parseLong(hash.get("o:" + productId)));
+            items.add(item);
+        });
+        items.sort(Comparator.comparing(item -> positions.get(item.getProductId())));
+
+        return CartSnapshot.restore(items,
+                Money.ofMinor(Long.parseLong(hash.getOrDefault("total:minor", "0"))),
+                Integer.parseInt(hash.getOrDefault("total:items", "0")),
+                Long.parseLong(hash.getOrDefault("version", "0")));
+    }
+
+    private String lineJson(Product product) {
+        CartItem line = CartItem.builder()
+                .productId(product.getId())
+                .productName(product.getName())
+                .price(product.getPrice())
+                .build();
+        try {
+            return objectMapper.writeValueAsString(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize cart line", e);
+        }
+    }
+
+    private CartItem readLine(String json) {
+        try {
+            return objectMapper.readValue(json, CartItem.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupt cart line in Redis", e);
+        }
+    }
+
+    // Both keys share the {userId} hash tag, so scripts touching both work on Redis Cluster
+    private String cartKey(String userId) {
+        return keyPrefix + "{" + userId + "}";
+    }
+
+    private String sequenceKey(String userId) {
+        return keyPrefix + "{" + userId + "}:seq";
+    }
+
+    private String expiryClaimKey(String userId) {
+        return keyPrefix + "{" + userId + "}:expired";
+    }
+}
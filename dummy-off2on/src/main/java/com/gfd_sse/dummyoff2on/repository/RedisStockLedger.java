@@ -0,0 +1,196 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stock shared by all instances (stock.store=redis).
+ *
+ * Available units live in one hash (productId -> units), open reservations
+ * in a second hash (reservationId -> "productId:units,...") and their expiry
+ * times in a sorted set. Reserve, release and commit are Lua scripts, so each
+ * is atomic across instances. All keys share one hash tag so the scripts also
+ * run on Redis Cluster.
+ */
+@Repository
+@ConditionalOnProperty(name = "stock.store", havingValue = "redis")
+public class RedisStockLedger implements StockLedger {
+
+    // Reservations released per expiry sweep iteration
+    private static final int EXPIRY_BATCH = 100;
+
+    // KEYS: available, reservations, expiry. ARGV: id, expiresAt, then productId/units pairs.
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[2], ARGV[1]) == 1 then return 0 end "
+                    + "for i = 3, #ARGV, 2 do "
+                    + "  if tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0') < tonumber(ARGV[i + 1]) then "
+                    + "    return 0 "
+                    + "  end "
+                    + "end "
+                    + "local items = {} "
+                    + "for i = 3, #ARGV, 2 do "
+                    + "  redis.call('HINCRBY', KEYS[1], ARGV[i], -tonumber(ARGV[i + 1])) "
+                    + "  table.insert(items, ARGV[i] .. ':' .. ARGV[i + 1]) "
+                    + "end "
+                    + "redis.call('HSET', KEYS[2], ARGV[1], table.concat(items, ',')) "
+                    + "redis.call('ZADD', KEYS[3], ARGV[2], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    // KEYS: available, reservations, expiry. ARGV: id.
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local items = redis.call('HGET', KEYS[2], ARGV[1]) "
+                    + "if not items then return 0 end "
+                    + "for pid, qty in string.gmatch(items, '([^:,]+):(%d+)') do "
+                    + "  redis.call('HINCRBY', KEYS[1], pid, qty) "
+                    + "end "
+                    + "redis.call('HDEL', KEYS[2], ARGV[1]) "
+                    + "redis.call('ZREM', KEYS[3], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    // KEYS: reservations, expiry. ARGV: id.
+    private static final RedisScript<Long> COMMIT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HDEL', KEYS[1], ARGV[1]) == 1 then "
+                    + "  redis.call('ZREM', KEYS[2], ARGV[1]) "
+                    + "  return 1 "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
+    // KEYS: available. ARGV: productId, delta. Clamps at zero.
+    private static final RedisScript<Long> ADJUST_SCRIPT = new DefaultRedisScript<>(
+            "local units = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2]) "
+                    + "if units < 0 then "
+                    + "  redis.call('HSET', KEYS[1], ARGV[1], 0) "
+                    + "  units = 0 "
+                    + "end "
+                    + "return units",
+            Long.class);
+
+    @Value("${stock.redis.key-prefix:stock:{ledger}:}")
+    private String keyPrefix;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public RedisStockLedger(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public void initialize(Long productId, int quantity) {
+        // Keep the shared count if another instance (or an earlier run) already set it
+        stringRedisTemplate.opsForHash().putIfAbsent(availableKey(), String.valueOf(productId),
+                String.valueOf(quantity));
+    }
+
+    @Override
+    public int available(Long productId) {
+        Object units = stringRedisTemplate.opsForHash().get(availableKey(), String.valueOf(productId));
+        return units != null ? Integer.parseInt(units.toString()) : 0;
+    }
+
+    @Override
+    public Map<Long, Integer> available(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Map.of();
+        }
+        List<Object> fields = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            fields.add(String.valueOf(productId));
+        }
+        // One HMGET for the whole list instead of a round trip per product
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(availableKey(), fields);
+        Map<Long, Integer> units = new HashMap<>(productIds.size() * 2);
+        int i = 0;
+        for (Long productId : productIds) {
+            Object value = values.get(i++);
+            units.put(productId, value != null ? Integer.parseInt(value.toString()) : 0);
+        }
+        return units;
+    }
+
+    @Override
+    public int adjust(Long productId, int delta) {
+        Long units = stringRedisTemplate.execute(ADJUST_SCRIPT, List.of(availableKey()),
+                String.valueOf(productId), String.valueOf(delta));
+        return units != null ? units.intValue() : 0;
+    }
+
+    @Override
+    public boolean reserve(String reservationId, Map<Long, Integer> quantities, Duration ttl) {
+        List<String> args = new ArrayList<>(2 + quantities.size() * 2);
+        args.add(reservationId);
+        args.add(String.valueOf(System.currentTimeMillis() + ttl.toMillis()));
+        quantities.forEach((productId, units) -> {
+            args.add(String.valueOf(productId));
+            args.add(String.valueOf(units));
+        });
+
+        Long reserved = stringRedisTemplate.execute(RESERVE_SCRIPT,
+                List.of(availableKey(), reservationsKey(), expiryKey()), args.toArray());
+        return reserved != null && reserved == 1;
+    }
+
+    @Override
+    public boolean commit(String reservationId) {
+        Long committed = stringRedisTemplate.execute(COMMIT_SCRIPT,
+                List.of(reservationsKey(), expiryKey()), reservationId);
+        return committed != null && committed == 1;
+    }
+
+    @Override
+    public boolean release(String reservationId) {
+        Long released = stringRedisTemplate.execute(RELEASE_SCRIPT,
+                List.of(availableKey(), reservationsKey(), expiryKey()), reservationId);
+        return released != null && released == 1;
+    }
+
+    @Override
+    public int releaseExpired() {
+        int released = 0;
+        while (true) {
+            Set<String> expired = stringRedisTemplate.opsForZSet().rangeByScore(expiryKey(),
+                    Double.NEGATIVE_INFINITY, System.currentTimeMillis(), 0, EXPIRY_BATCH);
+            if (expired == null || expired.isEmpty()) {
+                return released;
+            }
+
+            // Each release is atomic; a reservation committed meanwhile is simply skipped
+            for (String reservationId : expired) {
+                if (release(reservationId)) {
+                    released++;
+                } else {
+                    stringRedisTemplate.opsForZSet().remove(expiryKey(), reservationId);
+                }
+            }
+            if (expired.size() < EXPIRY_BATCH) {
+                return released;
+            }
+        }
+    }
+
+    private String availableKey() {
+        return keyPrefix + "available";
+    }
+
+    private String reservationsKey() {
+        return keyPrefix + "reservations";
+    }
+
+    private String expiryKey() {
+        return keyPrefix + "reservation-expiry";
+    }
+}
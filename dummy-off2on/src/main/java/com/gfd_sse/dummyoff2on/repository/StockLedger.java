@@ -0,0 +1,69 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Available stock per product, with reservations for orders in checkout.
+ *
+ * Reserving takes units out of the available count immediately, so two
+ * checkouts can never both get the last unit. A reservation is then either
+ * committed (units are sold), released (units go back), or released by the
+ * expiry sweep if neither happens in time. Selected with stock.store:
+ * memory (per-product atomic counters) or redis (Lua scripts, shared by all
+ * instances).
+ */
+public interface StockLedger {
+
+    /**
+     * Set the initial stock of a product, unless the ledger already has one
+     */
+    void initialize(Long productId, int quantity);
+
+    /**
+     * Units that can still be reserved
+     */
+    int available(Long productId);
+
+    /**
+     * Units that can still be reserved for each of the products, read in one
+     * go; products the ledger does not know have 0
+     */
+    Map<Long, Integer> available(Collection<Long> productIds);
+
+    /**
+     * Add (or with a negative delta remove) units, never going below zero
+     *
+     * @return the new available quantity
+     */
+    int adjust(Long productId, int delta);
+
+    /**
+     * Reserve all given quantities (productId -> units), or nothing
+     *
+     * @return false if any product has too little stock, or the id is already in use
+     */
+    boolean reserve(String reservationId, Map<Long, Integer> quantities, Duration ttl);
+
+    /**
+     * Finalize a reservation; its units stay taken
+     *
+     * @return false if the reservation does not exist (already committed, released or expired)
+     */
+    boolean commit(String reservationId);
+
+    /**
+     * Cancel a reservation and return its units
+     *
+     * @return false if the reservation does not exist
+     */
+    boolean release(String reservationId);
+
+    /**
+     * Release every reservation whose time is up
+     *
+     * @return number of reservations released
+     */
+    int releaseExpired();
+}
@@ -2,19 +2,28 @@ package com.gfd_sse.dummyoff2on.service;
 
 import com.gfd_sse.dummyoff2on.dto.AddToCartRequest;
 import com.gfd_sse.dummyoff2on.dto.AddToCartResponse;
+import com.gfd_sse.dummyoff2on.dto.CartBatchRequest;
+import com.gfd_sse.dummyoff2on.dto.CartOperation;
 import com.gfd_sse.dummyoff2on.dto.CheckoutRequest;
 import com.gfd_sse.dummyoff2on.dto.CheckoutResponse;
 import com.gfd_sse.dummyoff2on.event.CartEvent;
+import com.gfd_sse.dummyoff2on.event.CartEventMode;
+import com.gfd_sse.dummyoff2on.event.CartEvictedEvent;
 import com.gfd_sse.dummyoff2on.event.EventType;
 import com.gfd_sse.dummyoff2on.model.CartItem;
+import com.gfd_sse.dummyoff2on.model.CartLineChange;
+import com.gfd_sse.dummyoff2on.model.CartSnapshot;
+import com.gfd_sse.dummyoff2on.model.Money;
 import com.gfd_sse.dummyoff2on.model.Product;
+import com.gfd_sse.dummyoff2on.repository.CartRepository;
+import com.gfd_sse.dummyoff2on.repository.CartUpdate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class CartService {
@@ -23,13 +32,21 @@ public class CartService {
 
     private final ProductService productService;
     private final RedisPublisherService redisPublisher;
+    private final CartRepository cartRepository;
+    private final IdGenerator idGenerator;
 
-    // In-memory cart storage: userId -> List of CartItems
-    private final Map<String, List<CartItem>> userCarts = new ConcurrentHashMap<>();
+    @Value("${cart.events.mode:SNAPSHOT}")
+    private CartEventMode eventMode;
 
-    public CartService(ProductService productService, RedisPublisherService redisPublisher) {
+    @Value("${cart.events.snapshot-every:50}")
+    private int snapshotEvery;
+
+    public CartService(ProductService productService, RedisPublisherService redisPublisher,
+            CartRepository cartRepository, IdGenerator idGenerator) {
         this.productService = productService;
         this.redisPublisher = redisPublisher;
+        this.cartRepository = cartRepository;
+        this.idGenerator = idGenerator;
     }
 
     /**
@@ -40,7 +57,7 @@ public class CartService {
 
         try {
             // Validate product exists
-            Optional<Product> productOpt = productService.getProductById(request.getProductId());
+            Optional<Product> productOpt = productService.findProduct(request.getProductId());
             if (productOpt.isEmpty()) {
                 return createErrorResponse(request.getUserId(), "Product not found");
             }
@@ -52,46 +69,23 @@ public class CartService {
                 return createErrorResponse(request.getUserId(), "Insufficient stock available");
             }
 
-            // Get or create user cart
-            List<CartItem> cart = userCarts.computeIfAbsent(request.getUserId(), k -> new ArrayList<>());
-
-            // Check if product already exists in cart
-            Optional<CartItem> existingItem = cart.stream()
-                    .filter(item -> item.getProductId().equals(request.getProductId()))
-                    .findFirst();
-
-            if (existingItem.isPresent()) {
-                // Update quantity
-                CartItem item = existingItem.get();
-                item.setQuantity(item.getQuantity() + request.getQuantity());
-                item.setSubtotal(product.getPrice().multiply(new BigDecimal(item.getQuantity())));
-            } else {
-                // Add new item
-                CartItem newItem = CartItem.builder()
-                        .productId(product.getId())
-                        .productName(product.getName())
-                        .price(product.getPrice())
-                        .quantity(request.getQuantity())
-                        .subtotal(product.getPrice().multiply(new BigDecimal(request.getQuantity())))
-                        .build();
-                cart.add(newItem);
-            }
-
-            // Calculate totals
-            BigDecimal totalAmount = calculateTotalAmount(cart);
-            Integer totalItems = calculateTotalItems(cart);
+            // The repository applies the change and assigns its sequence number atomically
+            CartUpdate update = cartRepository.addItem(request.getUserId(), product, request.getQuantity());
+            CartSnapshot cart = update.getCart();
+            CartItem changedItem = cart.getLine(product.getId());
 
             AddToCartResponse response = AddToCartResponse.builder()
                     .success(true)
                     .message("Product added to cart successfully")
                     .userId(request.getUserId())
-                    .cartItems(new ArrayList<>(cart))
-                    .totalAmount(totalAmount)
-                    .totalItems(totalItems)
+                    .cartItems(cart.getItems())
+                    .totalAmount(cart.getTotalAmount())
+                    .totalItems(cart.getTotalItems())
                     .build();
 
             // Publish cart event to Redis
-            publishCartAddedEvent(request.getUserId(), product, request.getQuantity(), cart, totalAmount, totalItems);
+            publishCartAddedEvent(request.getUserId(), product, request.getQuantity(), cart, changedItem,
+                    update.getSequence());
 
             logger.info("Successfully added product {} to cart for user {}", request.getProductId(),
                     request.getUserId());
@@ -103,30 +97,168 @@ public class CartService {
         }
     }
 
+    /**
+     * Apply a batch of add / update-quantity / remove operations to a cart.
+     * All operations are validated first and then applied atomically as one
+     * mutation, announced by a single CART_UPDATED event.
+     */
+    public AddToCartResponse applyBatch(CartBatchRequest request) {
+        String userId = request.getUserId();
+        List<CartOperation> operations = request.getOperations();
+        logger.info("Applying {} cart operations for user {}", operations.size(), userId);
+
+        try {
+            // Quantities each product would end up with, for the stock check
+            CartSnapshot current = getCartSnapshot(userId);
+            Map<Long, Integer> targetQuantities = new HashMap<>();
+            Map<Long, Product> products = new HashMap<>();
+            List<CartLineChange> changes = new ArrayList<>(operations.size());
+
+            for (CartOperation operation : operations) {
+                Long productId = operation.getProductId();
+                if (operation.getType() == CartOperation.Type.REMOVE) {
+                    changes.add(CartLineChange.remove(productId));
+                    targetQuantities.put(productId, 0);
+                    continue;
+                }
+
+                // Each product is looked up once, however many operations touch it
+                Product product = products.get(productId);
+                if (product == null) {
+                    Optional<Product> productOpt = productService.findProduct(productId);
+                    if (productOpt.isEmpty()) {
+                        return createErrorResponse(userId, "Product not found: " + productId);
+                    }
+                    product = productOpt.get();
+                    products.put(productId, product);
+                }
+
+                int quantity = operation.getQuantity();
+                if (operation.getType() == CartOperation.Type.ADD) {
+                    CartItem line = current.getLine(productId);
+                    int base = targetQuantities.getOrDefault(productId, line != null ? line.getQuantity() : 0);
+                    changes.add(CartLineChange.add(product, quantity));
+                    targetQuantities.put(productId, base + quantity);
+                } else {
+                    changes.add(CartLineChange.set(product, quantity));
+                    targetQuantities.put(productId, quantity);
+                }
+            }
+
+            for (Map.Entry<Long, Integer> target : targetQuantities.entrySet()) {
+                if (target.getValue() > 0
+                        && !productService.isProductAvailable(target.getKey(), target.getValue())) {
+                    return createErrorResponse(userId, "Insufficient stock available for product: "
+                            + target.getKey());
+                }
+            }
+
+            CartUpdate update = cartRepository.applyChanges(userId, changes);
+            CartSnapshot cart = update.getCart();
+
+            publishCartUpdatedEvent(userId, cart, targetQuantities.keySet(), operations.size(),
+                    update.getSequence());
+
+            return AddToCartResponse.builder()
+                    .success(true)
+                    .message("Cart updated successfully")
+                    .userId(userId)
+                    .cartItems(cart.getItems())
+                    .totalAmount(cart.getTotalAmount())
+                    .totalItems(cart.getTotalItems())
+                    .build();
+
+        } catch (Exception e) {
+            logger.error("Error applying cart operations", e);
+            return createErrorResponse(userId, "Failed to update cart: " + e.getMessage());
+        }
+    }
+
     /**
      * Get cart for user
      */
     public List<CartItem> getCart(String userId) {
-        return userCarts.getOrDefault(userId, new ArrayList<>());
+        return getCartSnapshot(userId).getItems();
+    }
+
+    /**
+     * Current cart state for user, never null
+     */
+    public CartSnapshot getCartSnapshot(String userId) {
+        return cartRepository.find(userId);
     }
 
     /**
      * Clear cart for user
      */
     public void clearCart(String userId) {
-        userCarts.remove(userId);
+        cartRepository.delete(userId);
         logger.info("Cleared cart for user {}", userId);
     }
 
+    /**
+     * Publish a full cart snapshot on demand, e.g. for a display that lost
+     * track of delta events
+     */
+    public void publishCartSnapshot(String userId) {
+        CartUpdate snapshot = cartRepository.snapshot(userId);
+        CartSnapshot cart = snapshot.getCart();
+        CartEvent event = CartEvent.builder()
+                .eventId(idGenerator.next())
+                .eventType(EventType.CART_UPDATED)
+                .userId(userId)
+                .timestamp(System.currentTimeMillis())
+                .sequence(snapshot.getSequence())
+                .delta(false)
+                .cartItems(cart.getItems())
+                .totalAmount(cart.getTotalAmount())
+                .totalItems(cart.getTotalItems())
+                .message("Cart snapshot")
+                .build();
+
+        redisPublisher.publishCartEvent(event);
+        logger.info("Published cart snapshot for user {}", userId);
+    }
+
+    /**
+     * The cart store dropped an idle or overflowing cart: tell the user's
+     * displays to clear it
+     */
+    @EventListener
+    public void onCartEvicted(CartEvictedEvent evicted) {
+        try {
+            CartEvent event = CartEvent.builder()
+                    .eventId(idGenerator.next())
+                    .eventType(EventType.CART_DELETED)
+                    .userId(evicted.getUserId())
+                    .timestamp(System.currentTimeMillis())
+                    .delta(false)
+                    .cartItems(List.of())
+                    .totalAmount(Money.ZERO)
+                    .totalItems(0)
+                    .message("Cart expired")
+                    .metadata(Map.of("reason", evicted.getReason().name()))
+                    .build();
+
+            redisPublisher.publishCartEvent(event);
+            logger.debug("Published cart deleted event for user {}", evicted.getUserId());
+        } catch (Exception e) {
+            logger.error("Failed to publish cart deleted event", e);
+        }
+    }
+
     /**
      * Checkout cart
      */
     public CheckoutResponse checkout(CheckoutRequest request) {
         logger.info("Processing checkout for user {}", request.getUserId());
 
+        String orderId = null;
+        CartSnapshot claimed = null;
+        boolean reserved = false;
         try {
-            List<CartItem> cart = userCarts.get(request.getUserId());
-            if (cart == null || cart.isEmpty()) {
+            CartSnapshot cart = getCartSnapshot(request.getUserId());
+            if (cart.isEmpty()) {
                 return CheckoutResponse.builder()
                         .success(false)
                         .message("Cart is empty")
@@ -134,11 +266,64 @@ public class CartService {
                         .build();
             }
 
-            // Calculate total
-            BigDecimal totalAmount = calculateTotalAmount(cart);
+            Money totalAmount = cart.getTotalAmount();
+
+            // Claim the cart before taking stock: it is removed only if nothing changed it since
+            // it was read, so its lines can be ordered once at most. A concurrent change (or a
+            // second checkout of the same cart) makes this checkout fail instead.
+            long claimSequence = cartRepository.deleteIfUnchanged(request.getUserId(), cart.getVersion());
+            if (claimSequence == 0) {
+                publishCheckoutFailed(request.getUserId());
+                return CheckoutResponse.builder()
+                        .success(false)
+                        .message("Cart changed during checkout, please try again")
+                        .userId(request.getUserId())
+                        .totalAmount(totalAmount)
+                        .orderStatus("FAILED")
+                        .build();
+            }
+            claimed = cart;
 
             // Generate order ID
-            String orderId = "ORD-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+            orderId = "ORD-" + idGenerator.next();
+
+            // Take the stock atomically; the order id doubles as the reservation id
+            Map<Long, Integer> quantities = new LinkedHashMap<>();
+            for (CartItem item : cart.getItems()) {
+                quantities.put(item.getProductId(), item.getQuantity());
+            }
+            if (!productService.reserveStock(orderId, quantities)) {
+                restoreCart(request.getUserId(), claimed);
+                claimed = null;
+                publishCheckoutFailed(request.getUserId());
+                return CheckoutResponse.builder()
+                        .success(false)
+                        .message("Insufficient stock available")
+                        .userId(request.getUserId())
+                        .totalAmount(totalAmount)
+                        .orderStatus("FAILED")
+                        .build();
+            }
+            reserved = true;
+
+            // Sell the reserved stock before announcing the order. A reservation that expired in
+            // the meantime has already gone back to stock, so the order cannot be completed.
+            if (!productService.commitReservation(orderId)) {
+                reserved = false;
+                restoreCart(request.getUserId(), claimed);
+                claimed = null;
+                publishCheckoutFailed(request.getUserId());
+                return CheckoutResponse.builder()
+                        .success(false)
+                        .message("Stock reservation expired, please try again")
+                        .userId(request.getUserId())
+                        .totalAmount(totalAmount)
+                        .orderStatus("FAILED")
+                        .build();
+            }
+            // Committed: nothing below may release the stock or put the cart back
+            reserved = false;
+            claimed = null;
 
             // Simulate order processing
             CheckoutResponse response = CheckoutResponse.builder()
@@ -150,11 +335,9 @@ public class CartService {
                     .orderStatus("CONFIRMED")
                     .build();
 
-            // Publish checkout event
-            publishCheckoutEvent(request.getUserId(), orderId, cart, totalAmount, true);
-
-            // Clear cart after successful checkout
-            clearCart(request.getUserId());
+            // Publish checkout event; a publishing failure is logged and does not undo the order.
+            // It carries the ordered cart, with the sequence taken when the cart was claimed.
+            publishCheckoutCompleted(request.getUserId(), orderId, cart, claimSequence);
 
             logger.info("Successfully processed checkout for user {}. Order ID: {}", request.getUserId(), orderId);
             return response;
@@ -162,8 +345,16 @@ public class CartService {
         } catch (Exception e) {
             logger.error("Error processing checkout", e);
 
+            // Give back the stock and the cart of an order that did not complete
+            if (reserved) {
+                productService.releaseReservation(orderId);
+            }
+            if (claimed != null) {
+                restoreCart(request.getUserId(), claimed);
+            }
+
             // Publish failed checkout event
-            publishCheckoutEvent(request.getUserId(), null, null, BigDecimal.ZERO, false);
+            publishCheckoutFailed(request.getUserId());
 
             return CheckoutResponse.builder()
                     .success(false)
@@ -175,21 +366,39 @@ public class CartService {
     }
 
     /**
-     * Calculate total amount in cart
+     * Put the lines of a claimed cart back after its checkout failed. Lines
+     * added since the claim are kept; the restored lines are added to them.
      */
-    private BigDecimal calculateTotalAmount(List<CartItem> cart) {
-        return cart.stream()
-                .map(CartItem::getSubtotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    private void restoreCart(String userId, CartSnapshot cart) {
+        try {
+            List<CartLineChange> changes = new ArrayList<>(cart.getItems().size());
+            Set<Long> productIds = new LinkedHashSet<>();
+            for (CartItem item : cart.getItems()) {
+                Product product = Product.builder()
+                        .id(item.getProductId())
+                        .name(item.getProductName())
+                        .price(item.getPrice())
+                        .build();
+                changes.add(CartLineChange.add(product, item.getQuantity()));
+                productIds.add(item.getProductId());
+            }
+
+            CartUpdate update = cartRepository.applyChanges(userId, changes);
+            publishCartUpdatedEvent(userId, update.getCart(), productIds, changes.size(), update.getSequence());
+            logger.info("Restored cart for user {} after a failed checkout", userId);
+        } catch (Exception e) {
+            logger.error("Failed to restore cart for user {} after a failed checkout", userId, e);
+        }
     }
 
     /**
-     * Calculate total items in cart
+     * Whether an event with this sequence should carry the full cart.
+     * The first event of a cart is always a snapshot so consumers can start clean.
      */
-    private Integer calculateTotalItems(List<CartItem> cart) {
-        return cart.stream()
-                .mapToInt(CartItem::getQuantity)
-                .sum();
+    private boolean isSnapshotDue(long sequence) {
+        return eventMode != CartEventMode.DELTA
+                || sequence == 1
+                || (snapshotEvery > 0 && sequence % snapshotEvery == 0);
     }
 
     /**
@@ -201,7 +410,7 @@ public class CartService {
                 .message(message)
                 .userId(userId)
                 .cartItems(new ArrayList<>())
-                .totalAmount(BigDecimal.ZERO)
+                .totalAmount(Money.ZERO)
                 .totalItems(0)
                 .build();
     }
@@ -210,16 +419,20 @@ public class CartService {
      * Publish cart item added event to Redis
      */
     private void publishCartAddedEvent(String userId, Product product, Integer quantity,
-            List<CartItem> cart, BigDecimal totalAmount, Integer totalItems) {
+            CartSnapshot cart, CartItem changedItem, long sequence) {
         try {
+            boolean snapshot = isSnapshotDue(sequence);
+
             CartEvent event = CartEvent.builder()
-                    .eventId(UUID.randomUUID().toString())
+                    .eventId(idGenerator.next())
                     .eventType(EventType.CART_ITEM_ADDED)
                     .userId(userId)
                     .timestamp(System.currentTimeMillis())
-                    .cartItems(new ArrayList<>(cart))
-                    .totalAmount(totalAmount)
-                    .totalItems(totalItems)
+                    .sequence(sequence)
+                    .delta(!snapshot)
+                    .cartItems(snapshot ? cart.getItems() : List.of(changedItem))
+                    .totalAmount(cart.getTotalAmount())
+                    .totalItems(cart.getTotalItems())
                     .message("Added " + quantity + " x " + product.getName() + " to cart")
                     .metadata(Map.of(
                             "productId", product.getId(),
@@ -236,25 +449,104 @@ public class CartService {
     }
 
     /**
-     * Publish checkout event to Redis
+     * Publish the single event announcing a batch of cart operations.
+     * In DELTA mode it carries the touched lines, quantity 0 for removed ones.
      */
-    private void publishCheckoutEvent(String userId, String orderId, List<CartItem> cart,
-            BigDecimal totalAmount, boolean success) {
+    private void publishCartUpdatedEvent(String userId, CartSnapshot cart, Set<Long> changedProductIds,
+            int operationCount, long sequence) {
         try {
+            boolean snapshot = isSnapshotDue(sequence);
+
+            List<CartItem> items;
+            if (snapshot) {
+                items = cart.getItems();
+            } else {
+                items = new ArrayList<>(changedProductIds.size());
+                for (Long productId : changedProductIds) {
+                    CartItem line = cart.getLine(productId);
+                    items.add(line != null ? line : CartItem.builder()
+                            .productId(productId)
+                            .quantity(0)
+                            .subtotal(Money.ZERO)
+                            .build());
+                }
+            }
+
             CartEvent event = CartEvent.builder()
-                    .eventId(UUID.randomUUID().toString())
-                    .eventType(success ? EventType.CHECKOUT_COMPLETED : EventType.CHECKOUT_FAILED)
+                    .eventId(idGenerator.next())
+                    .eventType(EventType.CART_UPDATED)
                     .userId(userId)
                     .timestamp(System.currentTimeMillis())
-                    .cartItems(cart != null ? new ArrayList<>(cart) : new ArrayList<>())
-                    .totalAmount(totalAmount)
-                    .totalItems(cart != null ? calculateTotalItems(cart) : 0)
-                    .message(success ? "Checkout completed successfully" : "Checkout failed")
-                    .metadata(success ? Map.of("orderId", orderId, "status", "CONFIRMED") : Map.of("status", "FAILED"))
+                    .sequence(sequence)
+                    .delta(!snapshot)
+                    .cartItems(items)
+                    .totalAmount(cart.getTotalAmount())
+                    .totalItems(cart.getTotalItems())
+                    .message("Cart updated (" + operationCount + " operations)")
+                    .metadata(Map.of("operations", operationCount))
+                    .build();
+
+            redisPublisher.publishCartEvent(event);
+            logger.info("Published cart updated event for user {}", userId);
+        } catch (Exception e) {
+            logger.error("Failed to publish cart updated event", e);
+        }
+    }
+
+    /**
+     * Publish a completed checkout with the cart that was ordered
+     */
+    private void publishCheckoutCompleted(String userId, String orderId, CartSnapshot cart, long sequence) {
+        publishCheckoutEvent(CartEvent.builder()
+                .eventType(EventType.CHECKOUT_COMPLETED)
+                .userId(userId)
+                .sequence(sequence)
+                .delta(false)
+                .cartItems(cart.getItems())
+                .totalAmount(cart.getTotalAmount())
+                .totalItems(cart.getTotalItems())
+                .message("Checkout completed successfully")
+                .metadata(Map.of("orderId", orderId, "status", "CONFIRMED")));
+    }
+
+    /**
+     * Publish a failed checkout. Displays take a full cart as their new
+     * baseline, so the event carries the user's current cart (which may have
+     * changed since the checkout read it) with a sequence taken with that
+     * read. If the cart cannot be read, the event carries no cart at all and
+     * displays keep what they show.
+     */
+    private void publishCheckoutFailed(String userId) {
+        CartEvent.CartEventBuilder event = CartEvent.builder()
+                .eventType(EventType.CHECKOUT_FAILED)
+                .userId(userId)
+                .message("Checkout failed")
+                .metadata(Map.of("status", "FAILED"));
+        try {
+            CartUpdate current = cartRepository.snapshot(userId);
+            event.sequence(current.getSequence())
+                    .delta(false)
+                    .cartItems(current.getCart().getItems())
+                    .totalAmount(current.getCart().getTotalAmount())
+                    .totalItems(current.getCart().getTotalItems());
+        } catch (Exception e) {
+            logger.warn("Failed to read the cart of user {} for the checkout failed event", userId, e);
+        }
+        publishCheckoutEvent(event);
+    }
+
+    /**
+     * Publish checkout event to Redis
+     */
+    private void publishCheckoutEvent(CartEvent.CartEventBuilder event) {
+        try {
+            CartEvent checkoutEvent = event
+                    .eventId(idGenerator.next())
+                    .timestamp(System.currentTimeMillis())
                     .build();
 
-            redisPublisher.publishCheckoutEvent(event);
-            logger.info("Published checkout event for user {}", userId);
+            redisPublisher.publishCheckoutEvent(checkoutEvent);
+            logger.info("Published checkout event for user {}", checkoutEvent.getUserId());
         } catch (Exception e) {
             logger.error("Failed to publish checkout event", e);
         }
@@ -0,0 +1,151 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import com.gfd_sse.dummyoff2on.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable view of the whole product catalog with its lookup indexes.
+ *
+ * Built once per catalog change and then only read, so any number of
+ * threads can use it without locking; ProductService swaps in a new
+ * snapshot to apply updates. Indexes:
+ * - by id, and all products ordered by id for cursor paging,
+ * - by case-folded category,
+ * - a sorted name index holding the whole case-folded name and each of its
+ *   words, so a prefix search is a range scan instead of a catalog scan.
+ */
+final class CatalogSnapshot {
+
+    static final CatalogSnapshot EMPTY = new CatalogSnapshot(List.of());
+
+    private final Map<Long, Product> byId;
+    private final List<Product> orderedById;
+    private final Map<String, List<Product>> byCategory;
+    private final NavigableMap<String, List<Product>> byNamePrefix;
+
+    CatalogSnapshot(Collection<Product> products) {
+        List<Product> ordered = new ArrayList<>(products);
+        ordered.sort(Comparator.comparing(Product::getId));
+
+        Map<Long, Product> ids = new HashMap<>(Math.max(16, ordered.size() * 4 / 3 + 1));
+        Map<String, List<Product>> categories = new HashMap<>();
+        TreeMap<String, List<Product>> names = new TreeMap<>();
+        for (Product product : ordered) {
+            ids.put(product.getId(), product);
+            if (product.getCategory() != null) {
+                categories.computeIfAbsent(fold(product.getCategory()), k -> new ArrayList<>()).add(product);
+            }
+            for (String key : nameKeys(product.getName())) {
+                names.computeIfAbsent(key, k -> new ArrayList<>(1)).add(product);
+            }
+        }
+        categories.replaceAll((k, list) -> List.copyOf(list));
+        names.replaceAll((k, list) -> List.copyOf(list));
+
+        this.byId = Collections.unmodifiableMap(ids);
+        this.orderedById = List.copyOf(ordered);
+        this.byCategory = Collections.unmodifiableMap(categories);
+        this.byNamePrefix = Collections.unmodifiableNavigableMap(names);
+    }
+
+    Product get(Long productId) {
+        return byId.get(productId);
+    }
+
+    boolean contains(Long productId) {
+        return byId.containsKey(productId);
+    }
+
+    int size() {
+        return orderedById.size();
+    }
+
+    /**
+     * All products, ordered by id. Unmodifiable.
+     */
+    List<Product> all() {
+        return orderedById;
+    }
+
+    /**
+     * Products of a category, any case. Unmodifiable.
+     */
+    List<Product> byCategory(String category) {
+        return byCategory.getOrDefault(fold(category), List.of());
+    }
+
+    /**
+     * Up to limit products with an id greater than afterId (null = from the
+     * start), ordered by id
+     */
+    List<Product> page(Long afterId, int limit) {
+        int from = 0;
+        if (afterId != null) {
+            // First index with id > afterId
+            int low = 0;
+            int high = orderedById.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (orderedById.get(mid).getId() <= afterId) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            from = low;
+        }
+        return orderedById.subList(from, Math.min(from + limit, orderedById.size()));
+    }
+
+    /**
+     * Up to limit products whose name, or a word in it, starts with the
+     * prefix (any case), ordered by id
+     */
+    List<Product> searchByName(String prefix, int limit) {
+        String folded = fold(prefix.trim());
+        if (folded.isEmpty()) {
+            return List.of();
+        }
+
+        Set<Product> matches = new LinkedHashSet<>();
+        for (List<Product> products : byNamePrefix.subMap(folded, true, folded + Character.MAX_VALUE, true)
+                .values()) {
+            matches.addAll(products);
+        }
+        return matches.stream()
+                .sorted(Comparator.comparing(Product::getId))
+                .limit(limit)
+                .toList();
+    }
+
+    private static Set<String> nameKeys(String name) {
+        if (name == null || name.isBlank()) {
+            return Set.of();
+        }
+        String folded = fold(name.trim());
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(folded);
+        for (String word : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                keys.add(word);
+            }
+        }
+        return keys;
+    }
+
+    private static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,108 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+/**
+ * Derives OTP codes from a shared secret, the userId and a time step
+ * (TOTP-style, otp.mode=hmac).
+ *
+ * code = HMAC-SHA256(otp.hmac.secret, userId + ":" + step), truncated as in
+ * RFC 4226 to otp.length digits. A step is otp.hmac.step-seconds long, by
+ * default the whole otp.expiration.minutes window, and only the codes of the
+ * current and the previous step are accepted, so issuing and checking a code
+ * needs no stored state. A code therefore stays valid for one to two steps.
+ * Unlike the stored codes of otp.mode=redis, issuing again does not revoke
+ * the previous code: within a step it is the same code, and the previous
+ * step's code stays valid until it ages out. dummy-off2on-redis has the same
+ * class; both must use the same secret, step and length.
+ */
+@Component
+public class HmacOtpGenerator {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    // The current step and the one before it
+    private static final int ACCEPTED_STEPS = 2;
+
+    @Value("${otp.mode:redis}")
+    private String mode;
+
+    @Value("${otp.hmac.secret:}")
+    private String secret;
+
+    // 0: one step per otp.expiration.minutes
+    @Value("${otp.hmac.step-seconds:0}")
+    private long stepSeconds;
+
+    @Value("${otp.expiration.minutes}")
+    private int otpExpirationMinutes;
+
+    @Value("${otp.length}")
+    private int otpLength;
+
+    private SecretKeySpec key;
+    private long stepMillis;
+    private int modulus;
+
+    @PostConstruct
+    public void init() {
+        stepMillis = (stepSeconds > 0 ? stepSeconds : otpExpirationMinutes * 60L) * 1000;
+        modulus = (int) Math.pow(10, otpLength);
+        if (!isEnabled()) {
+            return;
+        }
+        if (secret.isBlank()) {
+            throw new IllegalStateException("otp.mode=hmac requires otp.hmac.secret");
+        }
+        key = new SecretKeySpec(Base64.getDecoder().decode(secret.trim()), ALGORITHM);
+    }
+
+    public boolean isEnabled() {
+        return "hmac".equalsIgnoreCase(mode);
+    }
+
+    public long currentStep() {
+        return System.currentTimeMillis() / stepMillis;
+    }
+
+    public long getStepMillis() {
+        return stepMillis;
+    }
+
+    /**
+     * When a code issued in the given step stops being accepted (epoch ms)
+     */
+    public long expiresAt(long step) {
+        return (step + ACCEPTED_STEPS) * stepMillis;
+    }
+
+    /**
+     * The user's code for a time step, zero-padded to otp.length digits
+     */
+    public String codeFor(String userId, long step) {
+        byte[] hash;
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            hash = mac.doFinal((userId + ":" + step).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot compute " + ALGORITHM, e);
+        }
+
+        int offset = hash[hash.length - 1] & 0x0f;
+        int binary = (hash[offset] & 0x7f) << 24
+                | (hash[offset + 1] & 0xff) << 16
+                | (hash[offset + 2] & 0xff) << 8
+                | (hash[offset + 3] & 0xff);
+        String code = String.valueOf(binary % modulus);
+        return "0".repeat(otpLength - code.length()) + code;
+    }
+}
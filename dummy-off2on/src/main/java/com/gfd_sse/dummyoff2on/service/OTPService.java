@@ -1,12 +1,17 @@
 package com.gfd_sse.dummyoff2on.service;
 
+import com.gfd_sse.dummyoff2on.model.IssuedOTP;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -14,74 +19,114 @@ public class OTPService {
 
     private static final Logger logger = LoggerFactory.getLogger(OTPService.class);
 
+    // Redis key prefix for OTPs
+    private static final String OTP_PREFIX = "otp:";
+    private static final String OTP_USER_PREFIX = "otp:user:";
+
+    /**
+     * Issues an OTP in one round trip.
+     *
+     * Drops the user's previous code (only if it still belongs to the user),
+     * then claims the first candidate code that is not in use with SET NX, so
+     * a code held by another user is never overwritten. Values are stored as
+     * JSON strings, the format the RedisTemplate readers expect.
+     * KEYS: user key, then one otp key per candidate. ARGV: userId, ttl ms.
+     * Returns {code, expiresAt ms}, or nil if every candidate was taken.
+     */
+    private static final RedisScript<List> ISSUE_SCRIPT = new DefaultRedisScript<>(
+            "local user = cjson.encode(ARGV[1]) "
+                    + "local old = redis.call('GET', KEYS[1]) "
+                    + "if old then "
+                    + "  local oldKey = '" + OTP_PREFIX + "' .. cjson.decode(old) "
+                    + "  if redis.call('GET', oldKey) == user then redis.call('DEL', oldKey) end "
+                    + "end "
+                    + "for i = 2, #KEYS do "
+                    + "  if redis.call('SET', KEYS[i], user, 'NX', 'PX', ARGV[2]) then "
+                    + "    local code = string.sub(KEYS[i], " + (OTP_PREFIX.length() + 1) + ") "
+                    + "    redis.call('SET', KEYS[1], cjson.encode(code), 'PX', ARGV[2]) "
+                    + "    local now = redis.call('TIME') "
+                    + "    local expiresAt = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000) + tonumber(ARGV[2]) "
+                    + "    return {code, tostring(expiresAt)} "
+                    + "  end "
+                    + "end "
+                    + "return nil",
+            List.class);
+
     @Value("${otp.expiration.minutes}")
     private int otpExpirationMinutes;
 
     @Value("${otp.length}")
     private int otpLength;
 
-    private final SecureRandom secureRandom = new SecureRandom();
-    private final RedisTemplate<String, Object> redisTemplate;
+    // Candidate codes tried per issuance before giving up
+    @Value("${otp.issue.candidates:5}")
+    private int issueCandidates;
 
-    // Redis key prefix for OTPs
-    private static final String OTP_PREFIX = "otp:";
-    private static final String OTP_USER_PREFIX = "otp:user:";
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final StringRedisTemplate stringRedisTemplate;
+    private final HmacOtpGenerator hmacOtpGenerator;
 
-    public OTPService(RedisTemplate<String, Object> redisTemplate) {
-        this.redisTemplate = redisTemplate;
+    public OTPService(StringRedisTemplate stringRedisTemplate, HmacOtpGenerator hmacOtpGenerator) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.hmacOtpGenerator = hmacOtpGenerator;
     }
 
     /**
-     * Generate a new OTP for a user and store in Redis
+     * Generate a new OTP for a user and store in Redis, replacing the
+     * user's previous one. With otp.mode=hmac the code is derived from the
+     * userId and the current time step instead, without touching Redis.
      */
-    public String generateOTP(String userId) {
+    public IssuedOTP generateOTP(String userId) {
         logger.info("Generating OTP for user: {}", userId);
 
-        // Generate random 6-digit OTP
-        int otp = 100000 + secureRandom.nextInt(900000);
-        String otpString = String.valueOf(otp);
-
-        // Remove old OTP if exists
-        String oldOtp = (String) redisTemplate.opsForValue().get(OTP_USER_PREFIX + userId);
-        if (oldOtp != null) {
-            redisTemplate.delete(OTP_PREFIX + oldOtp);
-            logger.debug("Deleted old OTP for user: {}", userId);
+        if (hmacOtpGenerator.isEnabled()) {
+            long step = hmacOtpGenerator.currentStep();
+            return IssuedOTP.builder()
+                    .otp(hmacOtpGenerator.codeFor(userId, step))
+                    .userId(userId)
+                    .expiresAt(hmacOtpGenerator.expiresAt(step))
+                    .build();
         }
 
-        // Store OTP → userId mapping in Redis with expiration
-        redisTemplate.opsForValue().set(
-                OTP_PREFIX + otpString,
-                userId,
-                otpExpirationMinutes,
-                TimeUnit.MINUTES);
+        List<String> keys = new ArrayList<>(issueCandidates + 1);
+        keys.add(OTP_USER_PREFIX + userId);
+        for (int i = 0; i < issueCandidates; i++) {
+            keys.add(OTP_PREFIX + randomCode());
+        }
 
-        // Store userId → OTP mapping for cleanup
-        redisTemplate.opsForValue().set(
-                OTP_USER_PREFIX + userId,
-                otpString,
-                otpExpirationMinutes,
-                TimeUnit.MINUTES);
+        long ttlMillis = TimeUnit.MINUTES.toMillis(otpExpirationMinutes);
+        List<?> result = stringRedisTemplate.execute(ISSUE_SCRIPT, keys, userId, String.valueOf(ttlMillis));
+        if (result == null || result.size() < 2) {
+            throw new IllegalStateException("No free OTP after " + issueCandidates + " attempts");
+        }
 
+        String otp = result.get(0).toString();
+        long expiresAt = Long.parseLong(result.get(1).toString());
         logger.info("Generated OTP for user {}: {} (expires in {} minutes)",
-                userId, otpString, otpExpirationMinutes);
-        return otpString;
+                userId, otp, otpExpirationMinutes);
+        return IssuedOTP.builder()
+                .otp(otp)
+                .userId(userId)
+                .expiresAt(expiresAt)
+                .build();
     }
 
     /**
-     * Get expiration time for an OTP (for display purposes)
+     * Check if OTP exists (for internal use). Always false with
+     * otp.mode=hmac, where codes are not stored.
      */
-    public Long getOTPExpiration(String otp) {
-        Long ttl = redisTemplate.getExpire(OTP_PREFIX + otp, TimeUnit.MILLISECONDS);
-        if (ttl != null && ttl > 0) {
-            return System.currentTimeMillis() + ttl;
+    public boolean otpExists(String otp) {
+        if (hmacOtpGenerator.isEnabled()) {
+            return false;
         }
-        return null;
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(OTP_PREFIX + otp));
     }
 
     /**
-     * Check if OTP exists (for internal use)
+     * Random otp.length-digit code without a leading zero
      */
-    public boolean otpExists(String otp) {
-        return Boolean.TRUE.equals(redisTemplate.hasKey(OTP_PREFIX + otp));
+    private String randomCode() {
+        int low = (int) Math.pow(10, otpLength - 1);
+        return String.valueOf(low + secureRandom.nextInt(9 * low));
     }
 }
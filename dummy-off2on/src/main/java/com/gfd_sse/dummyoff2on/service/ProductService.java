@@ -1,14 +1,17 @@
 package com.gfd_sse.dummyoff2on.service;
 
-import com.gfd_sse.dummyoff2on.event.CartEvent;
-import com.gfd_sse.dummyoff2on.event.EventType;
+import com.gfd_sse.dummyoff2on.dto.ProductPage;
+import com.gfd_sse.dummyoff2on.model.Money;
 import com.gfd_sse.dummyoff2on.model.Product;
+import com.gfd_sse.dummyoff2on.repository.StockLedger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
-import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.*;
 
 @Service
@@ -16,67 +19,109 @@ public class ProductService {
 
     private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
 
-    private final Map<Long, Product> productDatabase = new HashMap<>();
-    private final RedisPublisherService redisPublisher;
+    // Catalog data only; stock levels live in the ledger. Replaced as a whole on every change.
+    private volatile CatalogSnapshot catalog = CatalogSnapshot.EMPTY;
+    // Serializes catalog writers; readers never lock
+    private final Object catalogLock = new Object();
+    private final StockLedger stockLedger;
+    private final ProductViewAggregator viewAggregator;
 
-    public ProductService(RedisPublisherService redisPublisher) {
-        this.redisPublisher = redisPublisher;
+    @Value("${stock.reservation.ttl-seconds:300}")
+    private long reservationTtlSeconds;
+
+    public ProductService(StockLedger stockLedger, ProductViewAggregator viewAggregator) {
+        this.stockLedger = stockLedger;
+        this.viewAggregator = viewAggregator;
     }
 
     @PostConstruct
     public void initializeProducts() {
         // Initialize with some dummy products
-        productDatabase.put(1L, Product.builder()
+        List<Product> products = new ArrayList<>();
+        products.add(Product.builder()
                 .id(1L)
                 .name("Laptop")
                 .description("High-performance laptop for professionals")
-                .price(new BigDecimal("999.99"))
+                .price(Money.parse("999.99"))
                 .category("Electronics")
                 .stockQuantity(50)
                 .imageUrl("https://example.com/laptop.jpg")
                 .build());
 
-        productDatabase.put(2L, Product.builder()
+        products.add(Product.builder()
                 .id(2L)
                 .name("Wireless Mouse")
                 .description("Ergonomic wireless mouse with precision tracking")
-                .price(new BigDecimal("29.99"))
+                .price(Money.parse("29.99"))
                 .category("Electronics")
                 .stockQuantity(200)
                 .imageUrl("https://example.com/mouse.jpg")
                 .build());
 
-        productDatabase.put(3L, Product.builder()
+        products.add(Product.builder()
                 .id(3L)
                 .name("Mechanical Keyboard")
                 .description("RGB mechanical keyboard with blue switches")
-                .price(new BigDecimal("89.99"))
+                .price(Money.parse("89.99"))
                 .category("Electronics")
                 .stockQuantity(100)
                 .imageUrl("https://example.com/keyboard.jpg")
                 .build());
 
-        productDatabase.put(4L, Product.builder()
+        products.add(Product.builder()
                 .id(4L)
                 .name("USB-C Hub")
                 .description("Multi-port USB-C hub with HDMI and USB 3.0")
-                .price(new BigDecimal("49.99"))
+                .price(Money.parse("49.99"))
                 .category("Accessories")
                 .stockQuantity(150)
                 .imageUrl("https://example.com/usb-hub.jpg")
                 .build());
 
-        productDatabase.put(5L, Product.builder()
+        products.add(Product.builder()
                 .id(5L)
                 .name("Noise Cancelling Headphones")
                 .description("Premium wireless headphones with active noise cancellation")
-                .price(new BigDecimal("249.99"))
+                .price(Money.parse("249.99"))
                 .category("Audio")
                 .stockQuantity(75)
                 .imageUrl("https://example.com/headphones.jpg")
                 .build());
 
-        logger.info("Initialized {} products", productDatabase.size());
+        replaceCatalog(products);
+        logger.info("Initialized {} products", catalog.size());
+    }
+
+    /**
+     * Atomically replace the whole catalog. Readers see either the old or
+     * the new catalog, never a mix. Stock is only set for products the stock
+     * ledger does not know yet.
+     */
+    public void replaceCatalog(Collection<Product> products) {
+        CatalogSnapshot updated = new CatalogSnapshot(products);
+        synchronized (catalogLock) {
+            initializeStock(products);
+            catalog = updated;
+        }
+        logger.info("Catalog replaced: {} products", updated.size());
+    }
+
+    /**
+     * Add or replace several products in one atomic catalog update
+     */
+    public void upsertProducts(Collection<Product> products) {
+        synchronized (catalogLock) {
+            Map<Long, Product> merged = new HashMap<>(catalog.size() + products.size());
+            for (Product product : catalog.all()) {
+                merged.put(product.getId(), product);
+            }
+            for (Product product : products) {
+                merged.put(product.getId(), product);
+            }
+            initializeStock(products);
+            catalog = new CatalogSnapshot(merged.values());
+        }
+        logger.info("Catalog updated: {} products upserted", products.size());
     }
 
     /**
@@ -84,22 +129,51 @@ public class ProductService {
      */
     public List<Product> getAllProducts() {
         logger.info("Fetching all products");
-        return new ArrayList<>(productDatabase.values());
+        return withCurrentStock(catalog.all());
     }
 
     /**
-     * Get product by ID
+     * One page of the catalog ordered by id, starting after the cursor
+     * (the last id of the previous page; null for the first page)
+     */
+    public ProductPage getProductsPage(Long cursor, int limit) {
+        logger.debug("Fetching products page after {} (limit {})", cursor, limit);
+        // Fetch one extra to know whether there is a next page
+        List<Product> page = catalog.page(cursor, limit + 1);
+        boolean hasMore = page.size() > limit;
+        List<Product> items = withCurrentStock(hasMore ? page.subList(0, limit) : page);
+        Long nextCursor = hasMore ? items.get(items.size() - 1).getId() : null;
+        return ProductPage.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Products whose name or a word of it starts with the query, any case
+     */
+    public List<Product> searchProducts(String query, int limit) {
+        logger.debug("Searching products for '{}' (limit {})", query, limit);
+        return withCurrentStock(catalog.searchByName(query, limit));
+    }
+
+    /**
+     * Get product by ID for a client, counting it as a product view
      */
     public Optional<Product> getProductById(Long productId) {
         logger.info("Fetching product with ID: {}", productId);
-        Product product = productDatabase.get(productId);
-
-        // Publish product viewed event
-        if (product != null) {
-            publishProductViewedEvent(product);
+        Optional<Product> product = findProduct(productId);
+        if (product.isPresent()) {
+            viewAggregator.recordView(productId);
         }
+        return product;
+    }
 
-        return Optional.ofNullable(product);
+    /**
+     * Look a product up for internal use (cart, checkout); not a view
+     */
+    public Optional<Product> findProduct(Long productId) {
+        return Optional.ofNullable(catalog.get(productId)).map(this::withCurrentStock);
     }
 
     /**
@@ -107,54 +181,102 @@ public class ProductService {
      */
     public List<Product> getProductsByCategory(String category) {
         logger.info("Fetching products in category: {}", category);
-        return productDatabase.values().stream()
-                .filter(p -> p.getCategory().equalsIgnoreCase(category))
-                .toList();
+        return withCurrentStock(catalog.byCategory(category));
     }
 
     /**
-     * Check if product is available in stock
+     * Check if product is available in stock. Only a hint: stock is actually
+     * taken by reserveStock at checkout.
      */
     public boolean isProductAvailable(Long productId, Integer quantity) {
-        Product product = productDatabase.get(productId);
-        if (product == null) {
+        if (!catalog.contains(productId)) {
             return false;
         }
-        return product.getStockQuantity() >= quantity;
+        return stockLedger.available(productId) >= quantity;
     }
 
     /**
      * Update product stock
      */
     public void updateStock(Long productId, Integer quantityChange) {
-        Product product = productDatabase.get(productId);
-        if (product != null) {
-            int newStock = product.getStockQuantity() + quantityChange;
-            product.setStockQuantity(Math.max(0, newStock));
-            logger.info("Updated stock for product {}: new quantity = {}", productId, product.getStockQuantity());
+        if (catalog.contains(productId)) {
+            int newStock = stockLedger.adjust(productId, quantityChange);
+            logger.info("Updated stock for product {}: new quantity = {}", productId, newStock);
         }
     }
 
     /**
-     * Publish product viewed event to Redis
+     * Atomically reserve stock for an order (productId -> quantity).
+     * All or nothing; the reservation expires after stock.reservation.ttl-seconds
+     * unless committed or released first.
      */
-    private void publishProductViewedEvent(Product product) {
+    public boolean reserveStock(String reservationId, Map<Long, Integer> quantities) {
+        boolean reserved = stockLedger.reserve(reservationId, quantities,
+                Duration.ofSeconds(reservationTtlSeconds));
+        logger.info("Stock reservation {} for {} products: {}", reservationId, quantities.size(),
+                reserved ? "reserved" : "insufficient stock");
+        return reserved;
+    }
+
+    /**
+     * Finalize a reservation once the order is completed
+     */
+    public boolean commitReservation(String reservationId) {
+        return stockLedger.commit(reservationId);
+    }
+
+    /**
+     * Return a reservation's stock, e.g. when the order failed or was cancelled
+     */
+    public boolean releaseReservation(String reservationId) {
+        boolean released = stockLedger.release(reservationId);
+        if (released) {
+            logger.info("Released stock reservation {}", reservationId);
+        }
+        return released;
+    }
+
+    /**
+     * Return the stock of reservations that were neither committed nor released in time
+     */
+    @Scheduled(fixedDelayString = "${stock.reservation.sweep-interval-ms:30000}")
+    public void expireStockReservations() {
         try {
-            CartEvent event = CartEvent.builder()
-                    .eventId(UUID.randomUUID().toString())
-                    .eventType(EventType.PRODUCT_VIEWED)
-                    .userId("system")
-                    .timestamp(System.currentTimeMillis())
-                    .message("Product viewed: " + product.getName())
-                    .metadata(Map.of(
-                            "productId", product.getId(),
-                            "productName", product.getName(),
-                            "price", product.getPrice()))
-                    .build();
-
-            redisPublisher.publishProductEvent(event);
+            int released = stockLedger.releaseExpired();
+            if (released > 0) {
+                logger.info("Released {} expired stock reservations", released);
+            }
         } catch (Exception e) {
-            logger.error("Failed to publish product viewed event", e);
+            logger.warn("Failed to release expired stock reservations", e);
         }
     }
+
+    private void initializeStock(Collection<Product> products) {
+        for (Product product : products) {
+            stockLedger.initialize(product.getId(),
+                    product.getStockQuantity() != null ? product.getStockQuantity() : 0);
+        }
+    }
+
+    /**
+     * Copy of the catalog entry with the ledger's current stock
+     */
+    private Product withCurrentStock(Product product) {
+        return product.toBuilder()
+                .stockQuantity(stockLedger.available(product.getId()))
+                .build();
+    }
+
+    /**
+     * Copies of catalog entries with their current stock, read from the
+     * ledger in one call for the whole list
+     */
+    private List<Product> withCurrentStock(List<Product> products) {
+        Map<Long, Integer> stock = stockLedger.available(products.stream().map(Product::getId).toList());
+        return products.stream()
+                .map(product -> product.toBuilder()
+                        .stockQuantity(stock.getOrDefault(product.getId(), 0))
+                        .build())
+                .toList();
+    }
 }
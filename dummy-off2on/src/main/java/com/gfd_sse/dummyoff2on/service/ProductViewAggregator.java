@@ -0,0 +1,136 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import com.gfd_sse.dummyoff2on.event.CartEvent;
+import com.gfd_sse.dummyoff2on.event.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts product views in process and publishes them as one summary per
+ * window, instead of one PRODUCT_VIEWED event per lookup.
+ *
+ * Recording a view is a LongAdder increment with no I/O. Every
+ * product-views.window-ms the views counted since the previous window are
+ * published as one PRODUCT_VIEWED event on the product events channel. The event's metadata holds the
+ * window bounds and productId -> views for the most viewed
+ * product-views.max-products products; views of the others are only
+ * counted in otherViews. With product-views.sample-rate below 1 only that
+ * fraction of views is counted; the summary reports the rate so consumers
+ * can scale the counts up.
+ */
+@Component
+public class ProductViewAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductViewAggregator.class);
+
+    @Value("${product-views.enabled:true}")
+    private boolean enabled;
+
+    @Value("${product-views.sample-rate:1.0}")
+    private double sampleRate;
+
+    @Value("${product-views.max-products:500}")
+    private int maxProducts;
+
+    private final RedisPublisherService redisPublisher;
+    private final IdGenerator idGenerator;
+
+    // productId -> views since startup. Never reset or removed, so a view cannot land in a counter
+    // that is being drained; only catalog products are recorded, which bounds the map.
+    private final Map<Long, LongAdder> views = new ConcurrentHashMap<>();
+
+    // productId -> views already published; only touched by flush
+    private final Map<Long, Long> published = new HashMap<>();
+
+    private volatile long windowStart = System.currentTimeMillis();
+
+    public ProductViewAggregator(RedisPublisherService redisPublisher, IdGenerator idGenerator) {
+        this.redisPublisher = redisPublisher;
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Count one view of a product. Never blocks or touches Redis.
+     */
+    public void recordView(Long productId) {
+        if (!enabled) {
+            return;
+        }
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        views.computeIfAbsent(productId, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Publish the views counted since the last flush
+     */
+    @Scheduled(fixedRateString = "${product-views.window-ms:10000}")
+    public synchronized void flush() {
+        long start = windowStart;
+        long end = System.currentTimeMillis();
+        windowStart = end;
+
+        List<Map.Entry<Long, Long>> counted = new ArrayList<>();
+        for (Map.Entry<Long, LongAdder> entry : views.entrySet()) {
+            // A view racing with this read is simply in the next window's difference
+            long total = entry.getValue().sum();
+            long count = total - published.getOrDefault(entry.getKey(), 0L);
+            if (count > 0) {
+                counted.add(Map.entry(entry.getKey(), count));
+                published.put(entry.getKey(), total);
+            }
+        }
+        if (counted.isEmpty()) {
+            return;
+        }
+
+        counted.sort(Map.Entry.<Long, Long>comparingByValue(Comparator.reverseOrder()));
+        Map<Long, Long> top = new LinkedHashMap<>();
+        long totalViews = 0;
+        long otherViews = 0;
+        for (Map.Entry<Long, Long> entry : counted) {
+            totalViews += entry.getValue();
+            if (top.size() < maxProducts) {
+                top.put(entry.getKey(), entry.getValue());
+            } else {
+                otherViews += entry.getValue();
+            }
+        }
+
+        try {
+            CartEvent event = CartEvent.builder()
+                    .eventId(idGenerator.next())
+                    .eventType(EventType.PRODUCT_VIEWED)
+                    .userId("system")
+                    .timestamp(end)
+                    .message(totalViews + " product views across " + counted.size() + " products")
+                    .metadata(Map.of(
+                            "windowStart", start,
+                            "windowEnd", end,
+                            "sampleRate", sampleRate,
+                            "views", top,
+                            "otherViews", otherViews))
+                    .build();
+
+            redisPublisher.publishProductEvent(event);
+            logger.debug("Published product view summary: {} views across {} products", totalViews,
+                    counted.size());
+        } catch (Exception e) {
+            logger.error("Failed to publish product view summary", e);
+        }
+    }
+}
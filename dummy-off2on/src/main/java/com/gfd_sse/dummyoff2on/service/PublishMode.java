@@ -0,0 +1,18 @@
+package com.gfd_sse.dummyoff2on.service;
+
+/**
+ * How events are sent to Redis
+ */
+public enum PublishMode {
+    /**
+     * PUBLISH on the calling thread; the caller waits for Redis (default)
+     */
+    SYNC,
+
+    /**
+     * Queue the event and return; a background flusher publishes queued
+     * events in pipelined batches. Opt-in: events are dropped when the queue
+     * is full
+     */
+    ASYNC
+}
@@ -0,0 +1,275 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background publisher used in ASYNC publish mode.
+ *
+ * Callers only serialize the event and put it on a bounded queue. A single
+ * flusher thread takes up to redis.publisher.batch-size events, waiting at
+ * most redis.publisher.linger-ms after the first one, and sends them as one
+ * pipelined batch of PUBLISH commands. When the queue is full the event is
+ * dropped and its future fails immediately, so a slow Redis never blocks an
+ * HTTP request thread.
+ */
+@Component
+public class RedisBatchPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisBatchPublisher.class);
+
+    // How long the idle flusher waits before re-checking for shutdown
+    private static final long IDLE_POLL_MILLIS = 200;
+
+    @Value("${redis.publisher.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${redis.publisher.batch-size:128}")
+    private int batchSize;
+
+    @Value("${redis.publisher.linger-ms:2}")
+    private long lingerMillis;
+
+    @Value("${redis.channel.pod-inbox:pod-inbox}")
+    private String podInboxChannel;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private BlockingQueue<PendingPublish> queue;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private Counter publishedCounter;
+    private Counter droppedCounter;
+    private Counter failedCounter;
+    private DistributionSummary batchSizeSummary;
+    private Timer flushTimer;
+
+    public RedisBatchPublisher(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("redis.publisher.queue.depth", queue, BlockingQueue::size)
+                .description("Events waiting to be published to Redis")
+                .register(meterRegistry);
+        Gauge.builder("redis.publisher.queue.remaining", queue, BlockingQueue::remainingCapacity)
+                .description("Free slots in the publish queue")
+                .register(meterRegistry);
+        publishedCounter = Counter.builder("redis.publisher.published")
+                .description("Events published to Redis")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("redis.publisher.dropped")
+                .description("Events dropped because the publish queue was full")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("redis.publisher.failed")
+                .description("Events whose publish batch failed")
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("redis.publisher.batch.size")
+                .description("Events per pipelined publish batch")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("redis.publisher.flush")
+                .description("Time to publish one pipelined batch")
+                .register(meterRegistry);
+
+        running = true;
+        flusher = Thread.ofPlatform().name("redis-publisher").daemon(true).start(this::run);
+    }
+
+    /**
+     * Flush what is already queued, then stop the flusher
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Queue a serialized event for publishing.
+     *
+     * @param channel     channel to publish to
+     * @param presenceKey presence entry of the target user, or null; when it
+     *                    names a pod the event goes to that pod's inbox instead
+     * @param payload     serialized message
+     * @return future completed with the number of receivers once the batch
+     *         has been sent, or failed if the event was dropped
+     */
+    public CompletableFuture<Long> submit(String channel, String presenceKey, byte[] payload) {
+        PendingPublish pending = new PendingPublish(channel, presenceKey, payload);
+        if (!queue.offer(pending)) {
+            droppedCounter.increment();
+            logger.warn("Redis publish queue full ({}). Dropped event for channel '{}'.", queueCapacity, channel);
+            pending.future.completeExceptionally(
+                    new RejectedExecutionException("Redis publish queue is full"));
+        }
+        return pending.future;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<PendingPublish> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingPublish first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                fillBatch(batch);
+                flushTimer.record(() -> flush(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Exception e) {
+                logger.error("Unexpected error in Redis publisher", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        logger.info("Redis publisher stopped");
+    }
+
+    /**
+     * Top the batch up to batch-size, waiting no longer than the linger time
+     */
+    private void fillBatch(List<PendingPublish> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.size() >= batchSize) {
+                return;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingPublish next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingPublish> batch) {
+        batchSizeSummary.record(batch.size());
+        try {
+            resolveInboxes(batch);
+            List<Object> receivers = publishAll(batch);
+
+            // An inbox nobody listens on means the pod is gone; use the shared channel
+            List<PendingPublish> retries = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                PendingPublish pending = batch.get(i);
+                long count = receivers.get(i) instanceof Long n ? n : 0L;
+                if (count == 0 && pending.inbox != null) {
+                    pending.inbox = null;
+                    retries.add(pending);
+                } else {
+                    pending.future.complete(count);
+                }
+            }
+
+            if (!retries.isEmpty()) {
+                List<Object> retried = publishAll(retries);
+                for (int i = 0; i < retries.size(); i++) {
+                    retries.get(i).future.complete(retried.get(i) instanceof Long n ? n : 0L);
+                }
+            }
+            publishedCounter.increment(batch.size());
+        } catch (Exception e) {
+            failedCounter.increment(batch.size());
+            logger.error("Failed to publish batch of {} events to Redis", batch.size(), e);
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Look up the owning pod of every routable event in one pipeline
+     */
+    private void resolveInboxes(List<PendingPublish> batch) {
+        List<PendingPublish> routable = batch.stream()
+                .filter(pending -> pending.presenceKey != null)
+                .toList();
+        if (routable.isEmpty()) {
+            return;
+        }
+
+        List<Object> podIds = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (PendingPublish pending : routable) {
+                connection.stringCommands().get(bytes(pending.presenceKey));
+            }
+            return null;
+        });
+
+        for (int i = 0; i < routable.size(); i++) {
+            if (podIds.get(i) instanceof String podId) {
+                routable.get(i).inbox = podInboxChannel + ":" + podId;
+            }
+        }
+    }
+
+    private List<Object> publishAll(List<PendingPublish> batch) {
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (PendingPublish pending : batch) {
+                String target = pending.inbox != null ? pending.inbox : pending.channel;
+                connection.publish(bytes(target), pending.payload);
+            }
+            return null;
+        });
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class PendingPublish {
+
+        private final String channel;
+        private final String presenceKey;
+        private final byte[] payload;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        // Set by the flusher once the owning pod is known
+        private String inbox;
+
+        private PendingPublish(String channel, String presenceKey, byte[] payload) {
+            this.channel = channel;
+            this.presenceKey = presenceKey;
+            this.payload = payload;
+        }
+    }
+}
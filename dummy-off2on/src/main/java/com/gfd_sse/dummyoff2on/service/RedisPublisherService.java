@@ -2,19 +2,27 @@ package com.gfd_sse.dummyoff2on.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gfd_sse.dummyoff2on.config.ChannelShards;
+import com.gfd_sse.dummyoff2on.event.CartEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class RedisPublisherService {
 
     private static final Logger logger = LoggerFactory.getLogger(RedisPublisherService.class);
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
     private final ObjectMapper objectMapper;
+    private final RedisBatchPublisher batchPublisher;
 
     @Value("${redis.channel.cart-events}")
     private String cartEventsChannel;
@@ -25,18 +33,41 @@ public class RedisPublisherService {
     @Value("${redis.channel.checkout-events}")
     private String checkoutEventsChannel;
 
-    public RedisPublisherService(RedisTemplate<String, Object> redisTemplate, ObjectMapper objectMapper) {
+    // Number of per-user channel shards for cart/checkout events (0 = single global channel)
+    @Value("${redis.channel.shards:0}")
+    private int channelShards;
+
+    // Route user events to the inbox of the pod holding the user's SSE connection
+    @Value("${redis.presence.enabled:true}")
+    private boolean presenceEnabled;
+
+    @Value("${redis.presence.key-prefix:presence:}")
+    private String presenceKeyPrefix;
+
+    @Value("${redis.channel.pod-inbox:pod-inbox}")
+    private String podInboxChannel;
+
+    @Value("${redis.publisher.mode:SYNC}")
+    private PublishMode publishMode;
+
+    public RedisPublisherService(RedisTemplate<String, Object> redisTemplate,
+            StringRedisTemplate stringRedisTemplate, ObjectMapper objectMapper,
+            RedisBatchPublisher batchPublisher) {
         this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
         this.objectMapper = objectMapper;
+        this.batchPublisher = batchPublisher;
     }
 
     /**
-     * Publish cart events to Redis channel
+     * Publish cart events to the owning pod's inbox, or to the Redis channel
+     * (the user's shard when sharding is enabled) if the user is not connected
+     *
+     * @return number of subscribers that received the event
      */
-    public void publishCartEvent(Object event) {
+    public CompletableFuture<Long> publishCartEvent(CartEvent event) {
         try {
-            redisTemplate.convertAndSend(cartEventsChannel, event);
-            logger.info("Published cart event to channel '{}': {}", cartEventsChannel, event);
+            return publishUserEvent(cartEventsChannel, event);
         } catch (Exception e) {
             logger.error("Error publishing cart event to Redis", e);
             throw new RuntimeException("Failed to publish cart event", e);
@@ -46,10 +77,9 @@ public class RedisPublisherService {
     /**
      * Publish product events to Redis channel
      */
-    public void publishProductEvent(Object event) {
+    public CompletableFuture<Long> publishProductEvent(Object event) {
         try {
-            redisTemplate.convertAndSend(productEventsChannel, event);
-            logger.info("Published product event to channel '{}': {}", productEventsChannel, event);
+            return publish(productEventsChannel, null, event);
         } catch (Exception e) {
             logger.error("Error publishing product event to Redis", e);
             throw new RuntimeException("Failed to publish product event", e);
@@ -57,12 +87,12 @@ public class RedisPublisherService {
     }
 
     /**
-     * Publish checkout events to Redis channel
+     * Publish checkout events to the owning pod's inbox, or to the Redis channel
+     * (the user's shard when sharding is enabled) if the user is not connected
      */
-    public void publishCheckoutEvent(Object event) {
+    public CompletableFuture<Long> publishCheckoutEvent(CartEvent event) {
         try {
-            redisTemplate.convertAndSend(checkoutEventsChannel, event);
-            logger.info("Published checkout event to channel '{}': {}", checkoutEventsChannel, event);
+            return publishUserEvent(checkoutEventsChannel, event);
         } catch (Exception e) {
             logger.error("Error publishing checkout event to Redis", e);
             throw new RuntimeException("Failed to publish checkout event", e);
@@ -72,13 +102,72 @@ public class RedisPublisherService {
     /**
      * Generic method to publish to any channel
      */
-    public void publishToChannel(String channel, Object event) {
+    public CompletableFuture<Long> publishToChannel(String channel, Object event) {
         try {
-            redisTemplate.convertAndSend(channel, event);
-            logger.info("Published event to channel '{}': {}", channel, event);
+            return publish(channel, null, event);
         } catch (Exception e) {
             logger.error("Error publishing event to Redis channel: {}", channel, e);
             throw new RuntimeException("Failed to publish event to channel: " + channel, e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Publish a user's event directly to the pod that holds the user's SSE
+     * connection. Falls back to the shared channel when the user has no
+     * presence entry or the pod's inbox has no subscriber (pod gone).
+     */
+    private CompletableFuture<Long> publishUserEvent(String baseChannel, CartEvent event) {
+        String userId = event.getUserId();
+        String presenceKey = presenceEnabled && userId != null ? presenceKeyPrefix + userId : null;
+        return publish(channelFor(baseChannel, userId), presenceKey, event);
+    }
+
+    /**
+     * Publish on the calling thread (SYNC) or hand the serialized event to
+     * the batch publisher (ASYNC)
+     */
+    private CompletableFuture<Long> publish(String channel, String presenceKey, Object event) {
+        if (publishMode == PublishMode.ASYNC) {
+            CompletableFuture<Long> result = batchPublisher.submit(channel, presenceKey, serialize(event));
+            logger.debug("Queued event for channel '{}': {}", channel, event);
+            return result;
+        }
+
+        if (presenceKey != null) {
+            String podId = stringRedisTemplate.opsForValue().get(presenceKey);
+            if (podId != null) {
+                String inbox = podInboxChannel + ":" + podId;
+                Long receivers = redisTemplate.convertAndSend(inbox, event);
+                if (receivers != null && receivers > 0) {
+                    logger.info("Published event to channel '{}': {}", inbox, event);
+                    return CompletableFuture.completedFuture(receivers);
+                }
+                logger.debug("No subscriber on inbox '{}'. Falling back to channel '{}'.", inbox, channel);
+            }
+        }
+
+        Long receivers = redisTemplate.convertAndSend(channel, event);
+        logger.info("Published event to channel '{}': {}", channel, event);
+        return CompletableFuture.completedFuture(receivers != null ? receivers : 0L);
+    }
+
+    /**
+     * Serialize with the template's value serializer, so queued events are
+     * byte-for-byte what convertAndSend would publish
+     */
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(Object event) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(event);
+    }
+
+    /**
+     * Channel for a user's events. With sharding, SSE pods only subscribe to
+     * the shards of users connected to them.
+     */
+    private String channelFor(String baseChannel, String userId) {
+        if (channelShards <= 0 || userId == null) {
+            return baseChannel;
+        }
+        return ChannelShards.channel(baseChannel, ChannelShards.shardOf(userId, channelShards));
+    }
+}
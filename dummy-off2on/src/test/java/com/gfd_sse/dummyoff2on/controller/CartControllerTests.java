@@ -0,0 +1,94 @@
+package com.gfd_sse.dummyoff2on.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gfd_sse.dummyoff2on.dto.AddToCartResponse;
+import com.gfd_sse.dummyoff2on.dto.ApiResponse;
+import com.gfd_sse.dummyoff2on.dto.CartBatchRequest;
+import com.gfd_sse.dummyoff2on.dto.CartOperation;
+import com.gfd_sse.dummyoff2on.service.CartService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class CartControllerTests {
+
+  private static final CartOperation ADD_ONE = CartOperation.builder()
+      .type(CartOperation.Type.ADD)
+      .productId(1L)
+      .quantity(1)
+      .build();
+
+  private final CartService cartService = mock(CartService.class);
+  private final CartController controller = controller(3);
+
+  @Test void validBatchIsHandedToTheService() {
+    when(cartService.applyBatch(any())).thenReturn(AddToCartResponse.builder().success(true).build());
+
+    ResponseEntity<ApiResponse<AddToCartResponse>> response = controller.applyBatch(batch("alice",
+        List.of(ADD_ONE, operation(CartOperation.Type.UPDATE_QUANTITY, 2L, 0),
+            operation(CartOperation.Type.REMOVE, 3L, null))));
+
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    verify(cartService).applyBatch(any());
+  }
+
+  @Test void invalidBatchesAreRejectedBeforeTheService() {
+    assertRejected(batch(null, List.of(ADD_ONE)), "User ID is required");
+    assertRejected(batch("alice", List.of()), "At least one operation is required");
+    assertRejected(batch("alice", Collections.nCopies(4, ADD_ONE)), "At most 3 operations are allowed");
+    assertRejected(batch("alice", withNull()), "Operation type is required");
+    assertRejected(batch("alice", List.of(operation(CartOperation.Type.ADD, null, 1))), "Product ID is required");
+    assertRejected(batch("alice", List.of(operation(CartOperation.Type.ADD, 1L, 0))),
+        "Quantity must be greater than 0");
+    assertRejected(batch("alice", List.of(operation(CartOperation.Type.UPDATE_QUANTITY, 1L, -1))),
+        "Quantity must not be negative");
+
+    verify(cartService, never()).applyBatch(any());
+  }
+
+  @Test void serviceRefusalIsABadRequest() {
+    when(cartService.applyBatch(any())).thenReturn(AddToCartResponse.builder()
+        .success(false)
+        .message("Insufficient stock available for product: 1")
+        .build());
+
+    assertRejected(batch("alice", List.of(ADD_ONE)), "Insufficient stock available for product: 1");
+  }
+
+  private void assertRejected(CartBatchRequest request, String message) {
+    ResponseEntity<ApiResponse<AddToCartResponse>> response = controller.applyBatch(request);
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    assertThat(response.getBody().getMessage()).isEqualTo(message);
+  }
+
+  private CartController controller(int maxBatchOperations) {
+    CartController cartController = new CartController(cartService);
+    ReflectionTestUtils.setField(cartController, "maxBatchOperations", maxBatchOperations);
+    return cartController;
+  }
+
+  private static List<CartOperation> withNull() {
+    List<CartOperation> operations = new ArrayList<>();
+    operations.add(ADD_ONE);
+    operations.add(null);
+    return operations;
+  }
+
+  private static CartOperation operation(CartOperation.Type type, Long productId, Integer quantity) {
+    return CartOperation.builder().type(type).productId(productId).quantity(quantity).build();
+  }
+
+  private static CartBatchRequest batch(String userId, List<CartOperation> operations) {
+    return CartBatchRequest.builder().userId(userId).operations(operations).build();
+  }
+}
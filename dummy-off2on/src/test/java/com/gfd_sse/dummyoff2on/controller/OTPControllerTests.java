@@ -0,0 +1,41 @@
+package com.gfd_sse.dummyoff2on.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.gfd_sse.dummyoff2on.dto.OTPGenerationRequest;
+import com.gfd_sse.dummyoff2on.dto.OTPGenerationResponse;
+import com.gfd_sse.dummyoff2on.model.IssuedOTP;
+import com.gfd_sse.dummyoff2on.service.OTPService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class OTPControllerTests {
+
+  private final OTPService otpService = mock(OTPService.class);
+  private final OTPController controller = new OTPController(otpService);
+
+  @Test void instructionsStateTheIssuedOtpsValidity() {
+    long expiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(10);
+    when(otpService.generateOTP("alice")).thenReturn(IssuedOTP.builder()
+        .otp("123456")
+        .userId("alice")
+        .expiresAt(expiresAt)
+        .build());
+
+    OTPGenerationResponse response = controller.generateOTP(OTPGenerationRequest.builder().userId("alice").build())
+        .getBody();
+
+    assertThat(response.getExpiresAt()).isEqualTo(expiresAt);
+    assertThat(response.getInstructions()).endsWith("Valid for 10 minutes.");
+  }
+
+  @Test void shortValiditiesAreGivenInSeconds() {
+    assertThat(OTPController.validity(299_990)).isEqualTo("5 minutes");
+    assertThat(OTPController.validity(150_000)).isEqualTo("3 minutes");
+    assertThat(OTPController.validity(119_000)).isEqualTo("119 seconds");
+    assertThat(OTPController.validity(1_000)).isEqualTo("1 second");
+    assertThat(OTPController.validity(-5)).isEqualTo("0 seconds");
+  }
+}
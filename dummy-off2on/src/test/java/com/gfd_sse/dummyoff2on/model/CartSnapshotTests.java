@@ -0,0 +1,116 @@
+package com.gfd_sse.dummyoff2on.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class CartSnapshotTests {
+
+  private static final Product MOUSE = product(1L, "24.99");
+  private static final Product CABLE = product(2L, "9.50");
+  private static final Product LAPTOP = product(3L, "1299.00");
+
+  @Test void addingMergesLinesAndKeepsRunningTotals() {
+    CartSnapshot cart = CartSnapshot.EMPTY
+        .withItemAdded(MOUSE, 1)
+        .withItemAdded(CABLE, 2)
+        .withItemAdded(MOUSE, 2);
+
+    assertThat(productIds(cart)).containsExactly(1L, 2L);
+    assertThat(cart.getLine(1L).getQuantity()).isEqualTo(3);
+    assertThat(cart.getLine(1L).getSubtotal()).isEqualTo(Money.parse("74.97"));
+    assertThat(cart.getTotalAmount()).isEqualTo(Money.parse("93.97"));
+    assertThat(cart.getTotalItems()).isEqualTo(5);
+    assertThat(cart.getVersion()).isEqualTo(3);
+  }
+
+  @Test void snapshotsAreNeverChangedByLaterMutations() {
+    CartSnapshot before = CartSnapshot.EMPTY.withItemAdded(MOUSE, 1);
+
+    CartSnapshot after = before.withChanges(List.of(CartLineChange.set(MOUSE, 5), CartLineChange.add(CABLE, 1)));
+
+    assertThat(before.getItems()).hasSize(1);
+    assertThat(before.getLine(1L).getQuantity()).isEqualTo(1);
+    assertThat(before.getTotalAmount()).isEqualTo(Money.parse("24.99"));
+    assertThat(after.getLine(1L).getQuantity()).isEqualTo(5);
+    assertThat(CartSnapshot.EMPTY.isEmpty()).isTrue();
+    assertThatThrownBy(() -> after.getItems().clear()).isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test void changesApplyInOrderAsOneMutation() {
+    CartSnapshot cart = CartSnapshot.EMPTY.withItemAdded(MOUSE, 1).withItemAdded(CABLE, 1);
+
+    CartSnapshot changed = cart.withChanges(List.of(
+        CartLineChange.set(CABLE, 4),
+        CartLineChange.remove(1L),
+        CartLineChange.add(LAPTOP, 1),
+        CartLineChange.add(MOUSE, 2),
+        CartLineChange.remove(99L)));
+
+    assertThat(changed.getVersion()).isEqualTo(cart.getVersion() + 1);
+    assertThat(productIds(changed)).as("quantity change keeps position, re-added line goes last")
+        .containsExactly(2L, 3L, 1L);
+    assertThat(changed.getTotalItems()).isEqualTo(7);
+    assertThat(changed.getTotalAmount()).isEqualTo(Money.parse("1386.98"));
+  }
+
+  @Test void settingZeroRemovesTheLine() {
+    CartSnapshot cart = CartSnapshot.EMPTY.withItemAdded(MOUSE, 2);
+
+    CartSnapshot cleared = cart.withChanges(List.of(CartLineChange.set(MOUSE, 0)));
+
+    assertThat(cleared.isEmpty()).isTrue();
+    assertThat(cleared.getTotalAmount()).isEqualTo(Money.ZERO);
+    assertThat(cleared.getTotalItems()).isZero();
+  }
+
+  @Test void runningTotalsMatchARecountAfterRandomChanges() {
+    Random random = new Random(42);
+    List<Product> products = List.of(MOUSE, CABLE, LAPTOP);
+    CartSnapshot cart = CartSnapshot.EMPTY;
+
+    for (int i = 0; i < 2_000; i++) {
+      Product product = products.get(random.nextInt(products.size()));
+      CartLineChange change = switch (random.nextInt(3)) {
+        case 0 -> CartLineChange.add(product, 1 + random.nextInt(3));
+        case 1 -> CartLineChange.set(product, random.nextInt(4));
+        default -> CartLineChange.remove(product.getId());
+      };
+      cart = cart.withChanges(List.of(change));
+
+      Money recountedAmount = cart.getItems().stream().map(CartItem::getSubtotal).reduce(Money.ZERO, Money::plus);
+      int recountedItems = cart.getItems().stream().mapToInt(CartItem::getQuantity).sum();
+      assertThat(cart.getTotalAmount()).isEqualTo(recountedAmount);
+      assertThat(cart.getTotalItems()).isEqualTo(recountedItems);
+    }
+  }
+
+  @Test void restoreKeepsStoredOrderAndTotals() {
+    CartSnapshot cart = CartSnapshot.EMPTY.withItemAdded(CABLE, 1).withItemAdded(MOUSE, 2);
+
+    CartSnapshot restored = CartSnapshot.restore(cart.getItems(), cart.getTotalAmount(), cart.getTotalItems(),
+        cart.getVersion());
+
+    assertThat(restored.getItems()).isEqualTo(cart.getItems());
+    assertThat(restored.getLine(1L)).isEqualTo(cart.getLine(1L));
+    assertThat(restored.getVersion()).isEqualTo(2);
+    assertThat(restored.withItemAdded(CABLE, 1).getTotalAmount()).isEqualTo(Money.parse("68.98"));
+  }
+
+  private static List<Long> productIds(CartSnapshot cart) {
+    return cart.getItems().stream().map(CartItem::getProductId).toList();
+  }
+
+  private static Product product(Long id, String price) {
+    return Product.builder()
+        .id(id)
+        .name("Product " + id)
+        .category("Accessories")
+        .price(Money.parse(price))
+        .stockQuantity(10)
+        .build();
+  }
+}
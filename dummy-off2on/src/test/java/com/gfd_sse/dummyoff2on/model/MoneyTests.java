@@ -0,0 +1,84 @@
+package com.gfd_sse.dummyoff2on.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.Test;
+
+class MoneyTests {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test void parsesPlainDecimals() {
+    assertThat(Money.parse("999.99").getMinorUnits()).isEqualTo(99999);
+    assertThat(Money.parse("0.5").getMinorUnits()).isEqualTo(50);
+    assertThat(Money.parse(".5").getMinorUnits()).isEqualTo(50);
+    assertThat(Money.parse("5").getMinorUnits()).isEqualTo(500);
+    assertThat(Money.parse("5.").getMinorUnits()).isEqualTo(500);
+    assertThat(Money.parse("+5").getMinorUnits()).isEqualTo(500);
+    assertThat(Money.parse("-5").getMinorUnits()).isEqualTo(-500);
+    assertThat(Money.parse("-0.05").getMinorUnits()).isEqualTo(-5);
+    assertThat(Money.parse("0")).isSameAs(Money.ZERO);
+  }
+
+  @Test void roundsSubCentAndExponentInputLikeBigDecimal() {
+    assertThat(Money.parse("1.005").getMinorUnits()).isEqualTo(101);
+    assertThat(Money.parse("1.004").getMinorUnits()).isEqualTo(100);
+    assertThat(Money.parse("-1.005").getMinorUnits()).isEqualTo(-101);
+    assertThat(Money.parse("1E2").getMinorUnits()).isEqualTo(10000);
+  }
+
+  @Test void rejectsMalformedInput() {
+    for (String text : new String[] {"", "-", ".", "1.2.3", "1.2.", "12a", " 5", "1,50"}) {
+      assertThatThrownBy(() -> Money.parse(text)).as(text).isInstanceOf(NumberFormatException.class);
+    }
+  }
+
+  @Test void rejectsAmountsBeyondLongMinorUnits() {
+    assertThatThrownBy(() -> Money.parse("92233720368547758.08")).isInstanceOf(ArithmeticException.class);
+    assertThatThrownBy(() -> Money.ofMinor(Long.MAX_VALUE).plus(Money.ofMinor(1)))
+        .isInstanceOf(ArithmeticException.class);
+  }
+
+  @Test void formatsWithExactlyTwoDecimals() {
+    assertThat(Money.ofMinor(99999)).hasToString("999.99");
+    assertThat(Money.ofMinor(5)).hasToString("0.05");
+    assertThat(Money.ofMinor(-5)).hasToString("-0.05");
+    assertThat(Money.ofMinor(-1234)).hasToString("-12.34");
+    assertThat(Money.ZERO).hasToString("0.00");
+  }
+
+  @Test void stringRoundTripMatchesBigDecimal() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < 10_000; i++) {
+      long minorUnits = random.nextLong(-1_000_000_000_000L, 1_000_000_000_000L);
+      Money money = Money.ofMinor(minorUnits);
+
+      assertThat(Money.parse(money.toString())).isEqualTo(money);
+      assertThat(money.toBigDecimal()).isEqualTo(BigDecimal.valueOf(minorUnits, Money.SCALE));
+      assertThat(money.toString()).isEqualTo(money.toBigDecimal().toPlainString());
+    }
+  }
+
+  @Test void arithmeticStaysInMinorUnits() {
+    Money price = Money.parse("19.99");
+
+    assertThat(price.times(3)).isEqualTo(Money.parse("59.97"));
+    assertThat(price.plus(Money.parse("0.01"))).isEqualTo(Money.parse("20"));
+    assertThat(price.minus(price)).isSameAs(Money.ZERO);
+    assertThat(Money.of(new BigDecimal("19.985"))).isEqualTo(Money.parse("19.99"));
+  }
+
+  @Test void jsonRoundTripUsesPlainDecimalNumbers() throws Exception {
+    assertThat(objectMapper.writeValueAsString(Money.parse("999.9"))).isEqualTo("999.90");
+    assertThat(objectMapper.readValue("999.99", Money.class)).isEqualTo(Money.ofMinor(99999));
+    assertThat(objectMapper.readValue("12", Money.class)).isEqualTo(Money.ofMinor(1200));
+    assertThat(objectMapper.readValue("\"0.10\"", Money.class)).isEqualTo(Money.ofMinor(10));
+
+    Money money = Money.ofMinor(-123456789);
+    assertThat(objectMapper.readValue(objectMapper.writeValueAsString(money), Money.class)).isEqualTo(money);
+  }
+}
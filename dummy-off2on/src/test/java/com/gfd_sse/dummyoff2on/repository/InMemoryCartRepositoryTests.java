@@ -0,0 +1,208 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.gfd_sse.dummyoff2on.event.CartEvictedEvent;
+import com.gfd_sse.dummyoff2on.model.CartLineChange;
+import com.gfd_sse.dummyoff2on.model.CartSnapshot;
+import com.gfd_sse.dummyoff2on.model.Money;
+import com.gfd_sse.dummyoff2on.model.Product;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class InMemoryCartRepositoryTests {
+
+  private static final Product MOUSE = Product.builder()
+      .id(1L)
+      .name("Wireless Mouse")
+      .category("Accessories")
+      .price(Money.parse("24.99"))
+      .stockQuantity(100)
+      .build();
+
+  private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+  @Test void sequencesFollowMutationsAndSnapshots() {
+    InMemoryCartRepository repository = repository(30, 100);
+
+    assertThat(repository.addItem("alice", MOUSE, 1).getSequence()).isEqualTo(1);
+    assertThat(repository.applyChanges("alice", List.of(CartLineChange.set(MOUSE, 3))).getSequence())
+        .isEqualTo(2);
+    CartUpdate snapshot = repository.snapshot("alice");
+    assertThat(snapshot.getSequence()).isEqualTo(3);
+    assertThat(snapshot.getCart().getTotalItems()).isEqualTo(3);
+    assertThat(repository.nextSequence("alice")).isEqualTo(4);
+
+    repository.delete("alice");
+    assertThat(repository.addItem("alice", MOUSE, 1).getSequence()).as("restarts with a new cart").isEqualTo(1);
+  }
+
+  @Test void userWithoutACartGetsNoSequence() {
+    InMemoryCartRepository repository = repository(30, 100);
+
+    assertThat(repository.nextSequence("nobody")).isZero();
+    assertThat(repository.nextSequence("nobody")).isZero();
+    CartUpdate snapshot = repository.snapshot("nobody");
+    assertThat(snapshot.getSequence()).isZero();
+    assertThat(snapshot.getCart()).isSameAs(CartSnapshot.EMPTY);
+
+    assertThat(repository.addItem("nobody", MOUSE, 1).getSequence()).isEqualTo(1);
+  }
+
+  @Test void deleteIfUnchangedOnlyDeletesTheVersionSeen() {
+    InMemoryCartRepository repository = repository(30, 100);
+    CartSnapshot seen = repository.addItem("alice", MOUSE, 1).getCart();
+    repository.addItem("alice", MOUSE, 1);
+
+    assertThat(repository.deleteIfUnchanged("alice", seen.getVersion())).isZero();
+    assertThat(repository.deleteIfUnchanged("alice", repository.find("alice").getVersion()))
+        .as("sequence of the deletion event").isEqualTo(3);
+    assertThat(repository.find("alice")).isSameAs(CartSnapshot.EMPTY);
+    assertThat(repository.deleteIfUnchanged("alice", 0)).isZero();
+    assertThat(repository.addItem("alice", MOUSE, 1).getSequence()).isEqualTo(1);
+  }
+
+  @Test void concurrentMutationsGetContiguousSequencesAndLoseNothing() throws Exception {
+    InMemoryCartRepository repository = repository(30, 100);
+    int threads = 16;
+    int addsPerThread = 500;
+    Set<Long> sequences = ConcurrentHashMap.newKeySet();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(pool.submit(() -> {
+          start.await();
+          for (int i = 0; i < addsPerThread; i++) {
+            sequences.add(repository.addItem("alice", MOUSE, 1).getSequence());
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    int total = threads * addsPerThread;
+    assertThat(sequences).containsExactlyInAnyOrderElementsOf(LongStream.rangeClosed(1, total).boxed().toList());
+    assertThat(repository.find("alice").getTotalItems()).isEqualTo(total);
+    assertThat(repository.find("alice").getTotalAmount()).isEqualTo(Money.parse("24.99").times(total));
+  }
+
+  @Test void deletesRacingWithAddsNeverResetANewCartsSequence() throws Exception {
+    InMemoryCartRepository repository = repository(30, 100);
+    List<String> mismatches = new CopyOnWriteArrayList<>();
+    AtomicBoolean adding = new AtomicBoolean(true);
+    ExecutorService pool = Executors.newFixedThreadPool(3);
+    try {
+      List<Future<?>> adders = new ArrayList<>();
+      for (int t = 0; t < 2; t++) {
+        adders.add(pool.submit(() -> {
+          for (int i = 0; i < 20_000; i++) {
+            // Only adds change this cart, so its sequence has to match its version
+            CartUpdate update = repository.addItem("alice", MOUSE, 1);
+            if (update.getSequence() != update.getCart().getVersion()) {
+              mismatches.add(update.getSequence() + " != " + update.getCart().getVersion());
+            }
+          }
+          return null;
+        }));
+      }
+      Future<?> deleter = pool.submit(() -> {
+        while (adding.get()) {
+          repository.delete("alice");
+        }
+      });
+      for (Future<?> adder : adders) {
+        adder.get(30, TimeUnit.SECONDS);
+      }
+      adding.set(false);
+      deleter.get(5, TimeUnit.SECONDS);
+    } finally {
+      pool.shutdown();
+    }
+
+    assertThat(mismatches).isEmpty();
+    CartUpdate next = repository.addItem("alice", MOUSE, 1);
+    assertThat(next.getSequence()).isEqualTo(next.getCart().getVersion());
+  }
+
+  @Test void idleCartsAreEvictedByTheSweep() {
+    // A zero TTL makes every cart due as soon as its bucket has passed
+    InMemoryCartRepository repository = repository(0, 100);
+    repository.addItem("alice", MOUSE, 1);
+    repository.nextSequence("alice");
+
+    await().atMost(Duration.ofSeconds(5)).until(() -> {
+      repository.evictIdleCarts();
+      return repository.find("alice").isEmpty();
+    });
+
+    verify(eventPublisher).publishEvent(new CartEvictedEvent("alice", CartEvictedEvent.Reason.IDLE));
+    assertThat(repository.nextSequence("alice")).isZero();
+    assertThat(repository.addItem("alice", MOUSE, 1).getSequence()).isEqualTo(1);
+  }
+
+  @Test void sweepLeavesCartsThatAreStillInUse() {
+    InMemoryCartRepository repository = repository(30, 100);
+    repository.addItem("alice", MOUSE, 1);
+
+    repository.evictIdleCarts();
+
+    assertThat(repository.find("alice").getTotalItems()).isEqualTo(1);
+    verify(eventPublisher, never()).publishEvent(any(Object.class));
+  }
+
+  @Test void storeOverCapacityEvictsDownToTheLimit() {
+    InMemoryCartRepository repository = repository(30, 3);
+    for (int i = 0; i < 4; i++) {
+      repository.addItem("user-" + i, MOUSE, 1);
+    }
+
+    ArgumentCaptor<CartEvictedEvent> evicted = ArgumentCaptor.forClass(CartEvictedEvent.class);
+    verify(eventPublisher, times(1)).publishEvent(evicted.capture());
+    assertThat(evicted.getValue().getReason()).isEqualTo(CartEvictedEvent.Reason.CAPACITY);
+
+    String evictedUser = evicted.getValue().getUserId();
+    assertThat(repository.find(evictedUser).isEmpty()).isTrue();
+    assertThat(repository.nextSequence(evictedUser)).isZero();
+    long remaining = LongStream.range(0, 4)
+        .filter(i -> !repository.find("user-" + i).isEmpty())
+        .count();
+    assertThat(remaining).isEqualTo(3);
+  }
+
+  private InMemoryCartRepository repository(long idleTtlMinutes, int maxEntries) {
+    InMemoryCartRepository repository = new InMemoryCartRepository(eventPublisher);
+    ReflectionTestUtils.setField(repository, "idleTtlMinutes", idleTtlMinutes);
+    ReflectionTestUtils.setField(repository, "maxEntries", maxEntries);
+    repository.init();
+    return repository;
+  }
+}
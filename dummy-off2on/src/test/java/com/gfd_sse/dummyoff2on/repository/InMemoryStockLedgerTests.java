@@ -0,0 +1,191 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.jupiter.api.Test;
+
+class InMemoryStockLedgerTests {
+
+  private static final Duration TTL = Duration.ofMinutes(5);
+
+  private final InMemoryStockLedger ledger = new InMemoryStockLedger();
+
+  @Test void reservesAllOrNothing() {
+    ledger.initialize(1L, 5);
+    ledger.initialize(2L, 1);
+
+    assertThat(ledger.reserve("a", Map.of(1L, 3, 2L, 2), TTL)).isFalse();
+    assertThat(ledger.available(List.of(1L, 2L))).containsEntry(1L, 5).containsEntry(2L, 1);
+
+    assertThat(ledger.reserve("b", Map.of(1L, 3, 2L, 1), TTL)).isTrue();
+    assertThat(ledger.available(List.of(1L, 2L, 3L)))
+        .containsEntry(1L, 2).containsEntry(2L, 0).containsEntry(3L, 0);
+  }
+
+  @Test void commitKeepsUnitsAndReleaseReturnsThem() {
+    ledger.initialize(1L, 10);
+
+    assertThat(ledger.reserve("a", Map.of(1L, 4), TTL)).isTrue();
+    assertThat(ledger.reserve("a", Map.of(1L, 1), TTL)).as("id in use").isFalse();
+    assertThat(ledger.reserve("b", Map.of(1L, 4), TTL)).isTrue();
+
+    assertThat(ledger.commit("a")).isTrue();
+    assertThat(ledger.commit("a")).isFalse();
+    assertThat(ledger.release("a")).isFalse();
+    assertThat(ledger.release("b")).isTrue();
+    assertThat(ledger.commit("b")).isFalse();
+
+    assertThat(ledger.available(1L)).isEqualTo(6);
+  }
+
+  @Test void releasesExpiredReservationsOnly() {
+    ledger.initialize(1L, 10);
+    ledger.reserve("expired", Map.of(1L, 3), Duration.ZERO);
+    ledger.reserve("open", Map.of(1L, 2), TTL);
+
+    assertThat(ledger.releaseExpired()).isEqualTo(1);
+    assertThat(ledger.commit("expired")).isFalse();
+    assertThat(ledger.commit("open")).isTrue();
+    assertThat(ledger.available(1L)).isEqualTo(8);
+  }
+
+  @Test void adjustNeverGoesBelowZero() {
+    ledger.initialize(1L, 3);
+    ledger.initialize(1L, 100);
+
+    assertThat(ledger.available(1L)).as("initialize keeps an existing count").isEqualTo(3);
+    assertThat(ledger.adjust(1L, -5)).isZero();
+    assertThat(ledger.adjust(1L, 7)).isEqualTo(7);
+    assertThat(ledger.adjust(9L, 2)).isEqualTo(2);
+  }
+
+  @Test void sellsTheLastUnitExactlyOnce() throws Exception {
+    ledger.initialize(1L, 1);
+    int checkouts = 2000;
+    ExecutorService executor = Executors.newFixedThreadPool(32);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger sold = new AtomicInteger();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < checkouts; i++) {
+        String id = "order-" + i;
+        futures.add(executor.submit(() -> {
+          start.await();
+          if (ledger.reserve(id, Map.of(1L, 1), TTL) && ledger.commit(id)) {
+            sold.incrementAndGet();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(sold).hasValue(1);
+    assertThat(ledger.available(1L)).isZero();
+  }
+
+  @Test void concurrentReserveCommitReleaseNeverOversellsOrLosesUnits() throws Exception {
+    int products = 5;
+    int initialStock = 500;
+    for (long productId = 0; productId < products; productId++) {
+      ledger.initialize(productId, initialStock);
+    }
+
+    int checkouts = 5000;
+    AtomicIntegerArray committed = new AtomicIntegerArray(products);
+    AtomicInteger oversold = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(32);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < checkouts; i++) {
+        String id = "order-" + i;
+        futures.add(executor.submit(() -> {
+          start.await();
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          Map<Long, Integer> order = new HashMap<>();
+          for (int line = random.nextInt(1, 4); line > 0; line--) {
+            order.merge((long) random.nextInt(products), random.nextInt(1, 4), Integer::sum);
+          }
+
+          if (!ledger.reserve(id, order, TTL)) {
+            return null;
+          }
+          if (random.nextBoolean()) {
+            if (ledger.commit(id)) {
+              order.forEach((productId, units) -> committed.addAndGet(productId.intValue(), units));
+            }
+          } else {
+            ledger.release(id);
+          }
+          for (long productId = 0; productId < products; productId++) {
+            if (ledger.available(productId) < 0) {
+              oversold.incrementAndGet();
+            }
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(oversold).hasValue(0);
+    assertThat(ledger.releaseExpired()).isZero();
+    for (int productId = 0; productId < products; productId++) {
+      assertThat(committed.get(productId)).isLessThanOrEqualTo(initialStock);
+      assertThat(ledger.available((long) productId) + committed.get(productId))
+          .as("units of product %d", productId)
+          .isEqualTo(initialStock);
+    }
+  }
+
+  @Test void concurrentExpirySweepAndCommitSettleEachReservationOnce() throws Exception {
+    ledger.initialize(1L, 1000);
+    int reservations = 1000;
+    for (int i = 0; i < reservations; i++) {
+      ledger.reserve("order-" + i, Map.of(1L, 1), Duration.ZERO);
+    }
+
+    AtomicInteger committed = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<Integer> sweep = executor.submit(ledger::releaseExpired);
+      Future<?> commits = executor.submit(() -> {
+        for (int i = 0; i < reservations; i++) {
+          if (ledger.commit("order-" + i)) {
+            committed.incrementAndGet();
+          }
+        }
+      });
+      commits.get();
+      int released = sweep.get() + ledger.releaseExpired();
+
+      assertThat(released + committed.get()).isEqualTo(reservations);
+      assertThat(ledger.available(1L)).isEqualTo(released);
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gfd_sse.dummyoff2on.EmbeddedRedis;
+import com.gfd_sse.dummyoff2on.event.CartEvictedEvent;
+import com.gfd_sse.dummyoff2on.model.CartItem;
+import com.gfd_sse.dummyoff2on.model.CartLineChange;
+import com.gfd_sse.dummyoff2on.model.CartSnapshot;
+import com.gfd_sse.dummyoff2on.model.Money;
+import com.gfd_sse.dummyoff2on.model.Product;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RedisCartRepositoryTests {
+
+  private static final Product MOUSE = product(1L, "Wireless Mouse", "24.99");
+  private static final Product CABLE = product(2L, "USB-C Cable", "9.50");
+  private static final Product LAPTOP = product(3L, "Laptop Pro 14", "1299.00");
+
+  private static EmbeddedRedis redis;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+  private RedisCartRepository repository;
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void setUp() {
+    redis.flush();
+    repository = repository();
+  }
+
+  @Test void addItemScriptMergesLinesAndKeepsTotals() {
+    CartUpdate first = repository.addItem("alice", MOUSE, 1);
+    repository.addItem("alice", CABLE, 2);
+    CartUpdate third = repository.addItem("alice", MOUSE, 2);
+
+    assertThat(first.getSequence()).isEqualTo(1);
+    assertThat(third.getSequence()).isEqualTo(3);
+    CartSnapshot cart = third.getCart();
+    assertThat(cart.getItems()).extracting(CartItem::getProductId).containsExactly(1L, 2L);
+    assertThat(cart.getLine(1L).getQuantity()).isEqualTo(3);
+    assertThat(cart.getLine(1L).getSubtotal()).isEqualTo(Money.parse("74.97"));
+    assertThat(cart.getLine(1L).getProductName()).isEqualTo("Wireless Mouse");
+    assertThat(cart.getTotalAmount()).isEqualTo(Money.parse("93.97"));
+    assertThat(cart.getTotalItems()).isEqualTo(5);
+    assertThat(cart.getVersion()).isEqualTo(3);
+  }
+
+  @Test void applyChangesScriptMatchesTheInMemoryModel() {
+    repository.addItem("alice", MOUSE, 1);
+    repository.addItem("alice", CABLE, 4);
+    List<CartLineChange> changes = List.of(
+        CartLineChange.add(LAPTOP, 1),
+        CartLineChange.set(CABLE, 2),
+        CartLineChange.remove(1L),
+        CartLineChange.add(MOUSE, 3),
+        CartLineChange.set(LAPTOP, 0));
+
+    CartUpdate update = repository.applyChanges("alice", changes);
+
+    CartSnapshot expected = CartSnapshot.EMPTY
+        .withItemAdded(MOUSE, 1)
+        .withItemAdded(CABLE, 4)
+        .withChanges(changes);
+    assertThat(update.getSequence()).isEqualTo(3);
+    assertThat(update.getCart().getItems()).isEqualTo(expected.getItems());
+    assertThat(update.getCart().getTotalAmount()).isEqualTo(expected.getTotalAmount());
+    assertThat(update.getCart().getTotalItems()).isEqualTo(expected.getTotalItems());
+    assertThat(repository().find("alice").getItems()).isEqualTo(expected.getItems());
+  }
+
+  @Test void missingCartIsReadWithoutCreatingKeys() {
+    assertThat(repository.find("nobody").isEmpty()).isTrue();
+
+    CartUpdate snapshot = repository.snapshot("nobody");
+    assertThat(snapshot.getSequence()).isZero();
+    assertThat(snapshot.getCart().isEmpty()).isTrue();
+    assertThat(repository.nextSequence("nobody")).isZero();
+
+    assertThat(redis.template().keys("*")).isEmpty();
+  }
+
+  @Test void sequenceIsSharedBySnapshotsAndMutationsAndExpiresWithTheCart() {
+    repository.addItem("alice", MOUSE, 1);
+
+    assertThat(repository.snapshot("alice").getSequence()).isEqualTo(2);
+    assertThat(repository.nextSequence("alice")).isEqualTo(3);
+    assertThat(repository.addItem("alice", CABLE, 1).getSequence()).isEqualTo(4);
+
+    Long cartTtl = redis.template().getExpire("cart:{alice}", TimeUnit.SECONDS);
+    Long sequenceTtl = redis.template().getExpire("cart:{alice}:seq", TimeUnit.SECONDS);
+    assertThat(cartTtl).isBetween(29 * 60L, 30 * 60L);
+    assertThat(sequenceTtl).isBetween(29 * 60L, 30 * 60L);
+  }
+
+  @Test void deleteIfUnchangedOnlyDeletesTheVersionSeen() {
+    CartSnapshot seen = repository.addItem("alice", MOUSE, 1).getCart();
+    repository.addItem("alice", CABLE, 1);
+
+    assertThat(repository.deleteIfUnchanged("alice", seen.getVersion())).isZero();
+    assertThat(repository.find("alice").getTotalItems()).isEqualTo(2);
+
+    assertThat(repository.deleteIfUnchanged("alice", repository.find("alice").getVersion()))
+        .as("sequence of the deletion event").isEqualTo(3);
+    assertThat(redis.template().keys("*")).isEmpty();
+    assertThat(repository.find("alice").isEmpty()).isTrue();
+    assertThat(repository.deleteIfUnchanged("alice", 0)).as("no cart").isZero();
+    assertThat(redis.template().keys("*")).isEmpty();
+  }
+
+  @Test void concurrentAddsLoseNoQuantityAndNeverReuseASequence() throws Exception {
+    int threads = 16;
+    int addsPerThread = 50;
+    Set<Long> sequences = ConcurrentHashMap.newKeySet();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        Product product = t % 2 == 0 ? MOUSE : CABLE;
+        futures.add(pool.submit(() -> {
+          start.await();
+          for (int i = 0; i < addsPerThread; i++) {
+            assertThat(sequences.add(repository.addItem("alice", product, 1).getSequence())).isTrue();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    CartSnapshot cart = repository().find("alice");
+    assertThat(sequences).hasSize(threads * addsPerThread);
+    assertThat(cart.getLine(1L).getQuantity()).isEqualTo(threads * addsPerThread / 2);
+    assertThat(cart.getLine(2L).getQuantity()).isEqualTo(threads * addsPerThread / 2);
+    assertThat(cart.getTotalAmount()).isEqualTo(Money.parse("34.49").times(threads * addsPerThread / 2));
+    assertThat(cart.getVersion()).isEqualTo(threads * addsPerThread);
+  }
+
+  @Test void invalidationFromAnotherInstanceRefreshesTheNearCache() {
+    RedisCartRepository other = repository();
+    repository.addItem("alice", MOUSE, 1);
+    assertThat(repository.find("alice").getTotalItems()).isEqualTo(1);
+
+    other.addItem("alice", MOUSE, 1);
+    assertThat(repository.find("alice").getTotalItems()).as("cached").isEqualTo(1);
+
+    repository.onMessage(message("cart-invalidations", "other-instance:alice"), null);
+    assertThat(repository.find("alice").getTotalItems()).isEqualTo(2);
+  }
+
+  @Test void mutationScriptsAnnounceTheChangeToOtherInstances() throws Exception {
+    RedisCartRepository other = repository();
+    List<String> announced = new CopyOnWriteArrayList<>();
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redis.connectionFactory());
+    container.setTaskExecutor(new SyncTaskExecutor());
+    container.addMessageListener(other, new ChannelTopic("cart-invalidations"));
+    container.addMessageListener((message, pattern) ->
+        announced.add(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic("cart-invalidations"));
+    container.afterPropertiesSet();
+    container.start();
+    try {
+      repository.addItem("alice", MOUSE, 1);
+      assertThat(other.find("alice").getTotalItems()).isEqualTo(1);
+
+      repository.applyChanges("alice", List.of(CartLineChange.add(CABLE, 2)));
+      await().untilAsserted(() -> assertThat(other.find("alice").getTotalItems()).isEqualTo(3));
+
+      repository.deleteIfUnchanged("alice", repository.find("alice").getVersion());
+      await().untilAsserted(() -> assertThat(other.find("alice").isEmpty()).isTrue());
+
+      assertThat(announced).hasSize(3).allSatisfy(body -> assertThat(body).endsWith(":alice"));
+    } finally {
+      container.stop();
+      container.destroy();
+    }
+  }
+
+  @Test void expiredCartIsAnnouncedOnceAcrossInstances() {
+    RedisCartRepository other = repository();
+    repository.addItem("alice", MOUSE, 1);
+
+    repository.onMessage(message(repository.getExpiryChannel(), "cart:{alice}:seq"), null);
+    verify(eventPublisher, never()).publishEvent(any(Object.class));
+
+    repository.onMessage(message(repository.getExpiryChannel(), "cart:{alice}"), null);
+    other.onMessage(message(other.getExpiryChannel(), "cart:{alice}"), null);
+
+    verify(eventPublisher, times(1)).publishEvent(new CartEvictedEvent("alice", CartEvictedEvent.Reason.IDLE));
+  }
+
+  @Test void recreatedCartThatExpiresAgainIsAnnouncedAgain() {
+    RedisCartRepository other = repository();
+    repository.addItem("alice", MOUSE, 1);
+    redis.template().delete(List.of("cart:{alice}", "cart:{alice}:seq"));
+    repository.onMessage(message(repository.getExpiryChannel(), "cart:{alice}"), null);
+
+    other.applyChanges("alice", List.of(CartLineChange.add(CABLE, 1)));
+    assertThat(redis.template().hasKey("cart:{alice}:expired")).as("claim dropped on creation").isFalse();
+    other.addItem("alice", MOUSE, 1);
+    redis.template().delete(List.of("cart:{alice}", "cart:{alice}:seq"));
+    other.onMessage(message(other.getExpiryChannel(), "cart:{alice}"), null);
+    repository.onMessage(message(repository.getExpiryChannel(), "cart:{alice}"), null);
+
+    verify(eventPublisher, times(2)).publishEvent(new CartEvictedEvent("alice", CartEvictedEvent.Reason.IDLE));
+  }
+
+  @Test void redisExpiryReachesTheRepositoryThroughKeyspaceNotifications() throws Exception {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redis.connectionFactory());
+    container.addMessageListener(repository, new ChannelTopic(repository.getExpiryChannel()));
+    container.afterPropertiesSet();
+    container.start();
+    try {
+      repository.addItem("alice", MOUSE, 1);
+      redis.template().expire("cart:{alice}", 50, TimeUnit.MILLISECONDS);
+
+      await().untilAsserted(() ->
+          verify(eventPublisher).publishEvent(new CartEvictedEvent("alice", CartEvictedEvent.Reason.IDLE)));
+      assertThat(repository.find("alice").isEmpty()).isTrue();
+    } finally {
+      container.stop();
+      container.destroy();
+    }
+  }
+
+  private RedisCartRepository repository() {
+    RedisCartRepository repository = new RedisCartRepository(redis.template(), objectMapper, eventPublisher);
+    ReflectionTestUtils.setField(repository, "keyPrefix", "cart:");
+    ReflectionTestUtils.setField(repository, "invalidationChannel", "cart-invalidations");
+    ReflectionTestUtils.setField(repository, "idleTtlMinutes", 30L);
+    ReflectionTestUtils.setField(repository, "nearCacheMaxEntries", 100);
+    ReflectionTestUtils.setField(repository, "nearCacheTtlSeconds", 30L);
+    ReflectionTestUtils.setField(repository, "expiryEventsEnabled", true);
+    ReflectionTestUtils.setField(repository, "database", 0);
+    repository.init();
+    return repository;
+  }
+
+  private static DefaultMessage message(String channel, String body) {
+    return new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Product product(Long id, String name, String price) {
+    return Product.builder()
+        .id(id)
+        .name(name)
+        .category("Accessories")
+        .price(Money.parse(price))
+        .stockQuantity(100)
+        .build();
+  }
+}
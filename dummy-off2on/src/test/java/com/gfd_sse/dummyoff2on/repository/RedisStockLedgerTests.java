@@ -0,0 +1,128 @@
+package com.gfd_sse.dummyoff2on.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.gfd_sse.dummyoff2on.EmbeddedRedis;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RedisStockLedgerTests {
+
+  private static final Duration TTL = Duration.ofMinutes(5);
+
+  private static EmbeddedRedis redis;
+
+  private RedisStockLedger ledger;
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void setUp() {
+    redis.flush();
+    ledger = new RedisStockLedger(redis.template());
+    ReflectionTestUtils.setField(ledger, "keyPrefix", "stock:{ledger}:");
+  }
+
+  @Test void reserveScriptIsAllOrNothing() {
+    ledger.initialize(1L, 5);
+    ledger.initialize(2L, 1);
+
+    assertThat(ledger.reserve("a", Map.of(1L, 3, 2L, 2), TTL)).isFalse();
+    assertThat(ledger.available(List.of(1L, 2L))).containsEntry(1L, 5).containsEntry(2L, 1);
+
+    assertThat(ledger.reserve("b", Map.of(1L, 3, 2L, 1), TTL)).isTrue();
+    assertThat(ledger.reserve("b", Map.of(1L, 1), TTL)).as("id in use").isFalse();
+    assertThat(ledger.available(List.of(1L, 2L, 3L)))
+        .containsEntry(1L, 2).containsEntry(2L, 0).containsEntry(3L, 0);
+  }
+
+  @Test void releaseScriptReturnsEveryLineAndCommitKeepsThem() {
+    ledger.initialize(10L, 10);
+    ledger.initialize(20L, 10);
+    ledger.reserve("a", Map.of(10L, 2, 20L, 3), TTL);
+    ledger.reserve("b", Map.of(10L, 4, 20L, 1), TTL);
+
+    assertThat(ledger.release("a")).isTrue();
+    assertThat(ledger.release("a")).isFalse();
+    assertThat(ledger.commit("b")).isTrue();
+    assertThat(ledger.commit("b")).isFalse();
+    assertThat(ledger.release("b")).isFalse();
+
+    assertThat(ledger.available(List.of(10L, 20L))).containsEntry(10L, 6).containsEntry(20L, 9);
+    assertThat(ledger.releaseExpired()).isZero();
+  }
+
+  @Test void expirySweepReleasesOnlyDueReservations() {
+    ledger.initialize(1L, 300);
+    for (int i = 0; i < 250; i++) {
+      ledger.reserve("expired-" + i, Map.of(1L, 1), Duration.ofMillis(-1));
+    }
+    ledger.reserve("open", Map.of(1L, 5), TTL);
+
+    assertThat(ledger.releaseExpired()).isEqualTo(250);
+    assertThat(ledger.commit("expired-0")).isFalse();
+    assertThat(ledger.commit("open")).isTrue();
+    assertThat(ledger.available(1L)).isEqualTo(295);
+  }
+
+  @Test void adjustScriptClampsAtZeroAndInitializeKeepsSharedCount() {
+    ledger.initialize(1L, 3);
+    ledger.initialize(1L, 100);
+
+    assertThat(ledger.available(1L)).isEqualTo(3);
+    assertThat(ledger.adjust(1L, -5)).isZero();
+    assertThat(ledger.available(1L)).isZero();
+    assertThat(ledger.adjust(1L, 4)).isEqualTo(4);
+  }
+
+  @Test void concurrentCheckoutsAcrossLedgersNeverOversell() throws Exception {
+    ledger.initialize(1L, 50);
+    // A second instance sharing the same Redis keys
+    RedisStockLedger other = new RedisStockLedger(redis.template());
+    ReflectionTestUtils.setField(other, "keyPrefix", "stock:{ledger}:");
+
+    AtomicInteger sold = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 400; i++) {
+        String id = "order-" + i;
+        RedisStockLedger instance = i % 2 == 0 ? ledger : other;
+        futures.add(executor.submit(() -> {
+          start.await();
+          if (instance.reserve(id, Map.of(1L, 1), TTL) && instance.commit(id)) {
+            sold.incrementAndGet();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(sold).hasValue(50);
+    assertThat(ledger.available(1L)).isZero();
+  }
+}
@@ -0,0 +1,306 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gfd_sse.dummyoff2on.dto.AddToCartRequest;
+import com.gfd_sse.dummyoff2on.dto.AddToCartResponse;
+import com.gfd_sse.dummyoff2on.dto.CartBatchRequest;
+import com.gfd_sse.dummyoff2on.dto.CartOperation;
+import com.gfd_sse.dummyoff2on.dto.CheckoutRequest;
+import com.gfd_sse.dummyoff2on.dto.CheckoutResponse;
+import com.gfd_sse.dummyoff2on.event.CartEvent;
+import com.gfd_sse.dummyoff2on.event.CartEventMode;
+import com.gfd_sse.dummyoff2on.event.EventType;
+import com.gfd_sse.dummyoff2on.model.CartItem;
+import com.gfd_sse.dummyoff2on.model.Money;
+import com.gfd_sse.dummyoff2on.model.Product;
+import com.gfd_sse.dummyoff2on.repository.InMemoryCartRepository;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class CartServiceTests {
+
+  private static final Product MOUSE = product(1L, "24.99");
+  private static final Product CABLE = product(2L, "9.50");
+
+  private final ProductService productService = mock(ProductService.class);
+  private final RedisPublisherService redisPublisher = mock(RedisPublisherService.class);
+  private final IdGenerator idGenerator = mock(IdGenerator.class);
+  private InMemoryCartRepository cartRepository;
+
+  @BeforeEach void setUp() {
+    cartRepository = new InMemoryCartRepository(mock(ApplicationEventPublisher.class));
+    ReflectionTestUtils.setField(cartRepository, "idleTtlMinutes", 30L);
+    ReflectionTestUtils.setField(cartRepository, "maxEntries", 100);
+    cartRepository.init();
+
+    when(productService.findProduct(1L)).thenReturn(Optional.of(MOUSE));
+    when(productService.findProduct(2L)).thenReturn(Optional.of(CABLE));
+    when(productService.isProductAvailable(anyLong(), anyInt())).thenReturn(true);
+    AtomicLong ids = new AtomicLong();
+    when(idGenerator.next()).thenAnswer(invocation -> "e" + ids.incrementAndGet());
+  }
+
+  @Test void snapshotModeSendsTheWholeCartEveryTime() {
+    CartService cartService = cartService(CartEventMode.SNAPSHOT, 50);
+
+    cartService.addToCart(add(MOUSE, 1));
+    cartService.addToCart(add(CABLE, 2));
+    cartService.addToCart(add(MOUSE, 1));
+
+    List<CartEvent> events = cartEvents();
+    assertThat(events).extracting(CartEvent::getSequence).containsExactly(1L, 2L, 3L);
+    assertThat(events).extracting(CartEvent::getDelta).containsOnly(false);
+    assertThat(events.get(2).getCartItems()).extracting(CartItem::getProductId).containsExactly(1L, 2L);
+  }
+
+  @Test void deltaModeSendsTheChangedLineBetweenPeriodicSnapshots() {
+    CartService cartService = cartService(CartEventMode.DELTA, 3);
+
+    cartService.addToCart(add(MOUSE, 1));
+    cartService.addToCart(add(CABLE, 2));
+    cartService.addToCart(add(MOUSE, 1));
+    cartService.addToCart(add(MOUSE, 1));
+
+    List<CartEvent> events = cartEvents();
+    assertThat(events).extracting(CartEvent::getSequence).containsExactly(1L, 2L, 3L, 4L);
+    assertThat(events).extracting(CartEvent::getDelta).containsExactly(false, true, false, true);
+
+    CartEvent delta = events.get(3);
+    assertThat(delta.getCartItems()).singleElement().satisfies(line -> {
+      assertThat(line.getProductId()).isEqualTo(1L);
+      assertThat(line.getQuantity()).isEqualTo(3);
+    });
+    assertThat(delta.getTotalItems()).isEqualTo(5);
+    assertThat(delta.getTotalAmount()).isEqualTo(Money.parse("93.97"));
+    assertThat(events.get(2).getCartItems()).hasSize(2);
+  }
+
+  @Test void clearedCartStartsOverWithASnapshot() {
+    CartService cartService = cartService(CartEventMode.DELTA, 50);
+    cartService.addToCart(add(MOUSE, 1));
+    cartService.addToCart(add(MOUSE, 1));
+
+    cartService.clearCart("alice");
+    cartService.addToCart(add(CABLE, 1));
+
+    CartEvent first = cartEvents().get(2);
+    assertThat(first.getSequence()).isEqualTo(1);
+    assertThat(first.getDelta()).isFalse();
+    assertThat(first.getCartItems()).extracting(CartItem::getProductId).containsExactly(2L);
+  }
+
+  @Test void snapshotOnDemandCarriesTheNextSequence() {
+    CartService cartService = cartService(CartEventMode.DELTA, 50);
+    cartService.addToCart(add(MOUSE, 1));
+    cartService.addToCart(add(CABLE, 1));
+
+    cartService.publishCartSnapshot("alice");
+
+    CartEvent snapshot = cartEvents().get(2);
+    assertThat(snapshot.getEventType()).isEqualTo(EventType.CART_UPDATED);
+    assertThat(snapshot.getSequence()).isEqualTo(3);
+    assertThat(snapshot.getDelta()).isFalse();
+    assertThat(snapshot.getCartItems()).hasSize(2);
+    assertThat(snapshot.getTotalAmount()).isEqualTo(Money.parse("34.49"));
+  }
+
+  @Test void batchIsAppliedInOrderAndAnnouncedOnce() {
+    CartService cartService = cartService(CartEventMode.SNAPSHOT, 50);
+    cartService.addToCart(add(MOUSE, 1));
+
+    AddToCartResponse response = cartService.applyBatch(batch(
+        CartOperation.builder().type(CartOperation.Type.ADD).productId(2L).quantity(2).build(),
+        CartOperation.builder().type(CartOperation.Type.UPDATE_QUANTITY).productId(1L).quantity(4).build(),
+        CartOperation.builder().type(CartOperation.Type.ADD).productId(2L).quantity(1).build()));
+
+    assertThat(response.isSuccess()).isTrue();
+    assertThat(response.getTotalItems()).isEqualTo(7);
+    assertThat(response.getTotalAmount()).isEqualTo(Money.parse("128.46"));
+    List<CartEvent> events = cartEvents();
+    assertThat(events).hasSize(2);
+    CartEvent updated = events.get(1);
+    assertThat(updated.getEventType()).isEqualTo(EventType.CART_UPDATED);
+    assertThat(updated.getSequence()).isEqualTo(2);
+    assertThat(updated.getCartItems()).extracting(CartItem::getQuantity).containsExactly(4, 3);
+    // Each product is looked up once, however many operations touch it
+    verify(productService, times(1)).findProduct(2L);
+  }
+
+  @Test void deltaBatchCarriesTouchedLinesWithRemovedOnesAtZero() {
+    CartService cartService = cartService(CartEventMode.DELTA, 50);
+    cartService.addToCart(add(MOUSE, 1));
+    cartService.addToCart(add(CABLE, 1));
+
+    cartService.applyBatch(batch(
+        CartOperation.builder().type(CartOperation.Type.REMOVE).productId(1L).build(),
+        CartOperation.builder().type(CartOperation.Type.UPDATE_QUANTITY).productId(2L).quantity(3).build()));
+
+    CartEvent updated = cartEvents().get(2);
+    assertThat(updated.getDelta()).isTrue();
+    assertThat(updated.getCartItems()).extracting(CartItem::getProductId, CartItem::getQuantity)
+        .containsExactlyInAnyOrder(tuple(1L, 0), tuple(2L, 3));
+    assertThat(updated.getTotalAmount()).isEqualTo(Money.parse("28.50"));
+  }
+
+  @Test void stockIsCheckedAgainstTheFinalQuantityAndFailsTheWholeBatch() {
+    CartService cartService = cartService(CartEventMode.SNAPSHOT, 50);
+    cartService.addToCart(add(MOUSE, 2));
+    when(productService.isProductAvailable(1L, 5)).thenReturn(false);
+
+    AddToCartResponse response = cartService.applyBatch(batch(
+        CartOperation.builder().type(CartOperation.Type.ADD).productId(2L).quantity(1).build(),
+        CartOperation.builder().type(CartOperation.Type.ADD).productId(1L).quantity(1).build(),
+        CartOperation.builder().type(CartOperation.Type.ADD).productId(1L).quantity(2).build()));
+
+    assertThat(response.isSuccess()).isFalse();
+    assertThat(response.getMessage()).contains("product: 1");
+    assertThat(cartService.getCart("alice")).extracting(CartItem::getProductId).containsExactly(1L);
+    assertThat(cartEvents()).hasSize(1);
+  }
+
+  @Test void unknownProductFailsTheWholeBatch() {
+    CartService cartService = cartService(CartEventMode.SNAPSHOT, 50);
+
+    AddToCartResponse response = cartService.applyBatch(batch(
+        CartOperation.builder().type(CartOperation.Type.ADD).productId(1L).quantity(1).build(),
+        CartOperation.builder().type(CartOperation.Type.ADD).productId(99L).quantity(1).build()));
+
+    assertThat(response.isSuccess()).isFalse();
+    assertThat(response.getMessage()).isEqualTo("Product not found: 99");
+    assertThat(cartService.getCartSnapshot("alice").isEmpty()).isTrue();
+    verify(redisPublisher, never()).publishCartEvent(any());
+  }
+
+  @Test void completedCheckoutFollowsTheLastCartEvent() {
+    CartService cartService = cartService(CartEventMode.DELTA, 50);
+    cartService.addToCart(add(MOUSE, 1));
+    cartService.addToCart(add(CABLE, 2));
+    when(productService.reserveStock(anyString(), anyMap())).thenReturn(true);
+    when(productService.commitReservation(anyString())).thenReturn(true);
+
+    CheckoutResponse response = cartService.checkout(checkout());
+
+    assertThat(response.isSuccess()).isTrue();
+    CartEvent completed = checkoutEvent();
+    assertThat(completed.getEventType()).isEqualTo(EventType.CHECKOUT_COMPLETED);
+    assertThat(completed.getSequence()).isEqualTo(3);
+    assertThat(completed.getDelta()).isFalse();
+    assertThat(completed.getCartItems()).extracting(CartItem::getProductId).containsExactly(1L, 2L);
+    assertThat(completed.getTotalAmount()).isEqualTo(Money.parse("43.99"));
+    assertThat(cartService.getCartSnapshot("alice").isEmpty()).isTrue();
+  }
+
+  @Test void failedCheckoutShowsTheRestoredCartInsteadOfClearingIt() {
+    CartService cartService = cartService(CartEventMode.DELTA, 50);
+    cartService.addToCart(add(MOUSE, 1));
+    cartService.addToCart(add(CABLE, 2));
+    when(productService.reserveStock(anyString(), anyMap())).thenReturn(false);
+
+    CheckoutResponse response = cartService.checkout(checkout());
+
+    assertThat(response.isSuccess()).isFalse();
+    // Claim took 3, the restore published 1 on the recreated cart, the failure snapshot follows it
+    CartEvent restored = cartEvents().get(2);
+    assertThat(restored.getSequence()).isEqualTo(1);
+    CartEvent failed = checkoutEvent();
+    assertThat(failed.getEventType()).isEqualTo(EventType.CHECKOUT_FAILED);
+    assertThat(failed.getSequence()).isEqualTo(2);
+    assertThat(failed.getDelta()).isFalse();
+    assertThat(failed.getCartItems()).extracting(CartItem::getProductId, CartItem::getQuantity)
+        .containsExactly(tuple(1L, 1), tuple(2L, 2));
+    assertThat(failed.getTotalItems()).isEqualTo(3);
+    assertThat(failed.getTotalAmount()).isEqualTo(Money.parse("43.99"));
+  }
+
+  @Test void checkoutOfAChangedCartShowsTheCurrentCart() {
+    cartRepository = spy(cartRepository);
+    CartService cartService = cartService(CartEventMode.DELTA, 50);
+    cartService.addToCart(add(MOUSE, 1));
+    // Another change lands between reading the cart and claiming it
+    doAnswer(invocation -> {
+      Object read = invocation.callRealMethod();
+      cartRepository.addItem("alice", CABLE, 1);
+      return read;
+    }).when(cartRepository).find("alice");
+
+    CheckoutResponse response = cartService.checkout(checkout());
+
+    assertThat(response.isSuccess()).isFalse();
+    assertThat(response.getMessage()).contains("Cart changed");
+    CartEvent failed = checkoutEvent();
+    assertThat(failed.getEventType()).isEqualTo(EventType.CHECKOUT_FAILED);
+    assertThat(failed.getSequence()).isEqualTo(3);
+    assertThat(failed.getDelta()).isFalse();
+    assertThat(failed.getCartItems()).extracting(CartItem::getProductId).containsExactly(1L, 2L);
+    verify(productService, never()).reserveStock(anyString(), anyMap());
+  }
+
+  private CartService cartService(CartEventMode mode, int snapshotEvery) {
+    CartService cartService = new CartService(productService, redisPublisher, cartRepository, idGenerator);
+    ReflectionTestUtils.setField(cartService, "eventMode", mode);
+    ReflectionTestUtils.setField(cartService, "snapshotEvery", snapshotEvery);
+    return cartService;
+  }
+
+  private List<CartEvent> cartEvents() {
+    ArgumentCaptor<CartEvent> events = ArgumentCaptor.forClass(CartEvent.class);
+    verify(redisPublisher, atLeastOnce()).publishCartEvent(events.capture());
+    return events.getAllValues();
+  }
+
+  private CartEvent checkoutEvent() {
+    ArgumentCaptor<CartEvent> event = ArgumentCaptor.forClass(CartEvent.class);
+    verify(redisPublisher).publishCheckoutEvent(event.capture());
+    return event.getValue();
+  }
+
+  private static CheckoutRequest checkout() {
+    return CheckoutRequest.builder().userId("alice").build();
+  }
+
+  private static CartBatchRequest batch(CartOperation... operations) {
+    return CartBatchRequest.builder()
+        .userId("alice")
+        .operations(List.of(operations))
+        .build();
+  }
+
+  private static AddToCartRequest add(Product product, int quantity) {
+    return AddToCartRequest.builder()
+        .userId("alice")
+        .productId(product.getId())
+        .quantity(quantity)
+        .build();
+  }
+
+  private static Product product(Long id, String price) {
+    return Product.builder()
+        .id(id)
+        .name("Product " + id)
+        .category("Accessories")
+        .price(Money.parse(price))
+        .stockQuantity(100)
+        .build();
+  }
+}
@@ -0,0 +1,121 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import com.gfd_sse.dummyoff2on.dto.ProductPage;
+import com.gfd_sse.dummyoff2on.model.Money;
+import com.gfd_sse.dummyoff2on.model.Product;
+import com.gfd_sse.dummyoff2on.repository.InMemoryStockLedger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class CatalogSnapshotTests {
+
+  private final CatalogSnapshot catalog = new CatalogSnapshot(List.of(
+      product(30L, "Wireless Mouse", "Accessories"),
+      product(10L, "Laptop Pro 14", "Electronics"),
+      product(20L, "USB-C Cable", "accessories"),
+      product(40L, "Mouse Pad", "Accessories"),
+      product(50L, "Gaming Laptop", "Electronics"),
+      product(60L, null, null)));
+
+  @Test void pagesByIdWithExclusiveCursor() {
+    assertThat(ids(catalog.page(null, 2))).containsExactly(10L, 20L);
+    assertThat(ids(catalog.page(20L, 2))).containsExactly(30L, 40L);
+    assertThat(ids(catalog.page(25L, 2))).as("cursor between ids").containsExactly(30L, 40L);
+    assertThat(ids(catalog.page(50L, 10))).containsExactly(60L);
+    assertThat(catalog.page(60L, 10)).isEmpty();
+    assertThat(ids(catalog.page(Long.MIN_VALUE, 100))).containsExactly(10L, 20L, 30L, 40L, 50L, 60L);
+    assertThat(CatalogSnapshot.EMPTY.page(null, 10)).isEmpty();
+  }
+
+  @Test void pagingVisitsEveryProductOnce() {
+    CatalogSnapshot large = new CatalogSnapshot(LongStream.rangeClosed(1, 1000)
+        .map(i -> i * 7 % 1009)
+        .mapToObj(id -> product(id, "Product " + id, "Bulk"))
+        .toList());
+
+    List<Long> visited = new ArrayList<>();
+    Long cursor = null;
+    List<Product> page;
+    do {
+      page = large.page(cursor, 64);
+      visited.addAll(ids(page));
+      cursor = page.isEmpty() ? cursor : page.get(page.size() - 1).getId();
+    } while (!page.isEmpty());
+
+    assertThat(visited).hasSize(1000).isSorted().doesNotHaveDuplicates();
+  }
+
+  @Test void searchesWholeNameAndWordPrefixesInAnyCase() {
+    assertThat(ids(catalog.searchByName("mouse", 10))).containsExactly(30L, 40L);
+    assertThat(ids(catalog.searchByName("LAP", 10))).containsExactly(10L, 50L);
+    assertThat(ids(catalog.searchByName("  wireless m ", 10))).containsExactly(30L);
+    assertThat(ids(catalog.searchByName("c", 10))).as("USB-C splits into words").containsExactly(20L);
+    assertThat(ids(catalog.searchByName("laptop", 1))).containsExactly(10L);
+    assertThat(catalog.searchByName("keyboard", 10)).isEmpty();
+    assertThat(catalog.searchByName("  ", 10)).isEmpty();
+  }
+
+  @Test void productMatchingSeveralKeysIsReturnedOnce() {
+    CatalogSnapshot repeated = new CatalogSnapshot(List.of(product(1L, "Pad pad PAD", "x")));
+
+    assertThat(ids(repeated.searchByName("pad", 10))).containsExactly(1L);
+  }
+
+  @Test void looksUpByIdAndCategoryInAnyCase() {
+    assertThat(catalog.get(40L).getName()).isEqualTo("Mouse Pad");
+    assertThat(catalog.get(99L)).isNull();
+    assertThat(catalog.contains(60L)).isTrue();
+    assertThat(catalog.size()).isEqualTo(6);
+    assertThat(ids(catalog.byCategory("ACCESSORIES"))).containsExactly(20L, 30L, 40L);
+    assertThat(catalog.byCategory("Toys")).isEmpty();
+  }
+
+  @Test void viewsAreUnmodifiable() {
+    assertThatThrownBy(() -> catalog.all().clear()).isInstanceOf(UnsupportedOperationException.class);
+    assertThatThrownBy(() -> catalog.byCategory("electronics").clear())
+        .isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test void productServicePagesWithCurrentStock() {
+    InMemoryStockLedger ledger = new InMemoryStockLedger();
+    ProductService service = new ProductService(ledger, mock(ProductViewAggregator.class));
+    ReflectionTestUtils.setField(service, "reservationTtlSeconds", 60L);
+    service.replaceCatalog(catalog.all());
+    service.reserveStock("order-1", Map.of(10L, 2));
+
+    ProductPage first = service.getProductsPage(null, 4);
+    assertThat(ids(first.getItems())).containsExactly(10L, 20L, 30L, 40L);
+    assertThat(first.getNextCursor()).isEqualTo(40L);
+    assertThat(first.getItems().get(0).getStockQuantity()).isEqualTo(3);
+
+    ProductPage last = service.getProductsPage(first.getNextCursor(), 4);
+    assertThat(ids(last.getItems())).containsExactly(50L, 60L);
+    assertThat(last.getNextCursor()).isNull();
+
+    service.upsertProducts(List.of(product(45L, "Mouse Bungee", "Accessories")));
+    assertThat(ids(service.searchProducts("mouse", 10))).containsExactly(30L, 40L, 45L);
+    assertThat(service.findProduct(10L)).get().extracting(Product::getStockQuantity).isEqualTo(3);
+  }
+
+  private static Product product(Long id, String name, String category) {
+    return Product.builder()
+        .id(id)
+        .name(name)
+        .category(category)
+        .price(Money.parse("9.99"))
+        .stockQuantity(5)
+        .build();
+  }
+
+  private static List<Long> ids(List<Product> products) {
+    return products.stream().map(Product::getId).toList();
+  }
+}
@@ -0,0 +1,175 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.gfd_sse.dummyoff2on.EmbeddedRedis;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class IdGeneratorTests {
+
+  private static EmbeddedRedis redis;
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void flush() {
+    redis.flush();
+  }
+
+  @Test void idsOfOneNodeStrictlyIncreaseBeyondFourThousandPerMillisecond() {
+    IdGenerator generator = generator(7);
+
+    long previous = generator.nextId();
+    for (int i = 0; i < 200_000; i++) {
+      long id = generator.nextId();
+      assertThat(id).isGreaterThan(previous);
+      assertThat(nodeId(id)).isEqualTo(7);
+      previous = id;
+    }
+  }
+
+  @Test void concurrentCallersNeverGetTheSameId() throws Exception {
+    IdGenerator generator = generator(1);
+    int threads = 8;
+    int perThread = 50_000;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<long[]>> futures = new ArrayList<>();
+    try {
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(() -> {
+          long[] ids = new long[perThread];
+          for (int i = 0; i < perThread; i++) {
+            ids[i] = generator.nextId();
+          }
+          return ids;
+        }));
+      }
+
+      Set<Long> seen = new HashSet<>();
+      for (Future<long[]> future : futures) {
+        long[] ids = future.get();
+        for (int i = 0; i < ids.length; i++) {
+          assertThat(seen.add(ids[i])).as("duplicate id %d", ids[i]).isTrue();
+          if (i > 0) {
+            assertThat(ids[i]).as("increasing within one caller").isGreaterThan(ids[i - 1]);
+          }
+        }
+      }
+      assertThat(seen).hasSize(threads * perThread);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test void encodedIdsHaveFixedWidthAndSortLikeTheNumbers() {
+    IdGenerator generator = generator(3);
+
+    String previous = generator.next();
+    for (int i = 0; i < 10_000; i++) {
+      String id = generator.next();
+      assertThat(id).hasSize(13).matches("[0-9A-HJKMNP-TV-Z]+");
+      assertThat(id).isGreaterThan(previous);
+      previous = id;
+    }
+    assertThat(IdGenerator.encode(0)).isEqualTo("0000000000000");
+    assertThat(IdGenerator.encode(31)).isEqualTo("000000000000Z");
+    assertThat(IdGenerator.encode(Long.MAX_VALUE).compareTo(IdGenerator.encode(Long.MAX_VALUE - 1))).isPositive();
+  }
+
+  @Test void rejectsConfiguredNodeIdsOutOfRange() {
+    IdGenerator generator = new IdGenerator(redis.template());
+    ReflectionTestUtils.setField(generator, "configuredNodeId", 1024L);
+
+    assertThatThrownBy(generator::init).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test void nodesWithoutConfiguredIdsLeaseDistinctIds() {
+    Set<Long> nodeIds = new HashSet<>();
+    List<IdGenerator> generators = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      IdGenerator generator = leasingGenerator();
+      generators.add(generator);
+      nodeIds.add(nodeId(generator.nextId()));
+    }
+
+    assertThat(nodeIds).hasSize(20);
+    assertThat(redis.template().keys("ids:node:*")).hasSize(20);
+
+    generators.forEach(IdGenerator::releaseLease);
+    assertThat(redis.template().keys("ids:node:*")).isEmpty();
+  }
+
+  @Test void lostLeaseIsRetakenOrReplacedAndIdsKeepIncreasing() {
+    IdGenerator generator = leasingGenerator();
+    long first = generator.nextId();
+    String leaseKey = "ids:node:" + nodeId(first);
+
+    // Expired, nobody else took it: the same id is leased again
+    redis.template().delete(leaseKey);
+    generator.renewLease();
+    assertThat(redis.template().hasKey(leaseKey)).isTrue();
+    long second = generator.nextId();
+    assertThat(nodeId(second)).isEqualTo(nodeId(first));
+
+    // Expired and taken by another node: this one moves to a free id
+    redis.template().opsForValue().set(leaseKey, "someone-else");
+    generator.renewLease();
+    long third = generator.nextId();
+    assertThat(nodeId(third)).isNotEqualTo(nodeId(first));
+    assertThat(third).isGreaterThan(second);
+    assertThat(redis.template().opsForValue().get(leaseKey)).isEqualTo("someone-else");
+  }
+
+  @Test void startupFailsWhenEveryNodeIdIsLeased() {
+    for (int nodeId = 0; nodeId < 1024; nodeId++) {
+      redis.template().opsForValue().set("ids:node:" + nodeId, "taken");
+    }
+
+    IdGenerator generator = new IdGenerator(redis.template());
+    configureLease(generator);
+
+    assertThatThrownBy(generator::init).isInstanceOf(IllegalStateException.class);
+  }
+
+  private static IdGenerator generator(long nodeId) {
+    IdGenerator generator = new IdGenerator(redis.template());
+    ReflectionTestUtils.setField(generator, "configuredNodeId", nodeId);
+    generator.init();
+    return generator;
+  }
+
+  private static IdGenerator leasingGenerator() {
+    IdGenerator generator = new IdGenerator(redis.template());
+    configureLease(generator);
+    generator.init();
+    return generator;
+  }
+
+  private static void configureLease(IdGenerator generator) {
+    ReflectionTestUtils.setField(generator, "configuredNodeId", -1L);
+    ReflectionTestUtils.setField(generator, "leaseKeyPrefix", "ids:node:");
+    ReflectionTestUtils.setField(generator, "leaseTtlSeconds", 60L);
+  }
+
+  private static long nodeId(long id) {
+    return (id >>> 12) & 1023;
+  }
+}
@@ -0,0 +1,152 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.gfd_sse.dummyoff2on.EmbeddedRedis;
+import com.gfd_sse.dummyoff2on.model.IssuedOTP;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OTPServiceTests {
+
+  private static EmbeddedRedis redis;
+
+  private StringRedisTemplate template;
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void setUp() {
+    redis.flush();
+    template = redis.template();
+  }
+
+  @Test void issueScriptStoresBothDirectionsWithTheTtl() {
+    OTPService service = service(6, 5, "redis");
+    long before = System.currentTimeMillis();
+
+    IssuedOTP issued = service.generateOTP("alice");
+
+    assertThat(issued.getOtp()).hasSize(6).doesNotStartWith("0");
+    assertThat(issued.getUserId()).isEqualTo("alice");
+    assertThat(issued.getExpiresAt()).isBetween(before + 299_000, System.currentTimeMillis() + 301_000);
+    assertThat(template.opsForValue().get("otp:" + issued.getOtp())).isEqualTo("\"alice\"");
+    assertThat(template.opsForValue().get("otp:user:alice")).isEqualTo("\"" + issued.getOtp() + "\"");
+    assertThat(template.getExpire("otp:" + issued.getOtp(), TimeUnit.SECONDS)).isBetween(298L, 300L);
+    assertThat(service.otpExists(issued.getOtp())).isTrue();
+  }
+
+  @Test void reissuingDropsTheUsersPreviousCode() {
+    OTPService service = service(6, 5, "redis");
+    IssuedOTP first = service.generateOTP("alice");
+
+    IssuedOTP second = service.generateOTP("alice");
+
+    assertThat(service.otpExists(first.getOtp())).isEqualTo(first.getOtp().equals(second.getOtp()));
+    assertThat(template.opsForValue().get("otp:user:alice")).isEqualTo("\"" + second.getOtp() + "\"");
+    assertThat(template.keys("otp:*")).hasSize(2);
+  }
+
+  @Test void previousCodeNowHeldByAnotherUserIsLeftAlone() {
+    OTPService service = service(6, 5, "redis");
+    template.opsForValue().set("otp:user:alice", "\"123456\"");
+    template.opsForValue().set("otp:123456", "\"bob\"");
+
+    service.generateOTP("alice");
+
+    assertThat(template.opsForValue().get("otp:123456")).isEqualTo("\"bob\"");
+  }
+
+  @Test void neverOverwritesACodeInUse() {
+    // One-digit codes: 1..9, all held by bob
+    OTPService service = service(1, 5, "redis");
+    for (int code = 1; code <= 9; code++) {
+      template.opsForValue().set("otp:" + code, "\"bob\"");
+    }
+
+    assertThatThrownBy(() -> service.generateOTP("alice")).isInstanceOf(IllegalStateException.class);
+    for (int code = 1; code <= 9; code++) {
+      assertThat(template.opsForValue().get("otp:" + code)).isEqualTo("\"bob\"");
+    }
+    assertThat(template.hasKey("otp:user:alice")).isFalse();
+  }
+
+  @Test void concurrentIssuesNeverShareACode() throws Exception {
+    // 900 possible codes for 300 users: candidates collide often
+    OTPService service = service(3, 20, "redis");
+    int users = 300;
+    Set<String> codes = ConcurrentHashMap.newKeySet();
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int u = 0; u < users; u++) {
+        String userId = "user-" + u;
+        futures.add(pool.submit(() -> {
+          start.await();
+          assertThat(codes.add(service.generateOTP(userId).getOtp())).isTrue();
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    assertThat(codes).hasSize(users);
+    for (int u = 0; u < users; u++) {
+      String code = template.opsForValue().get("otp:user:user-" + u);
+      assertThat(template.opsForValue().get("otp:" + code.replace("\"", ""))).isEqualTo("\"user-" + u + "\"");
+    }
+  }
+
+  @Test void hmacModeIssuesWithoutTouchingRedis() {
+    OTPService service = service(6, 5, "hmac");
+
+    IssuedOTP issued = service.generateOTP("alice");
+
+    assertThat(issued.getOtp()).hasSize(6);
+    assertThat(issued.getExpiresAt()).isGreaterThan(System.currentTimeMillis());
+    assertThat(service.otpExists(issued.getOtp())).isFalse();
+    assertThat(template.keys("*")).isEmpty();
+  }
+
+  private OTPService service(int otpLength, int candidates, String mode) {
+    HmacOtpGenerator hmacOtpGenerator = new HmacOtpGenerator();
+    ReflectionTestUtils.setField(hmacOtpGenerator, "mode", mode);
+    ReflectionTestUtils.setField(hmacOtpGenerator, "secret", Base64.getEncoder().encodeToString(new byte[32]));
+    ReflectionTestUtils.setField(hmacOtpGenerator, "stepSeconds", 0L);
+    ReflectionTestUtils.setField(hmacOtpGenerator, "otpExpirationMinutes", 5);
+    ReflectionTestUtils.setField(hmacOtpGenerator, "otpLength", otpLength);
+    hmacOtpGenerator.init();
+
+    OTPService service = new OTPService(template, hmacOtpGenerator);
+    ReflectionTestUtils.setField(service, "otpExpirationMinutes", 5);
+    ReflectionTestUtils.setField(service, "otpLength", otpLength);
+    ReflectionTestUtils.setField(service, "issueCandidates", candidates);
+    return service;
+  }
+}
@@ -0,0 +1,203 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gfd_sse.dummyoff2on.event.CartEvent;
+import com.gfd_sse.dummyoff2on.event.EventType;
+import com.gfd_sse.dummyoff2on.repository.InMemoryStockLedger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ProductViewAggregatorTests {
+
+  private final RedisPublisherService redisPublisher = mock(RedisPublisherService.class);
+  private final IdGenerator idGenerator = mock(IdGenerator.class);
+
+  @BeforeEach void setUp() {
+    when(idGenerator.next()).thenReturn("e1");
+  }
+
+  @Test void concurrentViewsAreAllCountedInOneSummary() throws Exception {
+    ProductViewAggregator aggregator = aggregator(1.0, 500);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(pool.submit(() -> {
+          start.await();
+          for (int i = 0; i < 10_000; i++) {
+            aggregator.recordView((long) (i % 5) + 1);
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    aggregator.flush();
+
+    CartEvent summary = lastSummary();
+    assertThat(summary.getEventType()).isEqualTo(EventType.PRODUCT_VIEWED);
+    assertThat(views(summary)).containsOnlyKeys(1L, 2L, 3L, 4L, 5L).allSatisfy((id, count) ->
+        assertThat(count).isEqualTo(16_000L));
+    assertThat(metadata(summary)).containsEntry("otherViews", 0L);
+    assertThat(summary.getMessage()).isEqualTo("80000 product views across 5 products");
+  }
+
+  @Test void viewsRecordedDuringFlushesAreNeverLost() throws Exception {
+    ProductViewAggregator aggregator = aggregator(1.0, 500);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    AtomicBoolean recording = new AtomicBoolean(true);
+    try {
+      List<Future<Long>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(pool.submit(() -> {
+          long recorded = 0;
+          while (recording.get()) {
+            aggregator.recordView(recorded % 3 + 1);
+            recorded++;
+          }
+          return recorded;
+        }));
+      }
+      for (int i = 0; i < 200; i++) {
+        aggregator.flush();
+      }
+      recording.set(false);
+      long recorded = 0;
+      for (Future<Long> future : futures) {
+        recorded += future.get(10, TimeUnit.SECONDS);
+      }
+      // Recorders are done; the last flush publishes whatever the previous ones did not see
+      aggregator.flush();
+
+      ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+      verify(redisPublisher, atLeastOnce()).publishProductEvent(events.capture());
+      long published = events.getAllValues().stream()
+          .mapToLong(event -> views((CartEvent) event).values().stream().mapToLong(Long::longValue).sum())
+          .sum();
+      assertThat(published).isEqualTo(recorded);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test void onlyTheMostViewedProductsAreListed() {
+    ProductViewAggregator aggregator = aggregator(1.0, 2);
+    view(aggregator, 1L, 5);
+    view(aggregator, 2L, 1);
+    view(aggregator, 3L, 9);
+    view(aggregator, 4L, 2);
+
+    aggregator.flush();
+
+    CartEvent summary = lastSummary();
+    assertThat(views(summary)).containsExactly(Map.entry(3L, 9L), Map.entry(1L, 5L));
+    assertThat(metadata(summary)).containsEntry("otherViews", 3L);
+  }
+
+  @Test void windowsFollowEachOtherAndQuietWindowsPublishNothing() {
+    ProductViewAggregator aggregator = aggregator(1.0, 500);
+    view(aggregator, 1L, 3);
+    aggregator.flush();
+    aggregator.flush();
+    view(aggregator, 1L, 1);
+    aggregator.flush();
+
+    ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+    verify(redisPublisher, atLeastOnce()).publishProductEvent(events.capture());
+    assertThat(events.getAllValues()).hasSize(2);
+    Map<String, Object> first = metadata((CartEvent) events.getAllValues().get(0));
+    Map<String, Object> second = metadata((CartEvent) events.getAllValues().get(1));
+    assertThat((long) second.get("windowStart")).isGreaterThanOrEqualTo((long) first.get("windowEnd"));
+    assertThat(views((CartEvent) events.getAllValues().get(1))).containsExactly(Map.entry(1L, 1L));
+  }
+
+  @Test void samplingCountsAFractionAndReportsTheRate() {
+    ProductViewAggregator aggregator = aggregator(0.25, 500);
+    view(aggregator, 1L, 40_000);
+
+    aggregator.flush();
+
+    CartEvent summary = lastSummary();
+    assertThat(metadata(summary)).containsEntry("sampleRate", 0.25);
+    assertThat(views(summary).get(1L)).isBetween(9_000L, 11_000L);
+  }
+
+  @Test void disabledAggregatorPublishesNothing() {
+    ProductViewAggregator aggregator = aggregator(1.0, 500);
+    ReflectionTestUtils.setField(aggregator, "enabled", false);
+    view(aggregator, 1L, 10);
+
+    aggregator.flush();
+
+    verify(redisPublisher, never()).publishProductEvent(any());
+  }
+
+  @Test void clientLookupsCountAsViewsButInternalOnesDoNot() {
+    ProductViewAggregator aggregator = aggregator(1.0, 500);
+    ProductService productService = new ProductService(new InMemoryStockLedger(), aggregator);
+    productService.initializeProducts();
+
+    productService.getProductById(1L);
+    productService.getProductById(1L);
+    productService.getProductById(99L);
+    productService.findProduct(2L);
+    aggregator.flush();
+
+    assertThat(views(lastSummary())).containsExactly(Map.entry(1L, 2L));
+  }
+
+  private ProductViewAggregator aggregator(double sampleRate, int maxProducts) {
+    ProductViewAggregator aggregator = new ProductViewAggregator(redisPublisher, idGenerator);
+    ReflectionTestUtils.setField(aggregator, "enabled", true);
+    ReflectionTestUtils.setField(aggregator, "sampleRate", sampleRate);
+    ReflectionTestUtils.setField(aggregator, "maxProducts", maxProducts);
+    return aggregator;
+  }
+
+  private static void view(ProductViewAggregator aggregator, Long productId, int times) {
+    for (int i = 0; i < times; i++) {
+      aggregator.recordView(productId);
+    }
+  }
+
+  private CartEvent lastSummary() {
+    ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+    verify(redisPublisher, atLeastOnce()).publishProductEvent(events.capture());
+    return (CartEvent) events.getValue();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> metadata(CartEvent event) {
+    return (Map<String, Object>) event.getMetadata();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<Long, Long> views(CartEvent event) {
+    return (Map<Long, Long>) metadata(event).get("views");
+  }
+}
@@ -0,0 +1,181 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.gfd_sse.dummyoff2on.EmbeddedRedis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RedisBatchPublisherTests {
+
+  private static final RedisScript<Long> NUMSUB =
+      RedisScript.of("return redis.call('PUBSUB', 'NUMSUB', KEYS[1])[2]", Long.class);
+
+  private static EmbeddedRedis redis;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final List<String> received = new CopyOnWriteArrayList<>();
+  private RedisMessageListenerContainer container;
+  private RedisBatchPublisher publisher;
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void startContainer() {
+    redis.flush();
+    container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redis.connectionFactory());
+    // Deliver on the subscription thread, so messages are recorded in publish order
+    container.setTaskExecutor(new SyncTaskExecutor());
+    container.afterPropertiesSet();
+    container.start();
+  }
+
+  @AfterEach void stop() throws Exception {
+    if (publisher != null) {
+      publisher.stop();
+    }
+    container.destroy();
+  }
+
+  @Test void queuedEventsArePublishedInOrderInBoundedBatches() {
+    publisher = publisher(redis.template(), 10_000, 64);
+    listen("events");
+
+    List<CompletableFuture<Long>> futures = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      futures.add(publisher.submit("events", null, bytes("m" + i)));
+    }
+
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).orTimeout(10, TimeUnit.SECONDS).join();
+    assertThat(futures).allSatisfy(future -> assertThat(future).isCompletedWithValue(1L));
+    await().until(() -> received.size() == 1_000);
+    for (int i = 0; i < 1_000; i++) {
+      assertThat(received.get(i)).isEqualTo("events|m" + i);
+    }
+    assertThat(meterRegistry.get("redis.publisher.published").counter().count()).isEqualTo(1_000);
+    assertThat(meterRegistry.get("redis.publisher.batch.size").summary().max()).isLessThanOrEqualTo(64);
+  }
+
+  @Test void eventsGoToTheOwningPodsInboxOrFallBack() {
+    publisher = publisher(redis.template(), 100, 16);
+    redis.template().opsForValue().set("presence:alice", "pod-a");
+    // pod-b is gone but its entry has not expired yet
+    redis.template().opsForValue().set("presence:bob", "pod-b");
+    listen("events", "pod-inbox:pod-a");
+
+    CompletableFuture<Long> alice = publisher.submit("events", "presence:alice", bytes("to-alice"));
+    CompletableFuture<Long> bob = publisher.submit("events", "presence:bob", bytes("to-bob"));
+    CompletableFuture<Long> carol = publisher.submit("events", "presence:carol", bytes("to-carol"));
+
+    CompletableFuture.allOf(alice, bob, carol).orTimeout(10, TimeUnit.SECONDS).join();
+    assertThat(alice).isCompletedWithValue(1L);
+    assertThat(bob).isCompletedWithValue(1L);
+    await().until(() -> received.size() == 3);
+    assertThat(received).containsExactlyInAnyOrder("pod-inbox:pod-a|to-alice", "events|to-bob", "events|to-carol");
+  }
+
+  @Test void fullQueueDropsInsteadOfBlocking() throws Exception {
+    CountDownLatch flushing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    StringRedisTemplate slowRedis = mock(StringRedisTemplate.class);
+    when(slowRedis.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+      flushing.countDown();
+      release.await();
+      return List.of(1L);
+    });
+    publisher = publisher(slowRedis, 2, 1);
+
+    CompletableFuture<Long> inFlight = publisher.submit("events", null, bytes("a"));
+    assertThat(flushing.await(5, TimeUnit.SECONDS)).isTrue();
+    CompletableFuture<Long> queued1 = publisher.submit("events", null, bytes("b"));
+    CompletableFuture<Long> queued2 = publisher.submit("events", null, bytes("c"));
+    CompletableFuture<Long> dropped = publisher.submit("events", null, bytes("d"));
+
+    assertThat(dropped).isCompletedExceptionally();
+    assertThat(dropped.handle((value, error) -> error)).isCompletedWithValueMatching(
+        error -> error instanceof RejectedExecutionException);
+    assertThat(meterRegistry.get("redis.publisher.dropped").counter().count()).isEqualTo(1);
+    assertThat(publisher.getQueueDepth()).isEqualTo(2);
+
+    release.countDown();
+    CompletableFuture.allOf(inFlight, queued1, queued2).orTimeout(5, TimeUnit.SECONDS).join();
+  }
+
+  @Test void failedBatchFailsItsFutures() {
+    StringRedisTemplate brokenRedis = mock(StringRedisTemplate.class);
+    when(brokenRedis.executePipelined(any(RedisCallback.class))).thenThrow(new IllegalStateException("down"));
+    publisher = publisher(brokenRedis, 10, 10);
+
+    CompletableFuture<Long> future = publisher.submit("events", null, bytes("a"));
+
+    await().until(future::isDone);
+    assertThat(future).isCompletedExceptionally();
+    assertThat(meterRegistry.get("redis.publisher.failed").counter().count()).isEqualTo(1);
+  }
+
+  @Test void stopFlushesWhatIsQueued() throws Exception {
+    publisher = publisher(redis.template(), 1_000, 8);
+    listen("events");
+    List<CompletableFuture<Long>> futures = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      futures.add(publisher.submit("events", null, bytes("m" + i)));
+    }
+
+    publisher.stop();
+
+    assertThat(futures).allSatisfy(future -> assertThat(future).isCompletedWithValue(1L));
+  }
+
+  private RedisBatchPublisher publisher(StringRedisTemplate template, int queueCapacity, int batchSize) {
+    RedisBatchPublisher batchPublisher = new RedisBatchPublisher(template, meterRegistry);
+    ReflectionTestUtils.setField(batchPublisher, "queueCapacity", queueCapacity);
+    ReflectionTestUtils.setField(batchPublisher, "batchSize", batchSize);
+    ReflectionTestUtils.setField(batchPublisher, "lingerMillis", 2L);
+    ReflectionTestUtils.setField(batchPublisher, "podInboxChannel", "pod-inbox");
+    batchPublisher.start();
+    return batchPublisher;
+  }
+
+  private void listen(String... channels) {
+    for (String channel : channels) {
+      container.addMessageListener((message, pattern) -> received.add(channel + "|"
+          + new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(channel));
+    }
+    for (String channel : channels) {
+      await().until(() -> Long.valueOf(1).equals(redis.template().execute(NUMSUB, List.of(channel))));
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
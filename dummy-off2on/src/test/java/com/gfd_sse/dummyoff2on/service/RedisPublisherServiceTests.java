@@ -0,0 +1,204 @@
+package com.gfd_sse.dummyoff2on.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gfd_sse.dummyoff2on.EmbeddedRedis;
+import com.gfd_sse.dummyoff2on.config.ChannelShards;
+import com.gfd_sse.dummyoff2on.config.RedisConfig;
+import com.gfd_sse.dummyoff2on.event.CartEvent;
+import com.gfd_sse.dummyoff2on.event.EventType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RedisPublisherServiceTests {
+
+  private static final int SHARDS = 16;
+  private static final RedisScript<Long> NUMSUB =
+      RedisScript.of("return redis.call('PUBSUB', 'NUMSUB', KEYS[1])[2]", Long.class);
+
+  private static EmbeddedRedis redis;
+  private static RedisTemplate<String, Object> redisTemplate;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final List<Published> published = new CopyOnWriteArrayList<>();
+  private RedisMessageListenerContainer container;
+
+  @BeforeAll static void startRedis() throws Exception {
+    redis = EmbeddedRedis.start();
+    redisTemplate = new RedisConfig().redisTemplate(redis.connectionFactory());
+  }
+
+  @AfterAll static void stopRedis() throws Exception {
+    redis.close();
+  }
+
+  @BeforeEach void startContainer() {
+    redis.flush();
+    container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redis.connectionFactory());
+    // Deliver on the subscription thread, so messages are recorded in publish order
+    container.setTaskExecutor(new SyncTaskExecutor());
+    container.afterPropertiesSet();
+    container.start();
+  }
+
+  @AfterEach void stopContainer() throws Exception {
+    container.destroy();
+  }
+
+  @Test void userEventsGoToTheShardOfTheirUser() {
+    RedisPublisherService publisher = publisher(SHARDS, false);
+    String aliceCart = "cart-events:" + ChannelShards.shardOf("alice", SHARDS);
+    String aliceCheckout = "checkout-events:" + ChannelShards.shardOf("alice", SHARDS);
+    String bobCart = "cart-events:" + ChannelShards.shardOf("bob", SHARDS);
+    listen("cart-events", "checkout-events", aliceCart, aliceCheckout, bobCart);
+
+    publisher.publishCartEvent(event("alice", EventType.CART_ITEM_ADDED));
+    publisher.publishCheckoutEvent(event("alice", EventType.CHECKOUT_COMPLETED));
+    publisher.publishCartEvent(event("bob", EventType.CART_ITEM_ADDED));
+
+    await().until(() -> published.size() == 3);
+    assertThat(published).extracting(Published::channel).containsExactly(aliceCart, aliceCheckout, bobCart);
+  }
+
+  @Test void productEventsAndUnshardedModeUseTheGlobalChannels() {
+    listen("product-events", "cart-events");
+
+    publisher(SHARDS, false).publishProductEvent(Map.of("eventType", "PRODUCT_VIEWED"));
+    publisher(0, false).publishCartEvent(event("alice", EventType.CART_ITEM_ADDED));
+    publisher(SHARDS, false).publishCartEvent(event(null, EventType.CART_UPDATED));
+
+    await().until(() -> published.size() == 3);
+    assertThat(published).extracting(Published::channel)
+        .containsExactly("product-events", "cart-events", "cart-events");
+  }
+
+  @Test void connectedUsersGetTheirEventsThroughTheirPodsInbox() throws Exception {
+    RedisPublisherService publisher = publisher(SHARDS, true);
+    redis.template().opsForValue().set("presence:alice", "pod-a");
+    String aliceCart = "cart-events:" + ChannelShards.shardOf("alice", SHARDS);
+    String bobCart = "cart-events:" + ChannelShards.shardOf("bob", SHARDS);
+    listen("pod-inbox:pod-a", aliceCart, bobCart);
+
+    publisher.publishCartEvent(event("alice", EventType.CART_ITEM_ADDED));
+    publisher.publishCheckoutEvent(event("alice", EventType.CHECKOUT_COMPLETED));
+    publisher.publishCartEvent(event("bob", EventType.CART_ITEM_ADDED));
+
+    await().until(() -> published.size() == 3);
+    assertThat(published).extracting(Published::channel)
+        .containsExactly("pod-inbox:pod-a", "pod-inbox:pod-a", bobCart);
+    assertThat(objectMapper.readTree(published.get(1).body()).get("eventType").asText())
+        .isEqualTo("CHECKOUT_COMPLETED");
+  }
+
+  @Test void inboxWithoutSubscriberFallsBackToTheChannel() {
+    RedisPublisherService publisher = publisher(0, true);
+    // pod-b is gone but its entry has not expired yet
+    redis.template().opsForValue().set("presence:alice", "pod-b");
+    listen("cart-events");
+
+    assertThat(publisher.publishCartEvent(event("alice", EventType.CART_ITEM_ADDED))).isCompletedWithValue(1L);
+
+    await().until(() -> published.size() == 1);
+    assertThat(published).extracting(Published::channel).containsExactly("cart-events");
+  }
+
+  @Test void asyncModePublishesTheSameBytesAsSync() throws Exception {
+    RedisBatchPublisher batchPublisher = new RedisBatchPublisher(redis.template(), new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(batchPublisher, "queueCapacity", 100);
+    ReflectionTestUtils.setField(batchPublisher, "batchSize", 16);
+    ReflectionTestUtils.setField(batchPublisher, "lingerMillis", 2L);
+    ReflectionTestUtils.setField(batchPublisher, "podInboxChannel", "pod-inbox");
+    batchPublisher.start();
+    try {
+      RedisPublisherService sync = publisher(SHARDS, true);
+      RedisPublisherService async = publisher(SHARDS, true, batchPublisher, PublishMode.ASYNC);
+      redis.template().opsForValue().set("presence:alice", "pod-a");
+      String bobCart = "cart-events:" + ChannelShards.shardOf("bob", SHARDS);
+      listen("pod-inbox:pod-a", bobCart, "product-events");
+
+      for (RedisPublisherService publisher : List.of(sync, async)) {
+        assertThat(publisher.publishCartEvent(event("alice", EventType.CART_ITEM_ADDED)).get(5, TimeUnit.SECONDS))
+            .isEqualTo(1L);
+        assertThat(publisher.publishCartEvent(event("bob", EventType.CART_ITEM_ADDED)).get(5, TimeUnit.SECONDS))
+            .isEqualTo(1L);
+        publisher.publishProductEvent(Map.of("eventType", "PRODUCT_VIEWED")).get(5, TimeUnit.SECONDS);
+      }
+
+      await().until(() -> published.size() == 6);
+      assertThat(published.subList(3, 6)).isEqualTo(published.subList(0, 3));
+      assertThat(published.subList(0, 3)).extracting(Published::channel)
+          .containsExactly("pod-inbox:pod-a", bobCart, "product-events");
+    } finally {
+      batchPublisher.stop();
+    }
+  }
+
+  @Test void shardAssignmentIsPinned() {
+    // The SSE nodes compute the same shards; both copies of ChannelShards pin these values
+    assertThat(ChannelShards.shardOf("bob", SHARDS)).isEqualTo(5);
+    assertThat(ChannelShards.shardOf("carol", SHARDS)).isEqualTo(1);
+    assertThat(ChannelShards.shardOf("dave", SHARDS)).isEqualTo(12);
+  }
+
+  private RedisPublisherService publisher(int shards, boolean presence) {
+    return publisher(shards, presence, null, PublishMode.SYNC);
+  }
+
+  private RedisPublisherService publisher(int shards, boolean presence, RedisBatchPublisher batchPublisher,
+      PublishMode mode) {
+    RedisPublisherService publisher = new RedisPublisherService(redisTemplate, redis.template(), objectMapper,
+        batchPublisher);
+    ReflectionTestUtils.setField(publisher, "cartEventsChannel", "cart-events");
+    ReflectionTestUtils.setField(publisher, "productEventsChannel", "product-events");
+    ReflectionTestUtils.setField(publisher, "checkoutEventsChannel", "checkout-events");
+    ReflectionTestUtils.setField(publisher, "channelShards", shards);
+    ReflectionTestUtils.setField(publisher, "presenceEnabled", presence);
+    ReflectionTestUtils.setField(publisher, "presenceKeyPrefix", "presence:");
+    ReflectionTestUtils.setField(publisher, "podInboxChannel", "pod-inbox");
+    ReflectionTestUtils.setField(publisher, "publishMode", mode);
+    return publisher;
+  }
+
+  /**
+   * Record what is published on these channels, once the subscriptions are live
+   */
+  private void listen(String... channels) {
+    for (String channel : channels) {
+      container.addMessageListener((message, pattern) -> published.add(new Published(channel,
+          new String(message.getBody(), StandardCharsets.UTF_8))), new ChannelTopic(channel));
+    }
+    for (String channel : channels) {
+      await().until(() -> Long.valueOf(1).equals(redis.template().execute(NUMSUB, List.of(channel))));
+    }
+  }
+
+  private static CartEvent event(String userId, EventType type) {
+    return CartEvent.builder()
+        .eventId("e-" + userId)
+        .eventType(type)
+        .userId(userId)
+        .timestamp(1L)
+        .build();
+  }
+
+  private record Published(String channel, String body) {
+  }
+}
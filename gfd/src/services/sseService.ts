@@ -5,6 +5,12 @@ export class SSEService {
   private reconnectAttempts = 0
   private maxReconnectAttempts = 3
   private reconnectDelay = 2000
+  // Lets the next reconnect skip the OTP; single-use, the server issues a new one on every connect
+  private resumeToken: { userId: string; token: string } | null = null
+  // Id of the last event received; a new EventSource does not send Last-Event-ID, so it goes in the URL
+  private lastEventId: { userId: string; id: string } | null = null
+  // Frames without an id keep reporting the previous one, which is useless after a RESYNC
+  private discardedEventId: string | null = null
 
   connect(
     userId: string,
@@ -17,7 +23,13 @@ export class SSEService {
     // Close existing connection if any
     this.disconnect()
 
-    const url = `${baseUrl}/api/sse/connect?userId=${encodeURIComponent(userId)}&otp=${encodeURIComponent(otp)}`
+    let url = `${baseUrl}/api/sse/connect?userId=${encodeURIComponent(userId)}&otp=${encodeURIComponent(otp)}`
+    if (this.resumeToken?.userId === userId) {
+      url += `&resumeToken=${encodeURIComponent(this.resumeToken.token)}`
+    }
+    if (this.lastEventId?.userId === userId) {
+      url += `&lastEventId=${encodeURIComponent(this.lastEventId.id)}`
+    }
 
     console.log('Connecting to SSE:', url)
 
@@ -31,6 +43,7 @@ export class SSEService {
 
     // Handle default message events (without custom event type)
     this.eventSource.onmessage = (event) => {
+      this.trackEventId(userId, event)
       try {
         const data: CartEvent = JSON.parse(event.data)
         console.log('Received SSE message (default):', data)
@@ -40,6 +53,18 @@ export class SSEService {
       }
     }
 
+    this.eventSource.addEventListener('RESUME_TOKEN', (event: any) => {
+      try {
+        const data: CartEvent = JSON.parse(event.data)
+        const token = data.metadata?.resumeToken
+        if (token) {
+          this.resumeToken = { userId, token }
+        }
+      } catch (error) {
+        console.error('Error parsing resume token:', error)
+      }
+    })
+
     // Handle custom event types
     const eventTypes = [
       'CONNECTION_ESTABLISHED',
@@ -47,6 +72,7 @@ export class SSEService {
       'CART_ITEM_ADDED',
       'CART_ITEM_REMOVED',
       'CART_UPDATED',
+      'CART_DELETED',
       'VOUCHER_APPLIED',
       'VOUCHER_UNAPPLIED',
       'DISCOUNT_APPLIED',
@@ -55,11 +81,13 @@ export class SSEService {
       'CHECKOUT_CANCELLED',
       'CHECKOUT_COMPLETED',
       'CHECKOUT_FAILED',
+      'RESYNC',
       'HEARTBEAT'
     ]
 
     eventTypes.forEach((eventType) => {
       this.eventSource!.addEventListener(eventType, (event: any) => {
+        this.trackEventId(userId, event)
         try {
           // Skip heartbeat events
           if (eventType === 'HEARTBEAT' || event.data === 'ping') {
@@ -88,6 +116,16 @@ export class SSEService {
     }
   }
 
+  private trackEventId(userId: string, event: MessageEvent): void {
+    if (event.type === 'RESYNC') {
+      // The server could not replay from our id; the cart is reloaded instead
+      this.discardedEventId = event.lastEventId || null
+      this.lastEventId = null
+    } else if (event.lastEventId && event.lastEventId !== this.discardedEventId) {
+      this.lastEventId = { userId, id: event.lastEventId }
+    }
+  }
+
   private handleReconnect(
     userId: string,
     otp: string,
@@ -122,6 +160,17 @@ export class SSEService {
     return this.eventSource !== null && this.eventSource.readyState === EventSource.OPEN
   }
 
+  // Asks the cart service to publish the full cart, which arrives as a regular snapshot event
+  async requestCartSnapshot(userId: string, cartBaseUrl: string): Promise<void> {
+    const response = await fetch(`${cartBaseUrl}/api/cart/${encodeURIComponent(userId)}/snapshot`, {
+      method: 'POST'
+    })
+
+    if (!response.ok) {
+      throw new Error('Failed to request cart snapshot')
+    }
+  }
+
   async disconnectFromServer(userId: string, baseUrl: string): Promise<void> {
     try {
       const response = await fetch(`${baseUrl}/api/sse/disconnect/${userId}`, {
@@ -137,6 +186,9 @@ export class SSEService {
       console.error('Error disconnecting from server:', error)
       throw error
     } finally {
+      this.resumeToken = null
+      this.lastEventId = null
+      this.discardedEventId = null
       this.disconnect()
     }
   }
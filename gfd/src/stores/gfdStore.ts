@@ -20,6 +20,11 @@ export const useGFDStore = defineStore('gfd', () => {
   const checkoutData = ref<CheckoutData | null>(null)
   const subtotalAmount = ref<number>(0)
 
+  // Sequence of the last cart event applied; deltas must follow it without a gap
+  let lastSequence: number | null = null
+  // Deltas are ignored while a full snapshot is on its way
+  let awaitingSnapshot = false
+
   // Voucher and Discount state
   const appliedVoucher = ref<Voucher | null>(null)
   const appliedDiscount = ref<Discount | null>(null)
@@ -27,6 +32,8 @@ export const useGFDStore = defineStore('gfd', () => {
 
   // API Base URL - configure this based on your backend
   const API_BASE_URL = ref('http://localhost:8081')
+  // Cart service (dummy-off2on), asked for a full snapshot when the SSE server sends RESYNC
+  const CART_API_URL = ref('http://localhost:8089')
 
   // Computed
   const isConnected = computed(() => connectionState.value.isConnected)
@@ -59,6 +66,50 @@ export const useGFDStore = defineStore('gfd', () => {
     API_BASE_URL.value = url
   }
 
+  function setCartApiUrl(url: string) {
+    CART_API_URL.value = url
+  }
+
+  // Missed events could not be replayed, so the cart on screen may be stale
+  async function reloadCart() {
+    const userId = connectionState.value.userId
+    if (!userId || awaitingSnapshot) {
+      return
+    }
+    awaitingSnapshot = true
+    try {
+      await sseService.requestCartSnapshot(userId, CART_API_URL.value)
+    } catch (error) {
+      awaitingSnapshot = false
+      console.error('Error requesting cart snapshot:', error)
+    }
+  }
+
+  // False if a cart event must be skipped: a delta that does not directly follow
+  // the last applied event. Such a gap (or a duplicate) triggers a snapshot reload.
+  function acceptSequence(event: CartEvent): boolean {
+    if (event.cartItems === null || event.cartItems === undefined) {
+      return true
+    }
+    if (!event.delta) {
+      // Full cart: a new baseline. A deleted cart starts over at sequence 1.
+      lastSequence = event.sequence ?? (event.eventType === 'CART_DELETED' ? 0 : lastSequence)
+      awaitingSnapshot = false
+      return true
+    }
+    if (awaitingSnapshot) {
+      return false
+    }
+    if (event.sequence === null || event.sequence === undefined || lastSequence === null ||
+        event.sequence !== lastSequence + 1) {
+      console.warn(`Cart event ${event.sequence} does not follow ${lastSequence}, reloading the cart`)
+      reloadCart()
+      return false
+    }
+    lastSequence = event.sequence
+    return true
+  }
+
   function connect(userId: string, otp: string) {
     connectionState.value.error = null
 
@@ -80,9 +131,35 @@ export const useGFDStore = defineStore('gfd', () => {
     console.log('Connection established successfully')
   }
 
+  // Delta events carry only the changed lines; a line with quantity 0 was removed
+  function applyCartDelta(changedItems: CartItem[]) {
+    for (const changed of changedItems) {
+      const index = cartItems.value.findIndex(item => item.productId === changed.productId)
+      if (changed.quantity <= 0) {
+        if (index >= 0) {
+          cartItems.value.splice(index, 1)
+        }
+      } else if (index >= 0) {
+        cartItems.value[index] = changed
+      } else {
+        cartItems.value.push(changed)
+      }
+    }
+  }
+
   function handleSSEMessage(event: CartEvent) {
     console.log('Processing SSE event:', event)
 
+    if (event.eventType === 'RESYNC') {
+      awaitingSnapshot = false
+      reloadCart()
+      return
+    }
+
+    if (!acceptSequence(event)) {
+      return
+    }
+
     lastEventType.value = event.eventType
     lastMessage.value = event.message || ''
 
@@ -93,7 +170,11 @@ export const useGFDStore = defineStore('gfd', () => {
 
     // Update cart data based on event (only if not null)
     if (event.cartItems !== null && event.cartItems !== undefined) {
-      cartItems.value = event.cartItems
+      if (event.delta) {
+        applyCartDelta(event.cartItems)
+      } else {
+        cartItems.value = event.cartItems
+      }
     } else if (
       event.eventType === 'CART_ITEM_ADDED' ||
       event.eventType === 'CART_UPDATED'
@@ -225,6 +306,8 @@ export const useGFDStore = defineStore('gfd', () => {
       error: null
     }
     cartItems.value = []
+    lastSequence = null
+    awaitingSnapshot = false
     totalAmount.value = 0
     totalItems.value = 0
     lastMessage.value = ''
@@ -256,6 +339,7 @@ export const useGFDStore = defineStore('gfd', () => {
     originalAmount,
     subtotalAmount,
     API_BASE_URL,
+    CART_API_URL,
 
     // Computed
     isConnected,
@@ -268,6 +352,7 @@ export const useGFDStore = defineStore('gfd', () => {
 
     // Actions
     setApiBaseUrl,
+    setCartApiUrl,
     connect,
     disconnect,
     clearError
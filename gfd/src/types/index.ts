@@ -4,6 +4,7 @@ export enum EventType {
   CART_ITEM_ADDED = 'CART_ITEM_ADDED',
   CART_ITEM_REMOVED = 'CART_ITEM_REMOVED',
   CART_UPDATED = 'CART_UPDATED',
+  CART_DELETED = 'CART_DELETED',
   VOUCHER_APPLIED = 'VOUCHER_APPLIED',
   VOUCHER_UNAPPLIED = 'VOUCHER_UNAPPLIED',
   DISCOUNT_APPLIED = 'DISCOUNT_APPLIED',
@@ -13,6 +14,8 @@ export enum EventType {
   CHECKOUT_COMPLETED = 'CHECKOUT_COMPLETED',
   CHECKOUT_FAILED = 'CHECKOUT_FAILED',
   CONNECTION_ESTABLISHED = 'CONNECTION_ESTABLISHED',
+  RESUME_TOKEN = 'RESUME_TOKEN',
+  RESYNC = 'RESYNC',
   HEARTBEAT = 'HEARTBEAT'
 }
 
@@ -56,6 +59,8 @@ export interface CartEvent {
   totalAmount: number | null
   totalItems: number | null
   message: string | null
+  sequence?: number | null
+  delta?: boolean | null
   metadata?: any
   voucher?: Voucher
   discount?: Discount